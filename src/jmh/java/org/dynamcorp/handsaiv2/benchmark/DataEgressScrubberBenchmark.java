@@ -0,0 +1,166 @@
+package org.dynamcorp.handsaiv2.benchmark;
+
+import org.dynamcorp.handsaiv2.util.DataEgressScrubber;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scrubbing of tool arguments: the previous three-regex scrubber (JWT, PEM
+ * private key, keyword + secret, each pass producing a new String, every map
+ * and list copied) versus the single-pass {@link DataEgressScrubber}.
+ * <p>
+ * Payloads mimic real tool calls: {@code small} is a search-style call with a
+ * handful of short fields, {@code medium} a ~4 KB issue/comment body with
+ * labels and nested options, {@code large} a ~64 KB document upload. With
+ * {@code secret=true} one nested value carries a bearer token and the body
+ * embeds a JWT.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.includes=DataEgressScrubberBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataEgressScrubberBenchmark {
+
+    private static final String JWT = "eyJhbGciOiJIUzI1NiIsInR5cCI6IkpXVCJ9."
+            + "eyJzdWIiOiIxMjM0NTY3ODkwIiwibmFtZSI6IkpvaG4gRG9lIiwiaWF0IjoxNTE2MjM5MDIyfQ."
+            + "SflKxwRJSMeKKF2QT4fwpMeJf36POk6yJV_adQssw5c";
+
+    @Param({ "small", "medium", "large" })
+    public String size;
+
+    @Param({ "false", "true" })
+    public boolean secret;
+
+    private final DataEgressScrubber scrubber = new DataEgressScrubber();
+    private final LegacyScrubber legacy = new LegacyScrubber();
+    private Map<String, Object> parameters;
+
+    @Setup
+    public void setUp() {
+        int bodyChars;
+        switch (size) {
+            case "small":
+                bodyChars = 0;
+                break;
+            case "medium":
+                bodyChars = 4 * 1024;
+                break;
+            default:
+                bodyChars = 64 * 1024;
+                break;
+        }
+
+        parameters = new LinkedHashMap<>();
+        parameters.put("owner", "octocat");
+        parameters.put("repo", "hello-world");
+        parameters.put("query", "is:open label:bug sort by most commented, key regressions first");
+        parameters.put("per_page", 50);
+        parameters.put("include_drafts", false);
+
+        if (bodyChars > 0) {
+            parameters.put("title", "Crash when the token cache is cleared during a refresh");
+            parameters.put("body", prose(bodyChars, secret));
+            parameters.put("labels", List.of("bug", "auth", "needs-triage"));
+        }
+
+        Map<String, Object> options = new HashMap<>();
+        options.put("notify", true);
+        options.put("assignees", List.of("alice", "bob"));
+        options.put("webhook", secret
+                ? Map.of("url", "https://hooks.example.com/x", "auth", "Bearer sk_live_51HxYzAbCdEfGhIjKlMn")
+                : Map.of("url", "https://hooks.example.com/x", "auth", "none"));
+        parameters.put("options", options);
+    }
+
+    @Benchmark
+    public Map<String, Object> legacyRegexPasses() {
+        return legacy.scrubParameters(parameters);
+    }
+
+    @Benchmark
+    public Map<String, Object> singlePass() {
+        return scrubber.scrubParameters(parameters);
+    }
+
+    private static String prose(int chars, boolean withSecret) {
+        String[] sentences = {
+                "Steps to reproduce: open the settings page, rotate the token and run the sync tool again. ",
+                "The request fails with 401 and the retry uses the same stale credentials. ",
+                "Expected: a single refresh followed by a successful call; actual: three refreshes in a row. ",
+                "Logs show the secret manager returning the key within 20 ms, so latency is not the cause. ",
+                "Environment: macOS 14, Java 21, HandsAI built from main, SQLite in WAL mode.\n" };
+        StringBuilder body = new StringBuilder(chars + 256);
+        int i = 0;
+        while (body.length() < chars) {
+            body.append(sentences[i++ % sentences.length]);
+            if (withSecret && i == 7) {
+                body.append("Captured header: ").append(JWT).append(". ");
+            }
+        }
+        return body.toString();
+    }
+
+    /** DataEgressScrubber as it was before the single-pass scanner. */
+    private static final class LegacyScrubber {
+
+        private static final String REDACTED_MARKER = "[REDACTED_SECRET]";
+        private static final Pattern JWT_PATTERN = Pattern
+                .compile("eyJ[a-zA-Z0-9_-]+\\.[a-zA-Z0-9_-]+\\.[a-zA-Z0-9_-]+");
+        private static final Pattern GENERIC_KEY_PATTERN = Pattern.compile(
+                "(?i)(bearer|token|key|secret|authorization|api[\\s_-]?key)[\\s=:\"]+([A-Za-z0-9\\-\\._~\\+/]{16,}=*)");
+        private static final Pattern PRIVATE_KEY_PATTERN = Pattern.compile(
+                "-----BEGIN (RSA|OPENSSH|DSA|EC|PGP) PRIVATE KEY-----.*?-----END \\1 PRIVATE KEY-----",
+                Pattern.DOTALL);
+
+        Map<String, Object> scrubParameters(Map<String, Object> parameters) {
+            Map<String, Object> scrubbed = new HashMap<>();
+            for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+                scrubbed.put(entry.getKey(), scrubValue(entry.getValue()));
+            }
+            return scrubbed;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object scrubValue(Object value) {
+            if (value instanceof String) {
+                return scrubString((String) value);
+            } else if (value instanceof Map) {
+                return scrubParameters((Map<String, Object>) value);
+            } else if (value instanceof List) {
+                List<Object> scrubbedList = new ArrayList<>();
+                for (Object item : (List<Object>) value) {
+                    scrubbedList.add(scrubValue(item));
+                }
+                return scrubbedList;
+            }
+            return value;
+        }
+
+        private String scrubString(String input) {
+            String scrubbed = JWT_PATTERN.matcher(input).replaceAll(REDACTED_MARKER);
+            scrubbed = PRIVATE_KEY_PATTERN.matcher(scrubbed).replaceAll(REDACTED_MARKER);
+            Matcher matcher = GENERIC_KEY_PATTERN.matcher(scrubbed);
+            StringBuffer sb = new StringBuffer();
+            while (matcher.find()) {
+                String replacement = matcher.group(0).replace(matcher.group(2), REDACTED_MARKER);
+                matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+            }
+            matcher.appendTail(sb);
+            return sb.toString();
+        }
+    }
+}
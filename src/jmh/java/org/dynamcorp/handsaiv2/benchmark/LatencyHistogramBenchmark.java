@@ -0,0 +1,53 @@
+package org.dynamcorp.handsaiv2.benchmark;
+
+import org.dynamcorp.handsaiv2.metrics.LatencyHistogram;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording into a latency histogram from four threads at once: the striped
+ * {@link LatencyHistogram} versus one shared histogram behind a lock. Values
+ * are random latencies between 1 ms and 2 s.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.includes=LatencyHistogramBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class LatencyHistogramBenchmark {
+
+    private final LatencyHistogram striped = new LatencyHistogram();
+    private final LockedHistogram locked = new LockedHistogram();
+
+    @Benchmark
+    public void striped() {
+        striped.record(ThreadLocalRandom.current().nextLong(1_000, 2_000_000));
+    }
+
+    @Benchmark
+    public void locked() {
+        locked.record(ThreadLocalRandom.current().nextLong(1_000, 2_000_000));
+    }
+
+    /** One array of power-of-two buckets, every record under one monitor. */
+    private static final class LockedHistogram {
+
+        private final long[] counts = new long[65];
+        private long sum;
+        private long max;
+
+        synchronized void record(long micros) {
+            counts[64 - Long.numberOfLeadingZeros(micros)]++;
+            sum += micros;
+            max = Math.max(max, micros);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.dynamcorp.handsaiv2.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.dynamcorp.handsaiv2.util.LogObfuscator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Obfuscation of a tool response for the execution log: the previous path
+ * (writeValueAsString, readTree, regex key checks, mutate, write again)
+ * versus {@link LogObfuscator#obfuscateValue}, which serializes into a token
+ * buffer and masks while copying. The response is a list of
+ * {@code items} records like a typical REST search result.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.includes=LogObfuscatorBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogObfuscatorBenchmark {
+
+    private static final List<Pattern> LEGACY_PATTERNS = List.of(
+            Pattern.compile("(?i).*password.*"),
+            Pattern.compile("(?i).*token.*"),
+            Pattern.compile("(?i).*secret.*"),
+            Pattern.compile("(?i).*key.*"),
+            Pattern.compile("(?i).*auth.*"),
+            Pattern.compile("(?i).*credential.*"));
+
+    @Param({ "10", "200" })
+    public int items;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private LogObfuscator logObfuscator;
+    private Map<String, Object> response;
+
+    @Setup
+    public void setUp() {
+        logObfuscator = new LogObfuscator(objectMapper);
+        List<Object> records = new ArrayList<>();
+        for (int i = 0; i < items; i++) {
+            Map<String, Object> record = new LinkedHashMap<>();
+            record.put("id", 1000 + i);
+            record.put("title", "Issue " + i + ": token refresh fails after rotation");
+            record.put("state", i % 3 == 0 ? "closed" : "open");
+            record.put("comments", i % 17);
+            record.put("score", 0.5 + i);
+            record.put("user", Map.of("login", "user" + i, "site_admin", false));
+            record.put("labels", List.of("bug", "auth"));
+            records.add(record);
+        }
+        response = new LinkedHashMap<>();
+        response.put("total_count", items);
+        response.put("next_page_token", "c2VjcmV0LWN1cnNvcg==");
+        response.put("items", records);
+    }
+
+    @Benchmark
+    public String legacyTree() throws Exception {
+        JsonNode root = objectMapper.readTree(objectMapper.writeValueAsString(response));
+        legacyObfuscate(root);
+        return objectMapper.writeValueAsString(root);
+    }
+
+    @Benchmark
+    public String streaming() throws Exception {
+        return logObfuscator.obfuscateValue(response);
+    }
+
+    private static void legacyObfuscate(JsonNode node) {
+        if (node.isObject()) {
+            ObjectNode objectNode = (ObjectNode) node;
+            for (Map.Entry<String, JsonNode> field : objectNode.properties()) {
+                if (legacySensitive(field.getKey())) {
+                    objectNode.put(field.getKey(), "******");
+                } else {
+                    legacyObfuscate(field.getValue());
+                }
+            }
+        } else if (node.isArray()) {
+            node.forEach(LogObfuscatorBenchmark::legacyObfuscate);
+        }
+    }
+
+    private static boolean legacySensitive(String key) {
+        for (Pattern pattern : LEGACY_PATTERNS) {
+            if (pattern.matcher(key).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
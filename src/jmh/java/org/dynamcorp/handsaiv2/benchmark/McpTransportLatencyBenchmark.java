@@ -0,0 +1,144 @@
+package org.dynamcorp.handsaiv2.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dynamcorp.handsaiv2.Handsai;
+import org.dynamcorp.handsaiv2.config.TokenAuthFilter;
+import org.dynamcorp.handsaiv2.config.ToolExecutionProperties;
+import org.dynamcorp.handsaiv2.service.AccessTokenService;
+import org.dynamcorp.handsaiv2.service.McpJsonRpcDispatcher;
+import org.dynamcorp.handsaiv2.service.McpStdioServer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trip latency of one MCP request through the native stdio transport
+ * (an OS pipe feeding {@link McpStdioServer}) versus HTTP POST /mcp on the
+ * embedded server, which is what the Go bridge calls for every message. The
+ * bridge process itself is not part of the measurement, so the HTTP numbers
+ * are a lower bound for the bridged path.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.includes=McpTransportLatencyBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class McpTransportLatencyBenchmark {
+
+    private static final byte[] PING = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"ping\"}\n"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] TOOLS_LIST = "{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"tools/list\"}\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private ConfigurableApplicationContext context;
+    private Path database;
+
+    private OutputStream stdin;
+    private final BlockingQueue<Boolean> stdoutLines = new LinkedBlockingQueue<>();
+
+    private HttpClient httpClient;
+    private URI mcpUri;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = Files.createTempFile("handsai-bench", ".db");
+        context = SpringApplication.run(Handsai.class,
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:sqlite:" + database + "?journal_mode=WAL",
+                "--logging.level.root=WARN",
+                "--logging.level.org.hibernate.SQL=WARN");
+
+        McpStdioServer stdioServer = new McpStdioServer(context.getBean(McpJsonRpcDispatcher.class),
+                context.getBean(ToolExecutionProperties.class), context.getBean(ObjectMapper.class), context);
+        Pipe pipe = Pipe.open();
+        stdin = Channels.newOutputStream(pipe.sink());
+        OutputStream stdout = new OutputStream() {
+            @Override
+            public void write(int b) {
+                if (b == '\n') {
+                    stdoutLines.add(Boolean.TRUE);
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                for (int i = off; i < off + len; i++) {
+                    write(b[i]);
+                }
+            }
+        };
+        Thread reader = new Thread(() -> stdioServer.serve(Channels.newInputStream(pipe.source()), stdout),
+                "mcp-stdio-bench");
+        reader.setDaemon(true);
+        reader.start();
+
+        token = context.getBean(AccessTokenService.class).generateToken();
+        mcpUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/mcp");
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        stdin.close();
+        httpClient.close();
+        context.close();
+        Files.deleteIfExists(database);
+    }
+
+    @Benchmark
+    public Boolean stdioPing() throws Exception {
+        return stdioRoundTrip(PING);
+    }
+
+    @Benchmark
+    public Boolean stdioToolsList() throws Exception {
+        return stdioRoundTrip(TOOLS_LIST);
+    }
+
+    @Benchmark
+    public int httpPing() throws Exception {
+        return httpRoundTrip(PING);
+    }
+
+    @Benchmark
+    public int httpToolsList() throws Exception {
+        return httpRoundTrip(TOOLS_LIST);
+    }
+
+    private Boolean stdioRoundTrip(byte[] message) throws IOException, InterruptedException {
+        stdin.write(message);
+        stdin.flush();
+        return stdoutLines.take();
+    }
+
+    private int httpRoundTrip(byte[] message) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(mcpUri)
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .header(TokenAuthFilter.TOKEN_HEADER, token)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(message))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray()).body().length;
+    }
+}
@@ -0,0 +1,105 @@
+package org.dynamcorp.handsaiv2.benchmark;
+
+import jakarta.servlet.FilterChain;
+import org.dynamcorp.handsaiv2.Handsai;
+import org.dynamcorp.handsaiv2.config.TokenAuthFilter;
+import org.dynamcorp.handsaiv2.model.AccessToken;
+import org.dynamcorp.handsaiv2.repository.AccessTokenRepository;
+import org.dynamcorp.handsaiv2.service.AccessTokenService;
+import org.dynamcorp.handsaiv2.service.EncryptionService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of PAT verification on the MCP path with several concurrent
+ * callers. {@code filter} runs {@link TokenAuthFilter} as wired in the
+ * application (in-memory digest); {@code legacyDbValidation} replays the
+ * previous per-request path — read the token row, Jasypt-decrypt it and save
+ * lastUsedAt in a write transaction — against the same SQLite database.
+ * Under contention that path also fails with SQLITE_BUSY; those calls are
+ * counted as completed (rejected) operations.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.includes=TokenAuthFilterBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class TokenAuthFilterBenchmark {
+
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> {
+    };
+
+    private ConfigurableApplicationContext context;
+    private Path database;
+
+    private TokenAuthFilter filter;
+    private AccessTokenRepository accessTokenRepository;
+    private EncryptionService encryptionService;
+    private TransactionTemplate transactionTemplate;
+    private String token;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = Files.createTempFile("handsai-bench", ".db");
+        context = SpringApplication.run(Handsai.class,
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:sqlite:" + database + "?journal_mode=WAL&busy_timeout=5000",
+                "--logging.level.root=WARN",
+                "--logging.level.org.hibernate.engine.jdbc.spi.SqlExceptionHelper=OFF",
+                "--logging.level.org.hibernate.SQL=WARN");
+        filter = context.getBean(TokenAuthFilter.class);
+        accessTokenRepository = context.getBean(AccessTokenRepository.class);
+        encryptionService = context.getBean(EncryptionService.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        token = context.getBean(AccessTokenService.class).generateToken();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        context.close();
+        Files.deleteIfExists(database);
+    }
+
+    @Benchmark
+    public int filter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/mcp/tools/call");
+        request.addHeader(TokenAuthFilter.TOKEN_HEADER, token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, NO_OP_CHAIN);
+        return response.getStatus();
+    }
+
+    @Benchmark
+    public Boolean legacyDbValidation() {
+        try {
+            return transactionTemplate.execute(status -> {
+                AccessToken stored = accessTokenRepository.findFirstByLabelIsNullOrderByIdDesc().orElseThrow();
+                if (!encryptionService.decrypt(stored.getEncryptedToken()).equals(token)) {
+                    return false;
+                }
+                stored.setLastUsedAt(Instant.now());
+                accessTokenRepository.save(stored);
+                return true;
+            });
+        } catch (RuntimeException e) {
+            // SQLITE_BUSY on the lastUsedAt write: the old filter rejected the request
+            return false;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.dynamcorp.handsaiv2.benchmark;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dynamcorp.handsaiv2.config.EncryptionCacheProperties;
+import org.dynamcorp.handsaiv2.model.*;
+import org.dynamcorp.handsaiv2.service.CachedTool;
+import org.dynamcorp.handsaiv2.service.EncryptionService;
+import org.dynamcorp.handsaiv2.service.ToolExecutionPlan;
+import org.dynamcorp.handsaiv2.service.ToolExecutionPlanCompiler;
+import org.dynamcorp.handsaiv2.service.impl.CachingEncryptionService;
+import org.dynamcorp.handsaiv2.service.impl.EncryptionServiceImpl;
+import org.jasypt.encryption.pbe.StandardPBEStringEncryptor;
+import org.jasypt.iv.NoIvGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Per-call request preparation: what ToolExecutionService did on every call
+ * before execution plans (regex path resolution, customHeadersJson parsing,
+ * Jasypt decryption of key and headers, keyword splitting) versus binding
+ * arguments to a cached {@link ToolExecutionPlan}. No network involved.
+ *
+ * <pre>
+ * ./mvnw -Pbenchmarks test-compile exec:exec -Djmh.includes=ToolExecutionPlanBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ToolExecutionPlanBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private EncryptionService encryptionService;
+    // Lo que usa la app: los planes desencriptan por llamada a través del cache
+    private EncryptionService cachingEncryptionService;
+    private ApiTool tool;
+    private ToolExecutionPlan plan;
+    private Map<String, Object> parameters;
+
+    @Setup
+    public void setUp() throws Exception {
+        StandardPBEStringEncryptor encryptor = new StandardPBEStringEncryptor();
+        encryptor.setPassword("handsai-secret-key");
+        encryptor.setAlgorithm("PBEWithMD5AndDES");
+        encryptor.setIvGenerator(new NoIvGenerator());
+        encryptionService = new EncryptionService() {
+            @Override
+            public String encrypt(String data) {
+                return encryptor.encrypt(data);
+            }
+
+            @Override
+            public String decrypt(String encryptedData) {
+                return encryptor.decrypt(encryptedData);
+            }
+        };
+        cachingEncryptionService = new CachingEncryptionService(new EncryptionServiceImpl(encryptor),
+                new EncryptionCacheProperties());
+
+        ApiProvider provider = new ApiProvider();
+        provider.setId(1L);
+        provider.setCode("bench");
+        provider.setBaseUrl("https://api.example.com");
+        provider.setAuthenticationType(AuthenticationTypeEnum.API_KEY);
+        provider.setApiKeyLocation(ApiKeyLocationEnum.QUERY_PARAMETER);
+        provider.setApiKeyName("key");
+        provider.setApiKeyValue(encryptionService.encrypt("super-secret-api-key"));
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("X-Tenant", encryptionService.encrypt("tenant-123"));
+        headers.put("X-Client", encryptionService.encrypt("handsai"));
+        provider.setCustomHeadersJson(objectMapper.writeValueAsString(headers));
+        provider.setDynamicAuthInvalidationKeywords("expired,invalid token,unauthorized");
+
+        tool = new ApiTool();
+        tool.setCode("bench-tool");
+        tool.setProvider(provider);
+        tool.setEndpointPath("/v1/users/{userId}/repos/{repo}/issues");
+        tool.setHttpMethod(HttpMethodEnum.GET);
+
+        plan = new ToolExecutionPlanCompiler(objectMapper).compile(CachedTool.from(tool));
+
+        parameters = new HashMap<>();
+        parameters.put("userId", "octocat");
+        parameters.put("repo", "hello-world");
+        parameters.put("state", "open");
+        parameters.put("per_page", 50);
+    }
+
+    @Benchmark
+    public void legacyPerCall(Blackhole bh) throws Exception {
+        ApiProvider provider = tool.getProvider();
+        String token = encryptionService.decrypt(provider.getApiKeyValue());
+
+        Map<String, Object> params = new HashMap<>(parameters);
+        params.put(provider.getApiKeyName(), token);
+
+        Map<String, Object> remaining = new HashMap<>(params);
+        Matcher matcher = Pattern.compile("\\{([^}]+)}").matcher(tool.getEndpointPath());
+        StringBuffer resolved = new StringBuffer();
+        while (matcher.find()) {
+            Object value = remaining.remove(matcher.group(1));
+            matcher.appendReplacement(resolved, value != null ? value.toString() : matcher.group(0));
+        }
+        matcher.appendTail(resolved);
+        StringBuilder uri = new StringBuilder(resolved).append('?');
+        remaining.forEach((k, v) -> uri.append(k).append('=').append(v).append('&'));
+        uri.setLength(uri.length() - 1);
+        bh.consume(uri.toString());
+
+        Map<String, String> headers = objectMapper.readValue(provider.getCustomHeadersJson(),
+                new TypeReference<Map<String, String>>() {
+                });
+        headers.forEach((k, v) -> bh.consume(encryptionService.decrypt(v)));
+
+        for (String keyword : provider.getDynamicAuthInvalidationKeywords().split(",")) {
+            bh.consume(keyword.trim().toLowerCase());
+        }
+    }
+
+    @Benchmark
+    public void compiledPlan(Blackhole bh) {
+        String token = plan.effectiveToken(null, cachingEncryptionService);
+        bh.consume(plan.bindUri(parameters, token));
+        plan.headers(cachingEncryptionService).forEach((k, v) -> bh.consume(v));
+        bh.consume(plan.invalidationKeywords());
+    }
+}
@@ -1,11 +1,29 @@
 package org.dynamcorp.handsaiv2;
 
-import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+import java.util.Arrays;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class Handsai {
     public static void main(String[] args) {
-        SpringApplication.run(Handsai.class, args);
+        SpringApplicationBuilder application = new SpringApplicationBuilder(Handsai.class);
+        if (isStdioTransport(args)) {
+            // En modo stdio, stdout es el canal MCP: banner y logs van a stderr
+            System.setOut(System.err);
+            // Sin Tomcat: el cliente lanza un proceso por sesión y el 8080 ya suele estar tomado
+            application.web(WebApplicationType.NONE);
+        }
+        application.run(args);
+    }
+
+    private static boolean isStdioTransport(String[] args) {
+        return Arrays.asList(args).contains("--handsai.transport=stdio")
+                || "stdio".equals(System.getProperty("handsai.transport"))
+                || "stdio".equals(System.getenv("HANDSAI_TRANSPORT"));
     }
-}
\ No newline at end of file
+}
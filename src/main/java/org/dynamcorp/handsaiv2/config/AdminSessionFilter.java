@@ -16,7 +16,7 @@ import java.util.Map;
 
 /**
  * Protects admin management endpoints (/admin/token/** and /admin/providers/**,
- * /admin/tools/**)
+ * /admin/tools/**, and the actuator under /admin/actuator/**)
  * with the admin session cookie. Auth endpoints (/admin/auth/**) are excluded.
  */
 @Component
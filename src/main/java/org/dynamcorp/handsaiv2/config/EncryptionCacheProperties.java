@@ -0,0 +1,26 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * In-memory cache of decrypted credentials kept by
+ * {@link org.dynamcorp.handsaiv2.service.impl.CachingEncryptionService}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.encryption.cache")
+public class EncryptionCacheProperties {
+
+    /** With the cache disabled every decrypt goes to Jasypt. */
+    private boolean enabled = true;
+
+    /** Maximum decrypted values held; the least recently used is evicted first. */
+    private int maxEntries = 1024;
+
+    /** How long a decrypted value may stay in memory after it was decrypted. */
+    private Duration ttl = Duration.ofMinutes(10);
+}
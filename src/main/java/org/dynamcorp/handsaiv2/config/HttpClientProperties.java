@@ -0,0 +1,66 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings for the per-provider upstream HTTP clients
+ * (see {@link org.dynamcorp.handsaiv2.service.ProviderHttpClientRegistry}).
+ * Global values can be overridden per provider code, e.g.
+ * {@code handsai.http.providers.my-provider.max-connections=8}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.http")
+public class HttpClientProperties {
+
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private Duration readTimeout = Duration.ofSeconds(60);
+
+    /** Max concurrent upstream requests (and therefore connections) per provider. */
+    private int maxConnections = 64;
+
+    /** How long a call waits for a free connection slot before failing. */
+    private Duration acquireTimeout = Duration.ofSeconds(10);
+
+    /** Clients not used for this long are closed and rebuilt on demand. */
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    /** Negotiate HTTP/2 (ALPN / h2c upgrade), falling back to HTTP/1.1. */
+    private boolean http2 = true;
+
+    private Map<String, ProviderOverride> providers = new HashMap<>();
+
+    public PoolSettings resolve(String providerCode) {
+        ProviderOverride override = providerCode != null ? providers.get(providerCode) : null;
+        if (override == null) {
+            return new PoolSettings(maxConnections, connectTimeout, readTimeout, http2);
+        }
+        return new PoolSettings(
+                override.getMaxConnections() != null ? override.getMaxConnections() : maxConnections,
+                override.getConnectTimeout() != null ? override.getConnectTimeout() : connectTimeout,
+                override.getReadTimeout() != null ? override.getReadTimeout() : readTimeout,
+                override.getHttp2() != null ? override.getHttp2() : http2);
+    }
+
+    @Getter
+    @Setter
+    public static class ProviderOverride {
+        private Integer maxConnections;
+        private Duration connectTimeout;
+        private Duration readTimeout;
+        private Boolean http2;
+    }
+
+    public record PoolSettings(
+            int maxConnections,
+            Duration connectTimeout,
+            Duration readTimeout,
+            boolean http2) {
+    }
+}
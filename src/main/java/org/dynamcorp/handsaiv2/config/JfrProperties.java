@@ -0,0 +1,32 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Flight recordings started from /admin/jfr by
+ * {@link org.dynamcorp.handsaiv2.jfr.JfrRecordingService}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.jfr")
+public class JfrProperties {
+
+    /** Where dumps are written. */
+    private String directory = "logs/jfr";
+
+    /** Dumps kept in directory; older ones are deleted on each new dump (0 = keep all). */
+    private int maxDumps = 5;
+
+    /** JDK settings the recording starts from: "default" (~1% overhead) or "profile" (~2%). */
+    private String settings = "profile";
+
+    /** Older data is discarded from the in-progress recording. */
+    private Duration maxAge = Duration.ofMinutes(30);
+
+    private DataSize maxSize = DataSize.ofMegabytes(256);
+}
@@ -0,0 +1,26 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * In-process latency histograms kept by
+ * {@link org.dynamcorp.handsaiv2.metrics.LatencyMetrics}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.metrics.latency")
+public class LatencyMetricsProperties {
+
+    /** How often the histograms are drained into a persisted snapshot. */
+    private Duration snapshotInterval = Duration.ofMinutes(1);
+
+    /** Snapshots older than this are deleted; also the widest window that can be queried. */
+    private Duration retention = Duration.ofDays(2);
+
+    /** Tools (and providers) tracked separately; the rest share one "other" series. */
+    private int maxSeries = 256;
+}
@@ -0,0 +1,56 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Execution-log pipeline run by
+ * {@link org.dynamcorp.handsaiv2.service.LogBatchProcessor}: a bounded buffer
+ * between tool calls and the execution log store, drained in batches.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.logs.pipeline")
+public class LogPipelineProperties {
+
+    /** Logs waiting to be written; what happens beyond this is the overflow policy. */
+    private int capacity = 8192;
+
+    private OverflowPolicy overflowPolicy = OverflowPolicy.SAMPLE;
+
+    /** BLOCK: how long a caller may wait for room before its log is dropped. */
+    private Duration blockTimeout = Duration.ofMillis(50);
+
+    /** SAMPLE: buffer fill ratio above which successful executions are sampled. */
+    private double sampleAbove = 0.75;
+
+    /** SAMPLE: above the threshold only one in this many successful logs is kept. */
+    private int sampleRate = 10;
+
+    /** A batch is written as soon as it has this many logs... */
+    private int batchSize = 256;
+
+    /** ...or when its oldest log has waited this long. */
+    private Duration flushInterval = Duration.ofSeconds(2);
+
+    /** Attempts per batch before it goes to the dead-letter file. */
+    private int maxAttempts = 3;
+
+    /** Wait before retry n is n times this. */
+    private Duration retryBackoff = Duration.ofMillis(500);
+
+    /** NDJSON file that receives batches that could not be written. */
+    private String deadLetterFile = "logs/execution-logs-dead-letter.ndjson";
+
+    public enum OverflowPolicy {
+        /** Drop the new log when the buffer is full. */
+        DROP,
+        /** Wait up to block-timeout for room, then drop. */
+        BLOCK,
+        /** Like DROP, but thin out successful logs once the buffer passes sample-above. */
+        SAMPLE
+    }
+}
@@ -0,0 +1,40 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Where execution logs are kept, see
+ * {@link org.dynamcorp.handsaiv2.service.ExecutionLogStore}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.logs.store")
+public class LogStoreProperties {
+
+    private StoreType type = StoreType.SEGMENTED;
+
+    /** SEGMENTED: directory holding the segment files. */
+    private String directory = "logs/store";
+
+    /** SEGMENTED: the active segment is sealed once its file reaches this size... */
+    private DataSize maxSegmentSize = DataSize.ofMegabytes(64);
+
+    /** ...or once it has been open this long. */
+    private Duration maxSegmentAge = Duration.ofDays(1);
+
+    public enum StoreType {
+        /**
+         * Rolling SQLite segment files of their own, apart from the configuration
+         * database. Logs already in tool_execution_logs are still listed until
+         * retention removes them.
+         */
+        SEGMENTED,
+        /** The tool_execution_logs table of the configuration database. */
+        DATABASE
+    }
+}
@@ -0,0 +1,21 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * MCP protocol settings shared by the HTTP transports and
+ * {@link org.dynamcorp.handsaiv2.service.McpJsonRpcDispatcher}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.mcp")
+public class McpProperties {
+
+    /**
+     * Tool results longer than this are returned as several text content
+     * blocks of the same response; they are not sent as separate events.
+     */
+    private int resultChunkSize = 16 * 1024;
+}
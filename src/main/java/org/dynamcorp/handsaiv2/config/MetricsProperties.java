@@ -0,0 +1,21 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Micrometer meters published by
+ * {@link org.dynamcorp.handsaiv2.metrics.HandsAiMeters}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.metrics")
+public class MetricsProperties {
+
+    /**
+     * Distinct values a tool or provider tag may take; later values are
+     * reported as "other" so one misbehaving client cannot explode the series.
+     */
+    private int maxTagValues = 256;
+}
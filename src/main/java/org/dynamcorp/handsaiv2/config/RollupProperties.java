@@ -0,0 +1,27 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Per-tool execution rollups kept by
+ * {@link org.dynamcorp.handsaiv2.service.ToolRollupStore}.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.logs.rollup")
+public class RollupProperties {
+
+    /** SQLite file holding the rollup table, apart from the configuration database. */
+    private String file = "logs/rollups.db";
+
+    /** How long each bucket width is kept. */
+    private Duration minuteRetention = Duration.ofDays(2);
+
+    private Duration hourRetention = Duration.ofDays(35);
+
+    private Duration dayRetention = Duration.ofDays(400);
+}
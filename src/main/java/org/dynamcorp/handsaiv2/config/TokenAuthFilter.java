@@ -7,6 +7,7 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import org.dynamcorp.handsaiv2.service.AccessTokenService;
+import org.dynamcorp.handsaiv2.service.TokenGrant;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -19,6 +20,9 @@ import java.util.Map;
  * Excluded paths: /admin/auth/**, all static SPA resources.
  * Admin management paths (/admin/token/**, etc.) are separately protected by
  * AdminSessionFilter.
+ * <p>
+ * The resolved {@link TokenGrant} is stored as a request attribute so the MCP
+ * endpoints can restrict tools per token; a token over its quota gets 429.
  */
 @Component
 @RequiredArgsConstructor
@@ -71,17 +75,31 @@ public class TokenAuthFilter extends OncePerRequestFilter {
             return;
         }
 
-        if (!accessTokenService.validateToken(rawToken)) {
+        TokenGrant grant = accessTokenService.authenticate(rawToken);
+        if (grant == null) {
             sendUnauthorized(response, "Invalid token",
                     "Token mismatch. If you regenerated the token, update your MCP bridge configuration.");
             return;
         }
 
+        if (!grant.tryAcquire()) {
+            response.setHeader("Retry-After", "1");
+            sendError(response, 429, "Rate limit exceeded",
+                    "This token is limited to its configured requests per second.");
+            return;
+        }
+
+        request.setAttribute(TokenGrant.REQUEST_ATTRIBUTE, grant);
         filterChain.doFilter(request, response);
     }
 
     private void sendUnauthorized(HttpServletResponse response, String error, String message) throws IOException {
-        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        sendError(response, HttpServletResponse.SC_UNAUTHORIZED, error, message);
+    }
+
+    private void sendError(HttpServletResponse response, int status, String error, String message)
+            throws IOException {
+        response.setStatus(status);
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
         String body = objectMapper.writeValueAsString(Map.of("error", error, "message", message));
@@ -0,0 +1,69 @@
+package org.dynamcorp.handsaiv2.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.dynamcorp.handsaiv2.service.ToolExecutionStage;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Timeouts of the asynchronous tool execution pipeline
+ * (see {@link org.dynamcorp.handsaiv2.service.ToolExecutionService#executeApiToolAsync}).
+ * A stage that exceeds its timeout is cancelled (its thread interrupted) and
+ * the execution fails.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "handsai.execution")
+public class ToolExecutionProperties {
+
+    /** How long an MCP HTTP request waits for the pipeline before answering with an error. */
+    private Duration requestTimeout = Duration.ofMinutes(3);
+
+    private Timeout timeout = new Timeout();
+
+    private Batch batch = new Batch();
+
+    public Duration timeoutFor(ToolExecutionStage stage) {
+        switch (stage) {
+            case SCRUB:
+                return timeout.getScrub();
+            case RESOLVE:
+                return timeout.getResolve();
+            case AUTH:
+                return timeout.getAuth();
+            case CALL:
+                return timeout.getCall();
+            case POST_PROCESS:
+                return timeout.getPostProcess();
+            case LOG:
+            default:
+                return timeout.getLog();
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Timeout {
+        private Duration scrub = Duration.ofSeconds(5);
+        private Duration resolve = Duration.ofSeconds(10);
+        private Duration auth = Duration.ofSeconds(30);
+        /** Covers the upstream call plus one retry after a token refresh. */
+        private Duration call = Duration.ofSeconds(150);
+        private Duration postProcess = Duration.ofSeconds(10);
+        private Duration log = Duration.ofSeconds(5);
+    }
+
+    /** Limits for JSON-RPC batch requests on /mcp/tools/call. */
+    @Getter
+    @Setter
+    public static class Batch {
+        /** Max calls accepted in one batch. */
+        private int maxSize = 50;
+        /** Max calls of one batch running at the same time. */
+        private int maxParallelism = 10;
+        /** Max calls of one batch running at the same time against the same provider. */
+        private int maxParallelismPerProvider = 4;
+    }
+}
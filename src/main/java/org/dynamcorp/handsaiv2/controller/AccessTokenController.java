@@ -1,12 +1,18 @@
 package org.dynamcorp.handsaiv2.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.dynamcorp.handsaiv2.dto.AccessTokenResponse;
+import org.dynamcorp.handsaiv2.dto.CreateAccessTokenRequest;
+import org.dynamcorp.handsaiv2.dto.CreateAccessTokenResponse;
 import org.dynamcorp.handsaiv2.dto.RegenerateTokenResponse;
 import org.dynamcorp.handsaiv2.dto.TokenStatusResponse;
 import org.dynamcorp.handsaiv2.service.AccessTokenService;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.List;
+
 @RestController
 @RequestMapping("/admin/token")
 @RequiredArgsConstructor
@@ -20,7 +26,28 @@ public class AccessTokenController {
         return accessTokenService.getStatus();
     }
 
-    /** Regenerates the token — requires admin session. Returns raw token once. */
+    /** Lists every token (default and labelled), masked — requires admin session */
+    @GetMapping
+    public List<AccessTokenResponse> listTokens() {
+        return accessTokenService.listTokens();
+    }
+
+    /** Creates a labelled token scoped to tools and a quota. Returns raw token once. */
+    @PostMapping
+    public ResponseEntity<CreateAccessTokenResponse> createToken(@RequestBody CreateAccessTokenRequest request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(accessTokenService.createToken(request));
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteToken(@PathVariable Long id) {
+        accessTokenService.deleteToken(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Regenerates the default token — requires admin session. Returns raw token
+     * once. Labelled tokens are not affected.
+     */
     @PostMapping("/regenerate")
     public ResponseEntity<RegenerateTokenResponse> regenerate() {
         String rawToken = accessTokenService.generateToken();
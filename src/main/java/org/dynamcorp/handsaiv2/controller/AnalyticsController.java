@@ -2,22 +2,37 @@ package org.dynamcorp.handsaiv2.controller;
 
 import lombok.RequiredArgsConstructor;
 import org.dynamcorp.handsaiv2.dto.AnalyticsSummaryResponse;
+import org.dynamcorp.handsaiv2.dto.LatencyPercentilesResponse;
+import org.dynamcorp.handsaiv2.dto.LogPipelineStatsResponse;
+import org.dynamcorp.handsaiv2.dto.LogStoreStatsResponse;
+import org.dynamcorp.handsaiv2.dto.ProviderMetricsResponse;
 import org.dynamcorp.handsaiv2.dto.ToolExecutionLogResponse;
+import org.dynamcorp.handsaiv2.dto.ToolMetricsResponse;
+import org.dynamcorp.handsaiv2.dto.ToolRollupPointResponse;
+import org.dynamcorp.handsaiv2.metrics.LatencyMetrics;
+import org.dynamcorp.handsaiv2.model.RollupGranularity;
 import org.dynamcorp.handsaiv2.service.AnalyticsService;
+import org.dynamcorp.handsaiv2.service.LogBatchProcessor;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
+import java.util.List;
+
 @RestController
 @RequestMapping("/admin/analytics")
 @RequiredArgsConstructor
 public class AnalyticsController {
 
     private final AnalyticsService analyticsService;
+    private final LogBatchProcessor logBatchProcessor;
+    private final LatencyMetrics latencyMetrics;
 
     @GetMapping("/summary")
     public AnalyticsSummaryResponse getSummary(@RequestParam(defaultValue = "30") int days) {
@@ -28,4 +43,42 @@ public class AnalyticsController {
     public Page<ToolExecutionLogResponse> getLogs(@PageableDefault(size = 20) Pageable pageable) {
         return analyticsService.getExecutionLogs(pageable);
     }
+
+    /** Per-tool counts, errors and latency over the last {@code days}, from the rollups */
+    @GetMapping("/tools")
+    public List<ToolMetricsResponse> getToolMetrics(@RequestParam(defaultValue = "30") int days) {
+        return analyticsService.getToolMetrics(days);
+    }
+
+    /** The last {@code buckets} MINUTE, HOUR or DAY buckets of one tool, by tool code */
+    @GetMapping("/tools/{toolCode}/series")
+    public List<ToolRollupPointResponse> getToolSeries(@PathVariable String toolCode,
+            @RequestParam(defaultValue = "HOUR") RollupGranularity granularity,
+            @RequestParam(defaultValue = "24") int buckets) {
+        return analyticsService.getToolSeries(toolCode, granularity, buckets);
+    }
+
+    /** Per-provider totals of its tools over the last {@code days}, from the rollups */
+    @GetMapping("/providers")
+    public List<ProviderMetricsResponse> getProviderMetrics(@RequestParam(defaultValue = "30") int days) {
+        return analyticsService.getProviderMetrics(days);
+    }
+
+    /** p50/p90/p99/p99.9 latency per pipeline stage, tool and provider over the last {@code minutes} */
+    @GetMapping("/latency")
+    public List<LatencyPercentilesResponse> getLatencyPercentiles(@RequestParam(defaultValue = "60") int minutes) {
+        return latencyMetrics.percentiles(Duration.ofMinutes(minutes));
+    }
+
+    /** Execution-log buffer depth, drops and batch writes since startup */
+    @GetMapping("/pipeline")
+    public LogPipelineStatsResponse getPipelineStats() {
+        return logBatchProcessor.getStats();
+    }
+
+    /** Segments, size on disk and row count of the execution log store */
+    @GetMapping("/store")
+    public LogStoreStatsResponse getStoreStats() {
+        return analyticsService.getLogStoreStats();
+    }
 }
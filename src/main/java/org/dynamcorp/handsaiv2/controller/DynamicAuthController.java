@@ -0,0 +1,24 @@
+package org.dynamcorp.handsaiv2.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.dynamcorp.handsaiv2.dto.DynamicTokenStatsResponse;
+import org.dynamcorp.handsaiv2.service.DynamicTokenManager;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin/dynamic-auth")
+@RequiredArgsConstructor
+public class DynamicAuthController {
+
+    private final DynamicTokenManager dynamicTokenManager;
+
+    /** Per-provider token refreshes (last hour and total) and current token lifetime */
+    @GetMapping("/stats")
+    public List<DynamicTokenStatsResponse> getStats() {
+        return dynamicTokenManager.getStats();
+    }
+}
@@ -0,0 +1,31 @@
+package org.dynamcorp.handsaiv2.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.dynamcorp.handsaiv2.dto.EncryptionCacheStatsResponse;
+import org.dynamcorp.handsaiv2.service.impl.CachingEncryptionService;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/encryption/cache")
+@RequiredArgsConstructor
+public class EncryptionCacheController {
+
+    private final CachingEncryptionService cachingEncryptionService;
+
+    /** Decrypted-credential cache usage: decryptsAvoided counts the Jasypt calls saved */
+    @GetMapping("/stats")
+    public EncryptionCacheStatsResponse getStats() {
+        return cachingEncryptionService.getStats();
+    }
+
+    /** Drops (and zeroes) every cached plaintext */
+    @PostMapping("/clear")
+    public Map<String, Integer> clear() {
+        return Map.of("cleared", cachingEncryptionService.clear());
+    }
+}
@@ -0,0 +1,24 @@
+package org.dynamcorp.handsaiv2.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.dynamcorp.handsaiv2.dto.HttpClientPoolStatsResponse;
+import org.dynamcorp.handsaiv2.service.ProviderHttpClientRegistry;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin/http-clients")
+@RequiredArgsConstructor
+public class HttpClientPoolController {
+
+    private final ProviderHttpClientRegistry httpClientRegistry;
+
+    /** Per-provider upstream pool usage, to size handsai.http.max-connections */
+    @GetMapping("/stats")
+    public List<HttpClientPoolStatsResponse> getPoolStats() {
+        return httpClientRegistry.getPoolStats();
+    }
+}
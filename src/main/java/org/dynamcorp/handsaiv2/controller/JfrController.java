@@ -0,0 +1,54 @@
+package org.dynamcorp.handsaiv2.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.dynamcorp.handsaiv2.dto.JfrRecordingResponse;
+import org.dynamcorp.handsaiv2.jfr.JfrRecordingService;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@RestController
+@RequestMapping("/admin/jfr")
+@RequiredArgsConstructor
+public class JfrController {
+
+    private final JfrRecordingService jfrRecordingService;
+
+    @GetMapping("/status")
+    public JfrRecordingResponse getStatus() {
+        return jfrRecordingService.status();
+    }
+
+    /** Starts a flight recording; without minutes it runs until stopped */
+    @PostMapping("/start")
+    public JfrRecordingResponse start(@RequestParam(required = false) Integer minutes) {
+        return jfrRecordingService.start(minutes != null ? Duration.ofMinutes(minutes) : null);
+    }
+
+    /** Dumps the recording so far (it keeps running) and downloads the .jfr file */
+    @PostMapping("/dump")
+    public ResponseEntity<Resource> dump() {
+        Path file = jfrRecordingService.dump();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        ContentDisposition.attachment().filename(file.getFileName().toString()).build().toString())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(new FileSystemResource(file));
+    }
+
+    @PostMapping("/stop")
+    public JfrRecordingResponse stop() {
+        return jfrRecordingService.stop();
+    }
+}
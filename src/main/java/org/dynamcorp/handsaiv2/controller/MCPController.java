@@ -1,117 +1,263 @@
 package org.dynamcorp.handsaiv2.controller;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dynamcorp.handsaiv2.config.ToolExecutionProperties;
 import org.dynamcorp.handsaiv2.dto.McpContent;
 import org.dynamcorp.handsaiv2.dto.McpError;
 import org.dynamcorp.handsaiv2.dto.McpResponse;
-import org.dynamcorp.handsaiv2.dto.McpTool;
 import org.dynamcorp.handsaiv2.dto.McpToolCallRequest;
 import org.dynamcorp.handsaiv2.dto.McpToolCallResponse;
 import org.dynamcorp.handsaiv2.dto.McpToolsListResponse;
-import org.dynamcorp.handsaiv2.dto.ToolDefinition;
-import org.dynamcorp.handsaiv2.dto.ToolDiscoveryResponse;
 import org.dynamcorp.handsaiv2.dto.ToolExecuteRequest;
 import org.dynamcorp.handsaiv2.dto.ToolExecuteResponse;
-import org.dynamcorp.handsaiv2.service.ToolDiscoveryService;
+import org.dynamcorp.handsaiv2.exception.ToolExecutionException;
+import org.dynamcorp.handsaiv2.service.ToolBatchExecutionService;
+import org.dynamcorp.handsaiv2.service.ToolCatalogService;
+import org.dynamcorp.handsaiv2.service.ToolCatalogSnapshot;
 import org.dynamcorp.handsaiv2.service.ToolExecutionService;
+import org.dynamcorp.handsaiv2.service.TokenGrant;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
+@Slf4j
 @RestController
 @RequestMapping("/mcp")
 @RequiredArgsConstructor
-@CrossOrigin(origins = "*")
+@CrossOrigin(origins = "*", exposedHeaders = { "ETag", MCPController.CATALOG_VERSION_HEADER })
 public class MCPController {
 
-        private final ToolDiscoveryService toolDiscoveryService;
+        public static final String CATALOG_VERSION_HEADER = "X-HandsAI-Catalog-Version";
+
+        private final ToolCatalogService toolCatalogService;
         private final ToolExecutionService toolExecutionService;
+        private final ToolBatchExecutionService toolBatchExecutionService;
+        private final ToolExecutionProperties toolExecutionProperties;
+        private final ObjectMapper objectMapper;
 
+        /**
+         * Sirve el snapshot precalculado del catálogo. Los clientes que repiten el
+         * ETag en If-None-Match reciben 304 mientras el catálogo no cambie. Un
+         * token con alcance restringido solo ve sus tools.
+         */
         @GetMapping("/tools/list")
-        public McpResponse<McpToolsListResponse> discoverTools() {
+        public ResponseEntity<byte[]> discoverTools(WebRequest webRequest,
+                        @RequestAttribute(name = TokenGrant.REQUEST_ATTRIBUTE, required = false) TokenGrant grant) {
+                ToolCatalogSnapshot catalog;
                 try {
-                        ToolDiscoveryResponse result = toolDiscoveryService.discoverTools();
-                        McpToolsListResponse mcpResult = convertToMcpToolsList(result);
-
-                        return McpResponse.<McpToolsListResponse>builder()
-                                        .jsonrpc("2.0")
-                                        .result(mcpResult)
-                                        .build();
+                        catalog = toolCatalogService.current(grant);
                 } catch (Exception ex) {
-                        return McpResponse.<McpToolsListResponse>builder()
+                        log.error("Error building tool catalog", ex);
+                        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(catalogErrorBytes());
+                }
+                if (webRequest.checkNotModified(catalog.etag())) {
+                        return null;
+                }
+                return ResponseEntity.ok()
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .eTag(catalog.etag())
+                                .header(CATALOG_VERSION_HEADER, String.valueOf(catalog.version()))
+                                .body(catalog.responseBytes());
+        }
+
+        private byte[] catalogErrorBytes() {
+                try {
+                        return objectMapper.writeValueAsBytes(McpResponse.<McpToolsListResponse>builder()
                                         .jsonrpc("2.0")
                                         .error(McpError.builder()
                                                         .code(-32603)
                                                         .message("Internal error discovering tools")
                                                         .build())
-                                        .build();
+                                        .build());
+                } catch (Exception e) {
+                        throw new IllegalStateException(e);
                 }
         }
 
+        /**
+         * Las tools se ejecutan de forma asíncrona: el hilo del servlet se libera
+         * mientras el upstream responde. Si se vence el timeout de la request o el
+         * cliente se desconecta, se cancela la ejecución en curso.
+         * <p>
+         * Acepta una llamada JSON-RPC o un batch (array); las llamadas de un batch
+         * corren en paralelo y se responden en un único array, en el mismo orden.
+         */
         @PostMapping("/tools/call")
-        public McpResponse<McpToolCallResponse> executeApiTool(@RequestBody McpToolCallRequest request) {
+        public DeferredResult<Object> executeApiTool(@RequestBody JsonNode body,
+                        @RequestAttribute(name = TokenGrant.REQUEST_ATTRIBUTE, required = false) TokenGrant grant) {
+                DeferredResult<Object> deferred = new DeferredResult<>(
+                                toolExecutionProperties.getRequestTimeout().toMillis());
+                if (body.isArray()) {
+                        executeBatch(body, grant, deferred);
+                } else {
+                        executeSingle(parseRequest(body), grant, deferred);
+                }
+                return deferred;
+        }
+
+        private void executeSingle(McpToolCallRequest request, TokenGrant grant, DeferredResult<Object> deferred) {
                 // Validar request
                 if (request == null || request.params() == null) {
-                        return McpResponse.<McpToolCallResponse>builder()
+                        deferred.setResult(invalidParamsResponse(request));
+                        return;
+                }
+                if (!isAllowed(request, grant)) {
+                        deferred.setResult(notAllowedResponse(request));
+                        return;
+                }
+
+                CompletableFuture<ToolExecuteResponse> execution = toolExecutionService
+                                .executeApiToolAsync(toToolRequest(request));
+
+                deferred.onTimeout(() -> {
+                        deferred.setResult(errorResponse(request.id(),
+                                        new ToolExecutionException("Request timed out waiting for the tool")));
+                        execution.cancel(true);
+                });
+                deferred.onError(ex -> execution.cancel(true));
+
+                execution.whenComplete((response, ex) -> deferred.setResult(ex != null
+                                ? errorResponse(request.id(), ex)
+                                : toMcpResponse(request, response)));
+        }
+
+        private void executeBatch(JsonNode batch, TokenGrant grant, DeferredResult<Object> deferred) {
+                if (batch.isEmpty()) {
+                        deferred.setResult(McpResponse.<McpToolCallResponse>builder()
                                         .jsonrpc("2.0")
                                         .error(McpError.builder()
-                                                        .code(-32602)
-                                                        .message("Invalid params: missing required parameters")
+                                                        .code(-32600)
+                                                        .message("Invalid Request: empty batch")
                                                         .build())
-                                        .id(request != null ? request.id() : null)
-                                        .build();
+                                        .build());
+                        return;
+                }
+
+                List<McpToolCallRequest> requests = new ArrayList<>(batch.size());
+                List<McpResponse<McpToolCallResponse>> responses = new ArrayList<>(
+                                Collections.nCopies(batch.size(), null));
+                List<ToolExecuteRequest> toolRequests = new ArrayList<>();
+                List<Integer> positions = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                        McpToolCallRequest request = parseRequest(batch.get(i));
+                        requests.add(request);
+                        if (request == null || request.params() == null) {
+                                responses.set(i, invalidParamsResponse(request));
+                        } else if (!isAllowed(request, grant)) {
+                                responses.set(i, notAllowedResponse(request));
+                        } else {
+                                toolRequests.add(toToolRequest(request));
+                                positions.add(i);
+                        }
+                }
+                if (toolRequests.isEmpty()) {
+                        deferred.setResult(responses);
+                        return;
                 }
 
+                CompletableFuture<List<ToolExecuteResponse>> execution;
                 try {
-                        // Convertir request MCP a ToolExecuteRequest
-                        ToolExecuteRequest toolRequest = new ToolExecuteRequest(
-                                        request.params().name(),
-                                        request.params().arguments(),
-                                        null // sessionId no es requerido en MCP
-                        );
-
-                        ToolExecuteResponse response = toolExecutionService.executeApiTool(toolRequest);
-                        McpToolCallResponse mcpResult = convertToMcpToolCall(response);
+                        execution = toolBatchExecutionService.executeBatch(toolRequests);
+                } catch (IllegalArgumentException ex) {
+                        deferred.setResult(errorResponse(null, ex));
+                        return;
+                }
 
-                        return McpResponse.<McpToolCallResponse>builder()
-                                        .jsonrpc("2.0")
-                                        .result(mcpResult)
-                                        .id(request.id())
-                                        .build();
+                deferred.onTimeout(() -> {
+                        deferred.setResult(errorResponse(null,
+                                        new ToolExecutionException("Request timed out waiting for the batch")));
+                        execution.cancel(true);
+                });
+                deferred.onError(ex -> execution.cancel(true));
 
-                } catch (Exception ex) {
+                execution.whenComplete((results, ex) -> {
+                        for (int i = 0; i < positions.size(); i++) {
+                                int position = positions.get(i);
+                                McpToolCallRequest request = requests.get(position);
+                                responses.set(position, ex != null
+                                                ? errorResponse(request.id(), ex)
+                                                : toMcpResponse(request, results.get(i)));
+                        }
+                        deferred.setResult(responses);
+                });
+        }
+
+        private McpToolCallRequest parseRequest(JsonNode node) {
+                try {
+                        return objectMapper.treeToValue(node, McpToolCallRequest.class);
+                } catch (Exception e) {
+                        return null;
+                }
+        }
+
+        private ToolExecuteRequest toToolRequest(McpToolCallRequest request) {
+                // Convertir request MCP a ToolExecuteRequest
+                return new ToolExecuteRequest(
+                                request.params().name(),
+                                request.params().arguments(),
+                                null // sessionId no es requerido en MCP
+                );
+        }
+
+        private McpResponse<McpToolCallResponse> toMcpResponse(McpToolCallRequest request,
+                        ToolExecuteResponse response) {
+                try {
+                        McpToolCallResponse mcpResult = convertToMcpToolCall(response);
                         return McpResponse.<McpToolCallResponse>builder()
                                         .jsonrpc("2.0")
-                                        .error(McpError.builder()
-                                                        .code(getErrorCode(ex))
-                                                        .message(getErrorMessage(ex))
-                                                        .build())
+                                        .result(mcpResult)
                                         .id(request.id())
                                         .build();
+                } catch (Exception conversionError) {
+                        return errorResponse(request.id(), conversionError);
                 }
         }
 
-        private McpToolsListResponse convertToMcpToolsList(ToolDiscoveryResponse response) {
-                List<McpTool> mcpTools = response.tools().stream()
-                                .map(this::convertToMcpTool)
-                                .toList();
-
-                return McpToolsListResponse.builder()
-                                .tools(mcpTools)
+        private McpResponse<McpToolCallResponse> invalidParamsResponse(McpToolCallRequest request) {
+                return McpResponse.<McpToolCallResponse>builder()
+                                .jsonrpc("2.0")
+                                .error(McpError.builder()
+                                                .code(-32602)
+                                                .message("Invalid params: missing required parameters")
+                                                .build())
+                                .id(request != null ? request.id() : null)
                                 .build();
         }
 
-        private McpTool convertToMcpTool(ToolDefinition toolDef) {
-                return McpTool.builder()
-                                .name(toolDef.name())
-                                .description(toolDef.description())
-                                .inputSchema(toolDef.parameters())
+        private boolean isAllowed(McpToolCallRequest request, TokenGrant grant) {
+                return grant == null || grant.allows(request.params().name());
+        }
+
+        private McpResponse<McpToolCallResponse> notAllowedResponse(McpToolCallRequest request) {
+                return errorResponse(request.id(), new IllegalArgumentException(
+                                "tool " + request.params().name() + " is not allowed for this token"));
+        }
+
+        private McpResponse<McpToolCallResponse> errorResponse(String id, Throwable ex) {
+                return McpResponse.<McpToolCallResponse>builder()
+                                .jsonrpc("2.0")
+                                .error(McpError.builder()
+                                                .code(getErrorCode(ex))
+                                                .message(getErrorMessage(ex))
+                                                .build())
+                                .id(id)
                                 .build();
         }
 
@@ -0,0 +1,173 @@
+package org.dynamcorp.handsaiv2.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.ToolExecutionProperties;
+import org.dynamcorp.handsaiv2.dto.McpJsonRpcMessage;
+import org.dynamcorp.handsaiv2.service.McpJsonRpcDispatcher;
+import org.dynamcorp.handsaiv2.service.TokenGrant;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MCP Streamable HTTP transport on POST /mcp.
+ * <p>
+ * When the client accepts text/event-stream the answer is an SSE stream:
+ * notifications/progress are sent as each execution stage starts and every
+ * response is written as soon as its tool finishes. Otherwise the responses
+ * are returned as plain JSON once all of them are ready. A
+ * notifications/cancelled (sent in a later POST with the same Mcp-Session-Id)
+ * aborts the in-flight upstream call, as long as it comes from the token that
+ * started it.
+ */
+@Slf4j
+@RestController
+@RequestMapping("/mcp")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*", exposedHeaders = McpStreamableHttpController.SESSION_HEADER)
+public class McpStreamableHttpController {
+
+    public static final String SESSION_HEADER = "Mcp-Session-Id";
+
+    private final McpJsonRpcDispatcher dispatcher;
+    private final ToolExecutionProperties toolExecutionProperties;
+
+    @PostMapping
+    public ResponseEntity<ResponseBodyEmitter> handle(
+            @RequestBody JsonNode body,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(value = SESSION_HEADER, required = false) String sessionId,
+            @RequestAttribute(name = TokenGrant.REQUEST_ATTRIBUTE, required = false) TokenGrant grant) {
+
+        boolean batch = body.isArray();
+        List<JsonNode> messages = new ArrayList<>();
+        if (batch) {
+            body.forEach(messages::add);
+        } else {
+            messages.add(body);
+        }
+        if (messages.isEmpty()) {
+            return json(McpJsonRpcMessage.error(null, -32600, "Invalid Request: empty batch"));
+        }
+
+        // Una sesión nueva por initialize; los cancelled posteriores llegan con ese id
+        String newSessionId = sessionId == null && messages.stream()
+                .anyMatch(m -> "initialize".equals(m.path("method").asText()))
+                        ? UUID.randomUUID().toString()
+                        : null;
+        String scope = newSessionId != null ? newSessionId : sessionId != null ? sessionId : sessionlessScope(grant);
+
+        if (messages.stream().noneMatch(McpJsonRpcDispatcher::expectsResponse)) {
+            messages.forEach(message -> dispatcher.dispatch(message, scope, grant, ignored -> {
+            }));
+            return ResponseEntity.accepted().build();
+        }
+
+        boolean stream = accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE);
+        long timeout = toolExecutionProperties.getRequestTimeout().toMillis();
+        ResponseBodyEmitter emitter = stream ? new SseEmitter(timeout) : new ResponseBodyEmitter(timeout);
+
+        McpJsonRpcDispatcher.MessageSink sink = stream
+                ? message -> sendEvent((SseEmitter) emitter, message)
+                : message -> {
+                    // Sin SSE no hay dónde mandar el progreso
+                };
+
+        List<CompletableFuture<McpJsonRpcMessage>> responses = new ArrayList<>(messages.size());
+        // En modo SSE se espera a que cada respuesta esté escrita, no solo lista
+        List<CompletableFuture<?>> written = new ArrayList<>(messages.size());
+        for (JsonNode message : messages) {
+            CompletableFuture<McpJsonRpcMessage> response = dispatcher.dispatch(message, scope, grant, sink);
+            responses.add(response);
+            written.add(!stream ? response : response.thenAccept(reply -> {
+                if (reply != null) {
+                    sendEvent((SseEmitter) emitter, reply);
+                }
+            }));
+        }
+
+        Runnable cancelAll = () -> responses.forEach(response -> response.cancel(true));
+        emitter.onTimeout(cancelAll);
+        emitter.onError(ex -> cancelAll.run());
+
+        CompletableFuture.allOf(written.toArray(CompletableFuture[]::new)).whenComplete((v, ex) -> {
+            try {
+                if (!stream) {
+                    List<McpJsonRpcMessage> replies = responses.stream()
+                            .filter(response -> !response.isCompletedExceptionally())
+                            .map(CompletableFuture::join)
+                            .filter(reply -> reply != null)
+                            .toList();
+                    emitter.send(batch ? replies : replies.get(0), MediaType.APPLICATION_JSON);
+                }
+                emitter.complete();
+            } catch (IOException | RuntimeException e) {
+                log.debug("Could not finish MCP response: {}", e.getMessage());
+                emitter.completeWithError(e);
+            }
+        });
+
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(stream ? MediaType.TEXT_EVENT_STREAM : MediaType.APPLICATION_JSON);
+        if (newSessionId != null) {
+            builder.header(SESSION_HEADER, newSessionId);
+        }
+        return builder.body(emitter);
+    }
+
+    /**
+     * Without a session, ids only have to be unique per client: requests made
+     * with the same token share a scope, anonymous ones get one each (and so
+     * cannot be cancelled from another request).
+     */
+    private static String sessionlessScope(TokenGrant grant) {
+        return grant != null && grant.id() != null
+                ? "token:" + grant.id()
+                : "request:" + UUID.randomUUID();
+    }
+
+    /** No server-initiated stream: the spec allows answering GET with 405. */
+    @GetMapping
+    public ResponseEntity<Void> openStream() {
+        return ResponseEntity.status(HttpStatus.METHOD_NOT_ALLOWED).build();
+    }
+
+    private ResponseEntity<ResponseBodyEmitter> json(McpJsonRpcMessage message) {
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter();
+        try {
+            emitter.send(message, MediaType.APPLICATION_JSON);
+            emitter.complete();
+        } catch (IOException e) {
+            emitter.completeWithError(e);
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(emitter);
+    }
+
+    private void sendEvent(SseEmitter emitter, McpJsonRpcMessage message) {
+        try {
+            emitter.send(SseEmitter.event().name("message").data(message, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            // Cliente desconectado o stream ya cerrado (timeout): se descarta
+            log.debug("Dropping MCP message, stream closed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+public record AccessTokenResponse(
+        Long id,
+        String label,
+        String maskedToken,
+        List<String> allowedTools,
+        Integer requestsPerSecond,
+        Instant createdAt,
+        Instant lastUsedAt) {
+}
@@ -29,7 +29,9 @@ public record ApiProviderResponse(
         DynamicAuthPayloadTypeEnum dynamicAuthPayloadType,
         DynamicAuthPayloadLocationEnum dynamicAuthPayloadLocation,
         String dynamicAuthTokenExtractionPath,
-        String dynamicAuthInvalidationKeywords) {
+        String dynamicAuthInvalidationKeywords,
+        String dynamicAuthExpiresInPath,
+        Integer dynamicAuthTokenTtlSeconds) {
 
     private static final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -76,6 +78,8 @@ public record ApiProviderResponse(
                 provider.getDynamicAuthPayloadType(),
                 provider.getDynamicAuthPayloadLocation(),
                 provider.getDynamicAuthTokenExtractionPath(),
-                provider.getDynamicAuthInvalidationKeywords());
+                provider.getDynamicAuthInvalidationKeywords(),
+                provider.getDynamicAuthExpiresInPath(),
+                provider.getDynamicAuthTokenTtlSeconds());
     }
 }
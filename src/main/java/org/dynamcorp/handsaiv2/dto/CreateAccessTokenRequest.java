@@ -0,0 +1,13 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.util.List;
+
+/**
+ * @param allowedTools      tool codes, or "prefix*" patterns; null/empty = all tools
+ * @param requestsPerSecond MCP requests per second allowed to the token; null = unlimited
+ */
+public record CreateAccessTokenRequest(
+        String label,
+        List<String> allowedTools,
+        Integer requestsPerSecond) {
+}
@@ -0,0 +1,8 @@
+package org.dynamcorp.handsaiv2.dto;
+
+public record CreateAccessTokenResponse(
+        Long id,
+        String label,
+        String rawToken,
+        String warning) {
+}
@@ -24,5 +24,7 @@ public record CreateApiProviderRequest(
         DynamicAuthPayloadTypeEnum dynamicAuthPayloadType,
         DynamicAuthPayloadLocationEnum dynamicAuthPayloadLocation,
         String dynamicAuthTokenExtractionPath,
-        String dynamicAuthInvalidationKeywords) {
+        String dynamicAuthInvalidationKeywords,
+        String dynamicAuthExpiresInPath,
+        Integer dynamicAuthTokenTtlSeconds) {
 }
@@ -0,0 +1,16 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.time.Instant;
+
+/**
+ * @param ttlSource where the current token's lifetime came from:
+ *                  PROVIDER_OVERRIDE, EXPIRES_IN, JWT_EXP or DEFAULT
+ */
+public record DynamicTokenStatsResponse(
+        Long providerId,
+        long refreshesLastHour,
+        long totalRefreshes,
+        Instant fetchedAt,
+        Instant expiresAt,
+        String ttlSource) {
+}
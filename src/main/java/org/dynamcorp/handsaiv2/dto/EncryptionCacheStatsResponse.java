@@ -0,0 +1,11 @@
+package org.dynamcorp.handsaiv2.dto;
+
+public record EncryptionCacheStatsResponse(
+        boolean enabled,
+        int size,
+        int maxEntries,
+        long ttlSeconds,
+        long decryptsAvoided,
+        long decrypts,
+        long evictions) {
+}
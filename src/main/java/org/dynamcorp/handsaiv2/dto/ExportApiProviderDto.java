@@ -21,6 +21,8 @@ public record ExportApiProviderDto(
                 String dynamicAuthPayload,
                 String dynamicAuthTokenExtractionPath,
                 String dynamicAuthInvalidationKeywords,
+                String dynamicAuthExpiresInPath,
+                Integer dynamicAuthTokenTtlSeconds,
                 Map<String, String> customHeaders,
                 List<ExportApiToolDto> tools) {
 }
@@ -0,0 +1,19 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.time.Instant;
+
+public record HttpClientPoolStatsResponse(
+        Long providerId,
+        String providerCode,
+        String baseUrl,
+        String httpVersion,
+        int maxConnections,
+        int inFlight,
+        int availableConnections,
+        long totalRequests,
+        long rejectedRequests,
+        long connectTimeoutMs,
+        long readTimeoutMs,
+        Instant createdAt,
+        Instant lastUsedAt) {
+}
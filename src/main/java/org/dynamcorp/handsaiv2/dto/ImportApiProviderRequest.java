@@ -22,6 +22,8 @@ public record ImportApiProviderRequest(
         String dynamicAuthPayload,
         String dynamicAuthTokenExtractionPath,
         String dynamicAuthInvalidationKeywords,
+        String dynamicAuthExpiresInPath,
+        Integer dynamicAuthTokenTtlSeconds,
         Map<String, String> customHeaders,
         List<ImportApiToolRequest> tools) {
 }
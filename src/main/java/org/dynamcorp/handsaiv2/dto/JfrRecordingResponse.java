@@ -0,0 +1,17 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.time.Instant;
+
+/**
+ * @param state    NONE when no recording was started, otherwise the JFR state
+ *                 (RUNNING, STOPPED, CLOSED...)
+ * @param lastDump file written by the last dump, if any
+ */
+public record JfrRecordingResponse(
+        String state,
+        String settings,
+        Instant startedAt,
+        Long durationSeconds,
+        long sizeBytes,
+        String lastDump) {
+}
@@ -0,0 +1,13 @@
+package org.dynamcorp.handsaiv2.dto;
+
+public record LatencyPercentilesResponse(
+        String scope,
+        String name,
+        long count,
+        double meanMs,
+        double p50Ms,
+        double p90Ms,
+        double p99Ms,
+        double p999Ms,
+        double maxMs) {
+}
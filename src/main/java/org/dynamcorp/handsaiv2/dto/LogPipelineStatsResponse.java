@@ -0,0 +1,18 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.time.Instant;
+
+public record LogPipelineStatsResponse(
+        String overflowPolicy,
+        int capacity,
+        int queueDepth,
+        long accepted,
+        long dropped,
+        long sampledOut,
+        long written,
+        long batches,
+        long retries,
+        long deadLettered,
+        long rollupFailures,
+        Instant lastFlushAt) {
+}
@@ -0,0 +1,13 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.time.Instant;
+
+public record LogStoreStatsResponse(
+        String type,
+        int segments,
+        long sizeBytes,
+        long rows,
+        Instant oldestExecutedAt,
+        Instant activeSegmentOpenedAt,
+        long rotations) {
+}
@@ -0,0 +1,33 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Outgoing JSON-RPC 2.0 message of the MCP transports: a response (id +
+ * result or error) or a notification (method + params). Unlike
+ * {@link McpResponse}, the id is echoed back exactly as received (string or
+ * number).
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record McpJsonRpcMessage(
+        String jsonrpc,
+        JsonNode id,
+        String method,
+        Object params,
+        Object result,
+        McpError error) {
+
+    public static McpJsonRpcMessage result(JsonNode id, Object result) {
+        return new McpJsonRpcMessage("2.0", id, null, null, result, null);
+    }
+
+    public static McpJsonRpcMessage error(JsonNode id, int code, String message) {
+        return new McpJsonRpcMessage("2.0", id, null, null, null,
+                McpError.builder().code(code).message(message).build());
+    }
+
+    public static McpJsonRpcMessage notification(String method, Object params) {
+        return new McpJsonRpcMessage("2.0", null, method, params, null, null);
+    }
+}
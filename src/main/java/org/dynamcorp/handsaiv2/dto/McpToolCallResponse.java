@@ -1,10 +1,14 @@
 package org.dynamcorp.handsaiv2.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Builder;
 
 import java.util.List;
 
 @Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
 public record McpToolCallResponse(
-        List<McpContent> content) {
+        List<McpContent> content,
+        @JsonProperty("isError") Boolean isError) {
 }
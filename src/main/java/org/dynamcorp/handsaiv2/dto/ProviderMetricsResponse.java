@@ -0,0 +1,16 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.util.Map;
+
+public record ProviderMetricsResponse(
+        Long providerId,
+        String providerName,
+        int tools,
+        long executions,
+        long errors,
+        double successRatePercentage,
+        double averageLatencyMs,
+        Long minLatencyMs,
+        Long maxLatencyMs,
+        Map<String, Long> latencyHistogram) {
+}
@@ -1,6 +1,6 @@
 package org.dynamcorp.handsaiv2.dto;
 
-import org.dynamcorp.handsaiv2.model.ApiTool;
+import org.dynamcorp.handsaiv2.service.CachedTool;
 
 import java.util.Map;
 
@@ -9,32 +9,32 @@ public record ToolDefinition(
         String description,
         String type,
         Map<String, Object> parameters) {
-    public static ToolDefinition from(ApiTool apiTool) {
+    public static ToolDefinition from(CachedTool apiTool) {
         // Crear la estructura de parámetros compatible con OpenAI function calling
         Map<String, Object> parametersSchema = Map.of(
                 "type", "object",
-                "properties", apiTool.getParameters().stream()
+                "properties", apiTool.parameters().stream()
                         .collect(java.util.stream.Collectors.toMap(
-                                param -> param.getName(),
+                                param -> param.name(),
                                 param -> {
-                                    if (param.getType() == org.dynamcorp.handsaiv2.model.ParameterType.ARRAY) {
+                                    if (param.type() == org.dynamcorp.handsaiv2.model.ParameterType.ARRAY) {
                                         return Map.of(
                                                 "type", "array",
                                                 "items", Map.of("type", "string"),
-                                                "description", param.getDescription());
+                                                "description", param.description());
                                     }
                                     return Map.of(
-                                            "type", param.getType().toString().toLowerCase(),
-                                            "description", param.getDescription());
+                                            "type", param.type().toString().toLowerCase(),
+                                            "description", param.description());
                                 })),
-                "required", apiTool.getParameters().stream()
-                        .filter(param -> param.getRequired())
-                        .map(param -> param.getName())
+                "required", apiTool.parameters().stream()
+                        .filter(param -> param.required())
+                        .map(param -> param.name())
                         .collect(java.util.stream.Collectors.toList()));
 
         return new ToolDefinition(
-                apiTool.getCode(),
-                apiTool.getDescription(),
+                apiTool.code(),
+                apiTool.description(),
                 "api_tool",
                 parametersSchema);
     }
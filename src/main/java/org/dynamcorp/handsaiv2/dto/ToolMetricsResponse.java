@@ -0,0 +1,17 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.util.Map;
+
+public record ToolMetricsResponse(
+        String toolCode,
+        String toolName,
+        Long toolId,
+        String providerName,
+        long executions,
+        long errors,
+        double successRatePercentage,
+        double averageLatencyMs,
+        Long minLatencyMs,
+        Long maxLatencyMs,
+        Map<String, Long> latencyHistogram) {
+}
@@ -0,0 +1,14 @@
+package org.dynamcorp.handsaiv2.dto;
+
+import java.time.Instant;
+import java.util.Map;
+
+public record ToolRollupPointResponse(
+        Instant bucketStart,
+        long executions,
+        long errors,
+        double averageLatencyMs,
+        Long minLatencyMs,
+        Long maxLatencyMs,
+        Map<String, Long> latencyHistogram) {
+}
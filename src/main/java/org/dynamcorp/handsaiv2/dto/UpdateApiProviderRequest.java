@@ -24,5 +24,7 @@ public record UpdateApiProviderRequest(
         DynamicAuthPayloadTypeEnum dynamicAuthPayloadType,
         DynamicAuthPayloadLocationEnum dynamicAuthPayloadLocation,
         String dynamicAuthTokenExtractionPath,
-        String dynamicAuthInvalidationKeywords) {
+        String dynamicAuthInvalidationKeywords,
+        String dynamicAuthExpiresInPath,
+        Integer dynamicAuthTokenTtlSeconds) {
 }
@@ -0,0 +1,26 @@
+package org.dynamcorp.handsaiv2.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A reload of the in-memory tool catalog, whole or for one tool/provider. */
+@Name("handsai.CacheRefresh")
+@Label("Tool Cache Refresh")
+@Category({ "HandsAI", "Tools" })
+@StackTrace(false)
+public class CacheRefreshEvent extends jdk.jfr.Event {
+
+    @Label("Scope")
+    @Description("FULL, TOOL or PROVIDER")
+    public String scope;
+
+    @Label("Provider Id")
+    public long providerId;
+
+    @Label("Tools")
+    @Description("Tools loaded by the refresh")
+    public int tools;
+}
@@ -0,0 +1,37 @@
+package org.dynamcorp.handsaiv2.jfr;
+
+/**
+ * Helpers for filling event fields. Only call them once
+ * {@link jdk.jfr.Event#shouldCommit()} holds: a disabled event then costs one
+ * small allocation and a flag check.
+ */
+public final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    /** JFR fields are primitives: unsaved or unknown ids are reported as 0. */
+    public static long id(Long id) {
+        return id != null ? id : 0;
+    }
+
+    /** UTF-8 size of the text without encoding it; 0 for null. */
+    public static long utf8Length(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+        long bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                // Cada mitad de un par sustituto cuenta 2: el par ocupa 4
+                bytes += 2;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,174 @@
+package org.dynamcorp.handsaiv2.jfr;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.JfrProperties;
+import org.dynamcorp.handsaiv2.dto.JfrRecordingResponse;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * One in-process flight recording at a time, driven from /admin/jfr. It uses
+ * the JDK settings named by handsai.jfr.settings (GC, locks, allocation,
+ * sockets...) plus every HandsAI event, so tool calls can be lined up with
+ * what the JVM was doing. While nothing records, the HandsAI events are
+ * disabled and cost next to nothing.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JfrRecordingService {
+
+    static final List<Class<? extends Event>> EVENTS = List.of(
+            ToolExecutionEvent.class,
+            UpstreamHttpEvent.class,
+            TokenFetchEvent.class,
+            LogFlushEvent.class,
+            CacheRefreshEvent.class);
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final String DUMP_PREFIX = "handsai-";
+    private static final String DUMP_SUFFIX = ".jfr";
+
+    private final JfrProperties properties;
+
+    private Recording recording;
+    private Path lastDump;
+
+    /**
+     * Starts a recording; with a {@code duration} it stops by itself once
+     * that has elapsed (it can still be dumped afterwards). A previous,
+     * stopped recording is discarded.
+     */
+    public synchronized JfrRecordingResponse start(Duration duration) {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            throw new IllegalStateException("A recording is already running; dump or stop it first");
+        }
+        if (duration != null && (duration.isNegative() || duration.isZero())) {
+            throw new IllegalArgumentException("duration must be positive");
+        }
+        close();
+
+        Recording fresh;
+        try {
+            fresh = new Recording(Configuration.getConfiguration(properties.getSettings()));
+        } catch (IOException | ParseException e) {
+            throw new IllegalArgumentException("Unknown JFR settings: " + properties.getSettings(), e);
+        }
+        for (Class<? extends Event> event : EVENTS) {
+            fresh.enable(event).withoutThreshold();
+        }
+        fresh.setName("handsai");
+        fresh.setToDisk(true);
+        fresh.setMaxAge(properties.getMaxAge());
+        fresh.setMaxSize(properties.getMaxSize().toBytes());
+        if (duration != null) {
+            fresh.setDuration(duration);
+        }
+        fresh.start();
+        recording = fresh;
+        log.info("JFR recording started with settings '{}'{}", properties.getSettings(),
+                duration != null ? " for " + duration : "");
+        return status();
+    }
+
+    /**
+     * Writes what has been recorded so far to a new file under
+     * handsai.jfr.directory. Only the newest handsai.jfr.max-dumps dumps are
+     * kept; older ones are deleted.
+     */
+    public synchronized Path dump() {
+        if (recording == null || recording.getState() == RecordingState.CLOSED
+                || recording.getState() == RecordingState.NEW) {
+            throw new IllegalStateException("No recording to dump; start one first");
+        }
+        try {
+            Path directory = Path.of(properties.getDirectory());
+            Files.createDirectories(directory);
+            Path file = directory.resolve(DUMP_PREFIX + ZonedDateTime.now(ZoneOffset.UTC).format(FILE_TIMESTAMP)
+                    + DUMP_SUFFIX).toAbsolutePath();
+            recording.dump(file);
+            lastDump = file;
+            log.info("JFR recording dumped to {}", file);
+            deleteOldDumps(directory);
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not dump the JFR recording", e);
+        }
+    }
+
+    public synchronized JfrRecordingResponse stop() {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            throw new IllegalStateException("No recording is running");
+        }
+        recording.stop();
+        log.info("JFR recording stopped");
+        return status();
+    }
+
+    public synchronized JfrRecordingResponse status() {
+        if (recording == null) {
+            return new JfrRecordingResponse("NONE", properties.getSettings(), null, null, 0,
+                    lastDump != null ? lastDump.toString() : null);
+        }
+        Duration duration = recording.getDuration();
+        return new JfrRecordingResponse(
+                recording.getState().name(),
+                properties.getSettings(),
+                recording.getStartTime(),
+                duration != null ? duration.toSeconds() : null,
+                recording.getSize(),
+                lastDump != null ? lastDump.toString() : null);
+    }
+
+    private void deleteOldDumps(Path directory) throws IOException {
+        if (properties.getMaxDumps() <= 0) {
+            return;
+        }
+        List<Path> dumps;
+        try (Stream<Path> files = Files.list(directory)) {
+            // El nombre lleva la fecha: al revés del orden alfabético, el más nuevo primero
+            dumps = files.filter(JfrRecordingService::isDump)
+                    .sorted(Comparator.comparing(Path::getFileName).reversed())
+                    .toList();
+        }
+        for (Path old : dumps.subList(Math.min(properties.getMaxDumps(), dumps.size()), dumps.size())) {
+            try {
+                Files.deleteIfExists(old);
+                log.info("Old JFR dump {} deleted", old.getFileName());
+            } catch (IOException e) {
+                log.warn("Could not delete old JFR dump {}: {}", old, e.getMessage());
+            }
+        }
+    }
+
+    private static boolean isDump(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(DUMP_PREFIX) && name.endsWith(DUMP_SUFFIX);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.dynamcorp.handsaiv2.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** One batch of execution logs written to the log store, retries included. */
+@Name("handsai.LogFlush")
+@Label("Execution Log Flush")
+@Category({ "HandsAI", "Logs" })
+@StackTrace(false)
+public class LogFlushEvent extends jdk.jfr.Event {
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Attempts")
+    public int attempts;
+
+    @Label("Success")
+    @Description("False when the batch went to the dead-letter file")
+    public boolean success;
+}
@@ -0,0 +1,25 @@
+package org.dynamcorp.handsaiv2.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** A call to the dynamic auth endpoint of a provider. */
+@Name("handsai.TokenFetch")
+@Label("Dynamic Token Fetch")
+@Category({ "HandsAI", "Auth" })
+@StackTrace(false)
+public class TokenFetchEvent extends jdk.jfr.Event {
+
+    @Label("Provider Id")
+    public long providerId;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Response Size")
+    @DataAmount
+    public long responseBytes;
+}
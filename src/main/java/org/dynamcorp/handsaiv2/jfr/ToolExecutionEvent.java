@@ -0,0 +1,45 @@
+package org.dynamcorp.handsaiv2.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One tool execution, from the scrub stage to the response. Committed on the
+ * thread that finishes the pipeline; the stages themselves run on other
+ * virtual threads, see {@link UpstreamHttpEvent} for the upstream call.
+ */
+@Name("handsai.ToolExecution")
+@Label("Tool Execution")
+@Category({ "HandsAI", "Tools" })
+@Description("A tool call through the execution pipeline")
+@StackTrace(false)
+public class ToolExecutionEvent extends jdk.jfr.Event {
+
+    @Label("Tool Code")
+    public String toolCode;
+
+    @Label("Provider Id")
+    public long providerId;
+
+    @Label("Outcome")
+    @Description("SUCCESS, ERROR, TIMEOUT or CANCELLED")
+    public String outcome;
+
+    @Label("Last Stage")
+    @Description("Stage the pipeline was in when it finished")
+    public String stage;
+
+    @Label("Request Size")
+    @Description("Scrubbed parameters, serialized")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Size")
+    @Description("Sanitized output handed back to the caller")
+    @DataAmount
+    public long responseBytes;
+}
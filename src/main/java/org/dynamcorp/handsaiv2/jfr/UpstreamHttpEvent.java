@@ -0,0 +1,40 @@
+package org.dynamcorp.handsaiv2.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One HTTP exchange with a provider, from sending the request until the
+ * response body has been read and closed. The URI is left out on purpose:
+ * query strings can carry API keys.
+ */
+@Name("handsai.UpstreamHttp")
+@Label("Upstream HTTP Exchange")
+@Category({ "HandsAI", "HTTP" })
+@Description("A request to a provider through its pooled client")
+@StackTrace(false)
+public class UpstreamHttpEvent extends jdk.jfr.Event {
+
+    @Label("Provider Id")
+    public long providerId;
+
+    @Label("Method")
+    public String method;
+
+    @Label("Status")
+    @Description("HTTP status code, or 0 when no response arrived")
+    public int status;
+
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Response Size")
+    @Description("Body bytes actually read by the caller")
+    @DataAmount
+    public long responseBytes;
+}
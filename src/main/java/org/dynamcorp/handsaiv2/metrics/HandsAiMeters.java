@@ -0,0 +1,177 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.dynamcorp.handsaiv2.config.MetricsProperties;
+import org.dynamcorp.handsaiv2.dto.LogPipelineStatsResponse;
+import org.dynamcorp.handsaiv2.service.LogBatchProcessor;
+import org.dynamcorp.handsaiv2.service.ToolExecutionStage;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Micrometer meters of the execution path, scraped from
+ * /admin/actuator/prometheus: tool executions, pipeline stages, tool cache
+ * lookups, upstream HTTP statuses, dynamic token lookups and fetches, and the
+ * execution-log pipeline. Hikari pool usage is published by Spring Boot.
+ * <p>
+ * Tool and provider tags come from codes the catalog controls, but each tag
+ * key accepts at most handsai.metrics.max-tag-values distinct values; later
+ * ones are reported as {@value #OTHER}.
+ */
+@Component
+public class HandsAiMeters {
+
+    static final String OTHER = "other";
+    static final String NONE = "none";
+
+    public enum Outcome {
+        SUCCESS, ERROR, TIMEOUT, CANCELLED
+    }
+
+    public enum CacheLookup {
+        /** Served from the in-memory catalog. */
+        HIT,
+        /** Not cached; loaded from the database. */
+        DATABASE,
+        /** Neither cached nor in the database. */
+        MISS
+    }
+
+    private final MeterRegistry registry;
+    private final MetricsProperties properties;
+
+    private final Set<String> toolTags = ConcurrentHashMap.newKeySet();
+    private final Set<String> providerTags = ConcurrentHashMap.newKeySet();
+
+    private final Timer[] stageTimers = new Timer[ToolExecutionStage.values().length];
+    private final Counter[] cacheLookups = new Counter[CacheLookup.values().length];
+
+    public HandsAiMeters(MeterRegistry registry, MetricsProperties properties) {
+        this.registry = registry;
+        this.properties = properties;
+        for (ToolExecutionStage stage : ToolExecutionStage.values()) {
+            stageTimers[stage.ordinal()] = Timer.builder("handsai.tool.stage")
+                    .description("Time spent in each stage of the tool execution pipeline")
+                    .tag("stage", tagValue(stage))
+                    .register(registry);
+        }
+        for (CacheLookup lookup : CacheLookup.values()) {
+            cacheLookups[lookup.ordinal()] = Counter.builder("handsai.tool.cache.lookups")
+                    .description("Tool resolutions by where the tool was found")
+                    .tag("result", tagValue(lookup))
+                    .register(registry);
+        }
+    }
+
+    public void recordExecution(String toolCode, String providerCode, Outcome outcome, long nanos) {
+        Timer.builder("handsai.tool.executions")
+                .description("Tool executions, end to end")
+                .tag("tool", guard(toolTags, toolCode))
+                .tag("provider", guard(providerTags, providerCode))
+                .tag("outcome", tagValue(outcome))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordStage(ToolExecutionStage stage, long nanos) {
+        stageTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordCacheLookup(CacheLookup lookup) {
+        cacheLookups[lookup.ordinal()].increment();
+    }
+
+    public void recordUpstreamResponse(String providerCode, int status) {
+        upstreamCounter(providerCode, String.valueOf(status)).increment();
+    }
+
+    /** The request never got a response (connect/read error, pool exhausted). */
+    public void recordUpstreamFailure(String providerCode) {
+        upstreamCounter(providerCode, "io_error").increment();
+    }
+
+    public void recordTokenRequest(String providerCode, boolean cached) {
+        Counter.builder("handsai.auth.token.requests")
+                .description("Dynamic auth token requests, by whether a cached token was served")
+                .tag("provider", guard(providerTags, providerCode))
+                .tag("result", cached ? "hit" : "miss")
+                .register(registry)
+                .increment();
+    }
+
+    public void recordTokenFetch(String providerCode, boolean success, long nanos) {
+        Timer.builder("handsai.auth.token.fetches")
+                .description("Calls to the dynamic auth endpoint of a provider")
+                .tag("provider", guard(providerTags, providerCode))
+                .tag("outcome", tagValue(success ? Outcome.SUCCESS : Outcome.ERROR))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordLogFlush(int size, boolean success, long nanos) {
+        Timer.builder("handsai.logs.flush")
+                .description("Execution-log batch writes, retries included")
+                .tag("outcome", tagValue(success ? Outcome.SUCCESS : Outcome.ERROR))
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        registry.summary("handsai.logs.flush.size").record(size);
+    }
+
+    /** Queue depth and entry counters of the execution-log pipeline, read on scrape. */
+    public void bindLogPipeline(LogBatchProcessor processor) {
+        Gauge.builder("handsai.logs.queue.depth", processor, p -> p.getStats().queueDepth())
+                .description("Execution logs waiting to be written")
+                .register(registry);
+        Gauge.builder("handsai.logs.queue.capacity", processor, p -> p.getStats().capacity())
+                .register(registry);
+        logEntries(processor, "accepted", LogPipelineStatsResponse::accepted);
+        logEntries(processor, "dropped", LogPipelineStatsResponse::dropped);
+        logEntries(processor, "sampled_out", LogPipelineStatsResponse::sampledOut);
+        logEntries(processor, "written", LogPipelineStatsResponse::written);
+        logEntries(processor, "dead_lettered", LogPipelineStatsResponse::deadLettered);
+    }
+
+    private void logEntries(LogBatchProcessor processor, String result,
+            ToDoubleFunction<LogPipelineStatsResponse> count) {
+        FunctionCounter.builder("handsai.logs.entries", processor, p -> count.applyAsDouble(p.getStats()))
+                .description("Execution logs by what the pipeline did with them")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private Counter upstreamCounter(String providerCode, String status) {
+        return Counter.builder("handsai.upstream.responses")
+                .description("Upstream HTTP exchanges by provider and status code")
+                .tag("provider", guard(providerTags, providerCode))
+                .tag("status", status)
+                .register(registry);
+    }
+
+    private String guard(Set<String> seen, String value) {
+        if (value == null) {
+            return NONE;
+        }
+        if (seen.contains(value)) {
+            return value;
+        }
+        // Carrera benigna: el tope puede pasarse por un par de valores
+        if (seen.size() < properties.getMaxTagValues()) {
+            seen.add(value);
+            return value;
+        }
+        return OTHER;
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,109 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bucket counts of a {@link LatencyHistogram} at one point in time. Snapshots
+ * with the same layout merge by adding counts, so a window's percentiles come
+ * from merging the snapshots that make it up.
+ */
+public final class HistogramSnapshot {
+
+    // Por bucket no vacío: índice (short) + cantidad (long)
+    private static final int ENCODED_ENTRY_BYTES = Short.BYTES + Long.BYTES;
+
+    private final long[] counts;
+    private long totalCount;
+    private long sumMicros;
+    private long maxMicros;
+
+    HistogramSnapshot(long[] counts, long sumMicros, long maxMicros) {
+        this.counts = counts;
+        this.sumMicros = sumMicros;
+        this.maxMicros = maxMicros;
+        for (long count : counts) {
+            totalCount += count;
+        }
+    }
+
+    public static HistogramSnapshot empty() {
+        return new HistogramSnapshot(new long[LatencyHistogram.BUCKET_COUNT], 0, 0);
+    }
+
+    /** Adds {@code other} into this snapshot. */
+    public HistogramSnapshot merge(HistogramSnapshot other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sumMicros += other.sumMicros;
+        maxMicros = Math.max(maxMicros, other.maxMicros);
+        return this;
+    }
+
+    public long totalCount() {
+        return totalCount;
+    }
+
+    public long sumMicros() {
+        return sumMicros;
+    }
+
+    public long maxMicros() {
+        return maxMicros;
+    }
+
+    public double meanMicros() {
+        return totalCount > 0 ? (double) sumMicros / totalCount : 0.0;
+    }
+
+    /**
+     * Smallest recorded value (µs, bucket precision) that at least
+     * {@code percentile}% of the values do not exceed; never above the max.
+     */
+    public long valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double fraction = Math.min(Math.max(percentile, 0.0), 100.0) / 100.0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValue(i), maxMicros);
+            }
+        }
+        return maxMicros;
+    }
+
+    /** Non-empty buckets only; the sum and max are stored apart. */
+    public byte[] encodeCounts() {
+        int nonEmpty = 0;
+        for (long count : counts) {
+            if (count != 0) {
+                nonEmpty++;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(nonEmpty * ENCODED_ENTRY_BYTES);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                buffer.putShort((short) i).putLong(counts[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    public static HistogramSnapshot decode(byte[] encodedCounts, long sumMicros, long maxMicros) {
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        ByteBuffer buffer = ByteBuffer.wrap(encodedCounts);
+        while (buffer.remaining() >= ENCODED_ENTRY_BYTES) {
+            int index = buffer.getShort();
+            long count = buffer.getLong();
+            if (index >= 0 && index < counts.length) {
+                counts[index] += count;
+            }
+        }
+        return new HistogramSnapshot(counts, sumMicros, maxMicros);
+    }
+}
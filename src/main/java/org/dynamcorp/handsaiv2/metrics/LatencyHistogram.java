@@ -0,0 +1,113 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent latency histogram with log-linear buckets, in the style of
+ * HdrHistogram: values (microseconds) below 64 get a bucket each, and every
+ * power of two above that is split into 32 equal buckets, so any recorded
+ * value is known within about 3%. Values up to 2^32 µs (~71 minutes) are
+ * tracked; longer ones land in the last bucket.
+ * <p>
+ * Counts live in one {@link AtomicLongArray} split into stripes; a thread
+ * always records into the stripe picked by its id, so concurrent callers
+ * rarely touch the same cells. {@link #record} does not allocate. Readers
+ * add the stripes up into a {@link HistogramSnapshot}.
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final long MAX_VALUE_MICROS = (1L << 32) - 1;
+    private static final int MAX_MAGNITUDE = 63 - Long.numberOfLeadingZeros(MAX_VALUE_MICROS) - SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = (MAX_MAGNITUDE + 2) * SUB_BUCKETS;
+
+    // Por franja: BUCKET_COUNT contadores, la suma y el máximo
+    private static final int SUM_OFFSET = BUCKET_COUNT;
+    private static final int MAX_OFFSET = BUCKET_COUNT + 1;
+    private static final int STRIDE = BUCKET_COUNT + 2;
+
+    private final AtomicLongArray cells;
+    private final int stripeShift;
+
+    public LatencyHistogram() {
+        this(Math.min(16, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** {@code stripes} is rounded up to a power of two, at least 2. */
+    public LatencyHistogram(int stripes) {
+        int bits = Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, stripes) - 1));
+        this.stripeShift = 64 - bits;
+        this.cells = new AtomicLongArray((1 << bits) * STRIDE);
+    }
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    /** Records one value in microseconds; negative values count as 0. */
+    public void record(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE_MICROS);
+        int base = stripe() * STRIDE;
+        cells.getAndIncrement(base + bucketIndex(value));
+        cells.getAndAdd(base + SUM_OFFSET, value);
+        int maxCell = base + MAX_OFFSET;
+        long max = cells.get(maxCell);
+        while (value > max && !cells.compareAndSet(maxCell, max, value)) {
+            max = cells.get(maxCell);
+        }
+    }
+
+    /** Everything recorded so far. */
+    public HistogramSnapshot snapshot() {
+        return collect(false);
+    }
+
+    /**
+     * Everything recorded since the previous drain, resetting the counts. A
+     * value recorded concurrently ends up in this snapshot or the next one,
+     * never in both.
+     */
+    public HistogramSnapshot drain() {
+        return collect(true);
+    }
+
+    private HistogramSnapshot collect(boolean reset) {
+        long[] counts = new long[BUCKET_COUNT];
+        long sum = 0;
+        long max = 0;
+        int stripes = cells.length() / STRIDE;
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            int base = stripe * STRIDE;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += reset ? cells.getAndSet(base + i, 0) : cells.get(base + i);
+            }
+            sum += reset ? cells.getAndSet(base + SUM_OFFSET, 0) : cells.get(base + SUM_OFFSET);
+            max = Math.max(max, reset ? cells.getAndSet(base + MAX_OFFSET, 0) : cells.get(base + MAX_OFFSET));
+        }
+        return new HistogramSnapshot(counts, sum, max);
+    }
+
+    private int stripe() {
+        // Fibonacci hashing del id: hilos consecutivos caen en franjas distintas
+        return (int) ((Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L) >>> stripeShift);
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return (magnitude << SUB_BUCKET_BITS) + (int) (micros >>> magnitude);
+    }
+
+    /** Highest value (µs) that falls into bucket {@code index}. */
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int magnitude = (index >> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - ((long) magnitude << SUB_BUCKET_BITS);
+        return ((subBucket + 1) << magnitude) - 1;
+    }
+}
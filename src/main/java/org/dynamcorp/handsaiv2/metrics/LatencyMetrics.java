@@ -0,0 +1,170 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.LatencyMetricsProperties;
+import org.dynamcorp.handsaiv2.dto.LatencyPercentilesResponse;
+import org.dynamcorp.handsaiv2.service.ToolExecutionStage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms of tool executions: one per pipeline stage, one per tool
+ * and one per provider, keyed by code so renaming a tool or provider does not
+ * split its series. {@link org.dynamcorp.handsaiv2.service.ToolExecutionService}
+ * records into them on the execution path, without allocating once a series
+ * exists.
+ * <p>
+ * Every handsai.metrics.latency.snapshot-interval the histograms are drained
+ * into {@link LatencySnapshotStore}. Percentiles for a window merge the stored
+ * snapshots of that window with what has been recorded since the last drain,
+ * so they survive restarts and are not skewed by old traffic.
+ */
+@Slf4j
+@Component
+public class LatencyMetrics {
+
+    static final String OTHER_SERIES = "other";
+    // Menos franjas que las etapas: cada tool ve una fracción del tráfico
+    private static final int SERIES_STRIPES = 4;
+
+    private final LatencyMetricsProperties properties;
+    private final LatencySnapshotStore snapshotStore;
+    private final Clock clock;
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[ToolExecutionStage.values().length];
+    private final Map<String, LatencyHistogram> tools = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> providers = new ConcurrentHashMap<>();
+
+    // Drenado pero no guardado (el store falló); se reintenta en el siguiente snapshot
+    private final Map<LatencySeries, HistogramSnapshot> unsaved = new HashMap<>();
+
+    @Autowired
+    public LatencyMetrics(LatencyMetricsProperties properties, LatencySnapshotStore snapshotStore) {
+        this(properties, snapshotStore, Clock.systemUTC());
+    }
+
+    LatencyMetrics(LatencyMetricsProperties properties, LatencySnapshotStore snapshotStore, Clock clock) {
+        this.properties = properties;
+        this.snapshotStore = snapshotStore;
+        this.clock = clock;
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    public void recordStage(ToolExecutionStage stage, long nanos) {
+        stages[stage.ordinal()].recordNanos(nanos);
+    }
+
+    /** Whole execution time; either code may be null (e.g. native tools have no provider). */
+    public void recordExecution(String toolCode, String providerCode, long nanos) {
+        if (toolCode != null) {
+            series(tools, toolCode).recordNanos(nanos);
+        }
+        if (providerCode != null) {
+            series(providers, providerCode).recordNanos(nanos);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${handsai.metrics.latency.snapshot-interval:1m}")
+    public synchronized void snapshot() {
+        drainInto(unsaved);
+        long now = clock.millis();
+        try {
+            snapshotStore.save(now, unsaved);
+            unsaved.clear();
+            snapshotStore.deleteBefore(now - properties.getRetention().toMillis());
+        } catch (RuntimeException e) {
+            log.warn("Could not persist latency snapshots ({} series kept in memory): {}", unsaved.size(),
+                    e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+
+    /**
+     * p50/p90/p99/p99.9 per stage (in pipeline order), tool and provider over
+     * the last {@code window}.
+     */
+    public synchronized List<LatencyPercentilesResponse> percentiles(Duration window) {
+        if (window.isNegative() || window.isZero() || window.compareTo(properties.getRetention()) > 0) {
+            throw new IllegalArgumentException(
+                    "window must be positive and at most " + properties.getRetention().toMinutes() + " minutes");
+        }
+        Map<LatencySeries, HistogramSnapshot> merged = snapshotStore.loadSince(clock.millis() - window.toMillis());
+        unsaved.forEach((series, snapshot) -> merged.merge(series, copy(snapshot), HistogramSnapshot::merge));
+        for (ToolExecutionStage stage : ToolExecutionStage.values()) {
+            merged.merge(new LatencySeries(LatencyScope.STAGE, stage.name()), stages[stage.ordinal()].snapshot(),
+                    HistogramSnapshot::merge);
+        }
+        tools.forEach((name, histogram) -> merged.merge(new LatencySeries(LatencyScope.TOOL, name),
+                histogram.snapshot(), HistogramSnapshot::merge));
+        providers.forEach((name, histogram) -> merged.merge(new LatencySeries(LatencyScope.PROVIDER, name),
+                histogram.snapshot(), HistogramSnapshot::merge));
+
+        List<LatencyPercentilesResponse> result = new ArrayList<>();
+        for (ToolExecutionStage stage : ToolExecutionStage.values()) {
+            result.add(toResponse(new LatencySeries(LatencyScope.STAGE, stage.name()),
+                    merged.remove(new LatencySeries(LatencyScope.STAGE, stage.name()))));
+        }
+        merged.entrySet().stream()
+                .filter(entry -> entry.getKey().scope() != LatencyScope.STAGE && entry.getValue().totalCount() > 0)
+                .sorted(Map.Entry.comparingByKey(Comparator.comparing(LatencySeries::scope)
+                        .thenComparing(LatencySeries::name)))
+                .forEach(entry -> result.add(toResponse(entry.getKey(), entry.getValue())));
+        return result;
+    }
+
+    private LatencyHistogram series(Map<String, LatencyHistogram> map, String code) {
+        LatencyHistogram histogram = map.get(code);
+        if (histogram != null) {
+            return histogram;
+        }
+        // Tope de series: códigos nuevos por encima del límite comparten una sola
+        String key = map.size() < properties.getMaxSeries() ? code : OTHER_SERIES;
+        return map.computeIfAbsent(key, k -> new LatencyHistogram(SERIES_STRIPES));
+    }
+
+    private void drainInto(Map<LatencySeries, HistogramSnapshot> target) {
+        for (ToolExecutionStage stage : ToolExecutionStage.values()) {
+            target.merge(new LatencySeries(LatencyScope.STAGE, stage.name()), stages[stage.ordinal()].drain(),
+                    HistogramSnapshot::merge);
+        }
+        tools.forEach((name, histogram) -> target.merge(new LatencySeries(LatencyScope.TOOL, name),
+                histogram.drain(), HistogramSnapshot::merge));
+        providers.forEach((name, histogram) -> target.merge(new LatencySeries(LatencyScope.PROVIDER, name),
+                histogram.drain(), HistogramSnapshot::merge));
+    }
+
+    private static HistogramSnapshot copy(HistogramSnapshot snapshot) {
+        return HistogramSnapshot.empty().merge(snapshot);
+    }
+
+    private static LatencyPercentilesResponse toResponse(LatencySeries series, HistogramSnapshot snapshot) {
+        HistogramSnapshot histogram = snapshot != null ? snapshot : HistogramSnapshot.empty();
+        return new LatencyPercentilesResponse(
+                series.scope().name(),
+                series.name(),
+                histogram.totalCount(),
+                histogram.meanMicros() / 1000.0,
+                histogram.valueAtPercentile(50) / 1000.0,
+                histogram.valueAtPercentile(90) / 1000.0,
+                histogram.valueAtPercentile(99) / 1000.0,
+                histogram.valueAtPercentile(99.9) / 1000.0,
+                histogram.maxMicros() / 1000.0);
+    }
+}
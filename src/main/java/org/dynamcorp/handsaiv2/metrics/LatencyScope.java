@@ -0,0 +1,11 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+/** What a latency series is keyed by. */
+public enum LatencyScope {
+    /** One pipeline stage ({@link org.dynamcorp.handsaiv2.service.ToolExecutionStage}), all tools. */
+    STAGE,
+    /** Whole executions of one tool. */
+    TOOL,
+    /** Whole executions of every tool of one provider. */
+    PROVIDER
+}
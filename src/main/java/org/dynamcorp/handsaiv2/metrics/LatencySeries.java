@@ -0,0 +1,5 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+/** Identifies one latency histogram, e.g. (STAGE, CALL) or (TOOL, search-issues). */
+public record LatencySeries(LatencyScope scope, String name) {
+}
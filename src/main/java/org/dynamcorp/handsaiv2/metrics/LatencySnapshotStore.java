@@ -0,0 +1,151 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.RollupProperties;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persists drained {@link HistogramSnapshot}s, one row per series and
+ * interval, in the rollup file (handsai.logs.rollup.file). Only non-empty
+ * buckets are stored, so a row is a few hundred bytes at most.
+ */
+@Slf4j
+@Component
+public class LatencySnapshotStore {
+
+    private static final String SCHEMA_SQL = "CREATE TABLE IF NOT EXISTS latency_snapshots ("
+            + "taken_at INTEGER NOT NULL, scope TEXT NOT NULL, name TEXT NOT NULL, "
+            + "total_count INTEGER NOT NULL, sum_us INTEGER NOT NULL, max_us INTEGER NOT NULL, counts BLOB NOT NULL)";
+    private static final String INDEX_SQL = "CREATE INDEX IF NOT EXISTS idx_latency_snapshots_taken_at "
+            + "ON latency_snapshots (taken_at)";
+
+    private final RollupProperties properties;
+    private Connection connection;
+
+    public LatencySnapshotStore(RollupProperties properties) {
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public synchronized void open() {
+        Path file = Path.of(properties.getFile());
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=NORMAL");
+                statement.execute("PRAGMA busy_timeout=5000");
+                statement.execute(SCHEMA_SQL);
+                statement.execute(INDEX_SQL);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create rollup file " + file.toAbsolutePath(), e);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot open rollup file " + file.toAbsolutePath(), e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Could not close latency snapshot store: {}", e.getMessage());
+            }
+            connection = null;
+        }
+    }
+
+    /** Stores the non-empty snapshots of one interval, all in one transaction. */
+    public synchronized void save(long takenAt, Map<LatencySeries, HistogramSnapshot> snapshots) {
+        try {
+            connection.setAutoCommit(false);
+            try (PreparedStatement insert = connection.prepareStatement("INSERT INTO latency_snapshots "
+                    + "(taken_at, scope, name, total_count, sum_us, max_us, counts) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (Map.Entry<LatencySeries, HistogramSnapshot> entry : snapshots.entrySet()) {
+                    HistogramSnapshot snapshot = entry.getValue();
+                    if (snapshot.totalCount() == 0) {
+                        continue;
+                    }
+                    insert.setLong(1, takenAt);
+                    insert.setString(2, entry.getKey().scope().name());
+                    insert.setString(3, entry.getKey().name());
+                    insert.setLong(4, snapshot.totalCount());
+                    insert.setLong(5, snapshot.sumMicros());
+                    insert.setLong(6, snapshot.maxMicros());
+                    insert.setBytes(7, snapshot.encodeCounts());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                log.warn("Rollback of latency snapshots failed: {}", rollbackError.getMessage());
+            }
+            throw new IllegalStateException("Failed to save latency snapshots", e);
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                log.warn("Could not reset auto-commit on the latency snapshot store: {}", e.getMessage());
+            }
+        }
+    }
+
+    /** Every snapshot taken at or after {@code fromMillis}, merged per series. */
+    public synchronized Map<LatencySeries, HistogramSnapshot> loadSince(long fromMillis) {
+        Map<LatencySeries, HistogramSnapshot> merged = new HashMap<>();
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT scope, name, sum_us, max_us, counts FROM latency_snapshots WHERE taken_at >= ?")) {
+            query.setLong(1, fromMillis);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    LatencyScope scope;
+                    try {
+                        scope = LatencyScope.valueOf(rs.getString(1));
+                    } catch (IllegalArgumentException e) {
+                        continue;
+                    }
+                    HistogramSnapshot snapshot = HistogramSnapshot.decode(rs.getBytes(5), rs.getLong(3),
+                            rs.getLong(4));
+                    merged.merge(new LatencySeries(scope, rs.getString(2)), snapshot, HistogramSnapshot::merge);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read latency snapshots", e);
+        }
+        return merged;
+    }
+
+    public synchronized int deleteBefore(long cutoffMillis) {
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM latency_snapshots WHERE taken_at < ?")) {
+            delete.setLong(1, cutoffMillis);
+            return delete.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to delete old latency snapshots", e);
+        }
+    }
+}
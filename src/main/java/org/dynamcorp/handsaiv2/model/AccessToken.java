@@ -21,6 +21,16 @@ public class AccessToken {
     @Column(nullable = false, columnDefinition = "TEXT")
     private String encryptedToken;
 
+    // null = token por defecto (el que rota /admin/token/regenerate)
+    private String label;
+
+    // Códigos de tool separados por coma; "prefijo*" habilita por prefijo. null = todas
+    @Column(columnDefinition = "TEXT")
+    private String allowedTools;
+
+    // null = sin límite
+    private Integer requestsPerSecond;
+
     @Column(nullable = false, updatable = false)
     private Instant createdAt;
 
@@ -69,6 +69,12 @@ public class ApiProvider extends BaseModel {
     @Column(columnDefinition = "TEXT")
     private String dynamicAuthInvalidationKeywords;
 
+    // Ruta en la respuesta de auth con los segundos de vida del token (ej. "expires_in")
+    private String dynamicAuthExpiresInPath;
+
+    // Si se define, fija la vida del token e ignora expires_in / exp
+    private Integer dynamicAuthTokenTtlSeconds;
+
     @OneToMany(mappedBy = "provider", cascade = CascadeType.ALL, orphanRemoval = true)
     @lombok.Builder.Default
     private List<ApiTool> tools = new ArrayList<>();
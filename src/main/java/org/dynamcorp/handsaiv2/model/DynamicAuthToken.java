@@ -0,0 +1,37 @@
+package org.dynamcorp.handsaiv2.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Last token fetched for a provider with dynamic auth, kept so a restart can
+ * reuse it instead of calling the auth endpoint again. The token is stored
+ * encrypted; rows past expiresAt are dropped at startup.
+ */
+@Entity
+@Table(name = "dynamic_auth_tokens")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DynamicAuthToken {
+
+    // Una fila por provider
+    @Id
+    private Long providerId;
+
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String encryptedToken;
+
+    @Column(nullable = false)
+    private Instant fetchedAt;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    // Origen del TTL (PROVIDER_OVERRIDE, EXPIRES_IN, JWT_EXP, DEFAULT)
+    private String ttlSource;
+}
@@ -0,0 +1,25 @@
+package org.dynamcorp.handsaiv2.model;
+
+import java.time.Duration;
+
+/** Bucket width of the execution rollups; buckets are aligned to UTC. */
+public enum RollupGranularity {
+    MINUTE(Duration.ofMinutes(1)),
+    HOUR(Duration.ofHours(1)),
+    DAY(Duration.ofDays(1));
+
+    private final long millis;
+
+    RollupGranularity(Duration width) {
+        this.millis = width.toMillis();
+    }
+
+    public long millis() {
+        return millis;
+    }
+
+    /** Start of the bucket that contains {@code epochMillis}. */
+    public long bucketStart(long epochMillis) {
+        return Math.floorDiv(epochMillis, millis) * millis;
+    }
+}
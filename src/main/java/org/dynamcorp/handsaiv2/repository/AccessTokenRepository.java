@@ -1,15 +1,27 @@
 package org.dynamcorp.handsaiv2.repository;
 
 import org.dynamcorp.handsaiv2.model.AccessToken;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface AccessTokenRepository extends JpaRepository<AccessToken, Long> {
 
-    @Query("SELECT t FROM AccessToken t ORDER BY t.id ASC LIMIT 1")
-    Optional<AccessToken> findFirst();
+    /** The default PAT (no label); labelled tokens are listed separately. */
+    Optional<AccessToken> findFirstByLabelIsNullOrderByIdDesc();
+
+    List<AccessToken> findAllByLabelIsNull();
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE AccessToken t SET t.lastUsedAt = :lastUsedAt WHERE t.id = :id")
+    int updateLastUsedAt(@Param("id") Long id, @Param("lastUsedAt") Instant lastUsedAt);
 }
@@ -21,6 +21,10 @@ public interface ApiToolRepository extends JpaRepository<ApiTool, Long> {
     @Query("SELECT a FROM ApiTool a WHERE a.enabled = true")
     List<ApiTool> findAllEnabled();
 
+    @EntityGraph(attributePaths = { "provider", "parameters" })
+    @Query("SELECT a FROM ApiTool a WHERE a.enabled = true AND a.provider.id = :providerId")
+    List<ApiTool> findAllEnabledByProviderId(@Param("providerId") Long providerId);
+
     @EntityGraph(attributePaths = { "provider", "parameters" })
     @Query("SELECT a FROM ApiTool a")
     List<ApiTool> findAllWithRelations();
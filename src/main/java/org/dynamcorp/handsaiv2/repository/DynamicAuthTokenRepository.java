@@ -0,0 +1,20 @@
+package org.dynamcorp.handsaiv2.repository;
+
+import org.dynamcorp.handsaiv2.model.DynamicAuthToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+public interface DynamicAuthTokenRepository extends JpaRepository<DynamicAuthToken, Long> {
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM DynamicAuthToken t WHERE t.expiresAt <= :now")
+    int deleteExpired(@Param("now") Instant now);
+}
@@ -0,0 +1,57 @@
+package org.dynamcorp.handsaiv2.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Inserts execution logs with one JDBC batch per call, in one transaction.
+ * Hibernate cannot batch these inserts because ids are IDENTITY-generated, so
+ * saveAll costs one statement round trip per row.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ToolExecutionLogBatchWriter {
+
+    private static final String INSERT_SQL = "INSERT INTO tool_execution_logs "
+            + "(created_at, updated_at, enabled, api_tool_id, session_id, request_payload, response_payload, "
+            + "execution_time_ms, success, error_message, system_tool_name, executed_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Transactional
+    public void insertAll(List<ToolExecutionLog> logs) {
+        // Mismo formato que Hibernate en SQLite: timestamps como epoch millis
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbcTemplate.batchUpdate(INSERT_SQL, logs, logs.size(), (ps, entry) -> {
+            ps.setTimestamp(1, now);
+            ps.setTimestamp(2, now);
+            ps.setBoolean(3, true);
+            if (entry.getApiTool() != null && entry.getApiTool().getId() != null) {
+                ps.setLong(4, entry.getApiTool().getId());
+            } else {
+                ps.setNull(4, Types.BIGINT);
+            }
+            ps.setString(5, entry.getSessionId());
+            ps.setString(6, entry.getRequestPayload());
+            ps.setString(7, entry.getResponsePayload());
+            if (entry.getExecutionTimeMs() != null) {
+                ps.setLong(8, entry.getExecutionTimeMs());
+            } else {
+                ps.setNull(8, Types.BIGINT);
+            }
+            ps.setBoolean(9, entry.isSuccess());
+            ps.setString(10, entry.getErrorMessage());
+            ps.setString(11, entry.getSystemToolName());
+            ps.setTimestamp(12, entry.getExecutedAt() != null ? Timestamp.from(entry.getExecutedAt()) : null);
+        });
+    }
+}
@@ -3,12 +3,14 @@ package org.dynamcorp.handsaiv2.repository;
 import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 
@@ -22,9 +24,17 @@ public interface ToolExecutionLogRepository extends JpaRepository<ToolExecutionL
     @Query("SELECT AVG(t.executionTimeMs) FROM ToolExecutionLog t WHERE t.executedAt > :date")
     Double getAverageExecutionTimeAfter(Instant date);
 
+    @Query("SELECT MIN(t.executedAt) FROM ToolExecutionLog t")
+    Instant findOldestExecutedAt();
+
     @EntityGraph(attributePaths = { "apiTool" })
     Page<ToolExecutionLog> findAllByOrderByExecutedAtDesc(Pageable pageable);
 
+    @EntityGraph(attributePaths = { "apiTool", "apiTool.provider" })
+    Slice<ToolExecutionLog> findByExecutedAtBeforeAndIdGreaterThanOrderByIdAsc(Instant before, Long afterId,
+            Pageable pageable);
+
+    @Transactional
     @Modifying
     @Query("DELETE FROM ToolExecutionLog t WHERE t.executedAt < :date")
     int deleteByExecutedAtBefore(@Param("date") Instant date);
@@ -1,84 +1,256 @@
 package org.dynamcorp.handsaiv2.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.dto.AccessTokenResponse;
+import org.dynamcorp.handsaiv2.dto.CreateAccessTokenRequest;
+import org.dynamcorp.handsaiv2.dto.CreateAccessTokenResponse;
 import org.dynamcorp.handsaiv2.dto.TokenStatusResponse;
+import org.dynamcorp.handsaiv2.exception.ResourceNotFoundException;
 import org.dynamcorp.handsaiv2.model.AccessToken;
 import org.dynamcorp.handsaiv2.repository.AccessTokenRepository;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Owns the access tokens used by MCP clients: the default PAT (no label,
+ * rotated by {@link #generateToken()}) plus any number of labelled tokens,
+ * each scoped to a set of tools and an optional request quota.
+ * <p>
+ * Authentication never touches the database: each token is kept in memory
+ * as a {@link TokenGrant} keyed by the SHA-256 of the raw token (loaded at
+ * startup, updated once the creation or deletion of a token commits). Only digests are
+ * looked up, so the lookup leaks nothing usable about the raw token.
+ * {@code lastUsedAt} is recorded in memory and written back by
+ * {@link #flushLastUsed()} at most once per flush interval.
+ */
 @Service
+@Slf4j
 @RequiredArgsConstructor
 public class AccessTokenService {
 
     private final AccessTokenRepository accessTokenRepository;
     private final EncryptionService encryptionService;
 
+    // Copy-on-write: SHA-256 (base64) del token -> permisos
+    private volatile Map<String, TokenGrant> grantsByDigest = Map.of();
+
+    @PostConstruct
+    public void loadGrants() {
+        Map<String, TokenGrant> grants = new HashMap<>();
+        for (AccessToken stored : accessTokenRepository.findAll()) {
+            try {
+                String rawToken = encryptionService.decrypt(stored.getEncryptedToken());
+                grants.put(digest(rawToken), toGrant(stored));
+            } catch (Exception e) {
+                log.error("Access token {} could not be decrypted; delete or regenerate it", stored.getId(), e);
+            }
+        }
+        grantsByDigest = Map.copyOf(grants);
+        log.info("Loaded {} access tokens", grants.size());
+    }
+
     /**
-     * Generates a new PAT token, replaces any existing one.
-     * Returns the RAW token — caller must store/show it; it will never be
-     * retrievable again.
+     * Generates a new default PAT token, replacing the previous default one.
+     * Labelled tokens are kept. Returns the RAW token — caller must store/show
+     * it; it will never be retrievable again.
      */
     @Transactional
     public String generateToken() {
-        // Delete any existing token
-        accessTokenRepository.deleteAll();
+        // Delete the existing default token
+        List<AccessToken> previous = accessTokenRepository.findAllByLabelIsNull();
+        accessTokenRepository.deleteAll(previous);
 
         String rawToken = UUID.randomUUID().toString();
-        String encrypted = encryptionService.encrypt(rawToken);
+        AccessToken saved = save(AccessToken.builder()
+                .encryptedToken(encryptionService.encrypt(rawToken))
+                .build());
 
-        AccessToken token = AccessToken.builder()
-                .encryptedToken(encrypted)
-                .build();
-
-        @SuppressWarnings("null")
-        AccessToken saved = accessTokenRepository.save(token);
-        // discard saved as it's not needed for the return
+        Set<Long> previousIds = previous.stream().map(AccessToken::getId).collect(Collectors.toSet());
+        // El token anterior deja de validar en cuanto se publica el nuevo mapa (tras el commit)
+        updateGrantsAfterCommit(grants -> {
+            grants.values().removeIf(grant -> previousIds.contains(grant.id()));
+            grants.put(digest(rawToken), toGrant(saved));
+        });
         return rawToken;
     }
 
+    /** Creates a labelled token scoped to the given tools and quota. */
+    @Transactional
+    public CreateAccessTokenResponse createToken(CreateAccessTokenRequest request) {
+        if (request.label() == null || request.label().isBlank()) {
+            throw new IllegalArgumentException("label is required");
+        }
+        if (request.requestsPerSecond() != null && request.requestsPerSecond() <= 0) {
+            throw new IllegalArgumentException("requestsPerSecond must be positive");
+        }
+        String allowedTools = request.allowedTools() == null ? null
+                : request.allowedTools().stream()
+                        .map(String::trim)
+                        .filter(entry -> !entry.isEmpty())
+                        .collect(Collectors.joining(","));
+
+        String rawToken = UUID.randomUUID().toString();
+        AccessToken saved = save(AccessToken.builder()
+                .encryptedToken(encryptionService.encrypt(rawToken))
+                .label(request.label().trim())
+                .allowedTools(allowedTools == null || allowedTools.isEmpty() ? null : allowedTools)
+                .requestsPerSecond(request.requestsPerSecond())
+                .build());
+        updateGrantsAfterCommit(grants -> grants.put(digest(rawToken), toGrant(saved)));
+        log.info("Access token '{}' created", saved.getLabel());
+
+        return new CreateAccessTokenResponse(saved.getId(), saved.getLabel(), rawToken,
+                "Save this token securely — it will never be shown again.");
+    }
+
+    @Transactional
+    public void deleteToken(Long id) {
+        if (!accessTokenRepository.existsById(id)) {
+            throw new ResourceNotFoundException("Access token not found with id: " + id);
+        }
+        accessTokenRepository.deleteById(id);
+        updateGrantsAfterCommit(grants -> grants.values().removeIf(grant -> grant.id().equals(id)));
+    }
+
+    @Transactional(readOnly = true)
+    public List<AccessTokenResponse> listTokens() {
+        return accessTokenRepository.findAll().stream()
+                .map(token -> new AccessTokenResponse(
+                        token.getId(),
+                        token.getLabel(),
+                        buildMasked(token.getEncryptedToken()),
+                        token.getAllowedTools() == null ? null : Arrays.asList(token.getAllowedTools().split(",")),
+                        token.getRequestsPerSecond(),
+                        token.getCreatedAt(),
+                        lastUsedAt(token)))
+                .toList();
+    }
+
     /**
-     * Validates an incoming raw token against the stored encrypted one.
-     * Updates lastUsedAt on success.
+     * Resolves an incoming raw token to its grant, or null when it matches no
+     * token. Records lastUsedAt on success; it is persisted by the flusher.
      */
-    @Transactional
-    public boolean validateToken(String rawToken) {
+    public TokenGrant authenticate(String rawToken) {
         if (rawToken == null || rawToken.isBlank())
-            return false;
+            return null;
 
-        Optional<AccessToken> tokenOpt = accessTokenRepository.findFirst();
-        if (tokenOpt.isEmpty())
-            return false;
+        TokenGrant grant = grantsByDigest.get(digest(rawToken));
+        if (grant == null)
+            return null;
+        grant.pendingLastUsed().set(Instant.now());
+        return grant;
+    }
 
-        AccessToken stored = tokenOpt.get();
-        try {
-            String decrypted = encryptionService.decrypt(stored.getEncryptedToken());
-            if (!decrypted.equals(rawToken))
-                return false;
-            stored.setLastUsedAt(Instant.now());
-            accessTokenRepository.save(stored);
-            return true;
-        } catch (Exception e) {
-            return false;
+    public boolean validateToken(String rawToken) {
+        return authenticate(rawToken) != null;
+    }
+
+    /**
+     * Writes the latest pending lastUsedAt of each token, if any. Every
+     * validation between two flushes collapses into a single UPDATE per token.
+     */
+    @Scheduled(fixedDelayString = "${handsai.auth.last-used-flush-interval:30s}")
+    public void flushLastUsed() {
+        for (TokenGrant grant : grantsByDigest.values()) {
+            Instant lastUsed = grant.pendingLastUsed().getAndSet(null);
+            if (lastUsed == null)
+                continue;
+            try {
+                accessTokenRepository.updateLastUsedAt(grant.id(), lastUsed);
+            } catch (Exception e) {
+                // Se reintenta en el próximo ciclo salvo que ya haya un valor más reciente
+                grant.pendingLastUsed().compareAndSet(null, lastUsed);
+                log.warn("Could not persist lastUsedAt of access token {}: {}", grant.id(), e.getMessage());
+            }
         }
     }
 
+    @PreDestroy
+    public void flushOnShutdown() {
+        flushLastUsed();
+    }
+
     public TokenStatusResponse getStatus() {
-        Optional<AccessToken> tokenOpt = accessTokenRepository.findFirst();
+        Optional<AccessToken> tokenOpt = accessTokenRepository.findFirstByLabelIsNullOrderByIdDesc();
         if (tokenOpt.isEmpty()) {
             return new TokenStatusResponse(false, null, null, null);
         }
         AccessToken token = tokenOpt.get();
         String masked = buildMasked(token.getEncryptedToken());
-        return new TokenStatusResponse(true, masked, token.getCreatedAt(), token.getLastUsedAt());
+        return new TokenStatusResponse(true, masked, token.getCreatedAt(), lastUsedAt(token));
     }
 
     public boolean hasToken() {
-        return accessTokenRepository.findFirst().isPresent();
+        return !grantsByDigest.isEmpty();
+    }
+
+    private AccessToken save(AccessToken token) {
+        @SuppressWarnings("null")
+        AccessToken saved = accessTokenRepository.save(token);
+        return saved;
+    }
+
+    /**
+     * The in-memory grants must only change once the token rows are committed:
+     * a rollback would otherwise leave a grant for a token that was never
+     * stored, or keep a deleted one valid. Outside a transaction the change
+     * applies right away.
+     */
+    private void updateGrantsAfterCommit(Consumer<Map<String, TokenGrant>> change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            updateGrants(change);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                updateGrants(change);
+            }
+        });
+    }
+
+    private synchronized void updateGrants(Consumer<Map<String, TokenGrant>> change) {
+        Map<String, TokenGrant> copy = new HashMap<>(grantsByDigest);
+        change.accept(copy);
+        grantsByDigest = Map.copyOf(copy);
+    }
+
+    private static TokenGrant toGrant(AccessToken token) {
+        return new TokenGrant(token.getId(), token.getLabel(), token.getAllowedTools(), token.getRequestsPerSecond());
+    }
+
+    private Instant lastUsedAt(AccessToken token) {
+        Instant pending = grantsByDigest.values().stream()
+                .filter(grant -> grant.id().equals(token.getId()))
+                .findFirst()
+                .map(grant -> grant.pendingLastUsed().get())
+                .orElse(null);
+        if (pending == null)
+            return token.getLastUsedAt();
+        if (token.getLastUsedAt() == null)
+            return pending;
+        return pending.isAfter(token.getLastUsedAt()) ? pending : token.getLastUsedAt();
     }
 
     private String buildMasked(String encryptedToken) {
@@ -87,4 +259,13 @@ public class AccessTokenService {
             return "****";
         return encryptedToken.substring(0, 8) + "...";
     }
+
+    private static String digest(String rawToken) {
+        try {
+            byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(rawToken.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(sha256);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
 }
@@ -2,48 +2,68 @@ package org.dynamcorp.handsaiv2.service;
 
 import lombok.RequiredArgsConstructor;
 import org.dynamcorp.handsaiv2.dto.AnalyticsSummaryResponse;
+import org.dynamcorp.handsaiv2.dto.LogStoreStatsResponse;
+import org.dynamcorp.handsaiv2.dto.ProviderMetricsResponse;
 import org.dynamcorp.handsaiv2.dto.ToolExecutionLogResponse;
-import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
-import org.dynamcorp.handsaiv2.repository.ToolExecutionLogRepository;
+import org.dynamcorp.handsaiv2.dto.ToolMetricsResponse;
+import org.dynamcorp.handsaiv2.dto.ToolRollupPointResponse;
+import org.dynamcorp.handsaiv2.model.RollupGranularity;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
 
 @Service
 @RequiredArgsConstructor
 public class AnalyticsService {
 
-    private final ToolExecutionLogRepository logRepository;
+    private static final int MAX_SERIES_BUCKETS = 1440;
+
+    private final ExecutionLogStore logStore;
+    private final ToolRollupStore rollupStore;
 
-    @Transactional(readOnly = true)
     public AnalyticsSummaryResponse getSummaryMetrics(int daysToLookBack) {
         Instant fromDate = Instant.now().minus(daysToLookBack, ChronoUnit.DAYS);
 
-        long totalExecutions = logRepository.countByExecutedAtAfter(fromDate);
+        ToolRollupStore.Totals totals = rollupStore.totalsSince(fromDate);
+        long totalExecutions = totals.executions();
         if (totalExecutions == 0) {
             return new AnalyticsSummaryResponse(0, 0, 0.0, 0.0);
         }
 
-        long successfulExecutions = logRepository.countBySuccessAndExecutedAtAfter(true, fromDate);
-        Double avgTime = logRepository.getAverageExecutionTimeAfter(fromDate);
-        double averageLatency = avgTime != null ? avgTime : 0.0;
-
+        long successfulExecutions = totals.successful();
         double successRate = (double) successfulExecutions / totalExecutions * 100.0;
 
         return new AnalyticsSummaryResponse(
                 totalExecutions,
                 successfulExecutions,
                 successRate,
-                averageLatency);
+                totals.averageLatencyMs());
     }
 
-    @Transactional(readOnly = true)
     public Page<ToolExecutionLogResponse> getExecutionLogs(Pageable pageable) {
-        Page<ToolExecutionLog> logs = logRepository.findAllByOrderByExecutedAtDesc(pageable);
-        return logs.map(ToolExecutionLogResponse::from);
+        return logStore.findPage(pageable);
+    }
+
+    public List<ToolMetricsResponse> getToolMetrics(int daysToLookBack) {
+        return rollupStore.toolMetricsSince(Instant.now().minus(daysToLookBack, ChronoUnit.DAYS));
+    }
+
+    public List<ProviderMetricsResponse> getProviderMetrics(int daysToLookBack) {
+        return rollupStore.providerMetricsSince(Instant.now().minus(daysToLookBack, ChronoUnit.DAYS));
+    }
+
+    public List<ToolRollupPointResponse> getToolSeries(String toolCode, RollupGranularity granularity, int buckets) {
+        if (buckets < 1 || buckets > MAX_SERIES_BUCKETS) {
+            throw new IllegalArgumentException("buckets must be between 1 and " + MAX_SERIES_BUCKETS);
+        }
+        return rollupStore.series(toolCode, granularity, buckets);
+    }
+
+    public LogStoreStatsResponse getLogStoreStats() {
+        return logStore.getStats();
     }
 }
@@ -0,0 +1,10 @@
+package org.dynamcorp.handsaiv2.service;
+
+/**
+ * Published when a provider (or the tools imported under it) changes.
+ * {@link ToolCacheManager} reloads the tools of that provider and
+ * {@link ProviderHttpClientRegistry} drops its HTTP client once the
+ * transaction commits.
+ */
+public record ApiProviderChangedEvent(Long providerId) {
+}
@@ -8,6 +8,7 @@ import org.dynamcorp.handsaiv2.dto.UpdateApiProviderRequest;
 import org.dynamcorp.handsaiv2.exception.ResourceNotFoundException;
 import org.dynamcorp.handsaiv2.model.ApiProvider;
 import org.dynamcorp.handsaiv2.repository.ApiProviderRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -24,7 +25,7 @@ public class ApiProviderService {
     private final ApiProviderRepository providerRepository;
     private final EncryptionService encryptionService;
     private final ObjectMapper objectMapper;
-    private final ToolCacheManager toolCacheManager;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Transactional(readOnly = true)
     public List<ApiProviderResponse> getAllProviders() {
@@ -70,14 +71,15 @@ public class ApiProviderService {
                 .dynamicAuthPayloadLocation(request.dynamicAuthPayloadLocation())
                 .dynamicAuthTokenExtractionPath(request.dynamicAuthTokenExtractionPath())
                 .dynamicAuthInvalidationKeywords(request.dynamicAuthInvalidationKeywords())
+                .dynamicAuthExpiresInPath(request.dynamicAuthExpiresInPath())
+                .dynamicAuthTokenTtlSeconds(request.dynamicAuthTokenTtlSeconds())
                 .customHeadersJson(encryptMapJson(customHeadersJson))
                 .createdAt(Instant.now())
                 .updatedAt(Instant.now())
                 .build();
 
-        ApiProviderResponse response = ApiProviderResponse.from(providerRepository.save(provider));
-        toolCacheManager.refreshCache();
-        return response;
+        // Un provider nuevo todavía no tiene tools: no hay nada que recargar en caché
+        return ApiProviderResponse.from(providerRepository.save(provider));
     }
 
     @Transactional
@@ -122,6 +124,13 @@ public class ApiProviderService {
             existingProvider.setDynamicAuthTokenExtractionPath(request.dynamicAuthTokenExtractionPath());
         if (request.dynamicAuthInvalidationKeywords() != null)
             existingProvider.setDynamicAuthInvalidationKeywords(request.dynamicAuthInvalidationKeywords());
+        if (request.dynamicAuthExpiresInPath() != null)
+            existingProvider.setDynamicAuthExpiresInPath(request.dynamicAuthExpiresInPath());
+        if (request.dynamicAuthTokenTtlSeconds() != null) {
+            // 0 o negativo quita el override y vuelve a usar expires_in / exp
+            existingProvider.setDynamicAuthTokenTtlSeconds(
+                    request.dynamicAuthTokenTtlSeconds() > 0 ? request.dynamicAuthTokenTtlSeconds() : null);
+        }
 
         if (request.customHeaders() != null) {
             try {
@@ -138,7 +147,8 @@ public class ApiProviderService {
 
         existingProvider.setUpdatedAt(Instant.now());
         ApiProviderResponse response = ApiProviderResponse.from(providerRepository.save(existingProvider));
-        toolCacheManager.refreshCache();
+        // Base URL, timeouts or pool overrides may have changed: the HTTP client is rebuilt after commit
+        eventPublisher.publishEvent(new ApiProviderChangedEvent(id));
         return response;
     }
 
@@ -148,7 +158,7 @@ public class ApiProviderService {
             throw new ResourceNotFoundException("Provider not found with id: " + id);
         }
         providerRepository.deleteById(id);
-        toolCacheManager.refreshCache();
+        eventPublisher.publishEvent(new ApiProviderChangedEvent(id));
     }
 
     private String encryptMapJson(String jsonString) {
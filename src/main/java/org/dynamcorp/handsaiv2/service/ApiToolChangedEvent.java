@@ -0,0 +1,15 @@
+package org.dynamcorp.handsaiv2.service;
+
+/**
+ * Published when a tool is created, updated or deleted. {@link ToolCacheManager}
+ * reloads just that tool once the transaction commits.
+ *
+ * @param code         current code of the tool
+ * @param previousCode code before the change, when it was renamed (else null)
+ */
+public record ApiToolChangedEvent(String code, String previousCode) {
+
+    public ApiToolChangedEvent(String code) {
+        this(code, null);
+    }
+}
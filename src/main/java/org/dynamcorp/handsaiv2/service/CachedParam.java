@@ -0,0 +1,22 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.model.ParameterType;
+import org.dynamcorp.handsaiv2.model.ToolParameter;
+
+/** Immutable copy of a {@link ToolParameter}. */
+public record CachedParam(
+        String name,
+        ParameterType type,
+        String description,
+        boolean required,
+        String defaultValue) {
+
+    public static CachedParam from(ToolParameter param) {
+        return new CachedParam(
+                CachedProvider.intern(param.getName()),
+                param.getType(),
+                param.getDescription(),
+                Boolean.TRUE.equals(param.getRequired()),
+                param.getDefaultValue());
+    }
+}
@@ -0,0 +1,66 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.model.ApiKeyLocationEnum;
+import org.dynamcorp.handsaiv2.model.ApiProvider;
+import org.dynamcorp.handsaiv2.model.AuthenticationTypeEnum;
+import org.dynamcorp.handsaiv2.model.DynamicAuthMethodEnum;
+import org.dynamcorp.handsaiv2.model.DynamicAuthPayloadLocationEnum;
+import org.dynamcorp.handsaiv2.model.DynamicAuthPayloadTypeEnum;
+
+import java.time.Instant;
+
+/**
+ * Immutable copy of an {@link ApiProvider} as the execution path needs it.
+ * Secrets stay encrypted, exactly as stored; the tools list is not copied.
+ */
+public record CachedProvider(
+        Long id,
+        String code,
+        String name,
+        String baseUrl,
+        AuthenticationTypeEnum authenticationType,
+        ApiKeyLocationEnum apiKeyLocation,
+        String apiKeyName,
+        String apiKeyValue,
+        String customHeadersJson,
+        boolean dynamicAuth,
+        String dynamicAuthUrl,
+        DynamicAuthMethodEnum dynamicAuthMethod,
+        String dynamicAuthPayload,
+        DynamicAuthPayloadTypeEnum dynamicAuthPayloadType,
+        DynamicAuthPayloadLocationEnum dynamicAuthPayloadLocation,
+        String dynamicAuthTokenExtractionPath,
+        String dynamicAuthInvalidationKeywords,
+        String dynamicAuthExpiresInPath,
+        Integer dynamicAuthTokenTtlSeconds,
+        Instant updatedAt) {
+
+    public static CachedProvider from(ApiProvider provider) {
+        return new CachedProvider(
+                provider.getId(),
+                intern(provider.getCode()),
+                intern(provider.getName()),
+                intern(provider.getBaseUrl()),
+                provider.getAuthenticationType(),
+                provider.getApiKeyLocation(),
+                intern(provider.getApiKeyName()),
+                provider.getApiKeyValue(),
+                provider.getCustomHeadersJson(),
+                provider.isDynamicAuth(),
+                provider.getDynamicAuthUrl(),
+                provider.getDynamicAuthMethod(),
+                provider.getDynamicAuthPayload(),
+                provider.getDynamicAuthPayloadType(),
+                provider.getDynamicAuthPayloadLocation(),
+                provider.getDynamicAuthTokenExtractionPath(),
+                provider.getDynamicAuthInvalidationKeywords(),
+                provider.getDynamicAuthExpiresInPath(),
+                provider.getDynamicAuthTokenTtlSeconds(),
+                provider.getUpdatedAt());
+    }
+
+    /** Codes, names and URLs repeat across tools and reloads; keep one copy. */
+    static String intern(String value) {
+        return value != null ? value.intern() : null;
+    }
+}
@@ -0,0 +1,66 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.model.ApiProvider;
+import org.dynamcorp.handsaiv2.model.ApiTool;
+import org.dynamcorp.handsaiv2.model.HttpMethodEnum;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Immutable snapshot of an {@link ApiTool} with its provider and parameters,
+ * built while the entity graph is loaded. What {@link ToolCacheManager} hands
+ * to the execution path: no lazy associations to initialize and nothing the
+ * admin code can mutate underneath a running call.
+ */
+public record CachedTool(
+        Long id,
+        String code,
+        String name,
+        String description,
+        CachedProvider provider,
+        String endpointPath,
+        HttpMethodEnum httpMethod,
+        boolean enabled,
+        boolean healthy,
+        List<CachedParam> parameters,
+        String bodyPayloadTemplate,
+        Instant updatedAt) {
+
+    public static CachedTool from(ApiTool tool) {
+        return new CachedTool(
+                tool.getId(),
+                CachedProvider.intern(tool.getCode()),
+                tool.getName(),
+                tool.getDescription(),
+                tool.getProvider() != null ? CachedProvider.from(tool.getProvider()) : null,
+                tool.getEndpointPath(),
+                tool.getHttpMethod(),
+                tool.isEnabled(),
+                tool.isHealthy(),
+                tool.getParameters() != null
+                        ? tool.getParameters().stream().map(CachedParam::from).toList()
+                        : List.of(),
+                tool.getBodyPayloadTemplate(),
+                tool.getUpdatedAt());
+    }
+
+    /**
+     * Id-only entity to reference this tool (and its provider) from a new
+     * ToolExecutionLog, without touching the persistence context.
+     */
+    public ApiTool toReference() {
+        ApiTool reference = new ApiTool();
+        reference.setId(id);
+        reference.setCode(code);
+        reference.setName(name);
+        if (provider != null) {
+            ApiProvider providerReference = new ApiProvider();
+            providerReference.setId(provider.id());
+            providerReference.setCode(provider.code());
+            providerReference.setName(provider.name());
+            reference.setProvider(providerReference);
+        }
+        return reference;
+    }
+}
@@ -3,68 +3,354 @@ package org.dynamcorp.handsaiv2.service;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.dto.DynamicTokenStatsResponse;
 import org.dynamcorp.handsaiv2.exception.ToolExecutionException;
-import org.dynamcorp.handsaiv2.model.ApiProvider;
+import org.dynamcorp.handsaiv2.jfr.JfrEvents;
+import org.dynamcorp.handsaiv2.jfr.TokenFetchEvent;
+import org.dynamcorp.handsaiv2.metrics.HandsAiMeters;
 import org.dynamcorp.handsaiv2.model.DynamicAuthMethodEnum;
 import org.dynamcorp.handsaiv2.model.DynamicAuthPayloadLocationEnum;
 import org.dynamcorp.handsaiv2.model.DynamicAuthPayloadTypeEnum;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Caches the tokens of providers with dynamic auth.
+ * <p>
+ * Fetches are single-flight per provider: while one caller hits the auth
+ * endpoint the others wait for its result. A token close to expiry (within
+ * handsai.auth.dynamic-token.refresh-ahead) is still served while a background
+ * refresh replaces it, and invalidations are tied to the token that failed,
+ * so many calls failing with the same token trigger a single refetch.
+ * <p>
+ * Token lifetime comes from the auth response (expires-in path or JWT exp)
+ * minus a safety margin, unless the provider fixes it; see
+ * {@link #resolveLifetime}.
+ * <p>
+ * With handsai.auth.dynamic-token.persist every fetched token is also written
+ * (encrypted, asynchronously) to {@link DynamicTokenStore} and reloaded at
+ * startup, so a warm restart needs no auth round trips.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class DynamicTokenManager {
 
-    private final RestClient.Builder restClientBuilder;
+    private final ProviderHttpClientRegistry httpClientRegistry;
     private final ObjectMapper objectMapper;
     private final EncryptionService encryptionService;
+    private final Executor taskExecutor;
+    private final DynamicTokenStore tokenStore;
+    private final HandsAiMeters meters;
 
-    // Cache: Provider ID -> CachedToken
-    private final Map<Long, CachedToken> tokenCache = new ConcurrentHashMap<>();
-    private static final long TOKEN_TTL_SECONDS = 300; // 5 minutes
+    // Provider ID -> token actual + fetch en curso
+    private final Map<Long, TokenState> tokenStates = new ConcurrentHashMap<>();
 
-    public String getToken(ApiProvider provider) {
-        if (!provider.isDynamicAuth()) {
+    @Value("${handsai.auth.dynamic-token.refresh-ahead:30s}")
+    private Duration refreshAhead = Duration.ofSeconds(30);
+
+    // Vida asumida cuando la respuesta no informa expiración
+    @Value("${handsai.auth.dynamic-token.default-ttl:5m}")
+    private Duration defaultTtl = Duration.ofMinutes(5);
+
+    // Se descuenta de expires_in / exp para no usar un token a punto de vencer
+    @Value("${handsai.auth.dynamic-token.expiry-margin:30s}")
+    private Duration expiryMargin = Duration.ofSeconds(30);
+
+    /** Restores the tokens that were still valid when the app stopped. */
+    @PostConstruct
+    public void loadStoredTokens() {
+        Instant now = Instant.now();
+        for (DynamicTokenStore.StoredToken stored : tokenStore.loadValid()) {
+            TtlSource source;
+            try {
+                source = TtlSource.valueOf(stored.ttlSource());
+            } catch (RuntimeException e) {
+                source = TtlSource.DEFAULT;
+            }
+            Instant refreshAt = stored.expiresAt().minus(refreshAhead);
+            CachedToken token = new CachedToken(stored.token(), stored.fetchedAt(), stored.expiresAt(),
+                    refreshAt.isAfter(now) ? refreshAt : now, source);
+            tokenStates.computeIfAbsent(stored.providerId(), id -> new TokenState()).current.set(token);
+        }
+    }
+
+    public String getToken(CachedProvider provider) {
+        if (!provider.dynamicAuth()) {
             return null;
         }
 
-        CachedToken cachedToken = tokenCache.get(provider.getId());
-        if (cachedToken != null && cachedToken.expiresAt().isAfter(Instant.now())) {
-            log.debug("Returning cached dynamic token for provider {}", provider.getId());
+        TokenState state = tokenStates.computeIfAbsent(provider.id(), id -> new TokenState());
+        CachedToken cachedToken = state.current.get();
+        Instant now = Instant.now();
+        if (cachedToken != null && cachedToken.expiresAt().isAfter(now)) {
+            if (!cachedToken.refreshAt().isAfter(now) && state.inFlight.get() == null) {
+                refreshInBackground(provider, state, cachedToken);
+            }
+            log.debug("Returning cached dynamic token for provider {}", provider.id());
+            meters.recordTokenRequest(provider.code(), true);
             return cachedToken.token();
         }
 
-        log.info("Fetching new dynamic token for provider {}", provider.getId());
-        String newToken = fetchNewToken(provider);
+        meters.recordTokenRequest(provider.code(), false);
+        return refresh(provider, state, cachedToken).token();
+    }
 
-        tokenCache.put(provider.getId(), new CachedToken(newToken, Instant.now().plusSeconds(TOKEN_TTL_SECONDS)));
-        return newToken;
+    /**
+     * Drops the cached token only if it is still {@code staleToken}: callers
+     * that failed with a token another caller already replaced do nothing.
+     */
+    public void invalidateToken(Long providerId, String staleToken) {
+        TokenState state = tokenStates.get(providerId);
+        if (state == null) {
+            return;
+        }
+        CachedToken current = state.current.get();
+        if (current != null && current.token().equals(staleToken) && state.current.compareAndSet(current, null)) {
+            log.info("Invalidating dynamic token cache for provider {}", providerId);
+            tokenStore.delete(providerId);
+        }
     }
 
     public void invalidateToken(Long providerId) {
         log.info("Invalidating dynamic token cache for provider {}", providerId);
-        tokenCache.remove(providerId);
+        tokenStates.remove(providerId);
+        tokenStore.delete(providerId);
+    }
+
+    /** Auth URL, payload or extraction path may have changed: start over. */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProviderChanged(ApiProviderChangedEvent event) {
+        tokenStates.remove(event.providerId());
+        tokenStore.delete(event.providerId());
+    }
+
+    private void refreshInBackground(CachedProvider provider, TokenState state, CachedToken expiring) {
+        try {
+            taskExecutor.execute(() -> {
+                try {
+                    refresh(provider, state, expiring);
+                } catch (RuntimeException e) {
+                    // Se sigue sirviendo el token vigente; al vencer se reintenta en primer plano
+                    log.warn("Background refresh of dynamic token failed for provider {}: {}",
+                            provider.id(), e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Background token refresh rejected for provider {}", provider.id());
+        }
+    }
+
+    /**
+     * Fetches a new token unless a fetch is already running, in which case its
+     * result is awaited. {@code seen} is the token the caller found (or null);
+     * if another flight replaced it meanwhile that token is returned instead.
+     */
+    private CachedToken refresh(CachedProvider provider, TokenState state, CachedToken seen) {
+        CompletableFuture<CachedToken> flight = new CompletableFuture<>();
+        CompletableFuture<CachedToken> running = state.inFlight.compareAndExchange(null, flight);
+        if (running != null) {
+            return await(running, provider);
+        }
+        try {
+            CachedToken current = state.current.get();
+            if (current != null && current != seen && current.expiresAt().isAfter(Instant.now())) {
+                flight.complete(current);
+                return current;
+            }
+            log.info("Fetching new dynamic token for provider {}", provider.id());
+            CachedToken fresh = newCachedToken(provider, timedFetch(provider));
+            state.current.set(fresh);
+            state.recordRefresh(fresh.fetchedAt());
+            persistIfCurrent(provider.id(), state, fresh);
+            flight.complete(fresh);
+            return fresh;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            state.inFlight.set(null);
+        }
+    }
+
+    /**
+     * Saves the token only while {@code state} is still the provider's: a
+     * fetch that raced with onProviderChanged or invalidateToken must not bring
+     * back a token fetched with the old configuration. Runs under the map's
+     * lock for the key, so it cannot interleave with their remove.
+     */
+    private void persistIfCurrent(Long providerId, TokenState state, CachedToken token) {
+        tokenStates.computeIfPresent(providerId, (id, current) -> {
+            if (current == state) {
+                tokenStore.save(new DynamicTokenStore.StoredToken(id, token.token(), token.fetchedAt(),
+                        token.expiresAt(), token.source().name()));
+            } else {
+                log.debug("Not persisting dynamic token of provider {}: its state was reset meanwhile", id);
+            }
+            return current;
+        });
+    }
+
+    private CachedToken newCachedToken(CachedProvider provider, FetchedToken fetched) {
+        Instant now = Instant.now();
+        TokenLifetime lifetime = resolveLifetime(provider, fetched, now);
+        Duration ttl = lifetime.ttl();
+        Instant expiresAt = now.plus(ttl);
+        // Si el margen no entra en el TTL se refresca a mitad de vida
+        Instant refreshAt = refreshAhead.compareTo(ttl) < 0
+                ? expiresAt.minus(refreshAhead)
+                : now.plus(ttl.dividedBy(2));
+        log.debug("Dynamic token for provider {} valid for {}s ({})", provider.id(), ttl.toSeconds(),
+                lifetime.source());
+        return new CachedToken(fetched.token(), now, expiresAt, refreshAt, lifetime.source());
     }
 
-    private String fetchNewToken(ApiProvider provider) {
+    /**
+     * How long the token can be used: the provider's fixed TTL override, else
+     * what the auth response says (the expires-in path, then the JWT exp
+     * claim) minus the safety margin, else the default TTL.
+     */
+    TokenLifetime resolveLifetime(CachedProvider provider, FetchedToken fetched, Instant now) {
+        Integer override = provider.dynamicAuthTokenTtlSeconds();
+        if (override != null && override > 0) {
+            return new TokenLifetime(Duration.ofSeconds(override), TtlSource.PROVIDER_OVERRIDE);
+        }
+
+        String expiresInPath = provider.dynamicAuthExpiresInPath();
+        if (expiresInPath != null && !expiresInPath.isBlank() && fetched.body() != null) {
+            JsonNode expiresIn = findPath(fetched.body(), expiresInPath);
+            if (expiresIn != null && (expiresIn.isNumber() || expiresIn.isTextual())) {
+                try {
+                    long seconds = expiresIn.isNumber()
+                            ? expiresIn.asLong()
+                            : Long.parseLong(expiresIn.asText().trim());
+                    return new TokenLifetime(withMargin(Duration.ofSeconds(seconds)), TtlSource.EXPIRES_IN);
+                } catch (NumberFormatException e) {
+                    log.warn("Non-numeric {} in auth response for provider {}", expiresInPath, provider.id());
+                }
+            } else {
+                log.warn("No {} in auth response for provider {}", expiresInPath, provider.id());
+            }
+        }
+
+        Long exp = jwtExpiry(fetched.token());
+        if (exp != null) {
+            Duration remaining = Duration.between(now, Instant.ofEpochSecond(exp));
+            return new TokenLifetime(withMargin(remaining), TtlSource.JWT_EXP);
+        }
+
+        return new TokenLifetime(defaultTtl, TtlSource.DEFAULT);
+    }
+
+    private Duration withMargin(Duration lifetime) {
+        // Con vidas más cortas que el margen se usa la mitad, nunca menos de un segundo
+        Duration usable = lifetime.compareTo(expiryMargin.multipliedBy(2)) > 0
+                ? lifetime.minus(expiryMargin)
+                : lifetime.dividedBy(2);
+        return usable.compareTo(Duration.ofSeconds(1)) < 0 ? Duration.ofSeconds(1) : usable;
+    }
+
+    /** The exp claim of a JWT, or null when the token is not a JWT or has none. */
+    private Long jwtExpiry(String token) {
+        if (token == null) {
+            return null;
+        }
+        String[] parts = token.split("\\.");
+        if (parts.length != 3) {
+            return null;
+        }
         try {
-            RestClient client = restClientBuilder.baseUrl(provider.getDynamicAuthUrl()).build();
-            HttpMethod method = provider.getDynamicAuthMethod() == DynamicAuthMethodEnum.GET ? HttpMethod.GET
+            JsonNode claims = objectMapper.readTree(Base64.getUrlDecoder().decode(parts[1]));
+            JsonNode exp = claims.get("exp");
+            return exp != null && exp.canConvertToLong() ? exp.asLong() : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    public List<DynamicTokenStatsResponse> getStats() {
+        Instant now = Instant.now();
+        return tokenStates.entrySet().stream()
+                .map(entry -> {
+                    TokenState state = entry.getValue();
+                    CachedToken current = state.current.get();
+                    return new DynamicTokenStatsResponse(
+                            entry.getKey(),
+                            state.refreshesSince(now.minus(Duration.ofHours(1))),
+                            state.totalRefreshes.get(),
+                            current != null ? current.fetchedAt() : null,
+                            current != null ? current.expiresAt() : null,
+                            current != null ? current.source().name() : null);
+                })
+                .toList();
+    }
+
+    private CachedToken await(CompletableFuture<CachedToken> flight, CachedProvider provider) {
+        try {
+            return flight.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ToolExecutionException("Interrupted waiting for dynamic auth token");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new ToolExecutionException("Failed to fetch dynamic auth token for provider " + provider.id());
+        }
+    }
+
+    private FetchedToken timedFetch(CachedProvider provider) {
+        TokenFetchEvent event = new TokenFetchEvent();
+        event.begin();
+        long started = System.nanoTime();
+        boolean success = false;
+        try {
+            FetchedToken fetched = fetchNewToken(provider, event);
+            success = true;
+            return fetched;
+        } finally {
+            meters.recordTokenFetch(provider.code(), success, System.nanoTime() - started);
+            if (event.shouldCommit()) {
+                event.providerId = JfrEvents.id(provider.id());
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    private FetchedToken fetchNewToken(CachedProvider provider, TokenFetchEvent event) {
+        try {
+            RestClient client = httpClientRegistry.clientFor(provider);
+            HttpMethod method = provider.dynamicAuthMethod() == DynamicAuthMethodEnum.GET ? HttpMethod.GET
                     : HttpMethod.POST;
 
             // Parse Payload
             Map<String, Object> payloadMap = null;
-            if (provider.getDynamicAuthPayload() != null && !provider.getDynamicAuthPayload().isBlank()) {
-                payloadMap = objectMapper.readValue(provider.getDynamicAuthPayload(),
+            if (provider.dynamicAuthPayload() != null && !provider.dynamicAuthPayload().isBlank()) {
+                payloadMap = objectMapper.readValue(provider.dynamicAuthPayload(),
                         new TypeReference<Map<String, Object>>() {
                         });
                 
@@ -76,8 +362,8 @@ public class DynamicTokenManager {
                 }
             }
 
-            String finalUri = provider.getDynamicAuthUrl();
-            DynamicAuthPayloadLocationEnum location = provider.getDynamicAuthPayloadLocation();
+            String finalUri = provider.dynamicAuthUrl();
+            DynamicAuthPayloadLocationEnum location = provider.dynamicAuthPayloadLocation();
             if (location == null)
                 location = DynamicAuthPayloadLocationEnum.BODY; // default
 
@@ -103,7 +389,7 @@ public class DynamicTokenManager {
                         break;
                     case BODY:
                         if (method == HttpMethod.POST) {
-                            DynamicAuthPayloadTypeEnum type = provider.getDynamicAuthPayloadType();
+                            DynamicAuthPayloadTypeEnum type = provider.dynamicAuthPayloadType();
                             if (type == DynamicAuthPayloadTypeEnum.FORM_DATA) {
                                 requestSpec.contentType(MediaType.APPLICATION_FORM_URLENCODED);
                                 StringBuilder formData = new StringBuilder();
@@ -120,32 +406,25 @@ public class DynamicTokenManager {
             }
 
             String responseBody = requestSpec.retrieve().body(String.class);
+            if (event.isEnabled()) {
+                event.responseBytes = JfrEvents.utf8Length(responseBody);
+            }
 
             // Extract Token
-            String extractionPath = provider.getDynamicAuthTokenExtractionPath();
+            String extractionPath = provider.dynamicAuthTokenExtractionPath();
             if (extractionPath == null || extractionPath.isBlank()) {
                 // If empty path, assuming the raw response is the token text
-                return responseBody;
+                return new FetchedToken(responseBody, parseOrNull(responseBody));
             }
 
             JsonNode rootNode = objectMapper.readTree(responseBody);
-            String[] pathParts = extractionPath.split("\\.");
-            JsonNode currentNode = rootNode;
-
-            for (String part : pathParts) {
-                if (currentNode != null && currentNode.has(part)) {
-                    currentNode = currentNode.get(part);
-                } else {
-                    currentNode = null;
-                    break;
-                }
-            }
+            JsonNode currentNode = findPath(rootNode, extractionPath);
 
             if (currentNode != null && !currentNode.isNull()) {
                 if (currentNode.isTextual()) {
-                    return currentNode.textValue();
+                    return new FetchedToken(currentNode.textValue(), rootNode);
                 } else {
-                    return currentNode.toString();
+                    return new FetchedToken(currentNode.toString(), rootNode);
                 }
             }
 
@@ -153,11 +432,62 @@ public class DynamicTokenManager {
                     "Could not extract token from auth response using path: " + extractionPath);
 
         } catch (Exception e) {
-            log.error("Failed to fetch dynamic token for provider {}", provider.getId(), e);
+            log.error("Failed to fetch dynamic token for provider {}", provider.id(), e);
             throw new ToolExecutionException("Failed to fetch dynamic auth token: " + e.getMessage());
         }
     }
 
-    private record CachedToken(String token, Instant expiresAt) {
+    private static JsonNode findPath(JsonNode root, String path) {
+        JsonNode currentNode = root;
+        for (String part : path.split("\\.")) {
+            if (currentNode != null && currentNode.has(part)) {
+                currentNode = currentNode.get(part);
+            } else {
+                return null;
+            }
+        }
+        return currentNode;
+    }
+
+    private JsonNode parseOrNull(String body) {
+        try {
+            return body != null ? objectMapper.readTree(body) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    enum TtlSource {
+        PROVIDER_OVERRIDE, EXPIRES_IN, JWT_EXP, DEFAULT
+    }
+
+    record TokenLifetime(Duration ttl, TtlSource source) {
+    }
+
+    record FetchedToken(String token, JsonNode body) {
+    }
+
+    private record CachedToken(String token, Instant fetchedAt, Instant expiresAt, Instant refreshAt,
+            TtlSource source) {
+    }
+
+    private static final class TokenState {
+        private final AtomicReference<CachedToken> current = new AtomicReference<>();
+        private final AtomicReference<CompletableFuture<CachedToken>> inFlight = new AtomicReference<>();
+        private final Deque<Instant> recentRefreshes = new ConcurrentLinkedDeque<>();
+        private final AtomicLong totalRefreshes = new AtomicLong();
+
+        void recordRefresh(Instant at) {
+            totalRefreshes.incrementAndGet();
+            recentRefreshes.addLast(at);
+            Instant cutoff = at.minus(Duration.ofHours(1));
+            while (!recentRefreshes.isEmpty() && recentRefreshes.peekFirst().isBefore(cutoff)) {
+                recentRefreshes.pollFirst();
+            }
+        }
+
+        long refreshesSince(Instant cutoff) {
+            return recentRefreshes.stream().filter(at -> !at.isBefore(cutoff)).count();
+        }
     }
 }
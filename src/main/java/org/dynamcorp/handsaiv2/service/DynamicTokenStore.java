@@ -0,0 +1,160 @@
+package org.dynamcorp.handsaiv2.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.model.DynamicAuthToken;
+import org.dynamcorp.handsaiv2.repository.DynamicAuthTokenRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Optional SQLite copy of the dynamic auth tokens cached by
+ * {@link DynamicTokenManager}, so a restart reuses still-valid tokens instead
+ * of calling every auth endpoint again (handsai.auth.dynamic-token.persist).
+ * <p>
+ * Tokens are encrypted with {@link EncryptionService}. Writes never block the
+ * caller: they are queued per provider, only the latest state of each one is
+ * kept, and a single drainer on the task executor writes them. Whatever is
+ * still queued at shutdown is written synchronously.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class DynamicTokenStore {
+
+    private final DynamicAuthTokenRepository repository;
+    private final EncryptionService encryptionService;
+    private final Executor taskExecutor;
+
+    @Value("${handsai.auth.dynamic-token.persist:false}")
+    private boolean enabled;
+
+    // Provider ID -> último estado pendiente de escribir (empty = borrar)
+    private final Map<Long, Optional<StoredToken>> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Deletes expired rows and returns the remaining tokens, decrypted. When
+     * persistence is disabled any leftover rows are deleted and nothing is
+     * returned.
+     */
+    public List<StoredToken> loadValid() {
+        List<StoredToken> tokens = new ArrayList<>();
+        try {
+            if (!enabled) {
+                if (repository.count() > 0) {
+                    repository.deleteAllInBatch();
+                    log.info("Dynamic token persistence is disabled; stored tokens deleted");
+                }
+                return tokens;
+            }
+
+            int expired = repository.deleteExpired(Instant.now());
+            for (DynamicAuthToken row : repository.findAll()) {
+                try {
+                    tokens.add(new StoredToken(row.getProviderId(),
+                            encryptionService.decrypt(row.getEncryptedToken()),
+                            row.getFetchedAt(), row.getExpiresAt(), row.getTtlSource()));
+                } catch (Exception e) {
+                    log.warn("Stored dynamic token of provider {} could not be decrypted; discarding it",
+                            row.getProviderId());
+                    repository.deleteById(row.getProviderId());
+                }
+            }
+            log.info("Loaded {} stored dynamic tokens ({} expired dropped)", tokens.size(), expired);
+        } catch (Exception e) {
+            // Sin tokens guardados se piden de nuevo: no es motivo para no arrancar
+            log.error("Could not load stored dynamic tokens", e);
+        }
+        return tokens;
+    }
+
+    public void save(StoredToken token) {
+        if (enabled) {
+            pending.put(token.providerId(), Optional.of(token));
+            scheduleDrain();
+        }
+    }
+
+    public void delete(Long providerId) {
+        if (enabled) {
+            pending.put(providerId, Optional.empty());
+            scheduleDrain();
+        }
+    }
+
+    /** Writes everything queued so far on the calling thread. */
+    @PreDestroy
+    public void flush() {
+        writePending();
+    }
+
+    private boolean writePending() {
+        for (Long providerId : List.copyOf(pending.keySet())) {
+            Optional<StoredToken> change = pending.remove(providerId);
+            if (change == null) {
+                continue;
+            }
+            try {
+                if (change.isPresent()) {
+                    StoredToken token = change.get();
+                    repository.save(DynamicAuthToken.builder()
+                            .providerId(token.providerId())
+                            .encryptedToken(encryptionService.encrypt(token.token()))
+                            .fetchedAt(token.fetchedAt())
+                            .expiresAt(token.expiresAt())
+                            .ttlSource(token.ttlSource())
+                            .build());
+                } else {
+                    repository.deleteById(providerId);
+                }
+            } catch (Exception e) {
+                // Se reintenta en la próxima escritura salvo que ya haya un cambio más reciente
+                pending.putIfAbsent(providerId, change);
+                log.warn("Could not persist dynamic token of provider {}: {}", providerId, e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            taskExecutor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            draining.set(false);
+            log.debug("Dynamic token write rejected; it stays queued until the next one");
+        }
+    }
+
+    private void drain() {
+        boolean written;
+        try {
+            written = writePending();
+        } finally {
+            draining.set(false);
+        }
+        // Un cambio encolado mientras se liberaba el flag no debe quedar esperando
+        if (written && !pending.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+
+    public record StoredToken(Long providerId, String token, Instant fetchedAt, Instant expiresAt,
+            String ttlSource) {
+    }
+}
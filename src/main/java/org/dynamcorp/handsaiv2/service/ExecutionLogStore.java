@@ -0,0 +1,30 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.dto.LogStoreStatsResponse;
+import org.dynamcorp.handsaiv2.dto.ToolExecutionLogResponse;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Append-only storage for tool execution logs. Written by
+ * {@link LogBatchProcessor}, paged by {@link AnalyticsService} and trimmed by
+ * {@link LogRetentionScheduler}; handsai.logs.store.type picks the
+ * implementation.
+ */
+public interface ExecutionLogStore {
+
+    /** Stores a batch of logs; all of them or none. */
+    void append(List<ToolExecutionLog> logs);
+
+    /** Logs newest first. */
+    Page<ToolExecutionLogResponse> findPage(Pageable pageable);
+
+    /** Removes every log executed before {@code cutoff}; returns how many. */
+    long deleteBefore(Instant cutoff);
+
+    LogStoreStatsResponse getStats();
+}
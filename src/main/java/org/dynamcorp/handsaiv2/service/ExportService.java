@@ -75,6 +75,8 @@ public class ExportService {
                 provider.getDynamicAuthPayload(),
                 provider.getDynamicAuthTokenExtractionPath(),
                 provider.getDynamicAuthInvalidationKeywords(),
+                provider.getDynamicAuthExpiresInPath(),
+                provider.getDynamicAuthTokenTtlSeconds(),
                 customHeaders,
                 exportTools);
     }
@@ -10,6 +10,7 @@ import org.dynamcorp.handsaiv2.model.ApiTool;
 import org.dynamcorp.handsaiv2.model.ToolParameter;
 import org.dynamcorp.handsaiv2.repository.ApiProviderRepository;
 import org.dynamcorp.handsaiv2.repository.ApiToolRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -29,8 +30,9 @@ public class ImportService {
     private final ApiProviderRepository providerRepository;
     private final ApiToolRepository toolRepository;
     private final EncryptionService encryptionService;
-    private final ToolCacheManager toolCacheManager;
+    private final ApplicationEventPublisher eventPublisher;
     private final ObjectMapper objectMapper;
+    private final ToolExecutionPlanCompiler planCompiler;
 
     private static final String MASKED_API_KEY = "<YOUR_API_KEY>";
 
@@ -46,9 +48,9 @@ public class ImportService {
                     processTool(toolReq, provider);
                 }
             }
+            eventPublisher.publishEvent(new ApiProviderChangedEvent(provider.getId()));
         }
 
-        toolCacheManager.refreshCache();
         log.info("Import completed successfully.");
     }
 
@@ -89,6 +91,8 @@ public class ImportService {
                 req.dynamicAuthInvalidationKeywords() != null && !req.dynamicAuthInvalidationKeywords().isBlank()
                         ? req.dynamicAuthInvalidationKeywords()
                         : "invalid_token,token_expired,unauthorized,expired_token");
+        provider.setDynamicAuthExpiresInPath(req.dynamicAuthExpiresInPath());
+        provider.setDynamicAuthTokenTtlSeconds(req.dynamicAuthTokenTtlSeconds());
 
         if (req.apiKeyValue() != null && !req.apiKeyValue().isBlank() && !req.apiKeyValue().equals(MASKED_API_KEY)) {
             provider.setApiKeyValue(encryptionService.encrypt(req.apiKeyValue()));
@@ -145,6 +149,13 @@ public class ImportService {
             tool.getParameters().addAll(parameters);
         }
 
+        // No se aborta el import completo: se avisa para que el admin corrija la plantilla
+        Set<String> unknownPlaceholders = planCompiler.findUnknownPlaceholders(tool);
+        if (!unknownPlaceholders.isEmpty()) {
+            log.warn("Imported tool {} has body template placeholders without a parameter: {}", code,
+                    unknownPlaceholders);
+        }
+
         toolRepository.save(tool);
     }
 
@@ -1,48 +1,304 @@
 package org.dynamcorp.handsaiv2.service;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.LogPipelineProperties;
+import org.dynamcorp.handsaiv2.config.LogPipelineProperties.OverflowPolicy;
+import org.dynamcorp.handsaiv2.dto.LogPipelineStatsResponse;
+import org.dynamcorp.handsaiv2.jfr.LogFlushEvent;
+import org.dynamcorp.handsaiv2.metrics.HandsAiMeters;
 import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
-import org.dynamcorp.handsaiv2.repository.ToolExecutionLogRepository;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Buffers execution logs between tool calls and the {@link ExecutionLogStore}.
+ * <p>
+ * Callers put logs into a bounded ring buffer (an {@link ArrayBlockingQueue})
+ * and never wait on the database. When it is full the configured
+ * {@link OverflowPolicy} decides: drop the log, block the caller for a short
+ * while, or (SAMPLE) start thinning out successful executions before the
+ * buffer fills so failures keep getting through.
+ * <p>
+ * A single writer thread drains the buffer into batches, appended when a
+ * batch reaches handsai.logs.pipeline.batch-size or its oldest log has waited
+ * flush-interval. A batch that keeps failing after max-attempts is appended
+ * to the dead-letter NDJSON file instead of being lost. Every written batch is
+ * also folded into the per-tool rollups of {@link ToolRollupStore}.
+ */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class LogBatchProcessor {
 
-    private final ToolExecutionLogRepository logRepository;
-    private final Queue<ToolExecutionLog> logQueue = new ConcurrentLinkedQueue<>();
+    private final ExecutionLogStore logStore;
+    private final ToolRollupStore rollupStore;
+    private final HandsAiMeters meters;
+    private final LogPipelineProperties properties;
+    private final ObjectMapper objectMapper;
 
-    public void enqueueLog(ToolExecutionLog logEntry) {
-        logQueue.offer(logEntry);
+    private final BlockingQueue<ToolExecutionLog> logQueue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampledOut = new AtomicLong();
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final AtomicLong rollupFailures = new AtomicLong();
+    private volatile Instant lastFlushAt;
+
+    public LogBatchProcessor(ExecutionLogStore logStore, ToolRollupStore rollupStore, HandsAiMeters meters,
+            LogPipelineProperties properties, ObjectMapper objectMapper) {
+        this.logStore = logStore;
+        this.rollupStore = rollupStore;
+        this.meters = meters;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.logQueue = new ArrayBlockingQueue<>(Math.max(1, properties.getCapacity()));
     }
 
-    @Scheduled(fixedDelay = 2000)
-    public void processBatch() {
-        if (logQueue.isEmpty()) {
+    @PostConstruct
+    public void start() {
+        meters.bindLogPipeline(this);
+        running = true;
+        writerThread = Thread.ofPlatform()
+                .name("execution-log-writer")
+                .daemon()
+                .start(this::runWriter);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writerThread != null) {
+            try {
+                // Termina el poll en curso (a lo sumo flush-interval) y escribe su lote
+                writerThread.join(properties.getFlushInterval().plusSeconds(10).toMillis());
+                writerThread.interrupt();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Lo que quedó en el buffer se escribe antes de cerrar
+        flushPending();
+    }
+
+    public void enqueueLog(ToolExecutionLog logEntry) {
+        OverflowPolicy policy = properties.getOverflowPolicy();
+        if (policy == OverflowPolicy.SAMPLE && logEntry.isSuccess()
+                && logQueue.size() >= properties.getSampleAbove() * properties.getCapacity()
+                && sampleCounter.incrementAndGet() % Math.max(1, properties.getSampleRate()) != 0) {
+            sampledOut.incrementAndGet();
             return;
         }
 
+        boolean queued;
+        if (policy == OverflowPolicy.BLOCK) {
+            try {
+                queued = logQueue.offer(logEntry, properties.getBlockTimeout().toNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                queued = false;
+            }
+        } else {
+            queued = logQueue.offer(logEntry);
+        }
+
+        if (queued) {
+            accepted.incrementAndGet();
+        } else if (dropped.incrementAndGet() % 1000 == 1) {
+            log.warn("Execution log buffer full ({} entries); {} logs dropped so far",
+                    properties.getCapacity(), dropped.get());
+        }
+    }
+
+    public void enqueueLogs(Collection<ToolExecutionLog> logEntries) {
+        for (ToolExecutionLog logEntry : logEntries) {
+            enqueueLog(logEntry);
+        }
+    }
+
+    /** Writes everything buffered right now on the calling thread. */
+    public void flushPending() {
         List<ToolExecutionLog> batch = new ArrayList<>();
-        ToolExecutionLog logEntry;
-        while ((logEntry = logQueue.poll()) != null) {
-            batch.add(logEntry);
+        while (logQueue.drainTo(batch, Math.max(1, properties.getBatchSize())) > 0) {
+            write(batch);
+            batch.clear();
         }
+    }
+
+    public LogPipelineStatsResponse getStats() {
+        return new LogPipelineStatsResponse(
+                properties.getOverflowPolicy().name(),
+                properties.getCapacity(),
+                logQueue.size(),
+                accepted.get(),
+                dropped.get(),
+                sampledOut.get(),
+                written.get(),
+                batches.get(),
+                retries.get(),
+                deadLettered.get(),
+                rollupFailures.get(),
+                lastFlushAt);
+    }
+
+    private void runWriter() {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        long flushIntervalNanos = properties.getFlushInterval().toNanos();
+        List<ToolExecutionLog> batch = new ArrayList<>(batchSize);
+        long deadline = 0;
 
+        while (running) {
+            try {
+                long wait = batch.isEmpty() ? flushIntervalNanos : deadline - System.nanoTime();
+                ToolExecutionLog first = wait > 0 ? logQueue.poll(wait, TimeUnit.NANOSECONDS) : null;
+                if (first != null) {
+                    if (batch.isEmpty()) {
+                        deadline = System.nanoTime() + flushIntervalNanos;
+                    }
+                    batch.add(first);
+                    logQueue.drainTo(batch, batchSize - batch.size());
+                }
+                if (batch.size() >= batchSize || (!batch.isEmpty() && System.nanoTime() - deadline >= 0)) {
+                    write(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                log.error("Execution log writer failed: {}", e.getMessage(), e);
+            }
+        }
         if (!batch.isEmpty()) {
+            write(batch);
+        }
+    }
+
+    private void write(List<ToolExecutionLog> batch) {
+        int maxAttempts = Math.max(1, properties.getMaxAttempts());
+        LogFlushEvent event = new LogFlushEvent();
+        event.begin();
+        long started = System.nanoTime();
+        int attempt = 1;
+        for (; attempt <= maxAttempts; attempt++) {
             try {
-                logRepository.saveAll(batch);
+                logStore.append(batch);
+                written.addAndGet(batch.size());
+                batches.incrementAndGet();
+                lastFlushAt = Instant.now();
+                meters.recordLogFlush(batch.size(), true, System.nanoTime() - started);
+                commit(event, batch.size(), attempt, true);
                 log.debug("Successfully saved batch of {} execution logs", batch.size());
+                updateRollups(batch);
+                return;
             } catch (Exception e) {
-                log.error("Failed to save batch of execution logs: {}", e.getMessage(), e);
+                if (attempt == maxAttempts) {
+                    log.error("Failed to save batch of {} execution logs after {} attempts: {}",
+                            batch.size(), attempt, e.getMessage(), e);
+                    break;
+                }
+                retries.incrementAndGet();
+                log.warn("Failed to save batch of {} execution logs (attempt {}/{}): {}",
+                        batch.size(), attempt, maxAttempts, e.getMessage());
+                if (!sleep(properties.getRetryBackoff().toMillis() * attempt)) {
+                    break;
+                }
+            }
+        }
+        meters.recordLogFlush(batch.size(), false, System.nanoTime() - started);
+        commit(event, batch.size(), attempt, false);
+        deadLetter(batch);
+    }
+
+    private static void commit(LogFlushEvent event, int entries, int attempts, boolean success) {
+        if (event.shouldCommit()) {
+            event.entries = entries;
+            event.attempts = attempts;
+            event.success = success;
+            event.commit();
+        }
+    }
+
+    private void updateRollups(List<ToolExecutionLog> batch) {
+        // Fuera del reintento: los logs ya están escritos y no deben duplicarse
+        try {
+            rollupStore.record(batch);
+        } catch (RuntimeException e) {
+            rollupFailures.incrementAndGet();
+            log.warn("Could not add {} execution logs to the rollups: {}", batch.size(), e.getMessage());
+        }
+    }
+
+    private void deadLetter(List<ToolExecutionLog> batch) {
+        Path file = Path.of(properties.getDeadLetterFile());
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (ToolExecutionLog entry : batch) {
+                    out.write(objectMapper.writeValueAsString(DeadLetter.of(entry)));
+                    out.newLine();
+                }
             }
+            deadLettered.addAndGet(batch.size());
+            log.warn("{} execution logs written to dead-letter file {}", batch.size(), file.toAbsolutePath());
+        } catch (IOException e) {
+            dropped.addAndGet(batch.size());
+            log.error("Could not write {} execution logs to dead-letter file {}; they are lost",
+                    batch.size(), file.toAbsolutePath(), e);
+        }
+    }
+
+    private boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            // Apagando: no se sigue reintentando, el lote va al dead-letter
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** One line of the dead-letter file; the fields of a stored execution log. */
+    record DeadLetter(Long apiToolId, String systemToolName, String sessionId, boolean success,
+            Long executionTimeMs, Instant executedAt, String requestPayload, String responsePayload,
+            String errorMessage) {
+
+        static DeadLetter of(ToolExecutionLog entry) {
+            return new DeadLetter(
+                    entry.getApiTool() != null ? entry.getApiTool().getId() : null,
+                    entry.getSystemToolName(),
+                    entry.getSessionId(),
+                    entry.isSuccess(),
+                    entry.getExecutionTimeMs(),
+                    entry.getExecutedAt(),
+                    entry.getRequestPayload(),
+                    entry.getResponsePayload(),
+                    entry.getErrorMessage());
         }
     }
 }
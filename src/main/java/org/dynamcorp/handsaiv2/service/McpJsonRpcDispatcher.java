@@ -0,0 +1,292 @@
+package org.dynamcorp.handsaiv2.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.RawValue;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.McpProperties;
+import org.dynamcorp.handsaiv2.dto.McpContent;
+import org.dynamcorp.handsaiv2.dto.McpJsonRpcMessage;
+import org.dynamcorp.handsaiv2.dto.McpToolCallResponse;
+import org.dynamcorp.handsaiv2.dto.ToolExecuteRequest;
+import org.dynamcorp.handsaiv2.dto.ToolExecuteResponse;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transport-independent handling of MCP JSON-RPC messages (initialize, ping,
+ * tools/list, tools/call, notifications/cancelled). Transports pass each
+ * incoming message together with a {@link MessageSink} for the notifications
+ * emitted while it runs (progress), and write the returned response.
+ * <p>
+ * In-flight tools/call requests are tracked per transport scope (e.g. an HTTP
+ * session id) so a later notifications/cancelled can abort the upstream call.
+ * A request id may only be in flight once per scope, and only the token that
+ * started a call can cancel it.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class McpJsonRpcDispatcher {
+
+    public static final String PROTOCOL_VERSION = "2025-03-26";
+    public static final String SERVER_NAME = "handsai";
+
+    private static final TypeReference<Map<String, Object>> ARGUMENTS_TYPE = new TypeReference<>() {
+    };
+
+    private final ToolCatalogService toolCatalogService;
+    private final ToolExecutionService toolExecutionService;
+    private final LogBatchProcessor logBatchProcessor;
+    private final McpProperties mcpProperties;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, InFlightCall> inFlight = new ConcurrentHashMap<>();
+
+    /** A running tools/call and the token id that started it (null without a token). */
+    private record InFlightCall(Long owner, CompletableFuture<ToolExecuteResponse> execution) {
+    }
+
+    /** Where a transport writes the notifications produced while a request runs. */
+    @FunctionalInterface
+    public interface MessageSink {
+        void send(McpJsonRpcMessage message);
+    }
+
+    /**
+     * Requests (and malformed messages, which get an error) expect a response;
+     * notifications and client responses do not.
+     */
+    public static boolean expectsResponse(JsonNode message) {
+        if (message == null || !message.isObject()) {
+            return true;
+        }
+        if (message.hasNonNull("method")) {
+            return message.has("id");
+        }
+        return !message.has("result") && !message.has("error");
+    }
+
+    /**
+     * @return the response to send, or a future completed with null for
+     *         notifications. Cancelling the returned future cancels the tool
+     *         execution behind it.
+     */
+    public CompletableFuture<McpJsonRpcMessage> dispatch(JsonNode message, String scope, MessageSink sink) {
+        return dispatch(message, scope, null, sink);
+    }
+
+    /**
+     * Same as {@link #dispatch(JsonNode, String, MessageSink)} for a caller
+     * authenticated with a token: tools/list and tools/call only see the tools
+     * the grant allows. A null grant is unrestricted.
+     */
+    public CompletableFuture<McpJsonRpcMessage> dispatch(JsonNode message, String scope, TokenGrant grant,
+            MessageSink sink) {
+        if (message == null || !message.isObject() || !message.hasNonNull("method")) {
+            if (!expectsResponse(message)) {
+                // Respuesta del cliente a un request del servidor: no enviamos ninguno
+                return CompletableFuture.completedFuture(null);
+            }
+            JsonNode id = message != null ? message.get("id") : null;
+            return CompletableFuture.completedFuture(McpJsonRpcMessage.error(id, -32600, "Invalid Request"));
+        }
+        JsonNode id = message.get("id");
+        String method = message.get("method").asText();
+        JsonNode params = message.path("params");
+
+        try {
+            switch (method) {
+                case "initialize":
+                    return CompletableFuture.completedFuture(McpJsonRpcMessage.result(id, initialize(params)));
+                case "ping":
+                    return CompletableFuture.completedFuture(McpJsonRpcMessage.result(id, Map.of()));
+                case "tools/list":
+                    // El resultado ya está serializado en el snapshot del catálogo
+                    String toolsJson = toolCatalogService.current(grant).resultJson();
+                    return CompletableFuture.completedFuture(McpJsonRpcMessage.result(id, new RawValue(toolsJson)));
+                case "tools/call":
+                    return callTool(id, params, scope, grant, sink);
+                case "notifications/cancelled":
+                    cancel(scope, params.get("requestId"), grant);
+                    return CompletableFuture.completedFuture(null);
+                default:
+                    if (method.startsWith("notifications/")) {
+                        // notifications/initialized y demás: no requieren acción
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return CompletableFuture.completedFuture(
+                            McpJsonRpcMessage.error(id, -32601, "Method not found: " + method));
+            }
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                    McpJsonRpcMessage.error(id, -32602, "Invalid params: " + e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error handling MCP method {}", method, e);
+            return CompletableFuture.completedFuture(
+                    McpJsonRpcMessage.error(id, -32603, "Internal error: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Cancels an in-flight tools/call of the scope; unknown ids and calls
+     * started by another token are ignored.
+     */
+    public boolean cancel(String scope, JsonNode requestId, TokenGrant grant) {
+        if (requestId == null || requestId.isNull()) {
+            return false;
+        }
+        InFlightCall call = inFlight.get(inFlightKey(scope, requestId));
+        if (call == null) {
+            return false;
+        }
+        if (!Objects.equals(call.owner(), grant != null ? grant.id() : null)) {
+            log.warn("Ignoring cancellation of MCP request {} ({}): it belongs to another token", requestId, scope);
+            return false;
+        }
+        log.info("Cancelling in-flight MCP request {} ({})", requestId, scope);
+        return call.execution().cancel(true);
+    }
+
+    private Map<String, Object> initialize(JsonNode params) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("protocolVersion", PROTOCOL_VERSION);
+        result.put("capabilities", Map.of("tools", Map.of("listChanged", false)));
+        result.put("serverInfo", Map.of("name", SERVER_NAME, "version", serverVersion()));
+        log.info("MCP client initialized: {} (protocol {})",
+                params.path("clientInfo").path("name").asText("unknown"),
+                params.path("protocolVersion").asText("unknown"));
+        return result;
+    }
+
+    private CompletableFuture<McpJsonRpcMessage> callTool(JsonNode id, JsonNode params, String scope,
+            TokenGrant grant, MessageSink sink) {
+        String name = params.path("name").asText(null);
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("missing tool name");
+        }
+        if (grant != null && !grant.allows(name)) {
+            throw new IllegalArgumentException("tool " + name + " is not allowed for this token");
+        }
+        Map<String, Object> arguments = params.hasNonNull("arguments")
+                ? objectMapper.convertValue(params.get("arguments"), ARGUMENTS_TYPE)
+                : new HashMap<>();
+
+        JsonNode progressToken = params.path("_meta").get("progressToken");
+        ToolExecutionListener listener = progressToken == null
+                ? ToolExecutionListener.NONE
+                : stage -> sink.send(progressNotification(progressToken, stage));
+
+        // Se reserva el id antes de ejecutar: un id repetido no lanza nada
+        CompletableFuture<ToolExecuteResponse> execution = new CompletableFuture<>();
+        String key = id != null ? inFlightKey(scope, id) : null;
+        InFlightCall call = new InFlightCall(grant != null ? grant.id() : null, execution);
+        if (key != null && inFlight.putIfAbsent(key, call) != null) {
+            return CompletableFuture.completedFuture(McpJsonRpcMessage.error(id, -32600,
+                    "Invalid Request: request id " + id + " is already in flight"));
+        }
+
+        CompletableFuture<ToolExecuteResponse> upstream;
+        try {
+            upstream = toolExecutionService.executeApiToolAsync(
+                    new ToolExecuteRequest(name, arguments, null), logBatchProcessor::enqueueLog, listener);
+        } catch (RuntimeException e) {
+            if (key != null) {
+                inFlight.remove(key, call);
+            }
+            throw e;
+        }
+        upstream.whenComplete((result, ex) -> {
+            if (ex != null) {
+                execution.completeExceptionally(ex);
+            } else {
+                execution.complete(result);
+            }
+        });
+        execution.whenComplete((result, ex) -> {
+            if (execution.isCancelled()) {
+                upstream.cancel(true);
+            }
+        });
+
+        CompletableFuture<McpJsonRpcMessage> response = new CompletableFuture<>();
+        execution.whenComplete((result, ex) -> {
+            if (key != null) {
+                inFlight.remove(key, call);
+            }
+            if (ex != null) {
+                response.complete(McpJsonRpcMessage.error(id, -32603, "Request cancelled"));
+            } else {
+                response.complete(McpJsonRpcMessage.result(id, toToolCallResult(result)));
+            }
+        });
+        response.whenComplete((message, ex) -> {
+            if (response.isCancelled()) {
+                execution.cancel(true);
+            }
+        });
+        return response;
+    }
+
+    private McpJsonRpcMessage progressNotification(JsonNode progressToken, ToolExecutionStage stage) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("progressToken", progressToken);
+        params.put("progress", stage.ordinal() + 1);
+        params.put("total", ToolExecutionStage.values().length);
+        params.put("message", stage.name().toLowerCase());
+        return McpJsonRpcMessage.notification("notifications/progress", params);
+    }
+
+    /**
+     * Tool result as MCP content, split into text blocks of at most
+     * handsai.mcp.result-chunk-size characters. MCP has no partial tool
+     * results, so the blocks still travel in the one response message.
+     */
+    public McpToolCallResponse toToolCallResult(ToolExecuteResponse response) {
+        String text = response.success()
+                ? (response.result() != null ? response.result().toString() : "")
+                : (response.errorMessage() != null ? response.errorMessage() : "Error ejecutando herramienta");
+
+        int chunkSize = Math.max(1, mcpProperties.getResultChunkSize());
+        List<McpContent> content = new ArrayList<>(text.length() / chunkSize + 1);
+        if (text.length() <= chunkSize) {
+            content.add(McpContent.builder().type("text").text(text).build());
+        } else {
+            int start = 0;
+            while (start < text.length()) {
+                int end = Math.min(text.length(), start + chunkSize);
+                // No partir un par surrogate entre dos bloques
+                if (end < text.length() && end - start > 1 && Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end--;
+                }
+                content.add(McpContent.builder().type("text").text(text.substring(start, end)).build());
+                start = end;
+            }
+        }
+
+        return McpToolCallResponse.builder()
+                .content(content)
+                .isError(response.success() ? null : Boolean.TRUE)
+                .build();
+    }
+
+    private static String inFlightKey(String scope, JsonNode requestId) {
+        // JSON tal cual: los ids 1 y "1" son distintos
+        return scope + ":" + requestId.toString();
+    }
+
+    private String serverVersion() {
+        String version = getClass().getPackage().getImplementationVersion();
+        return version != null ? version : "dev";
+    }
+}
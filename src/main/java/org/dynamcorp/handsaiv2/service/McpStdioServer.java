@@ -0,0 +1,195 @@
+package org.dynamcorp.handsaiv2.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.ToolExecutionProperties;
+import org.dynamcorp.handsaiv2.dto.McpJsonRpcMessage;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * MCP over stdin/stdout, started with {@code --handsai.transport=stdio}: the
+ * MCP client launches HandsAI directly instead of going through the Go bridge
+ * and a loopback HTTP call.
+ * <p>
+ * Messages are newline-delimited JSON; each line is parsed with a streaming
+ * Jackson parser straight from the input bytes.
+ * Requests are pipelined: each one is dispatched as soon as it is read and
+ * its response is written when ready, so a slow tool does not hold back the
+ * ones behind it. stdout carries only protocol messages (logs are moved to
+ * stderr in {@link org.dynamcorp.handsaiv2.Handsai#main}). When stdin is
+ * closed the pending calls are allowed to finish and the application exits.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "handsai.transport", havingValue = "stdio")
+public class McpStdioServer {
+
+    private static final String SCOPE = "stdio";
+
+    private final McpJsonRpcDispatcher dispatcher;
+    private final ToolExecutionProperties toolExecutionProperties;
+    private final ObjectMapper objectMapper;
+    private final ConfigurableApplicationContext applicationContext;
+
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    private final Object writeLock = new Object();
+    private JsonGenerator generator;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Thread reader = new Thread(() -> {
+            // Descriptores reales: System.out ya apunta a stderr
+            serve(new FileInputStream(FileDescriptor.in), new FileOutputStream(FileDescriptor.out));
+            log.info("stdin closed, shutting down");
+            System.exit(SpringApplication.exit(applicationContext));
+        }, "mcp-stdio");
+        reader.start();
+        log.info("MCP stdio transport ready");
+    }
+
+    /**
+     * Reads messages until EOF and waits for the responses still pending.
+     */
+    public void serve(InputStream in, OutputStream out) {
+        try {
+            generator = objectMapper.getFactory().createGenerator(out);
+            InputStream input = new BufferedInputStream(in);
+            LineBuffer line = new LineBuffer();
+            while (line.readFrom(input)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                JsonNode message;
+                // Se parsea directo sobre los bytes de la línea, sin pasar por String
+                try (JsonParser parser = objectMapper.createParser(line.bytes, 0, line.length)) {
+                    message = parser.readValueAsTree();
+                } catch (JsonProcessingException e) {
+                    write(McpJsonRpcMessage.error(null, -32700, "Parse error: " + e.getOriginalMessage()));
+                    continue;
+                }
+                handle(message);
+            }
+        } catch (IOException e) {
+            log.error("MCP stdio transport failed", e);
+        }
+        awaitPending();
+    }
+
+    private void handle(JsonNode message) {
+        if (!message.isArray()) {
+            track(dispatcher.dispatch(message, SCOPE, this::write).thenAccept(reply -> {
+                if (reply != null) {
+                    write(reply);
+                }
+            }));
+            return;
+        }
+        if (message.isEmpty()) {
+            write(McpJsonRpcMessage.error(null, -32600, "Invalid Request: empty batch"));
+            return;
+        }
+        List<CompletableFuture<McpJsonRpcMessage>> responses = new ArrayList<>(message.size());
+        message.forEach(item -> responses.add(dispatcher.dispatch(item, SCOPE, this::write)));
+        track(CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).thenRun(() -> {
+            List<McpJsonRpcMessage> replies = responses.stream()
+                    .map(CompletableFuture::join)
+                    .filter(reply -> reply != null)
+                    .toList();
+            if (!replies.isEmpty()) {
+                write(replies);
+            }
+        }));
+    }
+
+    private void track(CompletableFuture<?> future) {
+        pending.add(future);
+        future.whenComplete((v, ex) -> {
+            pending.remove(future);
+            if (ex != null) {
+                log.error("Could not answer MCP stdio message", ex);
+            }
+        });
+    }
+
+    private void write(Object message) {
+        synchronized (writeLock) {
+            try {
+                objectMapper.writeValue(generator, message);
+                generator.writeRaw('\n');
+                generator.flush();
+            } catch (IOException e) {
+                log.error("Could not write MCP stdio message: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void awaitPending() {
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new))
+                    .get(toolExecutionProperties.getRequestTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            log.warn("{} MCP stdio requests still running at shutdown", pending.size());
+        } catch (Exception e) {
+            // Los errores de cada mensaje ya se registraron en track()
+        }
+    }
+
+    /** Reusable buffer for one newline-delimited message (MCP stdio messages never contain newlines). */
+    private static final class LineBuffer {
+        private byte[] bytes = new byte[8 * 1024];
+        private int length;
+
+        boolean readFrom(InputStream in) throws IOException {
+            length = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') {
+                    return true;
+                }
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, bytes.length * 2);
+                }
+                bytes[length++] = (byte) b;
+            }
+            return length > 0;
+        }
+
+        boolean isBlank() {
+            for (int i = 0; i < length; i++) {
+                if (!Character.isWhitespace(bytes[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
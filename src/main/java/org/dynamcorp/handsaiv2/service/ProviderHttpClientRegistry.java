@@ -0,0 +1,417 @@
+package org.dynamcorp.handsaiv2.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.HttpClientProperties;
+import org.dynamcorp.handsaiv2.dto.HttpClientPoolStatsResponse;
+import org.dynamcorp.handsaiv2.exception.ToolExecutionException;
+import org.dynamcorp.handsaiv2.jfr.JfrEvents;
+import org.dynamcorp.handsaiv2.jfr.UpstreamHttpEvent;
+import org.dynamcorp.handsaiv2.metrics.HandsAiMeters;
+import org.dynamcorp.handsaiv2.model.ApiProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.lang.NonNull;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.client.RestClient;
+
+import jakarta.annotation.PreDestroy;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one long-lived HTTP client per {@link ApiProvider} so upstream
+ * connections are pooled and kept alive between tool calls instead of building
+ * a new RestClient (and a new connection pool) on every invocation.
+ * <p>
+ * Clients are rebuilt only when the provider is evicted (provider update or
+ * delete, once committed), when its base URL no longer matches, or after being idle for
+ * {@code handsai.http.idle-timeout}.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ProviderHttpClientRegistry {
+
+    private final RestClient.Builder restClientBuilder;
+    private final HttpClientProperties properties;
+    private final HandsAiMeters meters;
+
+    private final Map<Long, PooledClient> clients = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the pooled client for the provider, with the provider base URL as
+     * its base. Absolute URIs (dynamic auth endpoints) can be used on the same
+     * client.
+     */
+    public RestClient clientFor(CachedProvider provider) {
+        if (provider.id() == null) {
+            // Unsaved provider (e.g. a preview): nothing to pool against
+            return buildClient(provider).restClient();
+        }
+
+        while (true) {
+            PooledClient pooled = clients.get(provider.id());
+            if (pooled == null || !pooled.matches(provider) || pooled.retired) {
+                pooled = clients.compute(provider.id(), (id, existing) -> {
+                    if (existing != null && existing.matches(provider) && !existing.retired) {
+                        return existing;
+                    }
+                    if (existing != null && existing.retire()) {
+                        log.info("Base URL changed for provider {}, rebuilding HTTP client", id);
+                        existing.close();
+                    }
+                    return buildClient(provider);
+                });
+            }
+            if (pooled.touch()) {
+                return pooled.restClient();
+            }
+            // El evictor lo retiró entre el get y el touch: se construye otro
+            clients.remove(provider.id(), pooled);
+        }
+    }
+
+    /**
+     * Drops the client of a provider so the next call rebuilds it with the
+     * current provider settings.
+     */
+    public void evict(Long providerId) {
+        if (providerId == null) {
+            return;
+        }
+        PooledClient removed = clients.remove(providerId);
+        // Retirado bajo el mismo lock que touch: ningún caller lo recibe ya cerrado
+        if (removed != null && removed.retire()) {
+            removed.close();
+            log.info("HTTP client for provider {} evicted", providerId);
+        }
+    }
+
+    /** Base URL, timeouts or pool overrides may have changed: rebuild once the change is committed. */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProviderChanged(ApiProviderChangedEvent event) {
+        evict(event.providerId());
+    }
+
+    public List<HttpClientPoolStatsResponse> getPoolStats() {
+        return clients.values().stream()
+                .map(PooledClient::stats)
+                .sorted(Comparator.comparing(HttpClientPoolStatsResponse::providerId))
+                .toList();
+    }
+
+    @Scheduled(fixedDelayString = "${handsai.http.eviction-interval-ms:60000}")
+    public void evictIdleClients() {
+        Instant cutoff = Instant.now().minus(properties.getIdleTimeout());
+        clients.forEach((id, pooled) -> {
+            // retireIfIdle y touch se excluyen: nadie recibe un cliente ya cerrado
+            if (pooled.retireIfIdle(cutoff)) {
+                clients.remove(id, pooled);
+                pooled.close();
+                log.info("HTTP client for provider {} closed after being idle since {}", id, pooled.lastUsedAt());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        clients.values().forEach(pooled -> {
+            if (pooled.retire()) {
+                pooled.close();
+            }
+        });
+        clients.clear();
+    }
+
+    private PooledClient buildClient(CachedProvider provider) {
+        HttpClientProperties.PoolSettings settings = properties.resolve(provider.code());
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(settings.http2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(settings.connectTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(settings.readTimeout());
+
+        PooledClient pooled = new PooledClient(provider.id(), provider.code(), provider.baseUrl(),
+                settings, httpClient, executor);
+
+        RestClient.Builder builder = restClientBuilder.clone()
+                .requestFactory(requestFactory)
+                .requestInterceptor(pooled.permitInterceptor());
+        if (provider.baseUrl() != null) {
+            builder.baseUrl(provider.baseUrl());
+        }
+        pooled.restClient = builder.build();
+
+        log.info("Created HTTP client for provider {} ({}), maxConnections={}, http2={}",
+                provider.id(), provider.baseUrl(), settings.maxConnections(), settings.http2());
+        return pooled;
+    }
+
+    private final class PooledClient {
+        private final Long providerId;
+        private final String providerCode;
+        private final String baseUrl;
+        private final HttpClientProperties.PoolSettings settings;
+        private final HttpClient httpClient;
+        private final ExecutorService executor;
+        private final Semaphore permits;
+        private final Instant createdAt = Instant.now();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong totalRequests = new AtomicLong();
+        private final AtomicLong rejectedRequests = new AtomicLong();
+        private volatile Instant lastUsedAt = createdAt;
+        // Lo marca el evictor bajo el lock del cliente; un cliente retirado no se vuelve a entregar
+        private volatile boolean retired;
+        private RestClient restClient;
+
+        private PooledClient(Long providerId, String providerCode, String baseUrl,
+                HttpClientProperties.PoolSettings settings, HttpClient httpClient, ExecutorService executor) {
+            this.providerId = providerId;
+            this.providerCode = providerCode;
+            this.baseUrl = baseUrl;
+            this.settings = settings;
+            this.httpClient = httpClient;
+            this.executor = executor;
+            this.permits = new Semaphore(settings.maxConnections(), true);
+        }
+
+        private boolean matches(CachedProvider provider) {
+            return Objects.equals(baseUrl, provider.baseUrl());
+        }
+
+        private RestClient restClient() {
+            return restClient;
+        }
+
+        private Instant lastUsedAt() {
+            return lastUsedAt;
+        }
+
+        /** Marks the client as used; false if the evictor already retired it. */
+        private synchronized boolean touch() {
+            if (retired) {
+                return false;
+            }
+            lastUsedAt = Instant.now();
+            return true;
+        }
+
+        /** Retires the client for good; false if someone else already did. */
+        private synchronized boolean retire() {
+            if (retired) {
+                return false;
+            }
+            retired = true;
+            return true;
+        }
+
+        private synchronized boolean retireIfIdle(Instant cutoff) {
+            if (!retired && inFlight.get() == 0 && lastUsedAt.isBefore(cutoff)) {
+                retired = true;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Bounds concurrent requests to the provider. The slot is held until the
+         * response is closed, i.e. until its body has been fully consumed.
+         */
+        private ClientHttpRequestInterceptor permitInterceptor() {
+            return (request, body, execution) -> {
+                boolean acquired;
+                try {
+                    acquired = permits.tryAcquire(properties.getAcquireTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for a connection to provider " + providerId, e);
+                }
+                if (!acquired) {
+                    rejectedRequests.incrementAndGet();
+                    meters.recordUpstreamFailure(providerCode);
+                    throw new ToolExecutionException("Connection pool exhausted for provider " + providerId
+                            + " (maxConnections=" + settings.maxConnections() + ")");
+                }
+                inFlight.incrementAndGet();
+                totalRequests.incrementAndGet();
+                UpstreamHttpEvent event = new UpstreamHttpEvent();
+                event.providerId = JfrEvents.id(providerId);
+                event.method = request.getMethod().name();
+                event.requestBytes = body.length;
+                event.begin();
+                PermitReleasingResponse response;
+                try {
+                    response = new PermitReleasingResponse(execution.execute(request, body), event, this::release);
+                } catch (IOException | RuntimeException e) {
+                    meters.recordUpstreamFailure(providerCode);
+                    event.commit();
+                    release();
+                    throw e;
+                }
+                try {
+                    event.status = response.getStatusCode().value();
+                } catch (IOException | RuntimeException e) {
+                    // Sin status no llega al caller: se cierra aquí para no perder la conexión ni el permiso
+                    meters.recordUpstreamFailure(providerCode);
+                    response.close();
+                    throw e;
+                }
+                meters.recordUpstreamResponse(providerCode, event.status);
+                return response;
+            };
+        }
+
+        private void release() {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+
+        private HttpClientPoolStatsResponse stats() {
+            return new HttpClientPoolStatsResponse(
+                    providerId,
+                    providerCode,
+                    baseUrl,
+                    settings.http2() ? "HTTP_2" : "HTTP_1_1",
+                    settings.maxConnections(),
+                    inFlight.get(),
+                    permits.availablePermits(),
+                    totalRequests.get(),
+                    rejectedRequests.get(),
+                    settings.connectTimeout().toMillis(),
+                    settings.readTimeout().toMillis(),
+                    createdAt,
+                    lastUsedAt);
+        }
+
+        private void close() {
+            // shutdown() lets in-flight exchanges finish instead of blocking like close()
+            httpClient.shutdown();
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Delegating response that gives back the connection slot exactly once when
+     * closed, and then commits the exchange's {@link UpstreamHttpEvent}.
+     */
+    private static final class PermitReleasingResponse implements ClientHttpResponse {
+        private final ClientHttpResponse delegate;
+        private final UpstreamHttpEvent event;
+        private final Runnable onClose;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private CountingInputStream body;
+
+        private PermitReleasingResponse(ClientHttpResponse delegate, UpstreamHttpEvent event, Runnable onClose) {
+            this.delegate = delegate;
+            this.event = event;
+            this.onClose = onClose;
+        }
+
+        @Override
+        @NonNull
+        public HttpStatusCode getStatusCode() throws IOException {
+            return delegate.getStatusCode();
+        }
+
+        @Override
+        @NonNull
+        public String getStatusText() throws IOException {
+            return delegate.getStatusText();
+        }
+
+        @Override
+        @NonNull
+        public HttpHeaders getHeaders() {
+            return delegate.getHeaders();
+        }
+
+        @Override
+        @NonNull
+        public InputStream getBody() throws IOException {
+            // Solo se cuentan bytes si alguien graba el evento
+            if (!event.isEnabled()) {
+                return delegate.getBody();
+            }
+            if (body == null) {
+                body = new CountingInputStream(delegate.getBody());
+            }
+            return body;
+        }
+
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    onClose.run();
+                    if (event.shouldCommit()) {
+                        event.responseBytes = body != null ? body.count : 0;
+                        event.commit();
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.dynamcorp.handsaiv2.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.dynamcorp.handsaiv2.repository.ToolExecutionLogRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Folds the execution logs written before the rollup file existed into it, so
+ * the summary does not start from zero after an upgrade. Runs once; the store
+ * keeps the progress, so a restart halfway through picks up at the last chunk.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class RollupBackfill {
+
+    static final int CHUNK_SIZE = 500;
+
+    private final ToolRollupStore rollupStore;
+    private final ToolExecutionLogRepository logRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void run() {
+        rollupStore.pendingBackfill().ifPresent(backfill -> {
+            long lastLogId = backfill.lastLogId();
+            long total = 0;
+            Slice<ToolExecutionLog> chunk;
+            do {
+                chunk = logRepository.findByExecutedAtBeforeAndIdGreaterThanOrderByIdAsc(
+                        backfill.cutoff(), lastLogId, PageRequest.of(0, CHUNK_SIZE));
+                List<ToolExecutionLog> logs = chunk.getContent();
+                if (logs.isEmpty()) {
+                    break;
+                }
+                lastLogId = logs.get(logs.size() - 1).getId();
+                rollupStore.recordBackfill(logs, lastLogId);
+                total += logs.size();
+            } while (chunk.hasNext());
+            rollupStore.completeBackfill();
+            log.info("Backfilled execution rollups from {} existing logs", total);
+        });
+    }
+}
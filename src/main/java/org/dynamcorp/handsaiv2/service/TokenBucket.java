@@ -0,0 +1,47 @@
+package org.dynamcorp.handsaiv2.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket holding up to one second of permits. The whole state
+ * is a single "theoretical arrival time" (GCRA): each permit pushes it forward
+ * by 1/rate, and a request is rejected when that would put it more than the
+ * burst ahead of now. Acquiring is one CAS, with no refill thread.
+ */
+final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier clock;
+    private final AtomicLong theoreticalArrival;
+
+    TokenBucket(int permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(int permitsPerSecond, LongSupplier clock) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.burstNanos = intervalNanos * permitsPerSecond;
+        this.clock = clock;
+        this.theoreticalArrival = new AtomicLong(clock.getAsLong());
+    }
+
+    boolean tryAcquire() {
+        long now = clock.getAsLong();
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long next = Math.max(tat, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.dto.McpTool;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * What an authenticated access token may do, precomputed when the token is
+ * loaded: the allowed tool codes as a hash set plus prefix patterns, the
+ * request quota and the filtered tools/list view for the current catalog.
+ * TokenAuthFilter stores it in the request under {@link #REQUEST_ATTRIBUTE};
+ * a request without one (e.g. the stdio transport) is unrestricted.
+ */
+public final class TokenGrant {
+
+    public static final String REQUEST_ATTRIBUTE = "handsai.tokenGrant";
+
+    private final Long id;
+    private final String label;
+    private final boolean unrestricted;
+    private final Set<String> allowedCodes;
+    private final List<String> allowedPrefixes;
+    private final TokenBucket quota;
+    private final AtomicReference<Instant> pendingLastUsed = new AtomicReference<>();
+    private volatile ToolCatalogSnapshot catalogView;
+
+    TokenGrant(Long id, String label, String allowedTools, Integer requestsPerSecond) {
+        this.id = id;
+        this.label = label;
+        Set<String> codes = new HashSet<>();
+        List<String> prefixes = new ArrayList<>();
+        boolean all = allowedTools == null || allowedTools.isBlank();
+        if (!all) {
+            for (String entry : allowedTools.split(",")) {
+                String pattern = entry.trim();
+                if (pattern.equals("*")) {
+                    all = true;
+                } else if (pattern.endsWith("*")) {
+                    prefixes.add(pattern.substring(0, pattern.length() - 1));
+                } else if (!pattern.isEmpty()) {
+                    codes.add(pattern);
+                }
+            }
+        }
+        this.unrestricted = all;
+        this.allowedCodes = Set.copyOf(codes);
+        this.allowedPrefixes = List.copyOf(prefixes);
+        this.quota = requestsPerSecond != null && requestsPerSecond > 0 ? new TokenBucket(requestsPerSecond) : null;
+    }
+
+    public Long id() {
+        return id;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    public boolean isUnrestricted() {
+        return unrestricted;
+    }
+
+    public boolean allows(String toolCode) {
+        if (unrestricted) {
+            return true;
+        }
+        if (toolCode == null) {
+            return false;
+        }
+        if (allowedCodes.contains(toolCode)) {
+            return true;
+        }
+        for (String prefix : allowedPrefixes) {
+            if (toolCode.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Takes one request from the token's quota; always true without a quota. */
+    public boolean tryAcquire() {
+        return quota == null || quota.tryAcquire();
+    }
+
+    /** Bit i is set when the i-th tool of the list is allowed. */
+    BitSet allowedIn(List<McpTool> tools) {
+        BitSet allowed = new BitSet(tools.size());
+        for (int i = 0; i < tools.size(); i++) {
+            if (allows(tools.get(i).name())) {
+                allowed.set(i);
+            }
+        }
+        return allowed;
+    }
+
+    AtomicReference<Instant> pendingLastUsed() {
+        return pendingLastUsed;
+    }
+
+    ToolCatalogSnapshot catalogView() {
+        return catalogView;
+    }
+
+    void catalogView(ToolCatalogSnapshot view) {
+        this.catalogView = view;
+    }
+}
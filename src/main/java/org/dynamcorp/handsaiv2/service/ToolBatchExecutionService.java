@@ -0,0 +1,166 @@
+package org.dynamcorp.handsaiv2.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.ToolExecutionProperties;
+import org.dynamcorp.handsaiv2.dto.ToolExecuteRequest;
+import org.dynamcorp.handsaiv2.dto.ToolExecuteResponse;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the calls of a JSON-RPC batch concurrently on virtual threads, bounded
+ * by {@code handsai.execution.batch.max-parallelism} for the whole batch and
+ * {@code max-parallelism-per-provider} for calls hitting the same provider.
+ * The execution logs of the batch are enqueued together once every call has
+ * finished; logs of calls that finish later (a cancelled batch) are enqueued
+ * one by one as they arrive.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ToolBatchExecutionService {
+
+    private static final String NATIVE_TOOLS_KEY = "native";
+
+    private final ToolExecutionService toolExecutionService;
+    private final ToolCacheManager toolCacheManager;
+    private final LogBatchProcessor logBatchProcessor;
+    private final ToolExecutionProperties toolExecutionProperties;
+    private final Executor taskExecutor;
+
+    /**
+     * @return the responses in the same order as the requests. Cancelling the
+     *         returned future cancels every call still running.
+     */
+    public CompletableFuture<List<ToolExecuteResponse>> executeBatch(List<ToolExecuteRequest> requests) {
+        ToolExecutionProperties.Batch limits = toolExecutionProperties.getBatch();
+        if (requests.size() > limits.getMaxSize()) {
+            throw new IllegalArgumentException("Batch too large: " + requests.size()
+                    + " calls (max " + limits.getMaxSize() + ")");
+        }
+        log.info("Executing batch of {} tool calls", requests.size());
+
+        Semaphore batchPermits = new Semaphore(limits.getMaxParallelism());
+        Map<Object, Semaphore> providerPermits = new ConcurrentHashMap<>();
+        BatchLogSink logs = new BatchLogSink(logBatchProcessor);
+        Queue<CompletableFuture<ToolExecuteResponse>> started = new ConcurrentLinkedQueue<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        List<CompletableFuture<ToolExecuteResponse>> calls = new ArrayList<>(requests.size());
+        for (ToolExecuteRequest request : requests) {
+            Semaphore providerLimit = providerPermits.computeIfAbsent(providerKey(request),
+                    key -> new Semaphore(limits.getMaxParallelismPerProvider()));
+            calls.add(CompletableFuture.supplyAsync(
+                    () -> runLimited(request, batchPermits, providerLimit, logs, started, cancelled),
+                    taskExecutor));
+        }
+
+        CompletableFuture<List<ToolExecuteResponse>> batch = CompletableFuture
+                .allOf(calls.toArray(CompletableFuture[]::new))
+                .thenApply(v -> calls.stream().map(CompletableFuture::join).toList());
+
+        CompletableFuture<List<ToolExecuteResponse>> result = new CompletableFuture<>();
+        batch.whenComplete((responses, ex) -> {
+            logs.flush();
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(responses);
+            }
+        });
+        result.whenComplete((responses, ex) -> {
+            if (result.isCancelled() && cancelled.compareAndSet(false, true)) {
+                started.forEach(call -> call.cancel(true));
+            }
+        });
+        return result;
+    }
+
+    private ToolExecuteResponse runLimited(ToolExecuteRequest request, Semaphore batchPermits,
+            Semaphore providerLimit, BatchLogSink logs,
+            Queue<CompletableFuture<ToolExecuteResponse>> started, AtomicBoolean cancelled) {
+        // Siempre batch → provider, en el mismo orden, para no bloquearse entre llamadas
+        batchPermits.acquireUninterruptibly();
+        try {
+            providerLimit.acquireUninterruptibly();
+            try {
+                if (cancelled.get()) {
+                    return new ToolExecuteResponse(false, null, 0L, "api_tool", "Batch cancelled");
+                }
+                CompletableFuture<ToolExecuteResponse> call = toolExecutionService.executeApiToolAsync(request,
+                        logs::add);
+                started.add(call);
+                if (cancelled.get()) {
+                    call.cancel(true);
+                }
+                return call.join();
+            } finally {
+                providerLimit.release();
+            }
+        } finally {
+            batchPermits.release();
+        }
+    }
+
+    /**
+     * Collects the logs of the batch until {@link #flush()}; after that (calls
+     * still winding down after a cancel) each log goes straight to the
+     * processor so none is lost.
+     */
+    private static final class BatchLogSink {
+        private final LogBatchProcessor logBatchProcessor;
+        private final List<ToolExecutionLog> pending = new ArrayList<>();
+        private boolean flushed;
+
+        private BatchLogSink(LogBatchProcessor logBatchProcessor) {
+            this.logBatchProcessor = logBatchProcessor;
+        }
+
+        private void add(ToolExecutionLog entry) {
+            synchronized (this) {
+                if (!flushed) {
+                    pending.add(entry);
+                    return;
+                }
+            }
+            logBatchProcessor.enqueueLog(entry);
+        }
+
+        private void flush() {
+            List<ToolExecutionLog> batch;
+            synchronized (this) {
+                flushed = true;
+                batch = new ArrayList<>(pending);
+                pending.clear();
+            }
+            if (!batch.isEmpty()) {
+                logBatchProcessor.enqueueLogs(batch);
+            }
+        }
+    }
+
+    private Object providerKey(ToolExecuteRequest request) {
+        if (request.toolName() == null) {
+            return NATIVE_TOOLS_KEY;
+        }
+        if (request.toolName().startsWith("handsai_")) {
+            return NATIVE_TOOLS_KEY;
+        }
+        // Las tools que no están en caché se agrupan por nombre: no se conoce su provider
+        return toolCacheManager.getCachedTool(request.toolName())
+                .<Object>map(tool -> tool.provider().id())
+                .orElse(request.toolName());
+    }
+}
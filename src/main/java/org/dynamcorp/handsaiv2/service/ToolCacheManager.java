@@ -1,65 +1,191 @@
 package org.dynamcorp.handsaiv2.service;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+import org.dynamcorp.handsaiv2.jfr.CacheRefreshEvent;
+import org.dynamcorp.handsaiv2.jfr.JfrEvents;
 import org.dynamcorp.handsaiv2.model.ApiTool;
 import org.dynamcorp.handsaiv2.repository.ApiToolRepository;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
 
 import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * In-memory catalog of the enabled, healthy tools, held as immutable
+ * {@link CachedTool} snapshots built from the entities when they are loaded.
+ * <p>
+ * The map is copy-on-write: every change builds a new immutable map and swaps
+ * it in one volatile write, so readers never lock and never see a partially
+ * updated (or empty) cache. Admin writes publish {@link ApiToolChangedEvent} /
+ * {@link ApiProviderChangedEvent}; once their transaction commits only the
+ * affected tool or provider is reloaded.
+ */
 @Component
 @Slf4j
 @RequiredArgsConstructor
 public class ToolCacheManager {
 
     private final ApiToolRepository apiToolRepository;
+    private final ToolExecutionPlanCompiler planCompiler;
 
-    private final ConcurrentHashMap<String, ApiTool> toolCache = new ConcurrentHashMap<>();
+    private volatile Map<String, CachedTool> toolCache = Map.of();
+    private final ConcurrentHashMap<String, ToolExecutionPlan> planCache = new ConcurrentHashMap<>();
+    // Se incrementa en cada cambio del catálogo; ToolCatalogService la usa para saber cuándo reconstruir
+    private final AtomicLong version = new AtomicLong();
 
     @PostConstruct
     public void initCache() {
         log.info("Initializing tool cache");
+        CacheRefreshEvent event = new CacheRefreshEvent();
+        event.begin();
         List<ApiTool> activeTools = apiToolRepository.findAllEnabled();
-        activeTools.forEach(tool -> toolCache.put(tool.getCode(), tool));
+        replaceAll(activeTools);
+        commit(event, "FULL", null, activeTools.size());
         log.info("Tool cache initialized with {} tools", activeTools.size());
     }
 
-    public List<ApiTool> getAllCachedTools() {
-        return toolCache.values().stream()
-                .filter(tool -> tool.isEnabled() && tool.isHealthy())
-                .toList();
+    public List<CachedTool> getAllCachedTools() {
+        return List.copyOf(toolCache.values());
     }
 
-    public Optional<ApiTool> getCachedTool(String toolCode) {
-        return Optional.ofNullable(toolCache.get(toolCode))
-                .filter(tool -> tool.isEnabled() && tool.isHealthy());
+    /** Monotonically increasing catalog version, bumped on every cache change. */
+    public long getVersion() {
+        return version.get();
+    }
+
+    public Optional<CachedTool> getCachedTool(String toolCode) {
+        // Solo entran tools habilitadas y saludables: no hace falta volver a filtrar
+        return Optional.ofNullable(toolCache.get(toolCode));
+    }
+
+    /**
+     * Returns the precompiled execution plan for the tool, compiling it on first
+     * use or when the tool/provider has been updated since it was built.
+     */
+    public ToolExecutionPlan getExecutionPlan(CachedTool tool) {
+        ToolExecutionPlan plan = planCache.get(tool.code());
+        if (plan != null && plan.isCurrentFor(tool.updatedAt(), tool.provider().updatedAt())) {
+            return plan;
+        }
+        plan = planCompiler.compile(tool);
+        planCache.put(tool.code(), plan);
+        log.debug("Execution plan compiled for tool {}", tool.code());
+        return plan;
     }
 
     public void addOrUpdateTool(ApiTool tool) {
         if (tool.isEnabled() && tool.isHealthy()) {
-            toolCache.put(tool.getCode(), tool);
+            CachedTool cached = CachedTool.from(tool);
+            update(tools -> tools.put(cached.code(), cached));
             log.info("Tool {} added/updated in cache", tool.getCode());
         } else {
-            toolCache.remove(tool.getCode());
+            update(tools -> tools.remove(tool.getCode()));
             log.info("Tool {} removed from cache due to disabled state or unhealthy status", tool.getCode());
         }
+        planCache.remove(tool.getCode());
     }
 
     public void removeTool(String toolCode) {
-        toolCache.remove(toolCode);
+        update(tools -> tools.remove(toolCode));
+        planCache.remove(toolCode);
         log.info("Tool {} removed from cache", toolCode);
     }
 
     public int refreshCache() {
+        CacheRefreshEvent event = new CacheRefreshEvent();
+        event.begin();
         List<ApiTool> tools = apiToolRepository.findAllEnabled();
-        toolCache.clear();
-        tools.forEach(tool -> toolCache.put(tool.getCode(), tool));
+        replaceAll(tools);
+        commit(event, "FULL", null, tools.size());
         log.info("Cache refreshed with {} tools", tools.size());
         return tools.size();
     }
+
+    /**
+     * Reloads a single tool after its transaction commits (or right away when
+     * published outside a transaction). A tool that no longer exists, or is
+     * disabled, leaves the cache.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onToolChanged(ApiToolChangedEvent event) {
+        CacheRefreshEvent refresh = new CacheRefreshEvent();
+        refresh.begin();
+        if (event.previousCode() != null && !event.previousCode().equals(event.code())) {
+            removeTool(event.previousCode());
+        }
+        Optional<ApiTool> tool = apiToolRepository.findByCode(event.code());
+        tool.ifPresentOrElse(this::addOrUpdateTool, () -> removeTool(event.code()));
+        commit(refresh, "TOOL", null, tool.isPresent() ? 1 : 0);
+    }
+
+    /**
+     * Reloads the tools of one provider: its base URL, auth or headers feed every
+     * cached tool and plan, and tools removed with it must leave the cache.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public void onProviderChanged(ApiProviderChangedEvent event) {
+        CacheRefreshEvent refresh = new CacheRefreshEvent();
+        refresh.begin();
+        List<ApiTool> providerTools = apiToolRepository.findAllEnabledByProviderId(event.providerId());
+        Set<String> affected = new HashSet<>();
+        update(tools -> {
+            // Tools sin provider (datos viejos o a medio importar) no pertenecen a ninguno
+            tools.values().removeIf(tool -> tool.provider() != null
+                    && event.providerId().equals(tool.provider().id())
+                    && affected.add(tool.code()));
+            providerTools.stream()
+                    .filter(tool -> tool.isHealthy())
+                    .map(CachedTool::from)
+                    .forEach(tool -> {
+                        tools.put(tool.code(), tool);
+                        affected.add(tool.code());
+                    });
+        });
+        planCache.keySet().removeAll(affected);
+        commit(refresh, "PROVIDER", event.providerId(), providerTools.size());
+        log.info("Provider {} reloaded in cache with {} tools", event.providerId(), providerTools.size());
+    }
+
+    private static void commit(CacheRefreshEvent event, String scope, Long providerId, int tools) {
+        if (event.shouldCommit()) {
+            event.scope = scope;
+            event.providerId = JfrEvents.id(providerId);
+            event.tools = tools;
+            event.commit();
+        }
+    }
+
+    private synchronized void update(Consumer<Map<String, CachedTool>> change) {
+        Map<String, CachedTool> copy = new HashMap<>(toolCache);
+        change.accept(copy);
+        toolCache = Map.copyOf(copy);
+        version.incrementAndGet();
+    }
+
+    private synchronized void replaceAll(List<ApiTool> tools) {
+        Map<String, CachedTool> fresh = new HashMap<>();
+        tools.stream()
+                .filter(tool -> tool.isHealthy())
+                .map(CachedTool::from)
+                .forEach(tool -> fresh.put(tool.code(), tool));
+        toolCache = Map.copyOf(fresh);
+        planCache.clear();
+        version.incrementAndGet();
+    }
 }
@@ -0,0 +1,115 @@
+package org.dynamcorp.handsaiv2.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.dto.McpResponse;
+import org.dynamcorp.handsaiv2.dto.McpTool;
+import org.dynamcorp.handsaiv2.dto.McpToolsListResponse;
+import org.dynamcorp.handsaiv2.dto.ToolDefinition;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Keeps the tools/list answer precomputed. The snapshot is rebuilt only when
+ * the {@link ToolCacheManager} version moves (a tool or provider changed);
+ * every other poll returns the same serialized bytes.
+ * <p>
+ * Scoped tokens get their own filtered view, built from the same snapshot and
+ * kept on the {@link TokenGrant} until the catalog version moves again.
+ */
+@Service
+@Slf4j
+@RequiredArgsConstructor
+public class ToolCatalogService {
+
+    private final ToolCacheManager toolCacheManager;
+    private final ToolDiscoveryService toolDiscoveryService;
+    private final ObjectMapper objectMapper;
+
+    private volatile ToolCatalogSnapshot snapshot;
+
+    public ToolCatalogSnapshot current() {
+        ToolCatalogSnapshot current = snapshot;
+        if (current != null && current.version() == toolCacheManager.getVersion()) {
+            return current;
+        }
+        return rebuild();
+    }
+
+    /** Catalog as seen by the token; null or unrestricted grants see everything. */
+    public ToolCatalogSnapshot current(TokenGrant grant) {
+        ToolCatalogSnapshot catalog = current();
+        if (grant == null || grant.isUnrestricted()) {
+            return catalog;
+        }
+        ToolCatalogSnapshot view = grant.catalogView();
+        if (view != null && view.version() == catalog.version()) {
+            return view;
+        }
+        List<McpTool> all = catalog.toolsList().tools();
+        BitSet allowed = grant.allowedIn(all);
+        List<McpTool> tools = allowed.stream().mapToObj(all::get).toList();
+        view = snapshot(catalog.version(), tools);
+        grant.catalogView(view);
+        return view;
+    }
+
+    private synchronized ToolCatalogSnapshot rebuild() {
+        // Se lee la versión antes de armar la lista: si cambia en el medio, el
+        // próximo current() vuelve a reconstruir
+        long version = toolCacheManager.getVersion();
+        ToolCatalogSnapshot current = snapshot;
+        if (current != null && current.version() == version) {
+            return current;
+        }
+
+        List<McpTool> tools = toolDiscoveryService.discoverTools().tools().stream()
+                .map(this::convertToMcpTool)
+                .toList();
+        current = snapshot(version, tools);
+        snapshot = current;
+        log.info("Tool catalog snapshot v{} built with {} tools", version, tools.size());
+        return current;
+    }
+
+    private ToolCatalogSnapshot snapshot(long version, List<McpTool> tools) {
+        McpToolsListResponse toolsList = McpToolsListResponse.builder()
+                .tools(tools)
+                .build();
+        try {
+            String resultJson = objectMapper.writeValueAsString(toolsList);
+            byte[] responseBytes = objectMapper.writeValueAsBytes(McpResponse.<McpToolsListResponse>builder()
+                    .jsonrpc("2.0")
+                    .result(toolsList)
+                    .build());
+            return new ToolCatalogSnapshot(version, toolsList, resultJson, responseBytes, etag(responseBytes));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize tool catalog", e);
+        }
+    }
+
+    private McpTool convertToMcpTool(ToolDefinition toolDef) {
+        return McpTool.builder()
+                .name(toolDef.name())
+                .description(toolDef.description())
+                .inputSchema(toolDef.parameters())
+                .build();
+    }
+
+    private static String etag(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.dto.McpToolsListResponse;
+
+/**
+ * Immutable view of the tool catalog at a given {@link ToolCacheManager}
+ * version, with the tools/list answer already serialized.
+ *
+ * @param version         cache version the snapshot was built from
+ * @param toolsList       tools/list result
+ * @param resultJson      tools/list result as JSON, embedded as-is in JSON-RPC
+ *                        responses
+ * @param responseBytes   UTF-8 body of GET /mcp/tools/list (result wrapped in
+ *                        the JSON-RPC envelope)
+ * @param etag            strong ETag derived from the content, so it stays
+ *                        valid across restarts
+ */
+public record ToolCatalogSnapshot(
+        long version,
+        McpToolsListResponse toolsList,
+        String resultJson,
+        byte[] responseBytes,
+        String etag) {
+}
@@ -6,7 +6,6 @@ import java.util.stream.Collectors;
 
 import org.dynamcorp.handsaiv2.dto.ToolDefinition;
 import org.dynamcorp.handsaiv2.dto.ToolDiscoveryResponse;
-import org.dynamcorp.handsaiv2.model.ApiTool;
 import org.dynamcorp.handsaiv2.repository.ApiToolRepository;
 import org.springframework.stereotype.Service;
 
@@ -21,15 +20,20 @@ public class ToolDiscoveryService {
         private final ToolCacheManager toolCacheManager;
         private final ApiToolRepository apiToolRepository;
 
+        // Las tools nativas no cambian: se arman una sola vez
+        private final List<ToolDefinition> nativeMemoryTools = getNativeMemoryTools();
+
         public ToolDiscoveryResponse discoverTools() {
                 log.info("Discovering available tools");
 
                 try {
-                        List<ApiTool> tools = toolCacheManager.getAllCachedTools();
+                        List<CachedTool> tools = toolCacheManager.getAllCachedTools();
 
                         if (tools.isEmpty()) {
                                 log.info("No tools available in cache, fetching from database");
-                                tools = apiToolRepository.findAllEnabled();
+                                tools = apiToolRepository.findAllEnabled().stream()
+                                                .map(CachedTool::from)
+                                                .toList();
                                 log.info("Discovered {} tools from database", tools.size());
                         }
 
@@ -38,7 +42,7 @@ public class ToolDiscoveryService {
                                         .collect(Collectors.toList());
 
                         // --- Inject Native Memory Engine Tools ---
-                        toolDefinitions.addAll(getNativeMemoryTools());
+                        toolDefinitions.addAll(nativeMemoryTools);
 
                         log.info("Discovered {} total tools (including native system tools)", toolDefinitions.size());
                         return new ToolDiscoveryResponse(
@@ -0,0 +1,15 @@
+package org.dynamcorp.handsaiv2.service;
+
+/**
+ * Observes the stages of one tool execution (e.g. to send MCP progress
+ * notifications). Called on the thread that runs the stage, so implementations
+ * must be quick and thread-safe.
+ */
+@FunctionalInterface
+public interface ToolExecutionListener {
+
+    ToolExecutionListener NONE = stage -> {
+    };
+
+    void onStageStarted(ToolExecutionStage stage);
+}
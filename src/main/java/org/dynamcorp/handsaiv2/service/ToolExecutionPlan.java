@@ -0,0 +1,187 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.util.BodyTemplate;
+import org.springframework.http.HttpMethod;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable, precompiled view of an {@link org.dynamcorp.handsaiv2.model.ApiTool}
+ * holding everything that only changes when the tool or its provider changes:
+ * the split endpoint path, how parameters are routed (path / query / body),
+ * the compiled body template and the lower-cased invalidation keywords. Built
+ * by {@link ToolExecutionPlanCompiler} and cached in {@link ToolCacheManager};
+ * the hot path only binds call arguments.
+ * <p>
+ * The static credential and custom header values stay encrypted in the plan
+ * and are decrypted through {@link EncryptionService} on each call, so a
+ * plaintext secret lives no longer than the encryption cache's TTL.
+ */
+public record ToolExecutionPlan(
+        String toolCode,
+        Instant toolUpdatedAt,
+        Instant providerUpdatedAt,
+        HttpMethod httpMethod,
+        List<PathSegment> pathSegments,
+        Set<String> pathParamNames,
+        AuthPlacement auth,
+        String encryptedStaticToken,
+        Map<String, String> encryptedHeaders,
+        Set<String> arrayParamNames,
+        BodyTemplate bodyTemplate,
+        BodyTemplate.MissingPlaceholderPolicy missingPlaceholderPolicy,
+        boolean dynamicAuth,
+        List<String> invalidationKeywords) {
+
+    public enum AuthLocation {
+        NONE,
+        HEADER,
+        QUERY,
+        BODY
+    }
+
+    /**
+     * Where the credential goes. For HEADER, {@code name} is the header name and
+     * {@code valuePrefix} is prepended to the token ("Bearer ", "Basic ").
+     */
+    public record AuthPlacement(AuthLocation location, String name, String valuePrefix) {
+        public static final AuthPlacement NONE = new AuthPlacement(AuthLocation.NONE, null, "");
+    }
+
+    /** Either a literal chunk of the endpoint path or a {param} placeholder. */
+    public record PathSegment(String literal, String paramName) {
+        public boolean isParam() {
+            return paramName != null;
+        }
+    }
+
+    public boolean isCurrentFor(Instant toolUpdatedAt, Instant providerUpdatedAt) {
+        return Objects.equals(this.toolUpdatedAt, toolUpdatedAt)
+                && Objects.equals(this.providerUpdatedAt, providerUpdatedAt);
+    }
+
+    public boolean hasBody() {
+        return httpMethod != HttpMethod.GET && httpMethod != HttpMethod.DELETE;
+    }
+
+    /** The dynamic token if there is one, else the decrypted static credential (or null). */
+    public String effectiveToken(String dynamicToken, EncryptionService encryption) {
+        if (dynamicToken != null) {
+            return dynamicToken;
+        }
+        return encryptedStaticToken != null ? encryption.decrypt(encryptedStaticToken) : null;
+    }
+
+    /** Custom headers with their values decrypted; blank values are sent as stored. */
+    public Map<String, String> headers(EncryptionService encryption) {
+        if (encryptedHeaders.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> headers = new LinkedHashMap<>(encryptedHeaders.size() * 2);
+        encryptedHeaders.forEach((name, value) -> headers.put(name,
+                value != null && !value.isBlank() ? encryption.decrypt(value) : value));
+        return headers;
+    }
+
+    /**
+     * Resolves {param} placeholders and appends the query string. On GET/DELETE
+     * every non-path parameter goes to the query; on other verbs only when the
+     * API key itself travels as a query parameter.
+     */
+    public String bindUri(Map<String, Object> parameters, String token) {
+        String queryKeyName = auth.location() == AuthLocation.QUERY ? auth.name() : null;
+        boolean injectQueryKey = queryKeyName != null && token != null;
+
+        StringBuilder uri = new StringBuilder(64);
+        for (PathSegment segment : pathSegments) {
+            if (!segment.isParam()) {
+                uri.append(segment.literal());
+                continue;
+            }
+            Object value = injectQueryKey && segment.paramName().equals(queryKeyName)
+                    ? token
+                    : parameters.get(segment.paramName());
+            if (value != null) {
+                uri.append(value);
+            } else {
+                uri.append('{').append(segment.paramName()).append('}');
+            }
+        }
+
+        boolean hasQueryParams = injectQueryKey && !pathParamNames.contains(queryKeyName);
+        if (!hasQueryParams) {
+            for (String name : parameters.keySet()) {
+                if (!pathParamNames.contains(name)) {
+                    hasQueryParams = true;
+                    break;
+                }
+            }
+        }
+        if (!hasQueryParams) {
+            return uri.toString();
+        }
+
+        boolean appendAll = httpMethod == HttpMethod.GET || httpMethod == HttpMethod.DELETE;
+        boolean keyInQuery = queryKeyName != null && !pathParamNames.contains(queryKeyName)
+                && (injectQueryKey || parameters.containsKey(queryKeyName));
+        if (!appendAll && !keyInQuery) {
+            return uri.toString();
+        }
+
+        int queryStart = uri.indexOf("?");
+        if (queryStart >= 0) {
+            char last = uri.charAt(uri.length() - 1);
+            if (last != '?' && last != '&') {
+                uri.append('&');
+            }
+        } else {
+            uri.append('?');
+        }
+        for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+            String name = entry.getKey();
+            if (pathParamNames.contains(name) || (injectQueryKey && name.equals(queryKeyName))) {
+                continue;
+            }
+            uri.append(name).append('=').append(entry.getValue()).append('&');
+        }
+        if (injectQueryKey && !pathParamNames.contains(queryKeyName)) {
+            uri.append(queryKeyName).append('=').append(token).append('&');
+        }
+        uri.setLength(uri.length() - 1);
+        return uri.toString();
+    }
+
+    /**
+     * Body parameters: everything except path parameters and a query-placed API
+     * key, plus the API key itself when it is configured IN_BODY.
+     */
+    public Map<String, Object> bindBody(Map<String, Object> parameters, String token) {
+        Map<String, Object> body = new HashMap<>(parameters);
+        for (String pathParam : pathParamNames) {
+            body.remove(pathParam);
+        }
+        if (auth.location() == AuthLocation.QUERY) {
+            body.remove(auth.name());
+        } else if (auth.location() == AuthLocation.BODY && token != null) {
+            // Siempre forzamos el put para que pise cualquier valor dummy enviado
+            body.put(auth.name(), token);
+        }
+        return body;
+    }
+
+    /** @param lowerCaseText text already lower-cased by the caller */
+    public boolean containsInvalidationKeyword(String lowerCaseText) {
+        for (String keyword : invalidationKeywords) {
+            if (lowerCaseText.contains(keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,221 @@
+package org.dynamcorp.handsaiv2.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.exception.ToolExecutionException;
+import org.dynamcorp.handsaiv2.model.ApiKeyLocationEnum;
+import org.dynamcorp.handsaiv2.model.ApiTool;
+import org.dynamcorp.handsaiv2.model.AuthenticationTypeEnum;
+import org.dynamcorp.handsaiv2.model.HttpMethodEnum;
+import org.dynamcorp.handsaiv2.model.ParameterType;
+import org.dynamcorp.handsaiv2.util.BodyTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds {@link ToolExecutionPlan}s. The path splitting and JSON parsing
+ * needed to call a tool happen here, once per tool version, instead of on
+ * every call. Credentials are copied still encrypted; the plan decrypts them
+ * per call through the caching {@link EncryptionService}.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ToolExecutionPlanCompiler {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${handsai.template.missing-placeholder-policy:KEEP}")
+    private BodyTemplate.MissingPlaceholderPolicy missingPlaceholderPolicy = BodyTemplate.MissingPlaceholderPolicy.KEEP;
+
+    public ToolExecutionPlan compile(CachedTool tool) {
+        CachedProvider provider = tool.provider();
+
+        List<ToolExecutionPlan.PathSegment> segments = new ArrayList<>();
+        Set<String> pathParamNames = new LinkedHashSet<>();
+        splitPath(tool.endpointPath(), segments, pathParamNames);
+
+        Set<String> arrayParamNames = new LinkedHashSet<>();
+        for (CachedParam param : tool.parameters()) {
+            if (param.type() == ParameterType.ARRAY) {
+                arrayParamNames.add(param.name());
+            }
+        }
+
+        return new ToolExecutionPlan(
+                tool.code(),
+                tool.updatedAt(),
+                provider.updatedAt(),
+                convertHttpMethod(tool.httpMethod()),
+                List.copyOf(segments),
+                Collections.unmodifiableSet(pathParamNames),
+                resolveAuthPlacement(provider),
+                provider.apiKeyValue(),
+                parseCustomHeaders(provider),
+                Collections.unmodifiableSet(arrayParamNames),
+                BodyTemplate.compile(tool.bodyPayloadTemplate()),
+                missingPlaceholderPolicy,
+                provider.dynamicAuth(),
+                splitKeywords(provider.dynamicAuthInvalidationKeywords()));
+    }
+
+    /**
+     * Placeholders in the tool's body template that no call can ever fill: not a
+     * tool parameter and not the provider's IN_BODY API key.
+     */
+    public Set<String> findUnknownPlaceholders(ApiTool apiTool) {
+        BodyTemplate template = BodyTemplate.compile(apiTool.getBodyPayloadTemplate());
+        if (template == null) {
+            return Set.of();
+        }
+        CachedTool tool = CachedTool.from(apiTool);
+        Set<String> known = new LinkedHashSet<>();
+        tool.parameters().forEach(param -> known.add(param.name()));
+        CachedProvider provider = tool.provider();
+        if (provider != null) {
+            ToolExecutionPlan.AuthPlacement auth = resolveAuthPlacement(provider);
+            if (auth.location() == ToolExecutionPlan.AuthLocation.BODY) {
+                known.add(auth.name());
+            }
+        }
+        Set<String> unknown = new LinkedHashSet<>(template.placeholderNames());
+        unknown.removeAll(known);
+        return unknown;
+    }
+
+    /**
+     * Splits "/users/{id}/posts" into literal and placeholder segments, the same
+     * shapes the old \{([^}]+)} matcher found.
+     */
+    static void splitPath(String path, List<ToolExecutionPlan.PathSegment> segments, Set<String> paramNames) {
+        if (path == null) {
+            return;
+        }
+        int literalStart = 0;
+        int i = 0;
+        while (i < path.length()) {
+            int open = path.indexOf('{', i);
+            if (open < 0) {
+                break;
+            }
+            int close = path.indexOf('}', open + 1);
+            if (close < 0) {
+                break;
+            }
+            if (close == open + 1) {
+                // "{}" is not a placeholder
+                i = close + 1;
+                continue;
+            }
+            if (open > literalStart) {
+                segments.add(new ToolExecutionPlan.PathSegment(path.substring(literalStart, open), null));
+            }
+            String name = path.substring(open + 1, close);
+            segments.add(new ToolExecutionPlan.PathSegment(null, name));
+            paramNames.add(name);
+            literalStart = close + 1;
+            i = literalStart;
+        }
+        if (literalStart < path.length()) {
+            segments.add(new ToolExecutionPlan.PathSegment(path.substring(literalStart), null));
+        }
+    }
+
+    private ToolExecutionPlan.AuthPlacement resolveAuthPlacement(CachedProvider provider) {
+        AuthenticationTypeEnum type = provider.authenticationType();
+        if (type == null) {
+            return ToolExecutionPlan.AuthPlacement.NONE;
+        }
+        switch (type) {
+            case API_KEY:
+                ApiKeyLocationEnum location = provider.apiKeyLocation();
+                if (location == ApiKeyLocationEnum.HEADER) {
+                    String headerName = provider.apiKeyName() != null ? provider.apiKeyName() : "X-API-Key";
+                    return new ToolExecutionPlan.AuthPlacement(ToolExecutionPlan.AuthLocation.HEADER, headerName, "");
+                }
+                if (provider.apiKeyName() == null) {
+                    return ToolExecutionPlan.AuthPlacement.NONE;
+                }
+                if (location == ApiKeyLocationEnum.QUERY_PARAMETER) {
+                    return new ToolExecutionPlan.AuthPlacement(ToolExecutionPlan.AuthLocation.QUERY,
+                            provider.apiKeyName(), "");
+                }
+                if (location == ApiKeyLocationEnum.IN_BODY) {
+                    return new ToolExecutionPlan.AuthPlacement(ToolExecutionPlan.AuthLocation.BODY,
+                            provider.apiKeyName(), "");
+                }
+                return ToolExecutionPlan.AuthPlacement.NONE;
+            case BEARER_TOKEN:
+                return new ToolExecutionPlan.AuthPlacement(ToolExecutionPlan.AuthLocation.HEADER,
+                        HttpHeaders.AUTHORIZATION, "Bearer ");
+            case BASIC_AUTH:
+                return new ToolExecutionPlan.AuthPlacement(ToolExecutionPlan.AuthLocation.HEADER,
+                        HttpHeaders.AUTHORIZATION, "Basic ");
+            default:
+                return ToolExecutionPlan.AuthPlacement.NONE;
+        }
+    }
+
+    private Map<String, String> parseCustomHeaders(CachedProvider provider) {
+        String customHeadersJson = provider.customHeadersJson();
+        if (customHeadersJson == null || customHeadersJson.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, String> headers = new LinkedHashMap<>();
+        try {
+            Map<String, String> stored = objectMapper.readValue(customHeadersJson,
+                    new TypeReference<Map<String, String>>() {
+                    });
+            headers.putAll(stored);
+        } catch (Exception e) {
+            log.warn("Failed to parse customHeadersJson for provider {}: {}", provider.id(), customHeadersJson, e);
+        }
+        return Collections.unmodifiableMap(headers);
+    }
+
+    private List<String> splitKeywords(String keywords) {
+        if (keywords == null || keywords.isBlank()) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>();
+        for (String keyword : keywords.toLowerCase().split(",")) {
+            String trimmed = keyword.trim();
+            if (!trimmed.isEmpty()) {
+                result.add(trimmed);
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    private HttpMethod convertHttpMethod(HttpMethodEnum methodEnum) {
+        if (methodEnum == null) {
+            throw new ToolExecutionException("Unsupported HTTP method: null");
+        }
+        switch (methodEnum) {
+            case GET:
+                return HttpMethod.GET;
+            case POST:
+                return HttpMethod.POST;
+            case PUT:
+                return HttpMethod.PUT;
+            case DELETE:
+                return HttpMethod.DELETE;
+            case PATCH:
+                return HttpMethod.PATCH;
+            default:
+                throw new ToolExecutionException("Unsupported HTTP method: " + methodEnum);
+        }
+    }
+}
@@ -3,14 +3,17 @@ package org.dynamcorp.handsaiv2.service;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.ToolExecutionProperties;
 import org.dynamcorp.handsaiv2.dto.ToolExecuteRequest;
 import org.dynamcorp.handsaiv2.dto.ToolExecuteResponse;
 import org.dynamcorp.handsaiv2.exception.ResourceNotFoundException;
 import org.dynamcorp.handsaiv2.exception.ToolExecutionException;
+import org.dynamcorp.handsaiv2.jfr.JfrEvents;
+import org.dynamcorp.handsaiv2.jfr.ToolExecutionEvent;
+import org.dynamcorp.handsaiv2.metrics.HandsAiMeters;
+import org.dynamcorp.handsaiv2.metrics.LatencyMetrics;
 import org.dynamcorp.handsaiv2.model.*;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
+import org.dynamcorp.handsaiv2.util.BodyTemplate;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
@@ -20,6 +23,17 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 import com.fasterxml.jackson.core.type.TypeReference;
 
 @Service
@@ -27,401 +41,457 @@ import com.fasterxml.jackson.core.type.TypeReference;
 @RequiredArgsConstructor
 public class ToolExecutionService {
 
+    // Tag de métricas para nombres que no resuelven a ninguna tool
+    private static final String UNKNOWN_TOOL = "unknown";
+
     private final ApiToolService apiToolService;
     private final ToolCacheManager toolCacheManager;
     private final LogBatchProcessor logBatchProcessor;
-    private final RestClient.Builder restClientBuilder;
+    private final ProviderHttpClientRegistry httpClientRegistry;
     private final ObjectMapper objectMapper;
-    private final EncryptionService encryptionService;
     private final org.dynamcorp.handsaiv2.util.LogObfuscator logObfuscator;
     private final DynamicTokenManager dynamicTokenManager;
     private final MemoryService memoryService;
     private final org.dynamcorp.handsaiv2.util.SecuritySanitizer securitySanitizer;
     private final org.dynamcorp.handsaiv2.util.DataEgressScrubber dataEgressScrubber;
+    private final ToolExecutionProperties toolExecutionProperties;
+    private final Executor taskExecutor;
+    private final LatencyMetrics latencyMetrics;
+    private final HandsAiMeters meters;
+    private final EncryptionService encryptionService;
 
+    /**
+     * Blocking variant, kept for callers that are already on their own thread.
+     */
     public ToolExecuteResponse executeApiTool(ToolExecuteRequest request) {
-        log.info("Executing tool: {}", request.toolName());
-        Instant startTime = Instant.now();
-        ToolExecutionLog executionLog = new ToolExecutionLog();
-        executionLog.setSessionId(request.sessionId());
-
-        // Intercept and recursively scrub LLM parameters before ANY tool execution to
-        // prevent Data Egress
-        Map<String, Object> safeParameters = dataEgressScrubber.scrubParameters(request.parameters());
-        ToolExecuteRequest safeRequest = new ToolExecuteRequest(request.toolName(), safeParameters,
-                request.sessionId());
-
-        // --- Native Memory Tools Interceptor ---
-        if (safeRequest.toolName().startsWith("handsai_")) {
-            return handleNativeMemoryTool(safeRequest, startTime, executionLog);
-        }
-
-        try {
-            // Intentar obtener la herramienta del caché primero
-            ApiTool apiTool = toolCacheManager.getCachedTool(safeRequest.toolName())
-                    .orElseGet(() -> {
-                        try {
-                            // Si no está en caché, buscar en la base de datos
-                            return apiToolService.getApiToolByCode(safeRequest.toolName());
-                        } catch (Exception e) {
-                            throw new ResourceNotFoundException("Tool not found: " + safeRequest.toolName());
-                        }
-                    });
-
-            // Verificar que la herramienta esté habilitada y saludable
-            if (!apiTool.isEnabled() || !apiTool.isHealthy()) {
-                throw new ToolExecutionException("Tool is disabled or unhealthy: " + safeRequest.toolName());
-            }
-
-            executionLog.setApiTool(apiTool);
+        return executeApiToolAsync(request).join();
+    }
 
-            // Convertir los parámetros (ya scrubbeados) a JSON y ofuscar para el log
-            String requestPayload = objectMapper.writeValueAsString(safeRequest.parameters());
-            executionLog.setRequestPayload(logObfuscator.obfuscate(requestPayload));
+    /**
+     * Runs the tool as a pipeline of stages (scrub → resolve → auth → call →
+     * post-process → log) on virtual threads. Each stage has its own timeout;
+     * cancelling the returned future interrupts the stage in progress (e.g. the
+     * upstream HTTP call). Failures never complete the future exceptionally:
+     * they are logged and returned as an unsuccessful {@link ToolExecuteResponse}.
+     */
+    public CompletableFuture<ToolExecuteResponse> executeApiToolAsync(ToolExecuteRequest request) {
+        return executeApiToolAsync(request, logBatchProcessor::enqueueLog);
+    }
 
-            // Ejecutar la llamada a la API externa
-            String dynamicToken = null;
-            if (apiTool.getProvider().isDynamicAuth()) {
-                dynamicToken = dynamicTokenManager.getToken(apiTool.getProvider());
-            }
+    /**
+     * Same as {@link #executeApiToolAsync(ToolExecuteRequest)} but hands the
+     * execution log to {@code logSink} instead of enqueueing it, so batch
+     * callers can enqueue all their logs at once.
+     */
+    public CompletableFuture<ToolExecuteResponse> executeApiToolAsync(ToolExecuteRequest request,
+            Consumer<ToolExecutionLog> logSink) {
+        return executeApiToolAsync(request, logSink, ToolExecutionListener.NONE);
+    }
 
-            Object result = null;
-            try {
-                result = executeApiCall(apiTool, safeRequest.parameters(), dynamicToken);
-                if (apiTool.getProvider().isDynamicAuth() && isResultInvalid(result, apiTool.getProvider())) {
-                    throw new HttpClientErrorException(org.springframework.http.HttpStatus.UNAUTHORIZED,
-                            "Invalidated by keyword");
-                }
-            } catch (Exception e) {
-                boolean isUnauthorized = (e instanceof HttpClientErrorException
-                        && ((HttpClientErrorException) e).getStatusCode().value() == 401);
-                boolean isKeywordInvalid = apiTool.getProvider().isDynamicAuth()
-                        && isExceptionInvalid(e, apiTool.getProvider());
-
-                if (apiTool.getProvider().isDynamicAuth() && (isUnauthorized || isKeywordInvalid)) {
-                    log.warn("Dynamic token expired or invalid for provider {}, fetching new token and retrying",
-                            apiTool.getProvider().getId());
-                    dynamicTokenManager.invalidateToken(apiTool.getProvider().getId());
-                    dynamicToken = dynamicTokenManager.getToken(apiTool.getProvider());
-                    result = executeApiCall(apiTool, safeRequest.parameters(), dynamicToken);
-                    if (isResultInvalid(result, apiTool.getProvider())) {
-                        throw new ToolExecutionException(
-                                "Tool execution failed even after token refresh due to invalidation keywords.");
+    public CompletableFuture<ToolExecuteResponse> executeApiToolAsync(ToolExecuteRequest request,
+            Consumer<ToolExecutionLog> logSink, ToolExecutionListener listener) {
+        log.info("Executing tool: {}", request.toolName());
+        ExecutionContext ctx = new ExecutionContext(request, logSink, listener);
+
+        CompletableFuture<ToolExecuteResponse> pipeline = runStage(ctx, ToolExecutionStage.SCRUB, () -> scrub(ctx))
+                .thenCompose(v -> {
+                    // --- Native Memory Tools Interceptor ---
+                    if (isNativeTool(ctx.safeRequest.toolName())) {
+                        return runStage(ctx, ToolExecutionStage.CALL,
+                                () -> handleNativeMemoryTool(ctx.safeRequest, ctx.startTime, ctx.executionLog,
+                                        ctx.logSink));
                     }
+                    return runStage(ctx, ToolExecutionStage.RESOLVE, () -> resolve(ctx))
+                            .thenCompose(x -> runStage(ctx, ToolExecutionStage.AUTH, () -> authenticate(ctx)))
+                            .thenCompose(x -> runStage(ctx, ToolExecutionStage.CALL, () -> call(ctx)))
+                            .thenCompose(x -> runStage(ctx, ToolExecutionStage.POST_PROCESS, () -> postProcess(ctx)))
+                            .thenCompose(x -> runStage(ctx, ToolExecutionStage.LOG, () -> logSuccess(ctx)));
+                })
+                .exceptionally(ex -> logFailure(ctx, ex));
+
+        CompletableFuture<ToolExecuteResponse> response = new CompletableFuture<>();
+        pipeline.whenComplete((result, ex) -> {
+            try {
+                recordExecution(ctx, result);
+            } catch (RuntimeException metricsError) {
+                // Las métricas nunca deben dejar la respuesta sin completar
+                log.warn("Could not record metrics for tool {}: {}", ctx.request.toolName(),
+                        metricsError.toString());
+            } finally {
+                if (ex != null) {
+                    response.completeExceptionally(ex);
                 } else {
-                    throw e;
+                    response.complete(result);
                 }
             }
+        });
+        // Cancelar la respuesta corta la etapa en curso
+        response.whenComplete((result, ex) -> {
+            if (response.isCancelled()) {
+                ctx.cancel();
+            }
+        });
+        return response;
+    }
 
-            // Convertir el resultado a JSON y ofuscar para el log
-            String responsePayload = objectMapper.writeValueAsString(result);
-            executionLog.setResponsePayload(logObfuscator.obfuscate(responsePayload));
-            executionLog.setSuccess(true);
-
-            // Calcular tiempo de ejecución
-            long executionTime = Duration.between(startTime, Instant.now()).toMillis();
-            executionLog.setExecutionTimeMs(executionTime);
-            executionLog.setExecutedAt(Instant.now());
-
-            // Encolar el log de ejecución para proceso por lotes
-            logBatchProcessor.enqueueLog(executionLog);
-
-            log.info("Tool execution successful: {} in {}ms", safeRequest.toolName(), executionTime);
-
-            String sanitizedOutput = securitySanitizer.sanitizeToolResponse(result);
-
-            return new ToolExecuteResponse(
-                    true,
-                    sanitizedOutput,
-                    executionTime,
-                    "api_tool",
-                    null);
-
-        } catch (Exception e) {
-            log.error("Error executing tool {}: {}", safeRequest.toolName(), e.getMessage());
-
-            // Registrar el error en el log
-            executionLog.setSuccess(false);
-            executionLog.setErrorMessage(e.getMessage());
-            executionLog.setExecutedAt(Instant.now());
-            executionLog.setExecutionTimeMs(
-                    Duration.between(startTime, Instant.now()).toMillis());
+    private Void scrub(ExecutionContext ctx) {
+        // Intercept and recursively scrub LLM parameters before ANY tool execution to
+        // prevent Data Egress
+        ToolExecuteRequest request = ctx.request;
+        Map<String, Object> safeParameters = dataEgressScrubber.scrubParameters(request.parameters());
+        ctx.safeRequest = new ToolExecuteRequest(request.toolName(), safeParameters, request.sessionId());
+        return null;
+    }
 
+    private Void resolve(ExecutionContext ctx) throws Exception {
+        String toolName = ctx.safeRequest.toolName();
+        if (toolName == null || toolName.isBlank()) {
+            throw new ResourceNotFoundException("Tool name is required");
+        }
+        // Intentar obtener la herramienta del caché primero
+        CachedTool apiTool = toolCacheManager.getCachedTool(toolName).orElse(null);
+        if (apiTool != null) {
+            meters.recordCacheLookup(HandsAiMeters.CacheLookup.HIT);
+        } else {
             try {
-                logBatchProcessor.enqueueLog(executionLog);
-            } catch (Exception logError) {
-                log.error("Failed to save execution log: {}", logError.getMessage());
+                // Si no está en caché, buscar en la base de datos
+                apiTool = CachedTool.from(apiToolService.getApiToolByCode(toolName));
+            } catch (Exception e) {
+                meters.recordCacheLookup(HandsAiMeters.CacheLookup.MISS);
+                throw new ResourceNotFoundException("Tool not found: " + toolName);
             }
-
-            return new ToolExecuteResponse(
-                    false,
-                    null,
-                    Duration.between(startTime, Instant.now()).toMillis(),
-                    "api_tool",
-                    e.getMessage());
+            meters.recordCacheLookup(HandsAiMeters.CacheLookup.DATABASE);
         }
-    }
 
-    private Object executeApiCall(ApiTool apiTool, Map<String, Object> parameters, String dynamicToken) {
-        RestClient client = restClientBuilder.baseUrl(apiTool.getProvider().getBaseUrl()).build();
+        // Verificar que la herramienta esté habilitada y saludable
+        if (!apiTool.enabled() || !apiTool.healthy()) {
+            throw new ToolExecutionException("Tool is disabled or unhealthy: " + toolName);
+        }
 
-        // Preparar parámetros incluyendo autenticación
-        Map<String, Object> finalParameters = prepareParametersWithAuth(apiTool, parameters, dynamicToken);
-        String uriPath = buildUriWithQueryParams(apiTool, finalParameters);
+        ctx.executionLog.setApiTool(apiTool.toReference());
+        ctx.apiTool = apiTool;
+        ctx.plan = toolCacheManager.getExecutionPlan(apiTool);
 
-        HttpMethod httpMethod = convertHttpMethod(apiTool.getHttpMethod());
+        // Serializar los parámetros (ya scrubbeados) ofuscando en el mismo paso para el log
+        ctx.executionLog.setRequestPayload(logObfuscator.obfuscateValue(ctx.safeRequest.parameters()));
+        return null;
+    }
 
-        // Configurar el método HTTP y la URI
-        RestClient.RequestBodySpec requestSpec = client.method(httpMethod).uri(uriPath);
+    private Void authenticate(ExecutionContext ctx) {
+        if (ctx.plan.dynamicAuth()) {
+            ctx.dynamicToken = dynamicTokenManager.getToken(ctx.apiTool.provider());
+        }
+        return null;
+    }
 
-        // Configurar autenticación
-        configureAuthentication(requestSpec, apiTool, dynamicToken);
+    private Void call(ExecutionContext ctx) {
+        CachedTool apiTool = ctx.apiTool;
+        ToolExecutionPlan plan = ctx.plan;
+        Map<String, Object> parameters = ctx.safeRequest.parameters();
 
-        // Configurar headers personalizados opcionales
-        if (apiTool.getProvider().getCustomHeadersJson() != null
-                && !apiTool.getProvider().getCustomHeadersJson().isEmpty()) {
-            try {
-                Map<String, String> customHeaders = objectMapper.readValue(apiTool.getProvider().getCustomHeadersJson(),
-                        new TypeReference<Map<String, String>>() {
-                        });
-                customHeaders.forEach((k, v) -> {
-                    String decryptedValue = (v != null && !v.isBlank()) ? encryptionService.decrypt(v) : v;
-                    requestSpec.header(k, decryptedValue);
-                });
-            } catch (Exception e) {
-                log.warn("Failed to parse customHeadersJson for tool execution: {}",
-                        apiTool.getProvider().getCustomHeadersJson(), e);
+        Object result;
+        try {
+            result = executeApiCall(apiTool, plan, parameters, ctx.dynamicToken);
+            if (plan.dynamicAuth() && isResultInvalid(result, plan)) {
+                throw new HttpClientErrorException(org.springframework.http.HttpStatus.UNAUTHORIZED,
+                        "Invalidated by keyword");
             }
-        }
+        } catch (RuntimeException e) {
+            boolean isUnauthorized = (e instanceof HttpClientErrorException
+                    && ((HttpClientErrorException) e).getStatusCode().value() == 401);
+            boolean isKeywordInvalid = plan.dynamicAuth() && isExceptionInvalid(e, plan);
 
-        // Configurar el body para métodos que lo requieren
-        if (httpMethod == HttpMethod.GET || httpMethod == HttpMethod.DELETE) {
-            return requestSpec
-                    .retrieve()
-                    .body(Object.class);
-        } else {
-            Map<String, Object> bodyParameters = prepareBodyParameters(apiTool, finalParameters, dynamicToken);
-            String customTemplate = apiTool.getBodyPayloadTemplate();
-
-            if (customTemplate != null && !customTemplate.isBlank()) {
-                String interpolatedBody = interpolateTemplate(customTemplate, bodyParameters);
-                log.debug("Using interpolated body payload template: {}", interpolatedBody);
-                return requestSpec
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .body(interpolatedBody)
-                        .retrieve()
-                        .body(Object.class);
+            if (plan.dynamicAuth() && (isUnauthorized || isKeywordInvalid)) {
+                result = retryWithFreshToken(ctx);
             } else {
-                return requestSpec
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .body(bodyParameters)
-                        .retrieve()
-                        .body(Object.class);
+                throw e;
             }
         }
+        ctx.result = result;
+        return null;
     }
 
-    private String interpolateTemplate(String template, Map<String, Object> params) {
-        String result = template;
-        for (Map.Entry<String, Object> entry : params.entrySet()) {
-            String placeholder = "{{" + entry.getKey() + "}}";
-            if (result.contains(placeholder)) {
-                String replacement = "";
-                if (entry.getValue() != null) {
-                    try {
-                        if (entry.getValue() instanceof String) {
-                            replacement = String.valueOf(entry.getValue());
-                            // Escape characters for valid JSON
-                            replacement = replacement.replace("\\", "\\\\").replace("\"", "\\\"");
-                        } else {
-                            replacement = objectMapper.writeValueAsString(entry.getValue());
-                        }
-                    } catch (Exception e) {
-                        log.warn("Failed to serialize parameter {} for interpolation", entry.getKey(), e);
-                        replacement = String.valueOf(entry.getValue());
-                    }
-                }
-                result = result.replace(placeholder, replacement);
-            }
+    private Object retryWithFreshToken(ExecutionContext ctx) {
+        CachedTool apiTool = ctx.apiTool;
+        log.warn("Dynamic token expired or invalid for provider {}, fetching new token and retrying",
+                apiTool.provider().id());
+        // Solo la primera llamada que falla con este token dispara el refetch; el resto lo espera
+        dynamicTokenManager.invalidateToken(apiTool.provider().id(), ctx.dynamicToken);
+        ctx.dynamicToken = dynamicTokenManager.getToken(apiTool.provider());
+        Object result = executeApiCall(apiTool, ctx.plan, ctx.safeRequest.parameters(), ctx.dynamicToken);
+        if (isResultInvalid(result, ctx.plan)) {
+            throw new ToolExecutionException(
+                    "Tool execution failed even after token refresh due to invalidation keywords.");
         }
         return result;
     }
 
-    private HttpMethod convertHttpMethod(HttpMethodEnum methodEnum) {
-        switch (methodEnum) {
-            case GET:
-                return HttpMethod.GET;
-            case POST:
-                return HttpMethod.POST;
-            case PUT:
-                return HttpMethod.PUT;
-            case DELETE:
-                return HttpMethod.DELETE;
-            case PATCH:
-                return HttpMethod.PATCH;
-            default:
-                throw new ToolExecutionException("Unsupported HTTP method: " + methodEnum);
-        }
+    private Void postProcess(ExecutionContext ctx) throws Exception {
+        // Serializar el resultado ofuscando en el mismo paso para el log
+        ctx.executionLog.setResponsePayload(logObfuscator.obfuscateValue(ctx.result));
+        ctx.sanitizedOutput = securitySanitizer.sanitizeToolResponse(ctx.result);
+        return null;
     }
 
-    private Map<String, Object> prepareParametersWithAuth(ApiTool apiTool, Map<String, Object> originalParameters,
-            String dynamicToken) {
-        Map<String, Object> parameters = new java.util.HashMap<>(originalParameters);
+    private ToolExecuteResponse logSuccess(ExecutionContext ctx) {
+        ToolExecutionLog executionLog = ctx.executionLog;
+        executionLog.setSuccess(true);
 
-        // Añadir API key como parámetro si la localización es QUERY_PARAM
-        if (apiTool.getProvider().getAuthenticationType() == AuthenticationTypeEnum.API_KEY &&
-                apiTool.getProvider().getApiKeyLocation() == ApiKeyLocationEnum.QUERY_PARAMETER &&
-                apiTool.getProvider().getApiKeyName() != null) {
+        // Calcular tiempo de ejecución
+        long executionTime = Duration.between(ctx.startTime, Instant.now()).toMillis();
+        executionLog.setExecutionTimeMs(executionTime);
+        executionLog.setExecutedAt(Instant.now());
 
-            String token = getEffectiveToken(apiTool.getProvider(), dynamicToken);
-            if (token != null) {
-                parameters.put(apiTool.getProvider().getApiKeyName(), token);
-            }
-        }
+        // Encolar el log de ejecución para proceso por lotes
+        ctx.logSink.accept(executionLog);
+
+        log.info("Tool execution successful: {} in {}ms", ctx.request.toolName(), executionTime);
 
-        return parameters;
+        return new ToolExecuteResponse(
+                true,
+                ctx.sanitizedOutput,
+                executionTime,
+                "api_tool",
+                null);
     }
 
-    private String buildUriWithQueryParams(ApiTool apiTool, Map<String, Object> parameters) {
-        String basePath = apiTool.getEndpointPath();
-
-        // Sustituir path parameters del tipo {paramName} con sus valores
-        Map<String, Object> remainingParams = new java.util.HashMap<>(parameters);
-        java.util.regex.Matcher matcher = java.util.regex.Pattern
-                .compile("\\{([^}]+)}")
-                .matcher(basePath);
-        StringBuffer resolvedPath = new StringBuffer();
-        while (matcher.find()) {
-            String paramName = matcher.group(1);
-            Object value = remainingParams.remove(paramName);
-            matcher.appendReplacement(resolvedPath, value != null ? value.toString() : matcher.group(0));
+    private ToolExecuteResponse logFailure(ExecutionContext ctx, Throwable failure) {
+        Throwable e = unwrap(failure);
+        String errorMessage;
+        if (e instanceof TimeoutException) {
+            ctx.failure = HandsAiMeters.Outcome.TIMEOUT;
+            errorMessage = "Tool execution timed out in stage " + ctx.currentStage + " after "
+                    + toolExecutionProperties.timeoutFor(ctx.currentStage).toMillis() + "ms";
+        } else if (e instanceof CancellationException) {
+            ctx.failure = HandsAiMeters.Outcome.CANCELLED;
+            errorMessage = "Tool execution cancelled in stage " + ctx.currentStage;
+        } else {
+            errorMessage = e.getMessage();
         }
-        matcher.appendTail(resolvedPath);
-        basePath = resolvedPath.toString();
-
-        // Si hay parámetros configurados para ir en la URL (como la API Key de tipo
-        // Query Param),
-        // o si es GET/DELETE donde todos van a la URL, los agregamos
-        boolean shouldAppendParams = !remainingParams.isEmpty() &&
-                (apiTool.getHttpMethod() == HttpMethodEnum.GET ||
-                        apiTool.getHttpMethod() == HttpMethodEnum.DELETE ||
-                        hasQueryParametersForNonGet(apiTool, remainingParams));
-
-        if (shouldAppendParams) {
-            StringBuilder uriBuilder = new StringBuilder(basePath);
-            // Verificar si el basePath ya contiene parámetros query
-            if (basePath.contains("?")) {
-                if (!basePath.endsWith("?") && !basePath.endsWith("&")) {
-                    uriBuilder.append("&");
-                }
-            } else {
-                uriBuilder.append("?");
-            }
+        log.error("Error executing tool {}: {}", ctx.request.toolName(), errorMessage);
 
-            remainingParams.entrySet().forEach(entry -> {
-                uriBuilder.append(entry.getKey())
-                        .append("=")
-                        .append(entry.getValue())
-                        .append("&");
-            });
+        // Registrar el error en el log
+        ToolExecutionLog executionLog = ctx.executionLog;
+        executionLog.setSuccess(false);
+        executionLog.setErrorMessage(errorMessage);
+        executionLog.setExecutedAt(Instant.now());
+        executionLog.setExecutionTimeMs(
+                Duration.between(ctx.startTime, Instant.now()).toMillis());
 
-            // Remover el último &
-            if (uriBuilder.charAt(uriBuilder.length() - 1) == '&') {
-                uriBuilder.setLength(uriBuilder.length() - 1);
-            }
-
-            return uriBuilder.toString();
+        try {
+            ctx.logSink.accept(executionLog);
+        } catch (Exception logError) {
+            log.error("Failed to save execution log: {}", logError.getMessage());
         }
 
-        return basePath;
+        return new ToolExecuteResponse(
+                false,
+                null,
+                Duration.between(ctx.startTime, Instant.now()).toMillis(),
+                "api_tool",
+                errorMessage);
     }
 
-    private boolean hasQueryParametersForNonGet(ApiTool apiTool, Map<String, Object> parameters) {
-        // En POST/PUT/PATCH, el único parámetro que debería ir por Query String
-        // (por el momento) es la API Key, si así está configurado el provider.
-        return apiTool.getProvider().getAuthenticationType() == AuthenticationTypeEnum.API_KEY &&
-                apiTool.getProvider().getApiKeyLocation() == ApiKeyLocationEnum.QUERY_PARAMETER &&
-                apiTool.getProvider().getApiKeyName() != null &&
-                parameters.containsKey(apiTool.getProvider().getApiKeyName());
+    /**
+     * Runs one stage on the task executor. The stage is cancelled (interrupting
+     * its thread) when it exceeds its timeout or when the execution is
+     * cancelled.
+     */
+    private <T> CompletableFuture<T> runStage(ExecutionContext ctx, ToolExecutionStage stage, Callable<T> work) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (ctx.cancelled) {
+            future.completeExceptionally(new CancellationException());
+            return future;
+        }
+        Callable<T> observed = () -> {
+            try {
+                ctx.listener.onStageStarted(stage);
+            } catch (Exception e) {
+                log.warn("Tool execution listener failed on stage {}: {}", stage, e.getMessage());
+            }
+            long started = System.nanoTime();
+            try {
+                return work.call();
+            } finally {
+                long elapsed = System.nanoTime() - started;
+                latencyMetrics.recordStage(stage, elapsed);
+                meters.recordStage(stage, elapsed);
+            }
+        };
+        FutureTask<T> task = new FutureTask<>(observed) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    future.completeExceptionally(new CancellationException());
+                    return;
+                }
+                try {
+                    future.complete(get());
+                } catch (ExecutionException e) {
+                    future.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+        ctx.currentStage = stage;
+        ctx.currentTask = task;
+        if (ctx.cancelled) {
+            // cancel() llegó entre el chequeo inicial y la publicación de la tarea
+            task.cancel(false);
+            return future;
+        }
+        taskExecutor.execute(task);
+        future.orTimeout(toolExecutionProperties.timeoutFor(stage).toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((v, ex) -> {
+                    if (ex instanceof TimeoutException) {
+                        task.cancel(true);
+                    }
+                });
+        return future;
     }
 
-    private void configureAuthentication(RestClient.RequestBodySpec requestSpec, ApiTool apiTool, String dynamicToken) {
-        if (apiTool.getProvider().getAuthenticationType() == null) {
-            return;
+    private void recordExecution(ExecutionContext ctx, ToolExecuteResponse result) {
+        long elapsed = System.nanoTime() - ctx.startNanos;
+        String toolCode = null;
+        String providerCode = null;
+        if (ctx.apiTool != null) {
+            toolCode = ctx.apiTool.code();
+            if (ctx.apiTool.provider() != null) {
+                providerCode = ctx.apiTool.provider().code();
+            }
+        } else if (ctx.safeRequest != null && isNativeTool(ctx.safeRequest.toolName())) {
+            toolCode = ctx.safeRequest.toolName();
+        }
+        // Nombres de tools inexistentes no abren series nuevas
+        if (toolCode != null) {
+            latencyMetrics.recordExecution(toolCode, providerCode, elapsed);
+        } else {
+            toolCode = UNKNOWN_TOOL;
         }
+        HandsAiMeters.Outcome outcome = result != null && result.success() ? HandsAiMeters.Outcome.SUCCESS
+                : ctx.failure;
+        meters.recordExecution(toolCode, providerCode, outcome, elapsed);
+
+        ToolExecutionEvent event = ctx.event;
+        if (event.shouldCommit()) {
+            event.toolCode = toolCode;
+            event.providerId = ctx.apiTool != null && ctx.apiTool.provider() != null
+                    ? JfrEvents.id(ctx.apiTool.provider().id())
+                    : 0;
+            event.outcome = outcome.name();
+            event.stage = ctx.currentStage.name();
+            event.requestBytes = JfrEvents.utf8Length(ctx.executionLog.getRequestPayload());
+            event.responseBytes = result != null && result.result() instanceof CharSequence output
+                    ? JfrEvents.utf8Length(output)
+                    : 0;
+            event.commit();
+        }
+    }
 
-        String token = getEffectiveToken(apiTool.getProvider(), dynamicToken);
-        if (token == null)
-            return;
-
-        switch (apiTool.getProvider().getAuthenticationType()) {
-            case API_KEY:
-                if (apiTool.getProvider().getApiKeyLocation() == ApiKeyLocationEnum.HEADER) {
-                    String headerName = apiTool.getProvider().getApiKeyName() != null
-                            ? apiTool.getProvider().getApiKeyName()
-                            : "X-API-Key";
-                    requestSpec.header(headerName, token);
-                } else if (apiTool.getProvider().getApiKeyLocation() == ApiKeyLocationEnum.QUERY_PARAMETER) {
-                    // La lógica para añadir la API Key como Query Parameter ahora se maneja en
-                    // buildUriWithQueryParams y prepareParametersWithAuth para todos los verbos
-                    // HTTP.
-                }
-                break;
+    private static boolean isNativeTool(String toolName) {
+        return toolName != null && toolName.startsWith("handsai_");
+    }
 
-            case BEARER_TOKEN:
-                requestSpec.header(HttpHeaders.AUTHORIZATION, "Bearer " + token);
-                break;
+    private static Throwable unwrap(Throwable ex) {
+        Throwable current = ex;
+        while ((current instanceof CompletionException || current instanceof ExecutionException)
+                && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
 
-            case BASIC_AUTH:
-                requestSpec.header("Authorization", "Basic " + token);
-                break;
+    /** Mutable state handed from one stage to the next. */
+    private static final class ExecutionContext {
+        private final ToolExecuteRequest request;
+        private final Consumer<ToolExecutionLog> logSink;
+        private final ToolExecutionListener listener;
+        private final Instant startTime = Instant.now();
+        private final long startNanos = System.nanoTime();
+        private final ToolExecutionEvent event = new ToolExecutionEvent();
+        private final ToolExecutionLog executionLog = new ToolExecutionLog();
+
+        private ToolExecuteRequest safeRequest;
+        private CachedTool apiTool;
+        private ToolExecutionPlan plan;
+        private String dynamicToken;
+        private Object result;
+        private String sanitizedOutput;
+        private HandsAiMeters.Outcome failure = HandsAiMeters.Outcome.ERROR;
+
+        private volatile ToolExecutionStage currentStage = ToolExecutionStage.SCRUB;
+        private volatile Future<?> currentTask;
+        private volatile boolean cancelled;
+
+        private ExecutionContext(ToolExecuteRequest request, Consumer<ToolExecutionLog> logSink,
+                ToolExecutionListener listener) {
+            this.request = request;
+            this.logSink = logSink;
+            this.listener = listener;
+            this.executionLog.setSessionId(request.sessionId());
+            this.event.begin();
+        }
 
-            default:
-                log.warn("Unsupported authentication type: {}", apiTool.getProvider().getAuthenticationType());
-                break;
+        private void cancel() {
+            cancelled = true;
+            Future<?> task = currentTask;
+            if (task != null) {
+                task.cancel(true);
+            }
         }
     }
 
-    private Map<String, Object> prepareBodyParameters(ApiTool apiTool, Map<String, Object> parameters,
+    private Object executeApiCall(CachedTool apiTool, ToolExecutionPlan plan, Map<String, Object> parameters,
             String dynamicToken) {
-        Map<String, Object> bodyParams = new java.util.HashMap<>(parameters);
-
-        // Remover parámetros de path ({paramName}) del body
-        java.util.regex.Matcher pathMatcher = java.util.regex.Pattern
-                .compile("\\{([^}]+)}")
-                .matcher(apiTool.getEndpointPath());
-        while (pathMatcher.find()) {
-            bodyParams.remove(pathMatcher.group(1));
-        }
+        RestClient client = httpClientRegistry.clientFor(apiTool.provider());
+
+        // Todo lo que depende solo de la tool (path, auth, headers) ya viene
+        // precompilado en el plan; aquí solo se enlazan los argumentos
+        String token = plan.effectiveToken(dynamicToken, encryptionService);
+        String uriPath = plan.bindUri(parameters, token);
 
-        // Remover parámetros de query si están en el body
-        if (apiTool.getProvider().getAuthenticationType() == AuthenticationTypeEnum.API_KEY &&
-                apiTool.getProvider().getApiKeyLocation() == ApiKeyLocationEnum.QUERY_PARAMETER &&
-                apiTool.getProvider().getApiKeyName() != null) {
+        RestClient.RequestBodySpec requestSpec = client.method(plan.httpMethod()).uri(uriPath);
 
-            // Para POST/PUT/PATCH, remover la API key del body si está configurada como
-            // query param
-            // ya que se maneja en la URL
-            bodyParams.remove(apiTool.getProvider().getApiKeyName());
+        // Configurar autenticación
+        ToolExecutionPlan.AuthPlacement auth = plan.auth();
+        if (token != null && auth.location() == ToolExecutionPlan.AuthLocation.HEADER) {
+            requestSpec.header(auth.name(), auth.valuePrefix() + token);
         }
 
-        // Inyectar API key en el body si la localización es IN_BODY
-        if (apiTool.getProvider().getAuthenticationType() == AuthenticationTypeEnum.API_KEY &&
-                apiTool.getProvider().getApiKeyLocation() == ApiKeyLocationEnum.IN_BODY &&
-                apiTool.getProvider().getApiKeyName() != null) {
+        // Headers personalizados opcionales; se desencriptan vía el cache en cada llamada
+        plan.headers(encryptionService).forEach(requestSpec::header);
 
-            String token = getEffectiveToken(apiTool.getProvider(), dynamicToken);
-            if (token != null) {
-                // Siempre forzamos el put para que pise cualquier valor dummy enviado
-                bodyParams.put(apiTool.getProvider().getApiKeyName(), token);
+        // Configurar el body para métodos que lo requieren
+        if (!plan.hasBody()) {
+            return requestSpec
+                    .retrieve()
+                    .body(Object.class);
+        } else {
+            Map<String, Object> bodyParameters = plan.bindBody(parameters, token);
+            // Deserializar parámetros de tipo ARRAY: el LLM puede mandarlos como string
+            // JSON (ej: "[\"linkedin\"]") — los convertimos a List<Object> real.
+            resolveArrayParams(plan, bodyParameters);
+            BodyTemplate bodyTemplate = plan.bodyTemplate();
+
+            if (bodyTemplate != null) {
+                String interpolatedBody = bodyTemplate.render(bodyParameters, objectMapper,
+                        plan.missingPlaceholderPolicy());
+                log.debug("Using interpolated body payload template: {}", interpolatedBody);
+                return requestSpec
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(interpolatedBody)
+                        .retrieve()
+                        .body(Object.class);
+            } else {
+                return requestSpec
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(bodyParameters)
+                        .retrieve()
+                        .body(Object.class);
             }
         }
-
-        // Deserializar parámetros de tipo ARRAY: el LLM puede mandarlos como string
-        // JSON (ej: "[\"linkedin\"]") — los convertimos a List<Object> real.
-        resolveArrayParams(apiTool, bodyParams);
-
-        return bodyParams;
     }
 
     /**
@@ -430,13 +500,9 @@ public class ToolExecutionService {
      * String que representa un JSON array, lo deserializa a List&lt;Object&gt;.
      * Si ya es una List (el LLM lo envió nativo), lo deja intacto.
      */
-    private void resolveArrayParams(ApiTool apiTool, Map<String, Object> bodyParams) {
-        if (apiTool.getParameters() == null)
-            return;
-        for (ToolParameter param : apiTool.getParameters()) {
-            if (param.getType() != org.dynamcorp.handsaiv2.model.ParameterType.ARRAY)
-                continue;
-            Object value = bodyParams.get(param.getName());
+    private void resolveArrayParams(ToolExecutionPlan plan, Map<String, Object> bodyParams) {
+        for (String paramName : plan.arrayParamNames()) {
+            Object value = bodyParams.get(paramName);
             if (value == null)
                 continue;
             if (value instanceof List)
@@ -448,56 +514,35 @@ public class ToolExecutionService {
                         List<Object> parsed = objectMapper.readValue(strVal,
                                 new TypeReference<List<Object>>() {
                                 });
-                        bodyParams.put(param.getName(), parsed);
-                        log.debug("Deserialized ARRAY param '{}' from String to List", param.getName());
+                        bodyParams.put(paramName, parsed);
+                        log.debug("Deserialized ARRAY param '{}' from String to List", paramName);
                     } catch (Exception e) {
                         log.warn("Could not deserialize ARRAY param '{}' value '{}': {}",
-                                param.getName(), strVal, e.getMessage());
+                                paramName, strVal, e.getMessage());
                     }
                 }
             }
         }
     }
 
-    private boolean isResultInvalid(Object result, ApiProvider provider) {
-        if (result == null || provider.getDynamicAuthInvalidationKeywords() == null
-                || provider.getDynamicAuthInvalidationKeywords().isBlank())
+    private boolean isResultInvalid(Object result, ToolExecutionPlan plan) {
+        if (result == null || plan.invalidationKeywords().isEmpty())
             return false;
-        String responseStr = result.toString().toLowerCase();
-        String[] keywords = provider.getDynamicAuthInvalidationKeywords().toLowerCase().split(",");
-        for (String keyword : keywords) {
-            if (!keyword.trim().isEmpty() && responseStr.contains(keyword.trim()))
-                return true;
-        }
-        return false;
+        return plan.containsInvalidationKeyword(result.toString().toLowerCase());
     }
 
-    private boolean isExceptionInvalid(Exception e, ApiProvider provider) {
-        if (e.getMessage() == null || provider.getDynamicAuthInvalidationKeywords() == null
-                || provider.getDynamicAuthInvalidationKeywords().isBlank())
+    private boolean isExceptionInvalid(Exception e, ToolExecutionPlan plan) {
+        if (e.getMessage() == null || plan.invalidationKeywords().isEmpty())
             return false;
         String errorStr = e.getMessage().toLowerCase();
         if (e instanceof HttpClientErrorException) {
             errorStr += " " + ((HttpClientErrorException) e).getResponseBodyAsString().toLowerCase();
         }
-        String[] keywords = provider.getDynamicAuthInvalidationKeywords().toLowerCase().split(",");
-        for (String keyword : keywords) {
-            if (!keyword.trim().isEmpty() && errorStr.contains(keyword.trim()))
-                return true;
-        }
-        return false;
-    }
-
-    private String getEffectiveToken(ApiProvider provider, String dynamicToken) {
-        if (dynamicToken != null)
-            return dynamicToken;
-        if (provider.getApiKeyValue() != null)
-            return encryptionService.decrypt(provider.getApiKeyValue());
-        return null;
+        return plan.containsInvalidationKeyword(errorStr);
     }
 
     private ToolExecuteResponse handleNativeMemoryTool(ToolExecuteRequest request, java.time.Instant startTime,
-            ToolExecutionLog executionLog) {
+            ToolExecutionLog executionLog, Consumer<ToolExecutionLog> logSink) {
         log.info("Intercepted native memory tool execution: {}", request.toolName());
         try {
             java.util.Map<String, Object> params = request.parameters();
@@ -580,7 +625,7 @@ public class ToolExecutionService {
             executionLog.setRequestPayload(objectMapper.writeValueAsString(params));
             executionLog.setResponsePayload(sanitizedOutput);
             executionLog.setExecutedAt(java.time.Instant.now());
-            logBatchProcessor.enqueueLog(executionLog);
+            logSink.accept(executionLog);
 
             return new ToolExecuteResponse(true, sanitizedOutput, executionTime, "system_tool", null);
 
@@ -593,7 +638,7 @@ public class ToolExecutionService {
             executionLog.setErrorMessage(e.getMessage());
             executionLog.setExecutionTimeMs(executionTime);
             executionLog.setExecutedAt(java.time.Instant.now());
-            logBatchProcessor.enqueueLog(executionLog);
+            logSink.accept(executionLog);
 
             return new ToolExecuteResponse(false, null, executionTime, "system_tool", e.getMessage());
         }
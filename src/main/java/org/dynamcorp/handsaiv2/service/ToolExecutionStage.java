@@ -0,0 +1,20 @@
+package org.dynamcorp.handsaiv2.service;
+
+/**
+ * Stages of a tool execution, in the order {@link ToolExecutionService} runs
+ * them. Each stage has its own timeout (handsai.execution.timeout.*).
+ */
+public enum ToolExecutionStage {
+    /** Data egress scrubbing of the LLM arguments. */
+    SCRUB,
+    /** Tool lookup (cache, then database) and execution plan. */
+    RESOLVE,
+    /** Dynamic token acquisition, when the provider uses dynamic auth. */
+    AUTH,
+    /** Upstream HTTP call (including the token-refresh retry) or native tool. */
+    CALL,
+    /** Response obfuscation for the log and sanitizing for the LLM. */
+    POST_PROCESS,
+    /** Execution log enqueue and response assembly. */
+    LOG
+}
@@ -0,0 +1,571 @@
+package org.dynamcorp.handsaiv2.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.RollupProperties;
+import org.dynamcorp.handsaiv2.dto.ProviderMetricsResponse;
+import org.dynamcorp.handsaiv2.dto.ToolMetricsResponse;
+import org.dynamcorp.handsaiv2.dto.ToolRollupPointResponse;
+import org.dynamcorp.handsaiv2.model.ApiTool;
+import org.dynamcorp.handsaiv2.model.RollupGranularity;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Minute, hour and day rollups of tool executions, per tool: count, errors,
+ * latency sum/min/max and a fixed latency histogram. {@link LogBatchProcessor}
+ * folds every batch it writes into them, so the analytics summary and the
+ * per-tool and per-provider endpoints read a few rows per bucket instead of
+ * scanning the logs.
+ * <p>
+ * Rows are keyed by tool code (system tools by their name), not by display
+ * name, so two providers' "search" tools stay apart and renaming a tool keeps
+ * its history. The table lives in its own SQLite file
+ * (handsai.logs.rollup.file). A batch is aggregated in memory first and then
+ * applied with one upsert per (bucket, tool), in one transaction.
+ * <p>
+ * A new rollup file starts with a pending backfill: {@link RollupBackfill}
+ * folds in the logs executed before the file was created, committing its
+ * progress with each chunk so an interrupted backfill resumes where it
+ * stopped instead of counting logs twice. Range queries use hour buckets while
+ * hour-retention covers the range and day buckets beyond that, so a range
+ * starts at the beginning of its first bucket.
+ */
+@Slf4j
+@Service
+public class ToolRollupStore {
+
+    /** Upper bounds (ms, inclusive) of the latency buckets; one more bucket takes the rest. */
+    static final long[] LATENCY_BOUNDS_MS = { 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000 };
+    private static final int BUCKETS = LATENCY_BOUNDS_MS.length + 1;
+    private static final List<String> BUCKET_LABELS = bucketLabels();
+
+    private static final String SCHEMA_SQL = "CREATE TABLE IF NOT EXISTS tool_rollups ("
+            + "granularity TEXT NOT NULL, bucket_start INTEGER NOT NULL, tool_code TEXT NOT NULL, "
+            + "tool_name TEXT NOT NULL, tool_id INTEGER, provider_id INTEGER, provider_name TEXT, "
+            + "executions INTEGER NOT NULL, errors INTEGER NOT NULL, "
+            + "timed INTEGER NOT NULL, total_ms INTEGER NOT NULL, min_ms INTEGER, max_ms INTEGER"
+            + bucketColumns(", b%d INTEGER NOT NULL DEFAULT 0")
+            + ", PRIMARY KEY (granularity, bucket_start, tool_code))";
+    private static final String UPSERT_SQL = "INSERT INTO tool_rollups (granularity, bucket_start, tool_code, "
+            + "tool_name, tool_id, provider_id, provider_name, executions, errors, timed, total_ms, min_ms, max_ms"
+            + bucketColumns(", b%d") + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?" + ", ?".repeat(BUCKETS)
+            + ") ON CONFLICT (granularity, bucket_start, tool_code) DO UPDATE SET "
+            + "tool_name = excluded.tool_name, "
+            + "tool_id = COALESCE(excluded.tool_id, tool_id), "
+            + "provider_id = COALESCE(excluded.provider_id, provider_id), "
+            + "provider_name = COALESCE(excluded.provider_name, provider_name), "
+            + "executions = executions + excluded.executions, errors = errors + excluded.errors, "
+            + "timed = timed + excluded.timed, total_ms = total_ms + excluded.total_ms, "
+            // MIN/MAX escalares devuelven NULL si un lado es NULL
+            + "min_ms = COALESCE(MIN(min_ms, excluded.min_ms), min_ms, excluded.min_ms), "
+            + "max_ms = COALESCE(MAX(max_ms, excluded.max_ms), max_ms, excluded.max_ms)"
+            + bucketColumns(", b%1$d = b%1$d + excluded.b%1$d");
+    private static final String BACKFILL_SCHEMA_SQL = "CREATE TABLE IF NOT EXISTS rollup_backfill ("
+            + "id INTEGER PRIMARY KEY CHECK (id = 1), cutoff INTEGER NOT NULL, last_log_id INTEGER NOT NULL, "
+            + "done INTEGER NOT NULL)";
+    private static final String AGGREGATES = "SUM(executions), SUM(errors), SUM(timed), SUM(total_ms), "
+            + "MIN(min_ms), MAX(max_ms)" + bucketColumns(", SUM(b%d)");
+
+    private final RollupProperties properties;
+    private final Clock clock;
+    private Connection connection;
+
+    @Autowired
+    public ToolRollupStore(RollupProperties properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    ToolRollupStore(RollupProperties properties, Clock clock) {
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @PostConstruct
+    public synchronized void open() {
+        Path file = Path.of(properties.getFile());
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            connection = DriverManager.getConnection("jdbc:sqlite:" + file);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=NORMAL");
+                statement.execute("PRAGMA busy_timeout=5000");
+                statement.execute(SCHEMA_SQL);
+                statement.execute(BACKFILL_SCHEMA_SQL);
+                initBackfill(statement);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create rollup file " + file.toAbsolutePath(), e);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot open rollup file " + file.toAbsolutePath(), e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.warn("Could not close rollup file: {}", e.getMessage());
+            }
+            connection = null;
+        }
+    }
+
+    /** Folds a batch of written logs into the minute, hour and day buckets. */
+    public synchronized void record(List<ToolExecutionLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        try {
+            connection.setAutoCommit(false);
+            upsert(logs);
+            connection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw new IllegalStateException("Failed to update rollups for " + logs.size() + " execution logs", e);
+        } finally {
+            autoCommitQuietly();
+        }
+    }
+
+    /** The backfill still to run, or empty once it has finished. */
+    public synchronized Optional<Backfill> pendingBackfill() {
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT cutoff, last_log_id FROM rollup_backfill "
+                        + "WHERE done = 0")) {
+            return rs.next()
+                    ? Optional.of(new Backfill(Instant.ofEpochMilli(rs.getLong(1)), rs.getLong(2)))
+                    : Optional.empty();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read rollup backfill progress", e);
+        }
+    }
+
+    /** Folds a chunk of older logs in and records {@code lastLogId} in the same transaction. */
+    public synchronized void recordBackfill(List<ToolExecutionLog> logs, long lastLogId) {
+        try {
+            connection.setAutoCommit(false);
+            upsert(logs);
+            try (PreparedStatement progress = connection.prepareStatement(
+                    "UPDATE rollup_backfill SET last_log_id = ?")) {
+                progress.setLong(1, lastLogId);
+                progress.executeUpdate();
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            rollbackQuietly();
+            throw new IllegalStateException("Failed to backfill rollups for " + logs.size() + " execution logs", e);
+        } finally {
+            autoCommitQuietly();
+        }
+    }
+
+    public synchronized void completeBackfill() {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE rollup_backfill SET done = 1");
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to complete rollup backfill", e);
+        }
+    }
+
+    private void upsert(List<ToolExecutionLog> logs) throws SQLException {
+        Map<Key, Rollup> rollups = new HashMap<>();
+        for (ToolExecutionLog entry : logs) {
+            long executedAt = entry.getExecutedAt() != null ? entry.getExecutedAt().toEpochMilli() : clock.millis();
+            String toolCode = toolCode(entry);
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                rollups.computeIfAbsent(new Key(granularity, granularity.bucketStart(executedAt), toolCode),
+                        key -> new Rollup()).add(entry);
+            }
+        }
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT_SQL)) {
+            for (Map.Entry<Key, Rollup> rollup : rollups.entrySet()) {
+                bind(upsert, rollup.getKey(), rollup.getValue());
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+        }
+    }
+
+    /**
+     * A file without backfill state gets one: pending if it has no rollups yet
+     * (logs executed from now on are rolled up as they are written), done
+     * otherwise.
+     */
+    private void initBackfill(Statement statement) throws SQLException {
+        try (ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM rollup_backfill")) {
+            rs.next();
+            if (rs.getLong(1) > 0) {
+                return;
+            }
+        }
+        boolean empty;
+        try (ResultSet rs = statement.executeQuery("SELECT NOT EXISTS (SELECT 1 FROM tool_rollups)")) {
+            rs.next();
+            empty = rs.getBoolean(1);
+        }
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO rollup_backfill (id, cutoff, last_log_id, done) VALUES (1, ?, 0, ?)")) {
+            insert.setLong(1, clock.millis());
+            insert.setInt(2, empty ? 0 : 1);
+            insert.executeUpdate();
+        }
+    }
+
+    /** All tools together since {@code from}. */
+    public synchronized Totals totalsSince(Instant from) {
+        RollupGranularity granularity = granularityFor(from);
+        String sql = "SELECT " + AGGREGATES + " FROM tool_rollups WHERE granularity = ? AND bucket_start >= ?";
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            query.setString(1, granularity.name());
+            query.setLong(2, granularity.bucketStart(from.toEpochMilli()));
+            try (ResultSet rs = query.executeQuery()) {
+                rs.next();
+                long executions = rs.getLong(1);
+                if (executions == 0) {
+                    return Totals.EMPTY;
+                }
+                long timed = rs.getLong(3);
+                return new Totals(executions, executions - rs.getLong(2),
+                        timed > 0 ? (double) rs.getLong(4) / timed : 0.0);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read rollups", e);
+        }
+    }
+
+    /** One entry per tool executed since {@code from}, busiest first. */
+    public synchronized List<ToolMetricsResponse> toolMetricsSince(Instant from) {
+        RollupGranularity granularity = granularityFor(from);
+        // El nombre a mostrar es el del bucket más reciente: un renombre no parte la fila
+        String sql = "SELECT tool_code, " + latest("tool_name", "tool_code") + ", MAX(tool_id), "
+                + latest("provider_name", "tool_code") + ", " + AGGREGATES
+                + " FROM tool_rollups t WHERE granularity = ? AND bucket_start >= ? "
+                + "GROUP BY tool_code ORDER BY SUM(executions) DESC, tool_code";
+        List<ToolMetricsResponse> metrics = new ArrayList<>();
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            query.setString(1, granularity.name());
+            query.setLong(2, granularity.bucketStart(from.toEpochMilli()));
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    long executions = rs.getLong(5);
+                    long errors = rs.getLong(6);
+                    metrics.add(new ToolMetricsResponse(
+                            rs.getString(1),
+                            rs.getString(2),
+                            nullableLong(rs, 3),
+                            rs.getString(4),
+                            executions,
+                            errors,
+                            successRate(executions, errors),
+                            average(rs, 7, 8),
+                            nullableLong(rs, 9),
+                            nullableLong(rs, 10),
+                            histogram(rs, 11)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read rollups", e);
+        }
+        return metrics;
+    }
+
+    /**
+     * One entry per provider whose tools ran since {@code from}, busiest
+     * first. System tools have no provider and are left out.
+     */
+    public synchronized List<ProviderMetricsResponse> providerMetricsSince(Instant from) {
+        RollupGranularity granularity = granularityFor(from);
+        String sql = "SELECT provider_id, " + latest("provider_name", "provider_id") + ", "
+                + "COUNT(DISTINCT tool_code), " + AGGREGATES + " FROM tool_rollups t "
+                + "WHERE granularity = ? AND bucket_start >= ? "
+                + "AND provider_id IS NOT NULL GROUP BY provider_id ORDER BY SUM(executions) DESC, provider_id";
+        List<ProviderMetricsResponse> metrics = new ArrayList<>();
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            query.setString(1, granularity.name());
+            query.setLong(2, granularity.bucketStart(from.toEpochMilli()));
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    long executions = rs.getLong(4);
+                    long errors = rs.getLong(5);
+                    metrics.add(new ProviderMetricsResponse(
+                            rs.getLong(1),
+                            rs.getString(2),
+                            rs.getInt(3),
+                            executions,
+                            errors,
+                            successRate(executions, errors),
+                            average(rs, 6, 7),
+                            nullableLong(rs, 8),
+                            nullableLong(rs, 9),
+                            histogram(rs, 10)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read rollups", e);
+        }
+        return metrics;
+    }
+
+    /** The last {@code buckets} buckets of one tool, oldest first; empty buckets are left out. */
+    public synchronized List<ToolRollupPointResponse> series(String toolCode, RollupGranularity granularity,
+            int buckets) {
+        long from = granularity.bucketStart(clock.millis()) - (buckets - 1L) * granularity.millis();
+        String sql = "SELECT bucket_start, executions, errors, timed, total_ms, min_ms, max_ms"
+                + bucketColumns(", b%d") + " FROM tool_rollups "
+                + "WHERE granularity = ? AND tool_code = ? AND bucket_start >= ? ORDER BY bucket_start";
+        List<ToolRollupPointResponse> points = new ArrayList<>();
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            query.setString(1, granularity.name());
+            query.setString(2, toolCode);
+            query.setLong(3, from);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    points.add(new ToolRollupPointResponse(
+                            Instant.ofEpochMilli(rs.getLong(1)),
+                            rs.getLong(2),
+                            rs.getLong(3),
+                            average(rs, 4, 5),
+                            nullableLong(rs, 6),
+                            nullableLong(rs, 7),
+                            histogram(rs, 8)));
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read rollups", e);
+        }
+        return points;
+    }
+
+    /** Drops buckets older than their granularity's retention; returns how many. */
+    public synchronized int deleteExpired() {
+        long now = clock.millis();
+        int deleted = 0;
+        try (PreparedStatement delete = connection.prepareStatement(
+                "DELETE FROM tool_rollups WHERE granularity = ? AND bucket_start < ?")) {
+            for (RollupGranularity granularity : RollupGranularity.values()) {
+                delete.setString(1, granularity.name());
+                delete.setLong(2, now - retention(granularity).toMillis());
+                deleted += delete.executeUpdate();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to delete expired rollups", e);
+        }
+        return deleted;
+    }
+
+    private RollupGranularity granularityFor(Instant from) {
+        return clock.millis() - from.toEpochMilli() <= properties.getHourRetention().toMillis()
+                ? RollupGranularity.HOUR
+                : RollupGranularity.DAY;
+    }
+
+    private Duration retention(RollupGranularity granularity) {
+        switch (granularity) {
+            case MINUTE:
+                return properties.getMinuteRetention();
+            case HOUR:
+                return properties.getHourRetention();
+            default:
+                return properties.getDayRetention();
+        }
+    }
+
+    private static void bind(PreparedStatement upsert, Key key, Rollup rollup) throws SQLException {
+        upsert.setString(1, key.granularity().name());
+        upsert.setLong(2, key.bucketStart());
+        upsert.setString(3, key.toolCode());
+        upsert.setString(4, rollup.toolName);
+        setNullableLong(upsert, 5, rollup.toolId);
+        setNullableLong(upsert, 6, rollup.providerId);
+        upsert.setString(7, rollup.providerName);
+        upsert.setLong(8, rollup.executions);
+        upsert.setLong(9, rollup.errors);
+        upsert.setLong(10, rollup.timed);
+        upsert.setLong(11, rollup.totalMs);
+        if (rollup.timed > 0) {
+            upsert.setLong(12, rollup.minMs);
+            upsert.setLong(13, rollup.maxMs);
+        } else {
+            upsert.setNull(12, Types.BIGINT);
+            upsert.setNull(13, Types.BIGINT);
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            upsert.setLong(14 + i, rollup.buckets[i]);
+        }
+    }
+
+    private static void setNullableLong(PreparedStatement statement, int index, Long value) throws SQLException {
+        if (value != null) {
+            statement.setLong(index, value);
+        } else {
+            statement.setNull(index, Types.BIGINT);
+        }
+    }
+
+    static int bucketIndex(long latencyMs) {
+        for (int i = 0; i < LATENCY_BOUNDS_MS.length; i++) {
+            if (latencyMs <= LATENCY_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return LATENCY_BOUNDS_MS.length;
+    }
+
+    private static String toolCode(ToolExecutionLog entry) {
+        ApiTool tool = entry.getApiTool();
+        if (tool != null && tool.getCode() != null) {
+            return tool.getCode();
+        }
+        if (tool != null && tool.getId() != null) {
+            return "tool-" + tool.getId();
+        }
+        return entry.getSystemToolName() != null ? entry.getSystemToolName() : "unknown";
+    }
+
+    private static String toolName(ToolExecutionLog entry) {
+        if (entry.getApiTool() != null && entry.getApiTool().getName() != null) {
+            return entry.getApiTool().getName();
+        }
+        return entry.getSystemToolName() != null ? entry.getSystemToolName() : "Unknown Tool";
+    }
+
+    /** {@code column} of the newest bucket of the group {@code t.groupColumn} belongs to. */
+    private static String latest(String column, String groupColumn) {
+        return "(SELECT r." + column + " FROM tool_rollups r WHERE r.granularity = t.granularity AND r."
+                + groupColumn + " = t." + groupColumn + " ORDER BY r.bucket_start DESC LIMIT 1)";
+    }
+
+    private static double successRate(long executions, long errors) {
+        return executions > 0 ? (double) (executions - errors) / executions * 100.0 : 0.0;
+    }
+
+    private static double average(ResultSet rs, int timedColumn, int totalColumn) throws SQLException {
+        long timed = rs.getLong(timedColumn);
+        return timed > 0 ? (double) rs.getLong(totalColumn) / timed : 0.0;
+    }
+
+    private static Long nullableLong(ResultSet rs, int column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private static Map<String, Long> histogram(ResultSet rs, int firstColumn) throws SQLException {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram.put(BUCKET_LABELS.get(i), rs.getLong(firstColumn + i));
+        }
+        return histogram;
+    }
+
+    private static String bucketColumns(String format) {
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < BUCKETS; i++) {
+            columns.append(String.format(format, i));
+        }
+        return columns.toString();
+    }
+
+    private static List<String> bucketLabels() {
+        List<String> labels = new ArrayList<>();
+        for (long bound : LATENCY_BOUNDS_MS) {
+            labels.add("<=" + bound + "ms");
+        }
+        labels.add(">" + LATENCY_BOUNDS_MS[LATENCY_BOUNDS_MS.length - 1] + "ms");
+        return List.copyOf(labels);
+    }
+
+    private void rollbackQuietly() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            log.warn("Rollback of rollup update failed: {}", e.getMessage());
+        }
+    }
+
+    private void autoCommitQuietly() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.warn("Could not reset auto-commit on the rollup connection: {}", e.getMessage());
+        }
+    }
+
+    /** Logs executed before {@code cutoff} with an id above {@code lastLogId} still have to be folded in. */
+    public record Backfill(Instant cutoff, long lastLogId) {
+    }
+
+    public record Totals(long executions, long successful, double averageLatencyMs) {
+
+        public static final Totals EMPTY = new Totals(0, 0, 0.0);
+    }
+
+    private record Key(RollupGranularity granularity, long bucketStart, String toolCode) {
+    }
+
+    private static final class Rollup {
+
+        String toolName;
+        Long toolId;
+        Long providerId;
+        String providerName;
+        long executions;
+        long errors;
+        long timed;
+        long totalMs;
+        long minMs = Long.MAX_VALUE;
+        long maxMs = Long.MIN_VALUE;
+        final long[] buckets = new long[BUCKETS];
+
+        void add(ToolExecutionLog entry) {
+            toolName = toolName(entry);
+            if (entry.getApiTool() != null) {
+                toolId = entry.getApiTool().getId();
+                if (entry.getApiTool().getProvider() != null) {
+                    providerId = entry.getApiTool().getProvider().getId();
+                    providerName = entry.getApiTool().getProvider().getName();
+                }
+            }
+            executions++;
+            if (!entry.isSuccess()) {
+                errors++;
+            }
+            Long latency = entry.getExecutionTimeMs();
+            if (latency != null) {
+                timed++;
+                totalMs += latency;
+                minMs = Math.min(minMs, latency);
+                maxMs = Math.max(maxMs, latency);
+                buckets[bucketIndex(latency)]++;
+            }
+        }
+    }
+}
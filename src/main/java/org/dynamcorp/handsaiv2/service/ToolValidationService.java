@@ -4,24 +4,19 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.dynamcorp.handsaiv2.model.ApiTool;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClient;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class ToolValidationService {
 
-    private final RestClient.Builder restClientBuilder;
+    private final ProviderHttpClientRegistry httpClientRegistry;
 
     public boolean validateApiToolHealth(ApiTool apiTool) {
         try {
-            String url = apiTool.getProvider().getBaseUrl();
-
-            // Simple ping check to validate if the API is accessible
-            RestClient restClient = restClientBuilder.baseUrl(url).build();
-
-            // Hacemos un HEAD request para validar que el endpoint responde
-            restClient.head()
+            // Simple ping check to validate if the API is accessible.
+            // Hacemos un HEAD request al baseUrl del provider para validar que responde
+            httpClientRegistry.clientFor(CachedProvider.from(apiTool.getProvider())).head()
                     .retrieve()
                     .toBodilessEntity();
 
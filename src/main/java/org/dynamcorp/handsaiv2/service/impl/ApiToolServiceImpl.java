@@ -9,11 +9,13 @@ import org.dynamcorp.handsaiv2.exception.ResourceNotFoundException;
 import org.dynamcorp.handsaiv2.model.ApiTool;
 import org.dynamcorp.handsaiv2.model.ToolParameter;
 import org.dynamcorp.handsaiv2.repository.ApiToolRepository;
+import org.dynamcorp.handsaiv2.service.ApiToolChangedEvent;
 import org.dynamcorp.handsaiv2.service.ApiToolService;
 import org.dynamcorp.handsaiv2.service.EncryptionService;
-import org.dynamcorp.handsaiv2.service.ToolCacheManager;
+import org.dynamcorp.handsaiv2.service.ToolExecutionPlanCompiler;
 import org.dynamcorp.handsaiv2.service.ToolValidationService;
 import org.dynamcorp.handsaiv2.util.SecurityValidator;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -32,9 +34,10 @@ public class ApiToolServiceImpl implements ApiToolService {
     private final ApiToolRepository apiToolRepository;
     private final org.dynamcorp.handsaiv2.repository.ApiProviderRepository apiProviderRepository;
     private final ToolValidationService toolValidationService;
-    private final ToolCacheManager toolCacheManager;
+    private final ApplicationEventPublisher eventPublisher;
     private final EncryptionService encryptionService;
     private final SecurityValidator securityValidator;
+    private final ToolExecutionPlanCompiler planCompiler;
 
     @Override
     @Transactional
@@ -86,10 +89,11 @@ public class ApiToolServiceImpl implements ApiToolService {
             apiTool.setParameters(parameters);
         }
 
+        validateBodyTemplate(apiTool);
         ApiTool savedTool = apiToolRepository.save(apiTool);
 
-        // Refresh cache
-        toolCacheManager.refreshCache();
+        // La caché se actualiza con esta tool al hacer commit
+        eventPublisher.publishEvent(new ApiToolChangedEvent(savedTool.getCode()));
 
         return ApiToolResponse.from(savedTool);
     }
@@ -123,6 +127,7 @@ public class ApiToolServiceImpl implements ApiToolService {
 
         ApiTool apiTool = apiToolRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("ApiTool not found with id: " + id));
+        String previousCode = apiTool.getCode();
 
         if (request.providerId() != null) {
             org.dynamcorp.handsaiv2.model.ApiProvider provider = apiProviderRepository.findById(request.providerId())
@@ -176,10 +181,11 @@ public class ApiToolServiceImpl implements ApiToolService {
             apiTool.getParameters().addAll(updatedParameters);
         }
 
+        validateBodyTemplate(apiTool);
         ApiTool savedTool = apiToolRepository.save(apiTool);
 
-        // Refresh cache
-        toolCacheManager.refreshCache();
+        // La caché se actualiza con esta tool al hacer commit
+        eventPublisher.publishEvent(new ApiToolChangedEvent(savedTool.getCode(), previousCode));
 
         return ApiToolResponse.from(savedTool);
     }
@@ -208,7 +214,7 @@ public class ApiToolServiceImpl implements ApiToolService {
         apiTool.getParameters().clear();
         apiToolRepository.saveAndFlush(apiTool);
         apiToolRepository.delete(apiTool);
-        toolCacheManager.refreshCache();
+        eventPublisher.publishEvent(new ApiToolChangedEvent(apiTool.getCode()));
     }
 
     @Override
@@ -226,10 +232,23 @@ public class ApiToolServiceImpl implements ApiToolService {
                 .orElseThrow(() -> new ResourceNotFoundException("ApiTool not found with code: " + code));
     }
 
+    /**
+     * Los placeholders del bodyPayloadTemplate se validan al guardar: uno que no
+     * corresponde a ningún parámetro nunca se resolvería en tiempo de ejecución.
+     */
+    private void validateBodyTemplate(ApiTool apiTool) {
+        Set<String> unknown = planCompiler.findUnknownPlaceholders(apiTool);
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Body payload template references unknown parameters: "
+                    + unknown.stream().map(name -> "{{" + name + "}}").collect(Collectors.joining(", ")));
+        }
+    }
+
     private void validateHealth(ApiTool apiTool) {
         boolean isHealthy = toolValidationService.validateApiToolHealth(apiTool);
         apiTool.setHealthy(isHealthy);
         apiTool.setLastHealthCheck(Instant.now());
         apiToolRepository.save(apiTool);
+        eventPublisher.publishEvent(new ApiToolChangedEvent(apiTool.getCode()));
     }
 }
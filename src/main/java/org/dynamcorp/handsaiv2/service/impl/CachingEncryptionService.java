@@ -0,0 +1,162 @@
+package org.dynamcorp.handsaiv2.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.EncryptionCacheProperties;
+import org.dynamcorp.handsaiv2.dto.EncryptionCacheStatsResponse;
+import org.dynamcorp.handsaiv2.service.ApiProviderChangedEvent;
+import org.dynamcorp.handsaiv2.service.EncryptionService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Decorator over {@link EncryptionServiceImpl} that keeps decrypted values in
+ * memory, keyed by ciphertext, so the Jasypt PBE key derivation runs once per
+ * secret instead of once per call.
+ * <p>
+ * The cache is bounded (LRU over handsai.encryption.cache.max-entries) and
+ * every entry expires handsai.encryption.cache.ttl after it was decrypted.
+ * Plaintexts are held as char arrays and zeroed when they leave the cache;
+ * any provider update or delete clears it.
+ */
+@Slf4j
+@Service
+@Primary
+public class CachingEncryptionService implements EncryptionService {
+
+    private final EncryptionServiceImpl delegate;
+    private final EncryptionCacheProperties properties;
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public CachingEncryptionService(EncryptionServiceImpl delegate, EncryptionCacheProperties properties) {
+        this(delegate, properties, System::nanoTime);
+    }
+
+    CachingEncryptionService(EncryptionServiceImpl delegate, EncryptionCacheProperties properties,
+            LongSupplier clock) {
+        this.delegate = delegate;
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @Override
+    public String encrypt(String data) {
+        return delegate.encrypt(data);
+    }
+
+    @Override
+    public String decrypt(String encryptedData) {
+        if (encryptedData == null || !properties.isEnabled()) {
+            return delegate.decrypt(encryptedData);
+        }
+
+        long now = clock.getAsLong();
+        synchronized (cache) {
+            Entry entry = cache.get(encryptedData);
+            if (entry != null) {
+                if (now - entry.expiresAt() < 0) {
+                    hits.incrementAndGet();
+                    return new String(entry.plaintext());
+                }
+                evict(encryptedData);
+            }
+        }
+
+        // Jasypt fuera del lock: dos hilos pueden descifrar el mismo valor a la vez
+        String plaintext = delegate.decrypt(encryptedData);
+        misses.incrementAndGet();
+        if (plaintext != null) {
+            Entry entry = new Entry(plaintext.toCharArray(), now + properties.getTtl().toNanos());
+            synchronized (cache) {
+                Entry previous = cache.put(encryptedData, entry);
+                if (previous != null) {
+                    Arrays.fill(previous.plaintext(), '\0');
+                }
+                while (cache.size() > Math.max(1, properties.getMaxEntries())) {
+                    evict(cache.keySet().iterator().next());
+                }
+            }
+        }
+        return plaintext;
+    }
+
+    /**
+     * Credentials of the provider may have been replaced; the cache is small
+     * and refills on demand, so everything goes.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onProviderChanged(ApiProviderChangedEvent event) {
+        int cleared = clear();
+        log.debug("Decrypted credential cache cleared after provider {} changed ({} entries)",
+                event.providerId(), cleared);
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void purgeExpired() {
+        long now = clock.getAsLong();
+        synchronized (cache) {
+            Iterator<Map.Entry<String, Entry>> it = cache.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry entry = it.next().getValue();
+                if (now - entry.expiresAt() >= 0) {
+                    Arrays.fill(entry.plaintext(), '\0');
+                    it.remove();
+                    evictions.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public int clear() {
+        synchronized (cache) {
+            int size = cache.size();
+            cache.values().forEach(entry -> Arrays.fill(entry.plaintext(), '\0'));
+            cache.clear();
+            evictions.addAndGet(size);
+            return size;
+        }
+    }
+
+    public EncryptionCacheStatsResponse getStats() {
+        int size;
+        synchronized (cache) {
+            size = cache.size();
+        }
+        return new EncryptionCacheStatsResponse(
+                properties.isEnabled(),
+                size,
+                properties.getMaxEntries(),
+                properties.getTtl().toSeconds(),
+                hits.get(),
+                misses.get(),
+                evictions.get());
+    }
+
+    // Llamar con el lock de cache tomado
+    private void evict(String encryptedData) {
+        Entry removed = cache.remove(encryptedData);
+        if (removed != null) {
+            Arrays.fill(removed.plaintext(), '\0');
+            evictions.incrementAndGet();
+        }
+    }
+
+    private record Entry(char[] plaintext, long expiresAt) {
+    }
+}
@@ -0,0 +1,55 @@
+package org.dynamcorp.handsaiv2.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import org.dynamcorp.handsaiv2.dto.LogStoreStatsResponse;
+import org.dynamcorp.handsaiv2.dto.ToolExecutionLogResponse;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.dynamcorp.handsaiv2.repository.ToolExecutionLogBatchWriter;
+import org.dynamcorp.handsaiv2.repository.ToolExecutionLogRepository;
+import org.dynamcorp.handsaiv2.service.ExecutionLogStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Execution logs in the tool_execution_logs table of the configuration
+ * database (handsai.logs.store.type=database), where they were kept before
+ * the segmented store.
+ */
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "handsai.logs.store.type", havingValue = "database")
+public class DatabaseExecutionLogStore implements ExecutionLogStore {
+
+    private final ToolExecutionLogBatchWriter batchWriter;
+    private final ToolExecutionLogRepository logRepository;
+
+    @Override
+    public void append(List<ToolExecutionLog> logs) {
+        batchWriter.insertAll(logs);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Page<ToolExecutionLogResponse> findPage(Pageable pageable) {
+        return logRepository.findAllByOrderByExecutedAtDesc(pageable).map(ToolExecutionLogResponse::from);
+    }
+
+    @Override
+    @Transactional
+    public long deleteBefore(Instant cutoff) {
+        return logRepository.deleteByExecutedAtBefore(cutoff);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public LogStoreStatsResponse getStats() {
+        return new LogStoreStatsResponse("DATABASE", 0, 0, logRepository.count(),
+                logRepository.findOldestExecutedAt(), null, 0);
+    }
+}
@@ -0,0 +1,586 @@
+package org.dynamcorp.handsaiv2.service.impl;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.config.LogStoreProperties;
+import org.dynamcorp.handsaiv2.dto.LogStoreStatsResponse;
+import org.dynamcorp.handsaiv2.dto.ToolExecutionLogResponse;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.dynamcorp.handsaiv2.repository.ToolExecutionLogRepository;
+import org.dynamcorp.handsaiv2.service.ExecutionLogStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Default {@link ExecutionLogStore}: execution logs go to SQLite segment
+ * files under handsai.logs.store.directory instead of the configuration
+ * database, so log writes never hold the lock that admin CRUD and token
+ * writes need on handsai.db. Logs written to tool_execution_logs before it
+ * was turned on are not copied: they are listed after the segments and
+ * trimmed by retention like any other log, until the table is empty.
+ * <p>
+ * Only the newest segment is written. It is sealed and a new one started once
+ * its file reaches max-segment-size or it has been open max-segment-age. Each
+ * segment is named after the moment it was opened, and its row count and
+ * executed_at range are kept in memory: retention drops whole segment files
+ * that are entirely past the cutoff, and pages skip whole segments by their
+ * row counts. Log pages are read newest segment first, so logs written
+ * across a rotation may be ordered by segment rather than strictly by time.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "handsai.logs.store.type", havingValue = "segmented", matchIfMissing = true)
+public class SegmentedExecutionLogStore implements ExecutionLogStore {
+
+    static final String SEGMENT_PREFIX = "execution-logs-";
+    static final String SEGMENT_SUFFIX = ".db";
+
+    private static final String SCHEMA_SQL = "CREATE TABLE IF NOT EXISTS execution_logs ("
+            + "id INTEGER PRIMARY KEY, executed_at INTEGER NOT NULL, api_tool_id INTEGER, tool_name TEXT, "
+            + "session_id TEXT, success INTEGER NOT NULL, execution_time_ms INTEGER, "
+            + "request_payload TEXT, response_payload TEXT, error_message TEXT)";
+    private static final String INDEX_SQL = "CREATE INDEX IF NOT EXISTS idx_execution_logs_executed_at "
+            + "ON execution_logs (executed_at)";
+    private static final String INSERT_SQL = "INSERT INTO execution_logs (id, executed_at, api_tool_id, "
+            + "tool_name, session_id, success, execution_time_ms, request_payload, response_payload, error_message) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String PAGE_SQL = "SELECT id, executed_at, tool_name, session_id, success, "
+            + "execution_time_ms, request_payload, response_payload, error_message FROM execution_logs "
+            + "ORDER BY executed_at DESC, id DESC LIMIT ? OFFSET ?";
+    private static final String RANGE_SQL = "SELECT COUNT(*), MIN(executed_at), MAX(executed_at), MAX(id) "
+            + "FROM execution_logs";
+
+    private final LogStoreProperties properties;
+    private final ToolExecutionLogRepository legacyLogs;
+    private final Clock clock;
+    private final Path directory;
+
+    // Serializa escrituras, rotación y retención; las lecturas no lo toman
+    private final Object writeLock = new Object();
+    // Lectura: consultas en curso. Escritura: borrar archivos de segmentos
+    private final ReadWriteLock filesLock = new ReentrantReadWriteLock();
+
+    // Del más viejo al más nuevo; el último es el activo
+    private volatile List<Segment> segments = List.of();
+    private Connection writer;
+    private long nextId = 1;
+    private final AtomicLong rotations = new AtomicLong();
+    // Nada se escribe ya en tool_execution_logs: una vez vacía no se vuelve a consultar
+    private volatile boolean legacyDrained;
+
+    @Autowired
+    public SegmentedExecutionLogStore(LogStoreProperties properties, ToolExecutionLogRepository legacyLogs) {
+        this(properties, legacyLogs, Clock.systemUTC());
+    }
+
+    SegmentedExecutionLogStore(LogStoreProperties properties, ToolExecutionLogRepository legacyLogs, Clock clock) {
+        this.properties = properties;
+        this.legacyLogs = legacyLogs;
+        this.clock = clock;
+        this.directory = Path.of(properties.getDirectory());
+    }
+
+    @PostConstruct
+    public void open() {
+        synchronized (writeLock) {
+            try {
+                Files.createDirectories(directory);
+                List<Segment> found = new ArrayList<>();
+                try (Stream<Path> files = Files.list(directory)) {
+                    for (Path file : files.sorted().toList()) {
+                        Long openedAt = parseOpenedAt(file);
+                        if (openedAt != null) {
+                            found.add(loadSegment(file, openedAt));
+                        }
+                    }
+                }
+                for (Segment segment : found) {
+                    nextId = Math.max(nextId, segment.maxId + 1);
+                }
+                if (found.isEmpty()) {
+                    found.add(createSegment(clock.millis()));
+                }
+                segments = List.copyOf(found);
+                writer = openWriter(active().path);
+                log.info("Execution log store at {}: {} segments, {} logs", directory.toAbsolutePath(),
+                        found.size(), found.stream().mapToLong(s -> s.rows).sum());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open execution log store at " + directory.toAbsolutePath(), e);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Cannot open execution log store at " + directory.toAbsolutePath(), e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (writeLock) {
+            closeWriter();
+        }
+    }
+
+    @Override
+    public void append(List<ToolExecutionLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        synchronized (writeLock) {
+            if (writer == null) {
+                throw new IllegalStateException("Execution log store is closed");
+            }
+            rotateIfDue();
+            Segment active = active();
+            long firstId = nextId;
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            try {
+                writer.setAutoCommit(false);
+                try (PreparedStatement insert = writer.prepareStatement(INSERT_SQL)) {
+                    long id = firstId;
+                    for (ToolExecutionLog entry : logs) {
+                        long executedAt = entry.getExecutedAt() != null
+                                ? entry.getExecutedAt().toEpochMilli()
+                                : clock.millis();
+                        min = Math.min(min, executedAt);
+                        max = Math.max(max, executedAt);
+                        bind(insert, id++, executedAt, entry);
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+                writer.commit();
+            } catch (SQLException e) {
+                rollbackQuietly();
+                throw new IllegalStateException("Failed to append " + logs.size() + " execution logs to "
+                        + active.path.getFileName(), e);
+            } finally {
+                autoCommitQuietly();
+            }
+            nextId = firstId + logs.size();
+            active.added(logs.size(), min, max);
+        }
+    }
+
+    @Override
+    public Page<ToolExecutionLogResponse> findPage(Pageable pageable) {
+        List<ToolExecutionLogResponse> content = new ArrayList<>();
+        long total = 0;
+        filesLock.readLock().lock();
+        try {
+            List<Segment> snapshot = segments;
+            for (Segment segment : snapshot) {
+                total += segment.rows;
+            }
+            long legacyRows = legacyCount();
+            total += legacyRows;
+            long skip = pageable.isPaged() ? pageable.getOffset() : 0;
+            long wanted = pageable.isPaged() ? pageable.getPageSize() : total;
+            for (int i = snapshot.size() - 1; i >= 0 && wanted > 0; i--) {
+                Segment segment = snapshot.get(i);
+                if (skip >= segment.rows) {
+                    skip -= segment.rows;
+                    continue;
+                }
+                int read = readPage(segment, skip, wanted, content);
+                wanted -= read;
+                skip = 0;
+            }
+            if (wanted > 0 && legacyRows > 0) {
+                // Lo de tool_execution_logs es anterior a todos los segmentos: va al final
+                readLegacy(skip, wanted, content);
+            }
+        } finally {
+            filesLock.readLock().unlock();
+        }
+        return new PageImpl<>(content, pageable, Math.max(total, content.size()));
+    }
+
+    @Override
+    public long deleteBefore(Instant cutoff) {
+        long cutoffMillis = cutoff.toEpochMilli();
+        long deleted = 0;
+        synchronized (writeLock) {
+            List<Segment> kept = new ArrayList<>();
+            List<Segment> expired = new ArrayList<>();
+            Segment active = active();
+            for (Segment segment : segments) {
+                if (segment != active && (segment.rows == 0 || segment.maxExecutedAt < cutoffMillis)) {
+                    expired.add(segment);
+                } else {
+                    kept.add(segment);
+                }
+            }
+            // Primero se sacan de la lista: las consultas nuevas ya no los abren
+            segments = List.copyOf(kept);
+            for (Segment segment : expired) {
+                deleted += segment.rows;
+                removeFiles(segment);
+            }
+            for (Segment segment : kept) {
+                if (segment.rows > 0 && segment.minExecutedAt < cutoffMillis) {
+                    deleted += deleteRows(segment, segment == active, cutoffMillis);
+                }
+            }
+        }
+        if (!legacyDrained) {
+            deleted += legacyLogs.deleteByExecutedAtBefore(cutoff);
+            legacyCount();
+        }
+        return deleted;
+    }
+
+    @Override
+    public LogStoreStatsResponse getStats() {
+        List<Segment> snapshot = segments;
+        long size = 0;
+        long rows = 0;
+        long oldest = Long.MAX_VALUE;
+        for (Segment segment : snapshot) {
+            size += segment.sizeOnDisk();
+            rows += segment.rows;
+            if (segment.rows > 0) {
+                oldest = Math.min(oldest, segment.minExecutedAt);
+            }
+        }
+        long legacyRows = legacyCount();
+        if (legacyRows > 0) {
+            rows += legacyRows;
+            Instant legacyOldest = legacyLogs.findOldestExecutedAt();
+            if (legacyOldest != null) {
+                oldest = Math.min(oldest, legacyOldest.toEpochMilli());
+            }
+        }
+        return new LogStoreStatsResponse(
+                "SEGMENTED",
+                snapshot.size(),
+                size,
+                rows,
+                oldest != Long.MAX_VALUE ? Instant.ofEpochMilli(oldest) : null,
+                snapshot.isEmpty() ? null : Instant.ofEpochMilli(snapshot.get(snapshot.size() - 1).openedAt),
+                rotations.get());
+    }
+
+    private Segment active() {
+        List<Segment> current = segments;
+        return current.get(current.size() - 1);
+    }
+
+    private void rotateIfDue() {
+        Segment active = active();
+        boolean full = active.sizeOnDisk() >= properties.getMaxSegmentSize().toBytes();
+        boolean old = clock.millis() - active.openedAt >= properties.getMaxSegmentAge().toMillis();
+        if (!full && !old) {
+            return;
+        }
+        Segment next;
+        Connection nextWriter;
+        try {
+            // Primero el segmento nuevo: si falla, se sigue escribiendo en el activo
+            next = createSegment(Math.max(clock.millis(), active.openedAt + 1));
+            try {
+                nextWriter = openWriter(next.path);
+            } catch (SQLException e) {
+                removeFiles(next);
+                throw e;
+            }
+        } catch (SQLException e) {
+            log.warn("Could not start a new execution log segment, still writing to {}: {}",
+                    active.path.getFileName(), e.getMessage());
+            return;
+        }
+        try (Statement statement = writer.createStatement()) {
+            statement.execute("PRAGMA wal_checkpoint(TRUNCATE)");
+        } catch (SQLException e) {
+            log.warn("Could not checkpoint sealed segment {}: {}", active.path.getFileName(), e.getMessage());
+        }
+        closeWriter();
+        writer = nextWriter;
+        List<Segment> rotated = new ArrayList<>(segments);
+        if (active.rows == 0) {
+            rotated.remove(active);
+        }
+        rotated.add(next);
+        segments = List.copyOf(rotated);
+        if (active.rows == 0) {
+            removeFiles(active);
+        }
+        rotations.incrementAndGet();
+        log.info("Execution log segment {} sealed ({} logs, {} bytes); writing to {}",
+                active.path.getFileName(), active.rows, active.sizeOnDisk(), next.path.getFileName());
+    }
+
+    private Segment createSegment(long openedAt) throws SQLException {
+        Path path = directory.resolve(SEGMENT_PREFIX + String.format("%016d", openedAt) + SEGMENT_SUFFIX);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+                Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute(SCHEMA_SQL);
+            statement.execute(INDEX_SQL);
+        }
+        return new Segment(path, openedAt);
+    }
+
+    private Segment loadSegment(Path path, long openedAt) throws SQLException {
+        Segment segment = new Segment(path, openedAt);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+                Statement statement = connection.createStatement()) {
+            statement.execute(SCHEMA_SQL);
+            statement.execute(INDEX_SQL);
+            try (ResultSet rs = statement.executeQuery(RANGE_SQL)) {
+                rs.next();
+                segment.rows = rs.getLong(1);
+                if (segment.rows > 0) {
+                    segment.minExecutedAt = rs.getLong(2);
+                    segment.maxExecutedAt = rs.getLong(3);
+                    segment.maxId = rs.getLong(4);
+                }
+            }
+        }
+        return segment;
+    }
+
+    private Connection openWriter(Path path) throws SQLException {
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            // Un corte de luz puede perder el último lote, nunca corromper el segmento
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("PRAGMA busy_timeout=5000");
+        }
+        return connection;
+    }
+
+    private Connection openReader(Path path) throws SQLException {
+        Properties config = new Properties();
+        // SQLITE_OPEN_READONLY: un segmento borrado no se recrea vacío
+        config.setProperty("open_mode", "1");
+        config.setProperty("busy_timeout", "5000");
+        return DriverManager.getConnection("jdbc:sqlite:" + path, config);
+    }
+
+    private int readPage(Segment segment, long offset, long limit, List<ToolExecutionLogResponse> out) {
+        int read = 0;
+        try (Connection connection = openReader(segment.path);
+                PreparedStatement query = connection.prepareStatement(PAGE_SQL)) {
+            query.setLong(1, limit);
+            query.setLong(2, offset);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    out.add(toResponse(rs));
+                    read++;
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to read execution log segment " + segment.path, e);
+        }
+        return read;
+    }
+
+    private long legacyCount() {
+        if (legacyDrained) {
+            return 0;
+        }
+        long count = legacyLogs.count();
+        legacyDrained = count == 0;
+        return count;
+    }
+
+    /** Rows {@code skip}..{@code skip + limit} of tool_execution_logs, newest first. */
+    private void readLegacy(long skip, long limit, List<ToolExecutionLogResponse> out) {
+        int size = (int) Math.min(limit, Integer.MAX_VALUE);
+        int page = (int) (skip / size);
+        long from = skip % size;
+        while (limit > 0) {
+            Page<ToolExecutionLog> chunk = legacyLogs.findAllByOrderByExecutedAtDesc(PageRequest.of(page++, size));
+            List<ToolExecutionLog> rows = chunk.getContent();
+            for (int i = (int) from; i < rows.size() && limit > 0; i++, limit--) {
+                out.add(ToolExecutionLogResponse.from(rows.get(i)));
+            }
+            if (!chunk.hasNext()) {
+                return;
+            }
+            from = 0;
+        }
+    }
+
+    private long deleteRows(Segment segment, boolean active, long cutoffMillis) {
+        try {
+            Connection connection = active ? writer : DriverManager.getConnection("jdbc:sqlite:" + segment.path);
+            try (PreparedStatement delete = connection.prepareStatement(
+                    "DELETE FROM execution_logs WHERE executed_at < ?");
+                    Statement statement = connection.createStatement()) {
+                delete.setLong(1, cutoffMillis);
+                int deleted = delete.executeUpdate();
+                try (ResultSet rs = statement.executeQuery(RANGE_SQL)) {
+                    rs.next();
+                    segment.rows = rs.getLong(1);
+                    segment.minExecutedAt = segment.rows > 0 ? rs.getLong(2) : Long.MAX_VALUE;
+                    segment.maxExecutedAt = segment.rows > 0 ? rs.getLong(3) : Long.MIN_VALUE;
+                }
+                return deleted;
+            } finally {
+                if (!active) {
+                    connection.close();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to delete old logs from segment " + segment.path, e);
+        }
+    }
+
+    private void removeFiles(Segment segment) {
+        filesLock.writeLock().lock();
+        try {
+            for (String suffix : new String[] { "", "-wal", "-shm" }) {
+                Files.deleteIfExists(Path.of(segment.path + suffix));
+            }
+            log.info("Execution log segment {} removed ({} logs)", segment.path.getFileName(), segment.rows);
+        } catch (IOException e) {
+            log.warn("Could not remove execution log segment {}: {}", segment.path, e.getMessage());
+        } finally {
+            filesLock.writeLock().unlock();
+        }
+    }
+
+    private void bind(PreparedStatement insert, long id, long executedAt, ToolExecutionLog entry)
+            throws SQLException {
+        insert.setLong(1, id);
+        insert.setLong(2, executedAt);
+        if (entry.getApiTool() != null && entry.getApiTool().getId() != null) {
+            insert.setLong(3, entry.getApiTool().getId());
+        } else {
+            insert.setNull(3, Types.BIGINT);
+        }
+        // El nombre va copiado: los segmentos no pueden hacer join con api_tools
+        insert.setString(4, entry.getApiTool() != null && entry.getApiTool().getName() != null
+                ? entry.getApiTool().getName()
+                : entry.getSystemToolName());
+        insert.setString(5, entry.getSessionId());
+        insert.setInt(6, entry.isSuccess() ? 1 : 0);
+        if (entry.getExecutionTimeMs() != null) {
+            insert.setLong(7, entry.getExecutionTimeMs());
+        } else {
+            insert.setNull(7, Types.BIGINT);
+        }
+        insert.setString(8, entry.getRequestPayload());
+        insert.setString(9, entry.getResponsePayload());
+        insert.setString(10, entry.getErrorMessage());
+    }
+
+    private static ToolExecutionLogResponse toResponse(ResultSet rs) throws SQLException {
+        String toolName = rs.getString(3);
+        long executionTime = rs.getLong(6);
+        Long executionTimeMs = rs.wasNull() ? null : executionTime;
+        return new ToolExecutionLogResponse(
+                rs.getLong(1),
+                toolName != null ? toolName : "Unknown Tool",
+                rs.getString(4),
+                rs.getString(7),
+                rs.getString(8),
+                executionTimeMs,
+                rs.getInt(5) != 0,
+                rs.getString(9),
+                Instant.ofEpochMilli(rs.getLong(2)));
+    }
+
+    private static Long parseOpenedAt(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void rollbackQuietly() {
+        try {
+            writer.rollback();
+        } catch (SQLException e) {
+            log.warn("Rollback of execution log batch failed: {}", e.getMessage());
+        }
+    }
+
+    private void autoCommitQuietly() {
+        try {
+            writer.setAutoCommit(true);
+        } catch (SQLException e) {
+            log.warn("Could not reset auto-commit on the execution log writer: {}", e.getMessage());
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (SQLException e) {
+            log.warn("Could not close execution log segment: {}", e.getMessage());
+        }
+        writer = null;
+    }
+
+    /** One segment file; counters are written under the store's write lock. */
+    private static final class Segment {
+
+        final Path path;
+        final long openedAt;
+        volatile long rows;
+        volatile long minExecutedAt = Long.MAX_VALUE;
+        volatile long maxExecutedAt = Long.MIN_VALUE;
+        long maxId;
+
+        Segment(Path path, long openedAt) {
+            this.path = path;
+            this.openedAt = openedAt;
+        }
+
+        void added(int count, long min, long max) {
+            rows += count;
+            minExecutedAt = Math.min(minExecutedAt, min);
+            maxExecutedAt = Math.max(maxExecutedAt, max);
+        }
+
+        long sizeOnDisk() {
+            long size = 0;
+            for (String suffix : new String[] { "", "-wal" }) {
+                try {
+                    size += Files.size(Path.of(path + suffix));
+                } catch (IOException e) {
+                    // El -wal no existe mientras el segmento está sellado
+                }
+            }
+            return size;
+        }
+    }
+}
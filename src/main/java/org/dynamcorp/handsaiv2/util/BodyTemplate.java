@@ -0,0 +1,153 @@
+package org.dynamcorp.handsaiv2.util;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.dynamcorp.handsaiv2.exception.ToolExecutionException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@code bodyPayloadTemplate} parsed once into literal chunks and
+ * {@code {{placeholder}}}s. Rendering is a single pass over the chunks into one
+ * pre-sized buffer; string values are JSON-escaped, everything else is written
+ * as JSON by the ObjectMapper.
+ */
+@Slf4j
+public final class BodyTemplate {
+
+    /** What to write when the call has no value for a placeholder. */
+    public enum MissingPlaceholderPolicy {
+        /** Leave "{{name}}" untouched (previous behaviour). */
+        KEEP,
+        /** Write nothing. */
+        EMPTY,
+        /** Write the JSON literal null. */
+        NULL,
+        /** Fail the call. */
+        FAIL
+    }
+
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+
+    private final String source;
+    // literals[i] goes before placeholders[i]; literals has one more element
+    private final String[] literals;
+    private final String[] placeholders;
+    private final Set<String> placeholderNames;
+    private final int literalLength;
+
+    private BodyTemplate(String source, List<String> literals, List<String> placeholders) {
+        this.source = source;
+        this.literals = literals.toArray(String[]::new);
+        this.placeholders = placeholders.toArray(String[]::new);
+        this.placeholderNames = Collections.unmodifiableSet(new LinkedHashSet<>(placeholders));
+        int length = 0;
+        for (String literal : this.literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * @return the compiled template, or null when there is no template
+     */
+    public static BodyTemplate compile(String template) {
+        if (template == null || template.isBlank()) {
+            return null;
+        }
+        List<String> literals = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int i = 0;
+        while (i < template.length()) {
+            int open = template.indexOf(OPEN, i);
+            if (open < 0) {
+                break;
+            }
+            int close = template.indexOf(CLOSE, open + OPEN.length());
+            if (close < 0) {
+                break;
+            }
+            // "{{{name}}" → the extra brace is literal JSON
+            int innermost = template.lastIndexOf(OPEN, close - 1);
+            if (innermost > open && innermost + OPEN.length() <= close) {
+                open = innermost;
+            }
+            String name = template.substring(open + OPEN.length(), close);
+            if (name.isEmpty()) {
+                literal.append(template, i, close + CLOSE.length());
+                i = close + CLOSE.length();
+                continue;
+            }
+            literal.append(template, i, open);
+            literals.add(literal.toString());
+            literal.setLength(0);
+            placeholders.add(name);
+            i = close + CLOSE.length();
+        }
+        literal.append(template, i, template.length());
+        literals.add(literal.toString());
+        return new BodyTemplate(template, literals, placeholders);
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public Set<String> placeholderNames() {
+        return placeholderNames;
+    }
+
+    public String render(Map<String, Object> values, ObjectMapper objectMapper, MissingPlaceholderPolicy policy) {
+        StringBuilder out = new StringBuilder(literalLength + placeholders.length * 16);
+        for (int i = 0; i < placeholders.length; i++) {
+            out.append(literals[i]);
+            String name = placeholders[i];
+            if (values.containsKey(name)) {
+                appendValue(out, name, values.get(name), objectMapper);
+            } else {
+                appendMissing(out, name, policy);
+            }
+        }
+        out.append(literals[placeholders.length]);
+        return out.toString();
+    }
+
+    private static void appendValue(StringBuilder out, String name, Object value, ObjectMapper objectMapper) {
+        if (value == null) {
+            return;
+        }
+        if (value instanceof String str) {
+            JsonStringEncoder.getInstance().quoteAsString(str, out);
+            return;
+        }
+        try {
+            out.append(objectMapper.writeValueAsString(value));
+        } catch (Exception e) {
+            log.warn("Failed to serialize parameter {} for interpolation", name, e);
+            out.append(value);
+        }
+    }
+
+    private static void appendMissing(StringBuilder out, String name, MissingPlaceholderPolicy policy) {
+        switch (policy) {
+            case EMPTY:
+                break;
+            case NULL:
+                out.append("null");
+                break;
+            case FAIL:
+                throw new ToolExecutionException("No value for placeholder {{" + name + "}} in body template");
+            case KEEP:
+            default:
+                out.append(OPEN).append(name).append(CLOSE);
+        }
+    }
+}
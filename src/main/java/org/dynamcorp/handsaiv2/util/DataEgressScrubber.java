@@ -1,47 +1,62 @@
 package org.dynamcorp.handsaiv2.util;
 
 import org.springframework.stereotype.Component;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 
+/**
+ * Redacts secrets from tool arguments before they leave HandsAI:
+ * <ul>
+ * <li>JWTs: {@code eyJ<b64url>.<b64url>.<b64url>}</li>
+ * <li>PEM private keys (RSA, OPENSSH, DSA, EC, PGP), BEGIN to the matching END</li>
+ * <li>Generic keys: a keyword (bearer, token, key, secret, authorization; any
+ * case), then {@code [\s=:"]+}, then at least 16 chars of
+ * {@code [A-Za-z0-9-._~+/]} and optional {@code =} padding. Only the secret
+ * is replaced; the keyword prefix is kept.</li>
+ * </ul>
+ * Strings are scanned once, left to right, dispatching on the current char to
+ * the only rule that can start there. Nothing is allocated for clean input:
+ * strings, maps and lists without secrets are returned as the same instance,
+ * and only the containers on the path to a redacted value are copied.
+ */
 @Component
 public class DataEgressScrubber {
 
     private static final String REDACTED_MARKER = "[REDACTED_SECRET]";
 
-    // Regex 1: JWT Tokens
-    // Format: base64Url.base64Url.base64Url (very common for eyJ...)
-    private static final Pattern JWT_PATTERN = Pattern.compile("eyJ[a-zA-Z0-9_-]+\\.[a-zA-Z0-9_-]+\\.[a-zA-Z0-9_-]+");
+    private static final String[] KEYWORDS = { "bearer", "token", "key", "secret", "authorization" };
+    private static final int MIN_SECRET_LENGTH = 16;
 
-    // Regex 2: Generic API Keys / Bearer Tokens (Conservative)
-    // Matches keys preceded by keywords like bearer, token, key, secret,
-    // authorization
-    // Requires at least 16 chars of base64-like characters.
-    private static final Pattern GENERIC_KEY_PATTERN = Pattern.compile(
-            "(?i)(bearer|token|key|secret|authorization|api[\\s_-]?key)[\\s=:\"]+([A-Za-z0-9\\-\\._~\\+/]{16,}=*)");
-
-    // Regex 3: Private Keys (RSA, OPENSSH, PGP, etc)
-    private static final Pattern PRIVATE_KEY_PATTERN = Pattern.compile(
-            "-----BEGIN (RSA|OPENSSH|DSA|EC|PGP) PRIVATE KEY-----.*?-----END \\1 PRIVATE KEY-----", Pattern.DOTALL);
+    private static final String PEM_BEGIN = "-----BEGIN ";
+    private static final String PEM_SUFFIX = " PRIVATE KEY-----";
+    private static final String[] PEM_TYPES = { "RSA", "OPENSSH", "DSA", "EC", "PGP" };
 
     /**
      * Recursively scrubs a map of parameters to prevent data exfiltration.
+     * Returns {@code parameters} itself when nothing had to be redacted, so
+     * the result must be treated as read-only.
      */
     public Map<String, Object> scrubParameters(Map<String, Object> parameters) {
         if (parameters == null) {
             return null;
         }
 
-        Map<String, Object> scrubbed = new HashMap<>();
+        Map<String, Object> scrubbed = null;
         for (Map.Entry<String, Object> entry : parameters.entrySet()) {
-            scrubbed.put(entry.getKey(), scrubValue(entry.getValue()));
+            Object value = entry.getValue();
+            Object clean = scrubValue(value);
+            if (clean != value) {
+                // Se copia recién al encontrar el primer secreto
+                if (scrubbed == null) {
+                    scrubbed = new HashMap<>(parameters);
+                }
+                scrubbed.put(entry.getKey(), clean);
+            }
         }
 
-        return scrubbed;
+        return scrubbed != null ? scrubbed : parameters;
     }
 
     /**
@@ -60,11 +75,18 @@ public class DataEgressScrubber {
             return scrubParameters(nestedMap);
         } else if (value instanceof List) {
             List<Object> nestedList = (List<Object>) value;
-            List<Object> scrubbedList = new ArrayList<>();
-            for (Object item : nestedList) {
-                scrubbedList.add(scrubValue(item));
+            List<Object> scrubbedList = null;
+            for (int i = 0; i < nestedList.size(); i++) {
+                Object item = nestedList.get(i);
+                Object clean = scrubValue(item);
+                if (clean != item) {
+                    if (scrubbedList == null) {
+                        scrubbedList = new ArrayList<>(nestedList);
+                    }
+                    scrubbedList.set(i, clean);
+                }
             }
-            return scrubbedList;
+            return scrubbedList != null ? scrubbedList : nestedList;
         }
 
         // Return primitives, numbers, booleans as-is
@@ -72,35 +94,178 @@ public class DataEgressScrubber {
     }
 
     /**
-     * Applies the regex redactions to a string.
+     * Applies the redactions to a string in a single pass. Returns
+     * {@code input} itself when it contains no secret.
      */
     public String scrubString(String input) {
         if (input == null || input.isEmpty()) {
             return input;
         }
 
-        String scrubbed = input;
+        int length = input.length();
+        StringBuilder out = null;
+        int copied = 0;
+        // Tipos PEM sin END más adelante: no se vuelve a buscar su cierre
+        int pemWithoutEnd = 0;
+
+        int i = 0;
+        while (i < length) {
+            char c = input.charAt(i);
+            int redactFrom = i;
+            int redactTo = -1;
+
+            switch (c) {
+                case '-':
+                    int typeIndex = pemType(input, i);
+                    if (typeIndex >= 0 && (pemWithoutEnd & (1 << typeIndex)) == 0) {
+                        String type = PEM_TYPES[typeIndex];
+                        String endMarker = "-----END " + type + PEM_SUFFIX;
+                        int end = input.indexOf(endMarker, i + PEM_BEGIN.length() + type.length() + PEM_SUFFIX.length());
+                        if (end >= 0) {
+                            redactTo = end + endMarker.length();
+                        } else {
+                            pemWithoutEnd |= 1 << typeIndex;
+                        }
+                    }
+                    break;
+                case 'e':
+                    redactTo = jwtEnd(input, i);
+                    break;
+                case 'a': case 'A':
+                case 'b': case 'B':
+                case 'k': case 'K':
+                case 's': case 'S':
+                case 't': case 'T':
+                    int keywordEnd = keywordEnd(input, i);
+                    if (keywordEnd > 0) {
+                        int secretStart = skipSeparators(input, keywordEnd);
+                        if (secretStart > keywordEnd) {
+                            int secretEnd = secretEnd(input, secretStart);
+                            if (secretEnd > 0) {
+                                redactFrom = secretStart;
+                                redactTo = secretEnd;
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            if (redactTo < 0) {
+                i++;
+                continue;
+            }
+            if (out == null) {
+                out = new StringBuilder(length);
+            }
+            out.append(input, copied, redactFrom).append(REDACTED_MARKER);
+            copied = redactTo;
+            i = redactTo;
+        }
 
-        // 1. Scrub JWTs
-        scrubbed = JWT_PATTERN.matcher(scrubbed).replaceAll(REDACTED_MARKER);
+        if (out == null) {
+            return input;
+        }
+        return out.append(input, copied, length).toString();
+    }
 
-        // 2. Scrub Private Keys
-        scrubbed = PRIVATE_KEY_PATTERN.matcher(scrubbed).replaceAll(REDACTED_MARKER);
+    /** Index in PEM_TYPES of the private key header starting at {@code i}, or -1. */
+    private static int pemType(String input, int i) {
+        if (!input.startsWith(PEM_BEGIN, i)) {
+            return -1;
+        }
+        int typeStart = i + PEM_BEGIN.length();
+        for (int t = 0; t < PEM_TYPES.length; t++) {
+            String type = PEM_TYPES[t];
+            if (input.startsWith(type, typeStart) && input.startsWith(PEM_SUFFIX, typeStart + type.length())) {
+                return t;
+            }
+        }
+        return -1;
+    }
 
-        // 3. Scrub Generic Keys (using groups to keep the keyword prefix intact but
-        // replacing the actual secret)
-        Matcher matcher = GENERIC_KEY_PATTERN.matcher(scrubbed);
-        StringBuffer sb = new StringBuffer();
-        while (matcher.find()) {
-            // matcher.group(1) is the prefix (e.g. "Bearer ")
-            // matcher.group(0) is the entire match. We replace the secret part with
-            // REDACTED
-            String replacement = matcher.group(0).replace(matcher.group(2), REDACTED_MARKER);
-            matcher.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+    /** End of the JWT starting at {@code i}, or -1. */
+    private static int jwtEnd(String input, int i) {
+        if (!input.startsWith("eyJ", i)) {
+            return -1;
+        }
+        int j = base64UrlRun(input, i + 3);
+        if (j == i + 3 || j >= input.length() || input.charAt(j) != '.') {
+            return -1;
+        }
+        int k = base64UrlRun(input, j + 1);
+        if (k == j + 1 || k >= input.length() || input.charAt(k) != '.') {
+            return -1;
         }
-        matcher.appendTail(sb);
-        scrubbed = sb.toString();
+        int end = base64UrlRun(input, k + 1);
+        return end == k + 1 ? -1 : end;
+    }
+
+    private static int base64UrlRun(String input, int from) {
+        int j = from;
+        while (j < input.length()) {
+            char c = input.charAt(j);
+            if (!(isAsciiAlphanumeric(c) || c == '_' || c == '-')) {
+                break;
+            }
+            j++;
+        }
+        return j;
+    }
+
+    /** End of the (case-insensitive) keyword starting at {@code i}, or -1. */
+    private static int keywordEnd(String input, int i) {
+        for (String keyword : KEYWORDS) {
+            int end = i + keyword.length();
+            if (end > input.length()) {
+                continue;
+            }
+            int k = 0;
+            // Keywords son ASCII en minúscula: basta con bajar el bit 0x20 de cada letra
+            while (k < keyword.length() && (input.charAt(i + k) | 0x20) == keyword.charAt(k)) {
+                k++;
+            }
+            if (k == keyword.length()) {
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipSeparators(String input, int from) {
+        int j = from;
+        while (j < input.length()) {
+            char c = input.charAt(j);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r'
+                    && c != '=' && c != ':' && c != '"') {
+                break;
+            }
+            j++;
+        }
+        return j;
+    }
+
+    /** End of the secret (plus '=' padding) starting at {@code from}, or -1 if too short. */
+    private static int secretEnd(String input, int from) {
+        int j = from;
+        while (j < input.length()) {
+            char c = input.charAt(j);
+            if (!(isAsciiAlphanumeric(c) || c == '-' || c == '.' || c == '_' || c == '~' || c == '+' || c == '/')) {
+                break;
+            }
+            j++;
+        }
+        if (j - from < MIN_SECRET_LENGTH) {
+            return -1;
+        }
+        while (j < input.length() && input.charAt(j) == '=') {
+            j++;
+        }
+        return j;
+    }
 
-        return scrubbed;
+    private static boolean isAsciiAlphanumeric(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
     }
 }
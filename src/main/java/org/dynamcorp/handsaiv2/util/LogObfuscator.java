@@ -1,40 +1,47 @@
 package org.dynamcorp.handsaiv2.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.Iterator;
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Utility class to obfuscate sensitive data in JSON payloads before logging or
  * storing them.
+ * <p>
+ * Works on the token stream: tokens are copied from a {@link JsonParser} to a
+ * {@link JsonGenerator} and the value of every field whose name looks
+ * sensitive (contains password, token, secret, key, auth or credential, in any
+ * case) is written as {@value #OBFUSCATED_VALUE}, skipping nested content.
+ * No JsonNode tree is built. Field name classification is cached in a bounded
+ * map.
  */
 @Slf4j
 @Component
 public class LogObfuscator {
 
-    private final ObjectMapper objectMapper;
-    private final List<Pattern> sensitiveKeysPatterns;
     private static final String OBFUSCATED_VALUE = "******";
+    private static final List<String> SENSITIVE_KEY_FRAGMENTS = List.of(
+            "password", "token", "secret", "key", "auth", "credential");
+    // Los nombres de campo de las tools son pocos; el tope evita crecer con claves arbitrarias
+    private static final int MAX_CACHED_KEYS = 2048;
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, Boolean> sensitiveKeyCache = new ConcurrentHashMap<>();
 
     public LogObfuscator(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
-        // Default patterns for sensitive keys
-        this.sensitiveKeysPatterns = List.of(
-                Pattern.compile("(?i).*password.*"),
-                Pattern.compile("(?i).*token.*"),
-                Pattern.compile("(?i).*secret.*"),
-                Pattern.compile("(?i).*key.*"),
-                Pattern.compile("(?i).*auth.*"),
-                Pattern.compile("(?i).*credential.*"));
     }
 
     /**
@@ -51,11 +58,11 @@ public class LogObfuscator {
             return json;
         }
 
-        try {
-            JsonNode rootNode = objectMapper.readTree(json);
-            obfuscateNode(rootNode);
-            return objectMapper.writeValueAsString(rootNode);
-        } catch (JsonProcessingException e) {
+        StringWriter out = new StringWriter(json.length());
+        try (JsonParser parser = objectMapper.getFactory().createParser(json);
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            copyMasked(parser, generator);
+        } catch (IOException e) {
             log.warn("Failed to parse and obfuscate JSON payload: {}", e.getMessage());
             // If it's not a valid JSON, we can't safely parse and obfuscate fields.
             // Returning the original string could leak data if the caller expected it to be
@@ -68,48 +75,99 @@ public class LogObfuscator {
             // but for simplicity, we'll assume most payloads are JSON.
             return isSensitiveString(json) ? "****** (Obfuscated non-JSON strict string)" : json;
         }
+        return out.toString();
     }
 
-    private void obfuscateNode(JsonNode node) {
-        if (node.isObject()) {
-            ObjectNode objectNode = (ObjectNode) node;
-            Iterator<Map.Entry<String, JsonNode>> fields = objectNode.properties().iterator();
-            while (fields.hasNext()) {
-                Map.Entry<String, JsonNode> field = fields.next();
-                String key = field.getKey();
-                JsonNode valueNode = field.getValue();
+    /**
+     * Serializes {@code value} to obfuscated JSON without an intermediate JSON
+     * string: the ObjectMapper writes into a {@link TokenBuffer} and its tokens
+     * are copied, masked, to the output.
+     */
+    public String obfuscateValue(Object value) throws JsonProcessingException {
+        TokenBuffer buffer = new TokenBuffer(objectMapper, false);
+        StringWriter out = new StringWriter();
+        try {
+            objectMapper.writeValue(buffer, value);
+            try (JsonParser parser = buffer.asParserOnFirstToken();
+                    JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                copyCurrentMasked(parser, generator);
+            }
+        } catch (JsonProcessingException e) {
+            throw e;
+        } catch (IOException e) {
+            // TokenBuffer y StringWriter no hacen I/O real
+            throw new IllegalStateException("Failed to serialize payload for logging", e);
+        }
+        return out.toString();
+    }
+
+    private void copyMasked(JsonParser parser, JsonGenerator generator) throws IOException {
+        if (parser.nextToken() == null) {
+            return;
+        }
+        copyCurrentMasked(parser, generator);
+    }
 
-                if (isSensitiveKey(key)) {
-                    if (valueNode.isTextual() || valueNode.isNumber() || valueNode.isBoolean()) {
-                        objectNode.put(key, OBFUSCATED_VALUE);
-                    } else if (valueNode.isArray() || valueNode.isObject()) {
-                        // We could replace the whole object/array with ****** or traverse it.
-                        // Better to replace it completely if the key implies the whole object is a
-                        // secret
-                        objectNode.put(key, OBFUSCATED_VALUE);
+    /** Copies the value at the parser's current token, masking sensitive fields. */
+    private void copyCurrentMasked(JsonParser parser, JsonGenerator generator) throws IOException {
+        JsonToken token = parser.currentToken();
+        int depth = 0;
+        while (token != null) {
+            switch (token) {
+                case FIELD_NAME:
+                    String name = parser.currentName();
+                    generator.writeFieldName(name);
+                    if (isSensitiveKey(name)) {
+                        // null se conserva; escalares, objetos y arrays se reemplazan enteros
+                        if (parser.nextToken() == JsonToken.VALUE_NULL) {
+                            generator.writeNull();
+                        } else {
+                            parser.skipChildren();
+                            generator.writeString(OBFUSCATED_VALUE);
+                        }
                     }
-                } else {
-                    // Recurse into objects and arrays
-                    obfuscateNode(valueNode);
-                }
+                    break;
+                case START_OBJECT:
+                case START_ARRAY:
+                    depth++;
+                    generator.copyCurrentEvent(parser);
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    generator.copyCurrentEvent(parser);
+                    break;
+                default:
+                    generator.copyCurrentEvent(parser);
+                    break;
             }
-        } else if (node.isArray()) {
-            ArrayNode arrayNode = (ArrayNode) node;
-            for (JsonNode arrayElement : arrayNode) {
-                obfuscateNode(arrayElement);
+            // Solo el primer valor raíz, igual que readTree
+            if (depth == 0) {
+                return;
             }
+            token = parser.nextToken();
         }
     }
 
     private boolean isSensitiveKey(String key) {
         if (key == null)
             return false;
-        for (Pattern pattern : sensitiveKeysPatterns) {
-            if (pattern.matcher(key).matches()) {
-                return true;
+        Boolean cached = sensitiveKeyCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        String lower = key.toLowerCase(Locale.ROOT);
+        boolean sensitive = false;
+        for (String fragment : SENSITIVE_KEY_FRAGMENTS) {
+            if (lower.contains(fragment)) {
+                sensitive = true;
+                break;
             }
         }
-        return false;
+        if (sensitiveKeyCache.size() < MAX_CACHED_KEYS) {
+            sensitiveKeyCache.put(key, sensitive);
+        }
+        return sensitive;
     }
 
     private boolean isSensitiveString(String text) {
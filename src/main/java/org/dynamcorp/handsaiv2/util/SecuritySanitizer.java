@@ -4,10 +4,30 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.regex.Pattern;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * Wraps tool responses in untrusted-content tags for the LLM, defanging copies
+ * of those tags inside the response and redacting common prompt injection
+ * phrases.
+ * <p>
+ * All the phrases and tags are compiled once into a single Aho-Corasick
+ * automaton (ASCII case-insensitive, like the {@code (?i)} regexes it
+ * replaces), so a response is scanned in one pass and written straight into
+ * a pre-sized builder. When handsai.security.sanitizer.max-bytes is set, only
+ * that many (UTF-8) bytes of the response are scanned and returned; the rest
+ * is dropped with a note, so the work per response is bounded and nothing
+ * unscanned reaches the model. By default the whole response is scanned.
+ */
 @Component
 @Slf4j
 @RequiredArgsConstructor
@@ -15,25 +35,41 @@ public class SecuritySanitizer {
 
     private final ObjectMapper objectMapper;
 
-    // A list of common prompt injection phrasing patterns
-    private static final String[] MALICIOUS_PATTERNS = {
-            "(?i)ignore previous",
-            "(?i)system:",
-            "(?i)forget your (instructions|prompt)",
-            "(?i)you are now",
-            "(?i)new instructions",
-            "(?i)disregard previous",
-            "(?i)ignore all previous"
-    };
-
     private static final String START_TAG = "<UntrustedExternalContent>";
     private static final String END_TAG = "</UntrustedExternalContent>";
     private static final String REDACTED_MARKER = "[REDACTED_POTENTIAL_PROMPT_INJECTION]";
 
+    // Frase -> reemplazo. Las alternativas de los regex originales van expandidas
+    private static final Automaton AUTOMATON;
+
+    static {
+        Map<String, String> rules = new LinkedHashMap<>();
+        // 1. Defang any existing tags that match our wrapper to prevent escaping
+        rules.put(START_TAG, "&lt;UntrustedExternalContent&gt;");
+        rules.put(END_TAG, "&lt;/UntrustedExternalContent&gt;");
+        // 2. A list of common prompt injection phrasing patterns
+        for (String phrase : List.of(
+                "ignore previous",
+                "system:",
+                "forget your instructions",
+                "forget your prompt",
+                "you are now",
+                "new instructions",
+                "disregard previous",
+                "ignore all previous")) {
+            rules.put(phrase, REDACTED_MARKER);
+        }
+        AUTOMATON = new Automaton(rules);
+    }
+
+    // <= 0 = sin límite
+    @Value("${handsai.security.sanitizer.max-bytes:0}")
+    private long maxBytes;
+
     /**
      * Sanitizes and wraps the object returned from external API calls.
      * Ensure the LLM explicitly handles this as external and untrusted data.
-     * 
+     *
      * @param rawResponse The raw returned object from an MCP tool
      * @return Sanitized string wrapped in XML-like tags.
      */
@@ -54,18 +90,172 @@ public class SecuritySanitizer {
             serializedResponse = rawResponse.toString();
         }
 
-        // 1. Defang any existing tags that match our wrapper to prevent escaping
-        serializedResponse = serializedResponse.replaceAll("(?i)" + Pattern.quote(START_TAG),
-                "&lt;UntrustedExternalContent&gt;");
-        serializedResponse = serializedResponse.replaceAll("(?i)" + Pattern.quote(END_TAG),
-                "&lt;/UntrustedExternalContent&gt;");
-
-        // 2. Redact common prompt injection patterns
-        for (String pattern : MALICIOUS_PATTERNS) {
-            serializedResponse = serializedResponse.replaceAll(pattern, REDACTED_MARKER);
+        int length = serializedResponse.length();
+        int limit = scanLimit(serializedResponse, maxBytes);
+        String truncationNote = limit < length
+                ? "\n[TRUNCATED: " + (length - limit) + " more characters were not scanned]"
+                : "";
+        if (limit < length) {
+            log.warn("Tool response of {} chars truncated to the {} byte scan window", length, maxBytes);
         }
 
+        // Margen para marcadores más largos que la frase que reemplazan
+        StringBuilder out = new StringBuilder(START_TAG.length() + limit + truncationNote.length()
+                + END_TAG.length() + 2 + 256);
+        out.append(START_TAG).append('\n');
+        AUTOMATON.replace(serializedResponse, limit, out);
+        out.append(truncationNote);
+
         // 3. Wrap the response
-        return START_TAG + "\n" + serializedResponse + "\n" + END_TAG;
+        return out.append('\n').append(END_TAG).toString();
+    }
+
+    /** Chars of {@code text} whose UTF-8 encoding fits in {@code maxBytes}, without splitting a surrogate pair. */
+    static int scanLimit(String text, long maxBytes) {
+        int length = text.length();
+        // Ningún char ocupa más de 3 bytes: si entran todos, no hace falta contar
+        if (maxBytes <= 0 || length <= maxBytes / 3) {
+            return length;
+        }
+        long bytes = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+            if (bytes > maxBytes) {
+                return i > 0 && Character.isHighSurrogate(text.charAt(i - 1)) ? i - 1 : i;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Aho-Corasick DFA over ASCII-lower-cased input. Matches are replaced
+     * left to right without overlap. Since no phrase contains another, the
+     * first match to complete is also the leftmost one, so replacing on the
+     * first accepting state gives the same result as leftmost-longest regex
+     * alternation.
+     */
+    private static final class Automaton {
+
+        // Clase de cada char ASCII (0 = no aparece en ninguna frase)
+        private final int[] charClass = new int[128];
+        private final int[][] next;
+        private final int[] matchLength;
+        private final String[] replacement;
+
+        Automaton(Map<String, String> rules) {
+            List<String> phrases = new ArrayList<>();
+            for (String phrase : rules.keySet()) {
+                phrases.add(fold(phrase));
+            }
+            for (int i = 0; i < phrases.size(); i++) {
+                for (int j = 0; j < phrases.size(); j++) {
+                    if (i != j && phrases.get(j).contains(phrases.get(i))) {
+                        throw new IllegalStateException(
+                                "'" + phrases.get(i) + "' is contained in '" + phrases.get(j) + "'");
+                    }
+                }
+            }
+
+            int classes = 1;
+            int totalChars = 1;
+            for (String phrase : phrases) {
+                totalChars += phrase.length();
+                for (char c : phrase.toCharArray()) {
+                    if (charClass[c] == 0) {
+                        charClass[c] = classes++;
+                    }
+                }
+            }
+
+            // Trie: estado 0 = raíz, -1 = sin transición todavía
+            int[][] go = new int[totalChars][classes];
+            for (int[] row : go) {
+                Arrays.fill(row, -1);
+            }
+            int[] length = new int[totalChars];
+            String[] output = new String[totalChars];
+            int states = 1;
+            int rule = 0;
+            for (Map.Entry<String, String> entry : rules.entrySet()) {
+                String phrase = phrases.get(rule++);
+                int state = 0;
+                for (char c : phrase.toCharArray()) {
+                    int cls = charClass[c];
+                    if (go[state][cls] < 0) {
+                        go[state][cls] = states++;
+                    }
+                    state = go[state][cls];
+                }
+                length[state] = phrase.length();
+                output[state] = entry.getValue();
+            }
+
+            // BFS con failure links: completa el DFA y hereda salidas del sufijo
+            int[] fail = new int[states];
+            Deque<Integer> queue = new ArrayDeque<>();
+            for (int cls = 0; cls < classes; cls++) {
+                if (go[0][cls] < 0) {
+                    go[0][cls] = 0;
+                } else {
+                    fail[go[0][cls]] = 0;
+                    queue.add(go[0][cls]);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                if (output[state] == null && output[fail[state]] != null) {
+                    length[state] = length[fail[state]];
+                    output[state] = output[fail[state]];
+                }
+                for (int cls = 0; cls < classes; cls++) {
+                    int child = go[state][cls];
+                    if (child < 0) {
+                        go[state][cls] = go[fail[state]][cls];
+                    } else {
+                        fail[child] = go[fail[state]][cls];
+                        queue.add(child);
+                    }
+                }
+            }
+
+            this.next = Arrays.copyOf(go, states);
+            this.matchLength = Arrays.copyOf(length, states);
+            this.replacement = Arrays.copyOf(output, states);
+        }
+
+        /** Appends text[0, limit) to {@code out} with every match replaced. */
+        void replace(String text, int limit, StringBuilder out) {
+            int state = 0;
+            int copied = 0;
+            for (int i = 0; i < limit; i++) {
+                char c = text.charAt(i);
+                if (c < 128) {
+                    if (c >= 'A' && c <= 'Z') {
+                        c += 'a' - 'A';
+                    }
+                    state = next[state][charClass[c]];
+                } else {
+                    state = next[state][0];
+                }
+                if (replacement[state] != null) {
+                    out.append(text, copied, i - matchLength[state] + 1).append(replacement[state]);
+                    copied = i + 1;
+                    state = 0;
+                }
+            }
+            out.append(text, copied, limit);
+        }
+
+        private static String fold(String phrase) {
+            StringBuilder folded = new StringBuilder(phrase.length());
+            for (char c : phrase.toCharArray()) {
+                if (c >= 128) {
+                    throw new IllegalStateException("Only ASCII phrases are supported: " + phrase);
+                }
+                folded.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            }
+            return folded.toString();
+        }
     }
 }
@@ -0,0 +1,92 @@
+package org.dynamcorp.handsaiv2.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.dynamcorp.handsaiv2.config.JfrProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JfrRecordingServiceTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final JfrProperties properties = new JfrProperties();
+    private JfrRecordingService service;
+
+    @BeforeEach
+    void setUp() {
+        properties.setDirectory(tempDir.toString());
+        // Sin la configuración "profile" el test graba lo mínimo
+        properties.setSettings("default");
+        service = new JfrRecordingService(properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.close();
+    }
+
+    @Test
+    void testEventsAreDisabledUntilARecordingStarts() throws Exception {
+        assertFalse(new ToolExecutionEvent().isEnabled());
+        assertThrows(IllegalStateException.class, service::dump);
+
+        service.start(null);
+        assertTrue(new ToolExecutionEvent().isEnabled());
+        assertThrows(IllegalStateException.class, () -> service.start(null));
+
+        ToolExecutionEvent event = new ToolExecutionEvent();
+        event.begin();
+        event.toolCode = "search";
+        event.providerId = 7;
+        event.outcome = "SUCCESS";
+        event.responseBytes = JfrEvents.utf8Length("añ€");
+        event.commit();
+
+        Path dump = service.dump();
+        assertEquals("RUNNING", service.status().state());
+        assertEquals(dump.toString(), service.status().lastDump());
+
+        List<RecordedEvent> recorded = RecordingFile.readAllEvents(dump).stream()
+                .filter(e -> e.getEventType().getName().equals("handsai.ToolExecution"))
+                .toList();
+        assertEquals(1, recorded.size());
+        assertEquals("search", recorded.get(0).getString("toolCode"));
+        assertEquals(7, recorded.get(0).getLong("providerId"));
+        assertEquals(6, recorded.get(0).getLong("responseBytes"));
+
+        assertEquals("STOPPED", service.stop().state());
+        assertThrows(IllegalStateException.class, service::stop);
+    }
+
+    @Test
+    void testOnlyTheNewestDumpsAreKept() throws Exception {
+        properties.setMaxDumps(2);
+        service.start(null);
+
+        List<Path> dumps = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            dumps.add(service.dump());
+            // Los nombres llevan milisegundos
+            Thread.sleep(5);
+        }
+
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(dumps.get(1), dumps.get(2)), files.sorted().toList());
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dynamcorp.handsaiv2.config.MetricsProperties;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class HandsAiMetersTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void testToolTagsBeyondTheLimitAreReportedAsOther() {
+        MetricsProperties properties = new MetricsProperties();
+        properties.setMaxTagValues(2);
+        HandsAiMeters meters = new HandsAiMeters(registry, properties);
+
+        for (String tool : new String[] { "a", "b", "c", "d", "a" }) {
+            meters.recordExecution(tool, "acme", HandsAiMeters.Outcome.SUCCESS, 1_000_000);
+        }
+
+        assertEquals(2, registry.get("handsai.tool.executions").tag("tool", "a").timer().count());
+        assertEquals(1, registry.get("handsai.tool.executions").tag("tool", "b").timer().count());
+        assertEquals(2, registry.get("handsai.tool.executions").tag("tool", HandsAiMeters.OTHER).timer().count());
+        assertEquals(3, registry.get("handsai.tool.executions").timers().size());
+    }
+
+    @Test
+    void testUpstreamResponsesAreCountedByProviderAndStatus() {
+        HandsAiMeters meters = new HandsAiMeters(registry, new MetricsProperties());
+
+        meters.recordUpstreamResponse("acme", 200);
+        meters.recordUpstreamResponse("acme", 200);
+        meters.recordUpstreamResponse("acme", 503);
+        meters.recordUpstreamFailure(null);
+
+        assertEquals(2, registry.get("handsai.upstream.responses").tags("provider", "acme", "status", "200")
+                .counter().count());
+        assertEquals(1, registry.get("handsai.upstream.responses").tags("provider", "acme", "status", "503")
+                .counter().count());
+        assertEquals(1, registry.get("handsai.upstream.responses")
+                .tags("provider", HandsAiMeters.NONE, "status", "io_error").counter().count());
+    }
+}
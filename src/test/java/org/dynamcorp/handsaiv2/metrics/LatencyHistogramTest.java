@@ -0,0 +1,88 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    @Test
+    void testBucketsAreContiguousAndWithinThreePercent() {
+        int previous = -1;
+        for (long value = 0; value < 1_000_000; value++) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(index == previous || index == previous + 1, "gap at " + value);
+            previous = index;
+            long highest = LatencyHistogram.highestValue(index);
+            assertTrue(highest >= value && highest - value <= Math.max(1, value / 32), "value " + value);
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1,
+                LatencyHistogram.bucketIndex(LatencyHistogram.MAX_VALUE_MICROS));
+    }
+
+    @Test
+    void testPercentilesMatchTheRecordedDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.record(micros);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        assertEquals(10_000, snapshot.totalCount());
+        assertEquals(10_000, snapshot.maxMicros());
+        assertEquals(5000.5, snapshot.meanMicros());
+        assertWithin(5_000, snapshot.valueAtPercentile(50));
+        assertWithin(9_900, snapshot.valueAtPercentile(99));
+        assertWithin(9_990, snapshot.valueAtPercentile(99.9));
+        assertEquals(10_000, snapshot.valueAtPercentile(100));
+    }
+
+    @Test
+    void testConcurrentRecordingLosesNothing() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram(8);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long seed = t;
+            threads.add(Thread.ofPlatform().start(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 50_000; i++) {
+                    histogram.record(random.nextInt(100_000));
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(400_000, histogram.drain().totalCount());
+        assertEquals(0, histogram.snapshot().totalCount());
+    }
+
+    @Test
+    void testSnapshotsMergeAndSurviveEncoding() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.recordNanos(2_000_000);
+        second.recordNanos(40_000_000);
+        second.record(-5);
+
+        HistogramSnapshot merged = first.snapshot().merge(second.snapshot());
+        HistogramSnapshot decoded = HistogramSnapshot.decode(merged.encodeCounts(), merged.sumMicros(),
+                merged.maxMicros());
+
+        assertEquals(3, decoded.totalCount());
+        assertEquals(42_000, decoded.sumMicros());
+        assertEquals(40_000, decoded.maxMicros());
+        assertWithin(2_000, decoded.valueAtPercentile(50));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected / 32, "expected ~" + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,104 @@
+package org.dynamcorp.handsaiv2.metrics;
+
+import org.dynamcorp.handsaiv2.config.LatencyMetricsProperties;
+import org.dynamcorp.handsaiv2.config.RollupProperties;
+import org.dynamcorp.handsaiv2.dto.LatencyPercentilesResponse;
+import org.dynamcorp.handsaiv2.service.ToolExecutionStage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LatencyMetricsTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-10T12:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private final LatencyMetricsProperties properties = new LatencyMetricsProperties();
+    private LatencySnapshotStore snapshotStore;
+
+    @BeforeEach
+    void setUp() {
+        RollupProperties rollupProperties = new RollupProperties();
+        rollupProperties.setFile(tempDir.resolve("rollups.db").toString());
+        snapshotStore = new LatencySnapshotStore(rollupProperties);
+        snapshotStore.open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        snapshotStore.close();
+    }
+
+    @Test
+    void testPercentilesCombineSnapshotsAndLiveCountsAcrossRestarts() {
+        LatencyMetrics before = metrics(NOW);
+        before.recordStage(ToolExecutionStage.CALL, 100_000_000);
+        before.recordExecution("search", "acme", 120_000_000);
+        before.snapshot();
+
+        // Otra instancia, como después de reiniciar: lo persistido sigue contando
+        LatencyMetrics after = metrics(NOW.plusSeconds(60));
+        after.recordStage(ToolExecutionStage.CALL, 300_000_000);
+
+        List<LatencyPercentilesResponse> report = after.percentiles(Duration.ofMinutes(5));
+
+        assertEquals(ToolExecutionStage.values().length + 2, report.size());
+        LatencyPercentilesResponse call = find(report, "STAGE", "CALL");
+        assertEquals(2, call.count());
+        assertEquals(300.0, call.maxMs());
+        assertEquals(0, find(report, "STAGE", "AUTH").count());
+        assertEquals(1, find(report, "TOOL", "search").count());
+        assertEquals(1, find(report, "PROVIDER", "acme").count());
+
+        // Tres horas después la ventana ya no incluye el snapshot
+        assertEquals(0, find(metrics(NOW.plus(Duration.ofHours(3))).percentiles(Duration.ofMinutes(5)),
+                "STAGE", "CALL").count());
+    }
+
+    @Test
+    void testSeriesBeyondTheLimitShareOneHistogram() {
+        properties.setMaxSeries(2);
+        LatencyMetrics metrics = metrics(NOW);
+
+        metrics.recordExecution("a", null, 1_000_000);
+        metrics.recordExecution("b", null, 1_000_000);
+        metrics.recordExecution("c", null, 1_000_000);
+        metrics.recordExecution("d", null, 1_000_000);
+
+        List<LatencyPercentilesResponse> report = metrics.percentiles(Duration.ofMinutes(1));
+        assertEquals(2, find(report, "TOOL", LatencyMetrics.OTHER_SERIES).count());
+    }
+
+    @Test
+    void testWindowBeyondRetentionIsRejected() {
+        LatencyMetrics metrics = metrics(NOW);
+
+        assertThrows(IllegalArgumentException.class, () -> metrics.percentiles(Duration.ofDays(30)));
+        assertThrows(IllegalArgumentException.class, () -> metrics.percentiles(Duration.ZERO));
+    }
+
+    private LatencyMetrics metrics(Instant now) {
+        return new LatencyMetrics(properties, snapshotStore, Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private static LatencyPercentilesResponse find(List<LatencyPercentilesResponse> report, String scope,
+            String name) {
+        return report.stream()
+                .filter(entry -> entry.scope().equals(scope) && entry.name().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+}
@@ -0,0 +1,177 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.dto.CreateAccessTokenRequest;
+import org.dynamcorp.handsaiv2.dto.CreateAccessTokenResponse;
+import org.dynamcorp.handsaiv2.dto.TokenStatusResponse;
+import org.dynamcorp.handsaiv2.model.AccessToken;
+import org.dynamcorp.handsaiv2.repository.AccessTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AccessTokenServiceTest {
+
+    @Mock
+    private AccessTokenRepository accessTokenRepository;
+
+    @Mock
+    private EncryptionService encryptionService;
+
+    private AccessTokenService accessTokenService;
+
+    @BeforeEach
+    void setUp() {
+        accessTokenService = new AccessTokenService(accessTokenRepository, encryptionService);
+        AccessToken stored = AccessToken.builder().id(7L).encryptedToken("enc(secret)").build();
+        when(accessTokenRepository.findAll()).thenReturn(List.of(stored));
+        when(encryptionService.decrypt("enc(secret)")).thenReturn("secret");
+        accessTokenService.loadGrants();
+    }
+
+    @Test
+    void testValidationUsesTheInMemoryDigestAndCoalescesLastUsed() {
+        assertTrue(accessTokenService.hasToken());
+        assertTrue(accessTokenService.validateToken("secret"));
+        assertTrue(accessTokenService.validateToken("secret"));
+        assertFalse(accessTokenService.validateToken("secreT"));
+        assertFalse(accessTokenService.validateToken(""));
+
+        // Sin lecturas ni escrituras en la base por request
+        verify(accessTokenRepository, times(1)).findAll();
+        verify(accessTokenRepository, never()).save(any());
+
+        accessTokenService.flushLastUsed();
+        accessTokenService.flushLastUsed();
+        verify(accessTokenRepository, times(1)).updateLastUsedAt(eq(7L), any(Instant.class));
+    }
+
+    @Test
+    void testRegenerateReplacesOnlyTheDefaultToken() {
+        when(accessTokenRepository.findAllByLabelIsNull())
+                .thenReturn(List.of(AccessToken.builder().id(7L).encryptedToken("enc(secret)").build()));
+        stubSave(8L, 9L);
+
+        String scoped = accessTokenService.createToken(
+                new CreateAccessTokenRequest("ci-agent", List.of("github-*"), null)).rawToken();
+        String rawToken = accessTokenService.generateToken();
+
+        assertFalse(accessTokenService.validateToken("secret"));
+        assertTrue(accessTokenService.validateToken(rawToken));
+        assertEquals("ci-agent", accessTokenService.authenticate(scoped).label());
+        accessTokenService.flushLastUsed();
+        verify(accessTokenRepository).updateLastUsedAt(eq(8L), any(Instant.class));
+        verify(accessTokenRepository).updateLastUsedAt(eq(9L), any(Instant.class));
+        verify(accessTokenRepository, never()).updateLastUsedAt(eq(7L), any());
+    }
+
+    @Test
+    void testScopedTokenCarriesToolsAndQuota() {
+        stubSave(10L);
+
+        CreateAccessTokenResponse created = accessTokenService.createToken(
+                new CreateAccessTokenRequest(" reporting ", List.of("weather", " news-* "), 2));
+        TokenGrant grant = accessTokenService.authenticate(created.rawToken());
+
+        assertEquals("reporting", grant.label());
+        assertTrue(grant.allows("weather"));
+        assertTrue(grant.allows("news-latest"));
+        assertFalse(grant.allows("github-issues"));
+        assertTrue(grant.tryAcquire());
+        assertTrue(grant.tryAcquire());
+        assertFalse(grant.tryAcquire());
+    }
+
+    @Test
+    void testCreateTokenRequiresLabel() {
+        assertThrows(IllegalArgumentException.class,
+                () -> accessTokenService.createToken(new CreateAccessTokenRequest(" ", null, null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> accessTokenService.createToken(new CreateAccessTokenRequest("agent", null, 0)));
+    }
+
+    @Test
+    void testFlushWithoutUsageWritesNothing() {
+        accessTokenService.flushLastUsed();
+        verify(accessTokenRepository, never()).updateLastUsedAt(anyLong(), any());
+        verify(accessTokenRepository).findAll();
+        verifyNoMoreInteractions(accessTokenRepository);
+    }
+
+    @Test
+    void testGrantsChangeOnlyWhenTheTransactionCommits() {
+        stubSave(11L, 12L);
+        when(accessTokenRepository.existsById(7L)).thenReturn(true);
+
+        TransactionSynchronizationManager.initSynchronization();
+        String rolledBack;
+        try {
+            rolledBack = accessTokenService.createToken(
+                    new CreateAccessTokenRequest("rolled-back", null, null)).rawToken();
+        } finally {
+            // Rollback: las sincronizaciones se descartan sin afterCommit
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertFalse(accessTokenService.validateToken(rolledBack));
+
+        TransactionSynchronizationManager.initSynchronization();
+        String committed;
+        try {
+            committed = accessTokenService.createToken(
+                    new CreateAccessTokenRequest("committed", null, null)).rawToken();
+            accessTokenService.deleteToken(7L);
+            assertFalse(accessTokenService.validateToken(committed));
+            assertTrue(accessTokenService.validateToken("secret"));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertTrue(accessTokenService.validateToken(committed));
+        assertFalse(accessTokenService.validateToken("secret"));
+    }
+
+    @Test
+    void testStatusDescribesTheDefaultTokenOnly() {
+        AccessToken defaultToken = AccessToken.builder().id(7L).encryptedToken("enc(secret)")
+                .createdAt(Instant.parse("2026-01-02T00:00:00Z")).build();
+        when(accessTokenRepository.findFirstByLabelIsNullOrderByIdDesc()).thenReturn(Optional.of(defaultToken));
+
+        TokenStatusResponse status = accessTokenService.getStatus();
+
+        assertTrue(status.exists());
+        assertEquals("enc(secr...", status.maskedToken());
+        assertEquals(defaultToken.getCreatedAt(), status.createdAt());
+    }
+
+    private void stubSave(Long... ids) {
+        java.util.Iterator<Long> nextId = List.of(ids).iterator();
+        when(encryptionService.encrypt(anyString())).thenAnswer(invocation -> "enc(" + invocation.getArgument(0) + ")");
+        when(accessTokenRepository.save(any(AccessToken.class))).thenAnswer(invocation -> {
+            AccessToken token = invocation.getArgument(0);
+            token.setId(nextId.next());
+            return token;
+        });
+    }
+}
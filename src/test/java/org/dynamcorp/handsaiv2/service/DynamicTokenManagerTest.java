@@ -1,6 +1,9 @@
 package org.dynamcorp.handsaiv2.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dynamcorp.handsaiv2.config.MetricsProperties;
+import org.dynamcorp.handsaiv2.metrics.HandsAiMeters;
 import org.dynamcorp.handsaiv2.model.ApiProvider;
 import org.dynamcorp.handsaiv2.model.DynamicAuthMethodEnum;
 import org.dynamcorp.handsaiv2.model.DynamicAuthPayloadLocationEnum;
@@ -11,13 +14,31 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.test.web.client.match.MockRestRequestMatchers;
 import org.springframework.test.web.client.response.MockRestResponseCreators;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.hamcrest.Matchers.startsWith;
 
@@ -30,7 +51,12 @@ public class DynamicTokenManagerTest {
     private EncryptionService encryptionService;
 
     @Mock
-    private RestClient.Builder builderMock;
+    private ProviderHttpClientRegistry httpClientRegistry;
+
+    @Mock
+    private DynamicTokenStore tokenStore;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     private DynamicTokenManager dynamicTokenManager;
 
@@ -42,13 +68,14 @@ public class DynamicTokenManagerTest {
         RestTemplate restTemplate = new RestTemplate();
         mockServer = MockRestServiceServer.createServer(restTemplate);
 
-        // Pass a mock builder that just returns our bridged RestClient
+        // Pass a mock registry that just returns our bridged RestClient
         RestClient restClient = RestClient.create(restTemplate);
 
-        org.mockito.Mockito.when(builderMock.baseUrl(org.mockito.ArgumentMatchers.anyString())).thenReturn(builderMock);
-        org.mockito.Mockito.when(builderMock.build()).thenReturn(restClient);
+        org.mockito.Mockito.lenient().when(httpClientRegistry.clientFor(org.mockito.ArgumentMatchers.any()))
+                .thenReturn(restClient);
 
-        dynamicTokenManager = new DynamicTokenManager(builderMock, new ObjectMapper(), encryptionService);
+        dynamicTokenManager = new DynamicTokenManager(httpClientRegistry, new ObjectMapper(), encryptionService,
+                Runnable::run, tokenStore, new HandsAiMeters(meterRegistry, new MetricsProperties()));
 
         provider = new ApiProvider();
         provider.setId(1L);
@@ -70,12 +97,12 @@ public class DynamicTokenManagerTest {
                 .andRespond(MockRestResponseCreators.withSuccess(mockResponseJson, MediaType.APPLICATION_JSON));
 
         // First call fetches
-        String token = dynamicTokenManager.getToken(provider);
+        String token = dynamicTokenManager.getToken(CachedProvider.from(provider));
         assertEquals("mocked-jwt-token", token);
         mockServer.verify();
 
         // Second call should hit the cache and not trigger expected request
-        String cachedToken = dynamicTokenManager.getToken(provider);
+        String cachedToken = dynamicTokenManager.getToken(CachedProvider.from(provider));
         assertEquals("mocked-jwt-token", cachedToken);
     }
 
@@ -91,7 +118,7 @@ public class DynamicTokenManagerTest {
                         .contentTypeCompatibleWith(MediaType.APPLICATION_FORM_URLENCODED))
                 .andRespond(MockRestResponseCreators.withSuccess(mockResponseJson, MediaType.APPLICATION_JSON));
 
-        String token = dynamicTokenManager.getToken(provider);
+        String token = dynamicTokenManager.getToken(CachedProvider.from(provider));
 
         assertEquals("form-data-token", token);
         mockServer.verify();
@@ -106,7 +133,7 @@ public class DynamicTokenManagerTest {
                 .andExpect(MockRestRequestMatchers.method(HttpMethod.POST))
                 .andRespond(MockRestResponseCreators.withSuccess(mockRawResponse, MediaType.TEXT_PLAIN));
 
-        String token = dynamicTokenManager.getToken(provider);
+        String token = dynamicTokenManager.getToken(CachedProvider.from(provider));
 
         assertEquals("raw-text-token-12345", token);
         mockServer.verify();
@@ -121,7 +148,7 @@ public class DynamicTokenManagerTest {
                 .andRespond(MockRestResponseCreators.withSuccess(mockResponseJson, MediaType.APPLICATION_JSON));
 
         // Fetch once to cache
-        dynamicTokenManager.getToken(provider);
+        dynamicTokenManager.getToken(CachedProvider.from(provider));
         mockServer.verify(); // verify request
 
         // Invalidate
@@ -133,7 +160,174 @@ public class DynamicTokenManagerTest {
                 .andRespond(MockRestResponseCreators.withSuccess(mockResponseJson, MediaType.APPLICATION_JSON));
 
         // Fetch again, should trigger request 2
-        dynamicTokenManager.getToken(provider);
+        dynamicTokenManager.getToken(CachedProvider.from(provider));
         mockServer.verify();
     }
+
+    @Test
+    void testConcurrentMissesShareOneFetch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger fetches = blockingAuthEndpoint(release);
+        CachedProvider cachedProvider = CachedProvider.from(provider);
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                tokens.add(callers.submit(() -> dynamicTokenManager.getToken(cachedProvider)));
+            }
+            // Dar tiempo a que todos lleguen a esperar el fetch en curso
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<String> token : tokens) {
+                assertEquals("token-1", token.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+        assertEquals(1, fetches.get());
+        assertEquals(1, meterRegistry.get("handsai.auth.token.fetches").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    void testInvalidationsWithTheSameStaleTokenRefetchOnce() {
+        CountDownLatch release = new CountDownLatch(0);
+        AtomicInteger fetches = blockingAuthEndpoint(release);
+        CachedProvider cachedProvider = CachedProvider.from(provider);
+
+        String stale = dynamicTokenManager.getToken(cachedProvider);
+        dynamicTokenManager.invalidateToken(provider.getId(), stale);
+        String fresh = dynamicTokenManager.getToken(cachedProvider);
+        // Una llamada que falló con el token viejo llega tarde: no debe descartar el nuevo
+        dynamicTokenManager.invalidateToken(provider.getId(), stale);
+
+        assertEquals(fresh, dynamicTokenManager.getToken(cachedProvider));
+        assertEquals("token-2", fresh);
+        assertEquals(2, fetches.get());
+        assertEquals(2, dynamicTokenManager.getStats().get(0).refreshesLastHour());
+    }
+
+    @Test
+    void testTokenLifetimeFollowsTheAuthResponse() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        Instant now = Instant.ofEpochSecond(Instant.now().getEpochSecond());
+
+        // Sin información de expiración: TTL por defecto
+        DynamicTokenManager.TokenLifetime lifetime = dynamicTokenManager.resolveLifetime(
+                CachedProvider.from(provider), new DynamicTokenManager.FetchedToken("opaque", null), now);
+        assertEquals(DynamicTokenManager.TtlSource.DEFAULT, lifetime.source());
+        assertEquals(Duration.ofMinutes(5), lifetime.ttl());
+
+        // expires_in en la respuesta, menos el margen de seguridad
+        provider.setDynamicAuthExpiresInPath("data.expires_in");
+        lifetime = dynamicTokenManager.resolveLifetime(CachedProvider.from(provider),
+                new DynamicTokenManager.FetchedToken("opaque", mapper.readTree("{\"data\":{\"expires_in\":3600}}")),
+                now);
+        assertEquals(DynamicTokenManager.TtlSource.EXPIRES_IN, lifetime.source());
+        assertEquals(Duration.ofSeconds(3570), lifetime.ttl());
+
+        // Claim exp de un JWT cuando no hay expires_in
+        provider.setDynamicAuthExpiresInPath(null);
+        String claims = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("{\"exp\":" + (now.getEpochSecond() + 600) + "}").getBytes());
+        lifetime = dynamicTokenManager.resolveLifetime(CachedProvider.from(provider),
+                new DynamicTokenManager.FetchedToken("eyJhbGciOiJIUzI1NiJ9." + claims + ".sig", null), now);
+        assertEquals(DynamicTokenManager.TtlSource.JWT_EXP, lifetime.source());
+        assertEquals(Duration.ofSeconds(570), lifetime.ttl());
+
+        // El override del provider manda
+        provider.setDynamicAuthTokenTtlSeconds(120);
+        lifetime = dynamicTokenManager.resolveLifetime(CachedProvider.from(provider),
+                new DynamicTokenManager.FetchedToken("eyJhbGciOiJIUzI1NiJ9." + claims + ".sig", null), now);
+        assertEquals(DynamicTokenManager.TtlSource.PROVIDER_OVERRIDE, lifetime.source());
+        assertEquals(Duration.ofSeconds(120), lifetime.ttl());
+    }
+
+    @Test
+    void testTokenNearExpiryIsServedWhileRefreshing() throws Exception {
+        ReflectionTestUtils.setField(dynamicTokenManager, "refreshAhead", Duration.ofMillis(299_900));
+        AtomicInteger fetches = blockingAuthEndpoint(new CountDownLatch(0));
+        CachedProvider cachedProvider = CachedProvider.from(provider);
+
+        assertEquals("token-1", dynamicTokenManager.getToken(cachedProvider));
+        Thread.sleep(150);
+        // Stale-while-revalidate: se devuelve el vigente y el refresh lo reemplaza
+        assertEquals("token-1", dynamicTokenManager.getToken(cachedProvider));
+        assertEquals("token-2", dynamicTokenManager.getToken(cachedProvider));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void testStoredTokensAreReusedAfterRestart() {
+        Instant fetchedAt = Instant.now().minusSeconds(60);
+        org.mockito.Mockito.when(tokenStore.loadValid()).thenReturn(List.of(new DynamicTokenStore.StoredToken(
+                provider.getId(), "persisted-token", fetchedAt, fetchedAt.plusSeconds(3600), "EXPIRES_IN")));
+        dynamicTokenManager.loadStoredTokens();
+
+        // Sin expectativas en el servidor: cualquier llamada al endpoint de auth fallaría
+        assertEquals("persisted-token", dynamicTokenManager.getToken(CachedProvider.from(provider)));
+        mockServer.verify();
+
+        dynamicTokenManager.invalidateToken(provider.getId(), "persisted-token");
+        org.mockito.Mockito.verify(tokenStore).delete(provider.getId());
+    }
+
+    @Test
+    void testFetchedTokenIsHandedToTheStore() {
+        blockingAuthEndpoint(new CountDownLatch(0));
+
+        dynamicTokenManager.getToken(CachedProvider.from(provider));
+
+        org.mockito.ArgumentCaptor<DynamicTokenStore.StoredToken> stored =
+                org.mockito.ArgumentCaptor.forClass(DynamicTokenStore.StoredToken.class);
+        org.mockito.Mockito.verify(tokenStore).save(stored.capture());
+        assertEquals("token-1", stored.getValue().token());
+        assertEquals("DEFAULT", stored.getValue().ttlSource());
+    }
+
+    @Test
+    void testTokenFetchedAcrossAProviderChangeIsNotPersisted() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        blockingAuthEndpoint(release);
+        CachedProvider cachedProvider = CachedProvider.from(provider);
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> token = caller.submit(() -> dynamicTokenManager.getToken(cachedProvider));
+            Thread.sleep(100);
+            // El provider cambia mientras el fetch con la configuración vieja está en vuelo
+            dynamicTokenManager.onProviderChanged(new ApiProviderChangedEvent(provider.getId()));
+            release.countDown();
+            assertEquals("token-1", token.get(5, TimeUnit.SECONDS));
+        } finally {
+            caller.shutdownNow();
+        }
+        org.mockito.Mockito.verify(tokenStore).delete(provider.getId());
+        org.mockito.Mockito.verify(tokenStore, org.mockito.Mockito.never())
+                .save(org.mockito.ArgumentMatchers.any());
+    }
+
+    private AtomicInteger blockingAuthEndpoint(CountDownLatch release) {
+        AtomicInteger fetches = new AtomicInteger();
+        RestClient restClient = RestClient.builder()
+                .requestFactory((uri, method) -> new MockClientHttpRequest(method, uri) {
+                    @Override
+                    protected ClientHttpResponse executeInternal() throws IOException {
+                        int n = fetches.incrementAndGet();
+                        try {
+                            release.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        MockClientHttpResponse response = new MockClientHttpResponse(
+                                ("{\"access_token\":\"token-" + n + "\"}").getBytes(), HttpStatus.OK);
+                        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                        return response;
+                    }
+                })
+                .build();
+        org.mockito.Mockito.when(httpClientRegistry.clientFor(org.mockito.ArgumentMatchers.any()))
+                .thenReturn(restClient);
+        return fetches;
+    }
 }
@@ -0,0 +1,93 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.model.DynamicAuthToken;
+import org.dynamcorp.handsaiv2.repository.DynamicAuthTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DynamicTokenStoreTest {
+
+    @Mock
+    private DynamicAuthTokenRepository repository;
+
+    @Mock
+    private EncryptionService encryptionService;
+
+    private final List<Runnable> queued = new ArrayList<>();
+
+    private DynamicTokenStore tokenStore;
+
+    @BeforeEach
+    void setUp() {
+        tokenStore = new DynamicTokenStore(repository, encryptionService, queued::add);
+        ReflectionTestUtils.setField(tokenStore, "enabled", true);
+    }
+
+    @Test
+    void testWritesAreAsyncAndKeepOnlyTheLatestStatePerProvider() {
+        when(encryptionService.encrypt("token-2")).thenReturn("enc(token-2)");
+        Instant now = Instant.now();
+
+        tokenStore.save(new DynamicTokenStore.StoredToken(1L, "token-1", now, now.plusSeconds(60), "DEFAULT"));
+        tokenStore.save(new DynamicTokenStore.StoredToken(1L, "token-2", now, now.plusSeconds(60), "DEFAULT"));
+        tokenStore.delete(2L);
+
+        // Nada se escribe en el hilo que pide el token
+        verify(repository, never()).save(any());
+        assertEquals(1, queued.size());
+
+        queued.remove(0).run();
+
+        ArgumentCaptor<DynamicAuthToken> saved = ArgumentCaptor.forClass(DynamicAuthToken.class);
+        verify(repository, times(1)).save(saved.capture());
+        assertEquals("enc(token-2)", saved.getValue().getEncryptedToken());
+        verify(repository).deleteById(2L);
+        assertTrue(queued.isEmpty());
+    }
+
+    @Test
+    void testLoadDropsExpiredRowsAndDecryptsTheRest() {
+        Instant expiresAt = Instant.now().plusSeconds(600);
+        when(repository.deleteExpired(any(Instant.class))).thenReturn(3);
+        when(repository.findAll()).thenReturn(List.of(DynamicAuthToken.builder()
+                .providerId(5L).encryptedToken("enc(secret)").fetchedAt(Instant.now())
+                .expiresAt(expiresAt).ttlSource("JWT_EXP").build()));
+        when(encryptionService.decrypt("enc(secret)")).thenReturn("secret");
+
+        List<DynamicTokenStore.StoredToken> tokens = tokenStore.loadValid();
+
+        assertEquals(1, tokens.size());
+        assertEquals("secret", tokens.get(0).token());
+        assertEquals(expiresAt, tokens.get(0).expiresAt());
+    }
+
+    @Test
+    void testDisabledStoreDeletesLeftoversAndWritesNothing() {
+        ReflectionTestUtils.setField(tokenStore, "enabled", false);
+        when(repository.count()).thenReturn(2L);
+
+        assertTrue(tokenStore.loadValid().isEmpty());
+        tokenStore.save(new DynamicTokenStore.StoredToken(1L, "token", Instant.now(), Instant.now(), "DEFAULT"));
+
+        verify(repository).deleteAllInBatch();
+        assertTrue(queued.isEmpty());
+    }
+}
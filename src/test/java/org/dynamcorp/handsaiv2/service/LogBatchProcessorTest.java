@@ -0,0 +1,167 @@
+package org.dynamcorp.handsaiv2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dynamcorp.handsaiv2.config.LogPipelineProperties;
+import org.dynamcorp.handsaiv2.config.MetricsProperties;
+import org.dynamcorp.handsaiv2.metrics.HandsAiMeters;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class LogBatchProcessorTest {
+
+    @Mock
+    private ExecutionLogStore logStore;
+
+    @Mock
+    private ToolRollupStore rollupStore;
+
+    @TempDir
+    Path tempDir;
+
+    private final LogPipelineProperties properties = new LogPipelineProperties();
+    private final HandsAiMeters meters = new HandsAiMeters(new SimpleMeterRegistry(), new MetricsProperties());
+
+    @BeforeEach
+    void setUp() {
+        properties.setCapacity(10);
+        properties.setBatchSize(4);
+        properties.setOverflowPolicy(LogPipelineProperties.OverflowPolicy.DROP);
+        properties.setRetryBackoff(Duration.ZERO);
+        properties.setDeadLetterFile(tempDir.resolve("dead-letter.ndjson").toString());
+    }
+
+    @Test
+    void testFlushWritesInBatchesOfTheConfiguredSize() {
+        List<Integer> sizes = new ArrayList<>();
+        // La lista se reutiliza entre lotes: se registra el tamaño al momento de la llamada
+        doAnswer(invocation -> sizes.add(invocation.<List<?>>getArgument(0).size()))
+                .when(logStore).append(anyList());
+        LogBatchProcessor processor = processor();
+
+        for (int i = 0; i < 10; i++) {
+            processor.enqueueLog(entry(true));
+        }
+        processor.flushPending();
+
+        assertEquals(List.of(4, 4, 2), sizes);
+        assertEquals(10, processor.getStats().written());
+        assertEquals(0, processor.getStats().queueDepth());
+    }
+
+    @Test
+    void testDropPolicyDropsWhenTheBufferIsFull() {
+        LogBatchProcessor processor = processor();
+
+        for (int i = 0; i < 15; i++) {
+            processor.enqueueLog(entry(true));
+        }
+
+        assertEquals(10, processor.getStats().queueDepth());
+        assertEquals(10, processor.getStats().accepted());
+        assertEquals(5, processor.getStats().dropped());
+    }
+
+    @Test
+    void testSamplePolicyThinsSuccessesButKeepsFailures() {
+        properties.setOverflowPolicy(LogPipelineProperties.OverflowPolicy.SAMPLE);
+        properties.setSampleAbove(0.5);
+        properties.setSampleRate(3);
+        LogBatchProcessor processor = processor();
+
+        for (int i = 0; i < 5; i++) {
+            processor.enqueueLog(entry(true));
+        }
+        // Por encima de la mitad: 1 de cada 3 exitosos, los fallidos siempre
+        for (int i = 0; i < 6; i++) {
+            processor.enqueueLog(entry(true));
+        }
+        processor.enqueueLog(entry(false));
+
+        assertEquals(8, processor.getStats().queueDepth());
+        assertEquals(4, processor.getStats().sampledOut());
+    }
+
+    @Test
+    void testFailingBatchIsRetriedThenDeadLettered() throws Exception {
+        properties.setMaxAttempts(3);
+        doThrow(new RuntimeException("database is locked")).when(logStore).append(anyList());
+        LogBatchProcessor processor = processor();
+
+        processor.enqueueLog(entry(false));
+        processor.enqueueLog(entry(true));
+        processor.flushPending();
+
+        verify(logStore, times(3)).append(anyList());
+        List<String> lines = Files.readAllLines(tempDir.resolve("dead-letter.ndjson"));
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).contains("\"systemToolName\":\"search\""), lines.get(0));
+        assertEquals(2, processor.getStats().deadLettered());
+        assertEquals(2, processor.getStats().retries());
+    }
+
+    @Test
+    void testRollupFailureDoesNotRewriteTheBatch() {
+        doThrow(new IllegalStateException("disk full")).when(rollupStore).record(anyList());
+        LogBatchProcessor processor = processor();
+
+        processor.enqueueLog(entry(true));
+        processor.flushPending();
+
+        verify(logStore, times(1)).append(anyList());
+        assertEquals(1, processor.getStats().written());
+        assertEquals(0, processor.getStats().retries());
+        assertEquals(1, processor.getStats().rollupFailures());
+    }
+
+    @Test
+    void testWriterThreadFlushesAfterTheInterval() throws Exception {
+        properties.setFlushInterval(Duration.ofMillis(50));
+        LogBatchProcessor processor = processor();
+        processor.start();
+        try {
+            processor.enqueueLog(entry(true));
+            Thread.sleep(500);
+            ArgumentCaptor<List<ToolExecutionLog>> batch = ArgumentCaptor.captor();
+            verify(logStore).append(batch.capture());
+        } finally {
+            processor.stop();
+        }
+        assertEquals(1, processor.getStats().written());
+    }
+
+    private LogBatchProcessor processor() {
+        return new LogBatchProcessor(logStore, rollupStore, meters, properties, new ObjectMapper().findAndRegisterModules());
+    }
+
+    private static ToolExecutionLog entry(boolean success) {
+        return ToolExecutionLog.builder()
+                .systemToolName("search")
+                .success(success)
+                .executionTimeMs(12L)
+                .executedAt(Instant.now())
+                .build();
+    }
+}
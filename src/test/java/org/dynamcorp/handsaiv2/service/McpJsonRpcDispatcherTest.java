@@ -0,0 +1,176 @@
+package org.dynamcorp.handsaiv2.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dynamcorp.handsaiv2.config.McpProperties;
+import org.dynamcorp.handsaiv2.dto.McpJsonRpcMessage;
+import org.dynamcorp.handsaiv2.dto.McpToolCallResponse;
+import org.dynamcorp.handsaiv2.dto.ToolExecuteResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class McpJsonRpcDispatcherTest {
+
+    @Mock
+    private ToolCatalogService toolCatalogService;
+    @Mock
+    private ToolExecutionService toolExecutionService;
+    @Mock
+    private LogBatchProcessor logBatchProcessor;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final McpProperties mcpProperties = new McpProperties();
+    private McpJsonRpcDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new McpJsonRpcDispatcher(toolCatalogService, toolExecutionService, logBatchProcessor,
+                mcpProperties, objectMapper);
+    }
+
+    @Test
+    void testToolCallSendsProgressAndEchoesNumericId() throws Exception {
+        when(toolExecutionService.executeApiToolAsync(any(), any(), any())).thenAnswer(invocation -> {
+            ToolExecutionListener listener = invocation.getArgument(2);
+            listener.onStageStarted(ToolExecutionStage.SCRUB);
+            listener.onStageStarted(ToolExecutionStage.CALL);
+            return CompletableFuture.completedFuture(new ToolExecuteResponse(true, "done", 5L, "api_tool", null));
+        });
+        List<McpJsonRpcMessage> notifications = new CopyOnWriteArrayList<>();
+
+        JsonNode request = objectMapper.readTree("""
+                {"jsonrpc":"2.0","id":7,"method":"tools/call",
+                 "params":{"name":"weather","arguments":{"city":"Rosario"},"_meta":{"progressToken":"p1"}}}
+                """);
+        McpJsonRpcMessage response = dispatcher.dispatch(request, "s1", notifications::add)
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(7, response.id().asInt());
+        assertTrue(response.id().isNumber());
+        McpToolCallResponse result = (McpToolCallResponse) response.result();
+        assertEquals("done", result.content().get(0).text());
+        assertNull(result.isError());
+
+        assertEquals(2, notifications.size());
+        Map<?, ?> progress = (Map<?, ?>) notifications.get(1).params();
+        assertEquals("notifications/progress", notifications.get(1).method());
+        assertEquals("p1", ((JsonNode) progress.get("progressToken")).asText());
+        assertEquals(ToolExecutionStage.CALL.ordinal() + 1, progress.get("progress"));
+    }
+
+    @Test
+    void testCancelledNotificationCancelsInFlightCall() throws Exception {
+        CompletableFuture<ToolExecuteResponse> execution = new CompletableFuture<>();
+        when(toolExecutionService.executeApiToolAsync(any(), any(), any())).thenReturn(execution);
+
+        JsonNode call = objectMapper.readTree(
+                "{\"jsonrpc\":\"2.0\",\"id\":\"req-1\",\"method\":\"tools/call\",\"params\":{\"name\":\"slow\"}}");
+        CompletableFuture<McpJsonRpcMessage> response = dispatcher.dispatch(call, "s1", message -> {
+        });
+
+        JsonNode cancelled = objectMapper.readTree(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/cancelled\",\"params\":{\"requestId\":\"req-1\"}}");
+        assertFalse(McpJsonRpcDispatcher.expectsResponse(cancelled));
+        assertNull(dispatcher.dispatch(cancelled, "s1", message -> {
+        }).get());
+
+        assertTrue(execution.isCancelled());
+        assertNotNull(response.get(5, TimeUnit.SECONDS).error());
+    }
+
+    @Test
+    void testCancelledNotificationFromAnotherTokenIsIgnored() throws Exception {
+        CompletableFuture<ToolExecuteResponse> execution = new CompletableFuture<>();
+        when(toolExecutionService.executeApiToolAsync(any(), any(), any())).thenReturn(execution);
+        TokenGrant owner = new TokenGrant(1L, "owner", null, null);
+        TokenGrant other = new TokenGrant(2L, "other", null, null);
+
+        JsonNode call = objectMapper.readTree(
+                "{\"jsonrpc\":\"2.0\",\"id\":\"req-1\",\"method\":\"tools/call\",\"params\":{\"name\":\"slow\"}}");
+        dispatcher.dispatch(call, "s1", owner, message -> {
+        });
+
+        JsonNode cancelled = objectMapper.readTree(
+                "{\"jsonrpc\":\"2.0\",\"method\":\"notifications/cancelled\",\"params\":{\"requestId\":\"req-1\"}}");
+        dispatcher.dispatch(cancelled, "s1", other, message -> {
+        });
+        assertFalse(execution.isCancelled());
+
+        dispatcher.dispatch(cancelled, "s1", owner, message -> {
+        });
+        assertTrue(execution.isCancelled());
+    }
+
+    @Test
+    void testDuplicateInFlightIdIsRejected() throws Exception {
+        CompletableFuture<ToolExecuteResponse> execution = new CompletableFuture<>();
+        when(toolExecutionService.executeApiToolAsync(any(), any(), any())).thenReturn(execution);
+
+        JsonNode call = objectMapper.readTree(
+                "{\"jsonrpc\":\"2.0\",\"id\":\"req-1\",\"method\":\"tools/call\",\"params\":{\"name\":\"slow\"}}");
+        CompletableFuture<McpJsonRpcMessage> first = dispatcher.dispatch(call, "s1", message -> {
+        });
+        McpJsonRpcMessage duplicate = dispatcher.dispatch(call, "s1", message -> {
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(-32600, duplicate.error().code());
+        verify(toolExecutionService, times(1)).executeApiToolAsync(any(), any(), any());
+        assertFalse(first.isDone());
+
+        // Terminada la primera, el id vuelve a estar libre
+        execution.complete(new ToolExecuteResponse(true, "done", 1L, "api_tool", null));
+        assertNull(first.get(5, TimeUnit.SECONDS).error());
+        dispatcher.dispatch(call, "s1", message -> {
+        });
+        verify(toolExecutionService, times(2)).executeApiToolAsync(any(), any(), any());
+    }
+
+    @Test
+    void testNumericAndStringIdsDoNotCollide() throws Exception {
+        when(toolExecutionService.executeApiToolAsync(any(), any(), any())).thenReturn(new CompletableFuture<>());
+
+        dispatcher.dispatch(objectMapper.readTree(
+                "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"tools/call\",\"params\":{\"name\":\"slow\"}}"),
+                "s1", message -> {
+                });
+        CompletableFuture<McpJsonRpcMessage> second = dispatcher.dispatch(objectMapper.readTree(
+                "{\"jsonrpc\":\"2.0\",\"id\":\"1\",\"method\":\"tools/call\",\"params\":{\"name\":\"slow\"}}"),
+                "s1", message -> {
+                });
+
+        assertFalse(second.isDone());
+        verify(toolExecutionService, times(2)).executeApiToolAsync(any(), any(), any());
+    }
+
+    @Test
+    void testLargeResultIsSplitIntoContentBlocks() {
+        mcpProperties.setResultChunkSize(4);
+        McpToolCallResponse result = dispatcher.toToolCallResult(
+                new ToolExecuteResponse(true, "abcdefghij", 1L, "api_tool", null));
+
+        assertEquals(List.of("abcd", "efgh", "ij"),
+                result.content().stream().map(c -> c.text()).toList());
+    }
+
+    @Test
+    void testUnknownMethodReturnsMethodNotFound() throws Exception {
+        JsonNode request = objectMapper.readTree("{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"resources/list\"}");
+        McpJsonRpcMessage response = dispatcher.dispatch(request, "s1", message -> {
+        }).get();
+        assertEquals(-32601, response.error().code());
+    }
+}
@@ -0,0 +1,94 @@
+package org.dynamcorp.handsaiv2.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dynamcorp.handsaiv2.config.ToolExecutionProperties;
+import org.dynamcorp.handsaiv2.dto.McpJsonRpcMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class McpStdioServerTest {
+
+    @Mock
+    private McpJsonRpcDispatcher dispatcher;
+    @Mock
+    private ConfigurableApplicationContext applicationContext;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private McpStdioServer server;
+
+    @BeforeEach
+    void setUp() {
+        server = new McpStdioServer(dispatcher, new ToolExecutionProperties(), objectMapper, applicationContext);
+    }
+
+    @Test
+    void testPipelinedRequestsAnswerAsTheyFinish() throws Exception {
+        when(dispatcher.dispatch(any(), eq("stdio"), any())).thenAnswer(invocation -> {
+            JsonNode message = invocation.getArgument(0);
+            JsonNode id = message.get("id");
+            long delay = "slow".equals(message.path("params").path("name").asText()) ? 200 : 0;
+            return CompletableFuture.supplyAsync(() -> McpJsonRpcMessage.result(id, Map.of()),
+                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+        });
+
+        List<JsonNode> out = serve("""
+                {"jsonrpc":"2.0","id":1,"method":"tools/call","params":{"name":"slow"}}
+                {"jsonrpc":"2.0","id":2,"method":"tools/call","params":{"name":"fast"}}
+                """);
+
+        assertEquals(2, out.size());
+        assertEquals(2, out.get(0).get("id").asInt());
+        assertEquals(1, out.get(1).get("id").asInt());
+    }
+
+    @Test
+    void testMalformedLineIsReportedAndReadingContinues() throws Exception {
+        when(dispatcher.dispatch(any(), eq("stdio"), any())).thenAnswer(invocation -> CompletableFuture
+                .completedFuture(McpJsonRpcMessage.result(((JsonNode) invocation.getArgument(0)).get("id"), Map.of())));
+
+        List<JsonNode> out = serve("""
+                {"jsonrpc":"2.0","id":1,"method":
+                {"jsonrpc":"2.0","id":2,"method":"ping"}
+                [{"jsonrpc":"2.0","id":3,"method":"ping"},{"jsonrpc":"2.0","id":4,"method":"ping"}]
+                """);
+
+        assertEquals(3, out.size());
+        assertEquals(-32700, out.get(0).path("error").path("code").asInt());
+        assertEquals(2, out.get(1).get("id").asInt());
+        assertTrue(out.get(2).isArray());
+        assertEquals(4, out.get(2).get(1).get("id").asInt());
+    }
+
+    private List<JsonNode> serve(String input) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        server.serve(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out);
+        return out.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> {
+                    try {
+                        return objectMapper.readTree(line);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                })
+                .toList();
+    }
+}
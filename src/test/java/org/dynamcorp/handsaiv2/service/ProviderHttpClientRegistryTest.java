@@ -0,0 +1,55 @@
+package org.dynamcorp.handsaiv2.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dynamcorp.handsaiv2.config.HttpClientProperties;
+import org.dynamcorp.handsaiv2.config.MetricsProperties;
+import org.dynamcorp.handsaiv2.metrics.HandsAiMeters;
+import org.dynamcorp.handsaiv2.model.ApiProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProviderHttpClientRegistryTest {
+
+    private final ProviderHttpClientRegistry registry = new ProviderHttpClientRegistry(RestClient.builder(),
+            new HttpClientProperties(), new HandsAiMeters(new SimpleMeterRegistry(), new MetricsProperties()));
+
+    @AfterEach
+    void tearDown() {
+        registry.closeAll();
+    }
+
+    @Test
+    void testProviderChangeRebuildsTheClient() {
+        CachedProvider provider = provider("https://api.example.com");
+        RestClient first = registry.clientFor(provider);
+        assertSame(first, registry.clientFor(provider));
+
+        registry.onProviderChanged(new ApiProviderChangedEvent(provider.id()));
+
+        assertTrue(registry.getPoolStats().isEmpty());
+        assertNotSame(first, registry.clientFor(provider));
+    }
+
+    @Test
+    void testBaseUrlChangeReplacesTheClient() {
+        RestClient first = registry.clientFor(provider("https://api.example.com"));
+
+        RestClient second = registry.clientFor(provider("https://v2.example.com"));
+
+        assertNotSame(first, second);
+        assertEquals(1, registry.getPoolStats().size());
+        assertEquals("https://v2.example.com", registry.getPoolStats().get(0).baseUrl());
+    }
+
+    private static CachedProvider provider(String baseUrl) {
+        ApiProvider provider = new ApiProvider();
+        provider.setId(1L);
+        provider.setCode("acme");
+        provider.setName("Acme");
+        provider.setBaseUrl(baseUrl);
+        return CachedProvider.from(provider);
+    }
+}
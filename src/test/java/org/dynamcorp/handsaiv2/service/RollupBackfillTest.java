@@ -0,0 +1,66 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.dynamcorp.handsaiv2.repository.ToolExecutionLogRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RollupBackfillTest {
+
+    private static final Instant CUTOFF = Instant.parse("2026-03-10T12:30:00Z");
+
+    @Mock
+    private ToolRollupStore rollupStore;
+    @Mock
+    private ToolExecutionLogRepository logRepository;
+    @InjectMocks
+    private RollupBackfill backfill;
+
+    @Test
+    void testPagesFromTheLastBackfilledIdAndCompletes() {
+        when(rollupStore.pendingBackfill()).thenReturn(Optional.of(new ToolRollupStore.Backfill(CUTOFF, 10L)));
+        List<ToolExecutionLog> first = List.of(log(11L), log(12L));
+        List<ToolExecutionLog> second = List.of(log(15L));
+        when(logRepository.findByExecutedAtBeforeAndIdGreaterThanOrderByIdAsc(eq(CUTOFF), eq(10L), any()))
+                .thenReturn(new SliceImpl<>(first, PageRequest.of(0, RollupBackfill.CHUNK_SIZE), true));
+        when(logRepository.findByExecutedAtBeforeAndIdGreaterThanOrderByIdAsc(eq(CUTOFF), eq(12L), any()))
+                .thenReturn(new SliceImpl<>(second, PageRequest.of(0, RollupBackfill.CHUNK_SIZE), false));
+
+        backfill.run();
+
+        verify(rollupStore).recordBackfill(first, 12L);
+        verify(rollupStore).recordBackfill(second, 15L);
+        verify(rollupStore).completeBackfill();
+    }
+
+    @Test
+    void testNothingToDoOnceCompleted() {
+        when(rollupStore.pendingBackfill()).thenReturn(Optional.empty());
+
+        backfill.run();
+
+        verifyNoInteractions(logRepository);
+        verify(rollupStore, never()).completeBackfill();
+    }
+
+    private static ToolExecutionLog log(long id) {
+        ToolExecutionLog log = new ToolExecutionLog();
+        log.setId(id);
+        log.setExecutedAt(CUTOFF.minusSeconds(id));
+        return log;
+    }
+}
@@ -0,0 +1,34 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void testBurstThenRefillAtTheConfiguredRate() {
+        AtomicLong now = new AtomicLong(TimeUnit.SECONDS.toNanos(100));
+        TokenBucket bucket = new TokenBucket(4, now::get);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(250));
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+
+        // Tras un rato sin uso la capacidad no supera la ráfaga de un segundo
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+}
@@ -0,0 +1,144 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.config.ToolExecutionProperties;
+import org.dynamcorp.handsaiv2.dto.ToolExecuteRequest;
+import org.dynamcorp.handsaiv2.dto.ToolExecuteResponse;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ToolBatchExecutionServiceTest {
+
+    @Mock
+    private ToolExecutionService toolExecutionService;
+    @Mock
+    private ToolCacheManager toolCacheManager;
+    @Mock
+    private LogBatchProcessor logBatchProcessor;
+
+    private final ToolExecutionProperties properties = new ToolExecutionProperties();
+    private ToolBatchExecutionService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ToolBatchExecutionService(toolExecutionService, toolCacheManager, logBatchProcessor,
+                properties, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testResponsesKeepRequestOrderAndLogsAreEnqueuedOnce() throws Exception {
+        properties.getBatch().setMaxParallelism(2);
+        when(toolCacheManager.getCachedTool(anyString())).thenReturn(Optional.empty());
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(toolExecutionService.executeApiToolAsync(any(), any())).thenAnswer(invocation -> {
+            ToolExecuteRequest request = invocation.getArgument(0);
+            Consumer<ToolExecutionLog> sink = invocation.getArgument(1);
+            int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            Thread.sleep(30);
+            running.decrementAndGet();
+            sink.accept(new ToolExecutionLog());
+            return CompletableFuture.completedFuture(
+                    new ToolExecuteResponse(true, request.toolName(), 30L, "api_tool", null));
+        });
+
+        List<ToolExecuteRequest> requests = List.of(
+                new ToolExecuteRequest("tool-a", Map.of(), null),
+                new ToolExecuteRequest("tool-b", Map.of(), null),
+                new ToolExecuteRequest("tool-c", Map.of(), null),
+                new ToolExecuteRequest("tool-d", Map.of(), null));
+
+        List<ToolExecuteResponse> responses = service.executeBatch(requests).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of("tool-a", "tool-b", "tool-c", "tool-d"),
+                responses.stream().map(ToolExecuteResponse::result).toList());
+        assertTrue(maxRunning.get() <= 2, "batch parallelism limit exceeded: " + maxRunning.get());
+
+        ArgumentCaptor<Collection<ToolExecutionLog>> logs = ArgumentCaptor.forClass(Collection.class);
+        verify(logBatchProcessor, times(1)).enqueueLogs(logs.capture());
+        assertEquals(4, logs.getValue().size());
+        verify(logBatchProcessor, never()).enqueueLog(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCancelledBatchStillEnqueuesTheLogOfEveryCall() throws Exception {
+        when(toolCacheManager.getCachedTool(anyString())).thenReturn(Optional.empty());
+        CountDownLatch allStarted = new CountDownLatch(2);
+        AtomicInteger calls = new AtomicInteger();
+        when(toolExecutionService.executeApiToolAsync(any(), any())).thenAnswer(invocation -> {
+            Consumer<ToolExecutionLog> sink = invocation.getArgument(1);
+            if (calls.incrementAndGet() == 1) {
+                // Termina antes del cancel: su log queda en el lote
+                sink.accept(new ToolExecutionLog());
+                return CompletableFuture.completedFuture(new ToolExecuteResponse(true, "ok", 1L, "api_tool", null));
+            }
+            CompletableFuture<ToolExecuteResponse> call = new CompletableFuture<>();
+            // Como el pipeline real: el log del fallo llega un rato después del cancel
+            call.whenComplete((r, ex) -> Thread.ofVirtual().start(() -> {
+                sleep(100);
+                sink.accept(new ToolExecutionLog());
+            }));
+            allStarted.countDown();
+            return call;
+        });
+
+        List<ToolExecuteRequest> requests = List.of(
+                new ToolExecuteRequest("tool-a", Map.of(), null),
+                new ToolExecuteRequest("tool-b", Map.of(), null),
+                new ToolExecuteRequest("tool-c", Map.of(), null));
+        CompletableFuture<List<ToolExecuteResponse>> batch = service.executeBatch(requests);
+        assertTrue(allStarted.await(5, TimeUnit.SECONDS));
+
+        batch.cancel(true);
+
+        ArgumentCaptor<Collection<ToolExecutionLog>> batched = ArgumentCaptor.forClass(Collection.class);
+        verify(logBatchProcessor, timeout(5000).times(2)).enqueueLog(any());
+        verify(logBatchProcessor, atMost(1)).enqueueLogs(batched.capture());
+        int total = 2 + batched.getAllValues().stream().mapToInt(Collection::size).sum();
+        assertEquals(3, total);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void testRejectsBatchOverMaxSize() {
+        properties.getBatch().setMaxSize(1);
+        List<ToolExecuteRequest> requests = List.of(
+                new ToolExecuteRequest("tool-a", Map.of(), null),
+                new ToolExecuteRequest("tool-b", Map.of(), null));
+
+        assertThrows(IllegalArgumentException.class, () -> service.executeBatch(requests));
+        verifyNoInteractions(toolExecutionService);
+    }
+}
@@ -0,0 +1,130 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.model.ApiProvider;
+import org.dynamcorp.handsaiv2.model.ApiTool;
+import org.dynamcorp.handsaiv2.model.ParameterType;
+import org.dynamcorp.handsaiv2.model.ToolParameter;
+import org.dynamcorp.handsaiv2.repository.ApiToolRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ToolCacheManagerTest {
+
+    @Mock
+    private ApiToolRepository apiToolRepository;
+    @Mock
+    private ToolExecutionPlanCompiler planCompiler;
+
+    private ToolCacheManager cacheManager;
+    private ApiProvider providerA;
+    private ApiProvider providerB;
+
+    @BeforeEach
+    void setUp() {
+        providerA = ApiProvider.builder().code("a").baseUrl("https://api.example.com").build();
+        providerA.setId(1L);
+        providerB = ApiProvider.builder().code("b").build();
+        providerB.setId(2L);
+
+        when(apiToolRepository.findAllEnabled()).thenReturn(List.of(
+                tool("a-1", providerA), tool("a-2", providerA), tool("b-1", providerB)));
+        cacheManager = new ToolCacheManager(apiToolRepository, planCompiler);
+        cacheManager.initCache();
+    }
+
+    @Test
+    void testToolEventReloadsOnlyThatTool() {
+        long version = cacheManager.getVersion();
+        ApiTool renamed = tool("a-1-renamed", providerA);
+        when(apiToolRepository.findByCode("a-1-renamed")).thenReturn(Optional.of(renamed));
+
+        cacheManager.onToolChanged(new ApiToolChangedEvent("a-1-renamed", "a-1"));
+
+        assertTrue(cacheManager.getCachedTool("a-1").isEmpty());
+        assertEquals(CachedTool.from(renamed), cacheManager.getCachedTool("a-1-renamed").orElseThrow());
+        assertEquals(3, cacheManager.getAllCachedTools().size());
+        assertTrue(cacheManager.getVersion() > version);
+        verify(apiToolRepository, times(1)).findAllEnabled();
+    }
+
+    @Test
+    void testDeletedToolLeavesCache() {
+        when(apiToolRepository.findByCode("b-1")).thenReturn(Optional.empty());
+
+        cacheManager.onToolChanged(new ApiToolChangedEvent("b-1"));
+
+        assertTrue(cacheManager.getCachedTool("b-1").isEmpty());
+        assertEquals(2, cacheManager.getAllCachedTools().size());
+    }
+
+    @Test
+    void testProviderEventReplacesOnlyItsTools() {
+        ApiTool updated = tool("a-2", providerA);
+        when(apiToolRepository.findAllEnabledByProviderId(1L)).thenReturn(List.of(updated));
+        CachedTool untouched = cacheManager.getCachedTool("b-1").orElseThrow();
+
+        cacheManager.onProviderChanged(new ApiProviderChangedEvent(1L));
+
+        assertTrue(cacheManager.getCachedTool("a-1").isEmpty());
+        assertEquals(CachedTool.from(updated), cacheManager.getCachedTool("a-2").orElseThrow());
+        assertSame(untouched, cacheManager.getCachedTool("b-1").orElseThrow());
+    }
+
+    @Test
+    void testProviderEventSkipsToolsWithoutProvider() {
+        cacheManager.addOrUpdateTool(tool("orphan", null));
+        when(apiToolRepository.findAllEnabledByProviderId(1L)).thenReturn(List.of());
+
+        cacheManager.onProviderChanged(new ApiProviderChangedEvent(1L));
+
+        assertTrue(cacheManager.getCachedTool("orphan").isPresent());
+        assertTrue(cacheManager.getCachedTool("a-1").isEmpty());
+    }
+
+    @Test
+    void testReadersKeepTheirSnapshotDuringUpdates() {
+        List<CachedTool> before = cacheManager.getAllCachedTools();
+        cacheManager.removeTool("a-1");
+
+        assertEquals(3, before.size());
+        assertEquals(2, cacheManager.getAllCachedTools().size());
+    }
+
+    @Test
+    void testCachedToolIsDetachedFromTheEntity() {
+        ApiTool entity = tool("c-1", providerA);
+        entity.getParameters().add(ToolParameter.builder().name("q").type(ParameterType.STRING).required(true).build());
+        cacheManager.addOrUpdateTool(entity);
+
+        entity.setEndpointPath("/changed");
+        entity.getParameters().clear();
+        providerA.setBaseUrl("https://changed.example.com");
+
+        CachedTool cached = cacheManager.getCachedTool("c-1").orElseThrow();
+        assertEquals("/v1", cached.endpointPath());
+        assertEquals(1, cached.parameters().size());
+        assertTrue(cached.parameters().get(0).required());
+        assertEquals("https://api.example.com", cached.provider().baseUrl());
+        assertThrows(UnsupportedOperationException.class, () -> cached.parameters().clear());
+    }
+
+    private static ApiTool tool(String code, ApiProvider provider) {
+        return ApiTool.builder()
+                .code(code)
+                .provider(provider)
+                .endpointPath("/v1")
+                .enabled(true)
+                .healthy(true)
+                .build();
+    }
+}
@@ -0,0 +1,93 @@
+package org.dynamcorp.handsaiv2.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dynamcorp.handsaiv2.dto.ToolDefinition;
+import org.dynamcorp.handsaiv2.dto.ToolDiscoveryResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ToolCatalogServiceTest {
+
+    @Mock
+    private ToolCacheManager toolCacheManager;
+    @Mock
+    private ToolDiscoveryService toolDiscoveryService;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private ToolCatalogService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ToolCatalogService(toolCacheManager, toolDiscoveryService, objectMapper);
+    }
+
+    @Test
+    void testSnapshotIsReusedUntilCatalogVersionChanges() throws Exception {
+        when(toolCacheManager.getVersion()).thenReturn(1L, 1L, 2L);
+        when(toolDiscoveryService.discoverTools())
+                .thenReturn(discovery("weather"))
+                .thenReturn(discovery("weather", "news"));
+
+        ToolCatalogSnapshot first = service.current();
+        ToolCatalogSnapshot again = service.current();
+        ToolCatalogSnapshot changed = service.current();
+
+        assertSame(first, again);
+        assertNotSame(first, changed);
+        assertNotEquals(first.etag(), changed.etag());
+        assertEquals(2L, changed.version());
+        verify(toolDiscoveryService, times(2)).discoverTools();
+
+        JsonNode body = objectMapper.readTree(changed.responseBytes());
+        assertEquals("2.0", body.get("jsonrpc").asText());
+        assertEquals("news", body.path("result").path("tools").get(1).get("name").asText());
+        assertEquals(objectMapper.readTree(changed.resultJson()), body.get("result"));
+    }
+
+    @Test
+    void testEtagDependsOnlyOnContent() {
+        when(toolCacheManager.getVersion()).thenReturn(1L);
+        when(toolDiscoveryService.discoverTools()).thenReturn(discovery("weather"));
+        String etag = service.current().etag();
+
+        ToolCatalogService restarted = new ToolCatalogService(toolCacheManager, toolDiscoveryService, objectMapper);
+        assertEquals(etag, restarted.current().etag());
+        assertTrue(etag.startsWith("\"") && etag.endsWith("\""));
+    }
+
+    @Test
+    void testScopedTokenSeesOnlyItsTools() throws Exception {
+        when(toolCacheManager.getVersion()).thenReturn(1L);
+        when(toolDiscoveryService.discoverTools()).thenReturn(discovery("github-issues", "github-prs", "weather"));
+        TokenGrant grant = new TokenGrant(5L, "ci-agent", "github-*", null);
+
+        ToolCatalogSnapshot view = service.current(grant);
+
+        JsonNode tools = objectMapper.readTree(view.resultJson()).get("tools");
+        assertEquals(2, tools.size());
+        assertEquals("github-prs", tools.get(1).get("name").asText());
+        assertNotEquals(service.current().etag(), view.etag());
+        // Se reutiliza la vista mientras no cambie la versión del catálogo
+        assertSame(view, service.current(grant));
+        assertSame(service.current(), service.current(new TokenGrant(6L, "all", null, null)));
+    }
+
+    private static ToolDiscoveryResponse discovery(String... names) {
+        List<ToolDefinition> tools = java.util.Arrays.stream(names)
+                .map(name -> new ToolDefinition(name, "desc " + name, "api_tool", Map.of("type", "object")))
+                .toList();
+        return new ToolDiscoveryResponse(tools, tools.size(), Instant.now());
+    }
+}
@@ -0,0 +1,143 @@
+package org.dynamcorp.handsaiv2.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dynamcorp.handsaiv2.model.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpMethod;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ToolExecutionPlanTest {
+
+    @Mock
+    private EncryptionService encryptionService;
+
+    private ToolExecutionPlanCompiler compiler;
+    private ApiProvider provider;
+    private ApiTool tool;
+
+    @BeforeEach
+    void setUp() {
+        compiler = new ToolExecutionPlanCompiler(new ObjectMapper());
+
+        provider = new ApiProvider();
+        provider.setId(1L);
+        provider.setBaseUrl("https://api.test.com");
+        provider.setAuthenticationType(AuthenticationTypeEnum.NONE);
+
+        tool = new ApiTool();
+        tool.setCode("plan-tool");
+        tool.setProvider(provider);
+        tool.setEndpointPath("/users/{userId}/posts");
+        tool.setHttpMethod(HttpMethodEnum.GET);
+    }
+
+    @Test
+    void testGetResolvesPathAndAppendsRemainingParamsToQuery() {
+        ToolExecutionPlan plan = compiler.compile(CachedTool.from(tool));
+
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("userId", 42);
+        params.put("limit", 5);
+
+        assertEquals(HttpMethod.GET, plan.httpMethod());
+        assertFalse(plan.hasBody());
+        assertEquals("/users/42/posts?limit=5", plan.bindUri(params, null));
+    }
+
+    @Test
+    void testMissingPathParamKeepsPlaceholder() {
+        ToolExecutionPlan plan = compiler.compile(CachedTool.from(tool));
+        assertEquals("/users/{userId}/posts", plan.bindUri(Map.of(), null));
+    }
+
+    @Test
+    void testPostWithQueryApiKeyRoutesKeyToQueryAndRestToBody() {
+        when(encryptionService.decrypt("enc-key")).thenReturn("secret");
+        provider.setAuthenticationType(AuthenticationTypeEnum.API_KEY);
+        provider.setApiKeyLocation(ApiKeyLocationEnum.QUERY_PARAMETER);
+        provider.setApiKeyName("key");
+        provider.setApiKeyValue("enc-key");
+        tool.setEndpointPath("/search");
+        tool.setHttpMethod(HttpMethodEnum.POST);
+
+        ToolExecutionPlan plan = compiler.compile(CachedTool.from(tool));
+        String token = plan.effectiveToken(null, encryptionService);
+
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("q", "java");
+
+        assertEquals("/search?q=java&key=secret", plan.bindUri(params, token));
+        assertEquals(Map.of("q", "java"), plan.bindBody(params, token));
+    }
+
+    @Test
+    void testPlanKeepsCredentialsEncryptedAndDecryptsPerCall() {
+        when(encryptionService.decrypt("enc-key")).thenReturn("secret");
+        when(encryptionService.decrypt("enc-tenant")).thenReturn("tenant-1");
+        provider.setAuthenticationType(AuthenticationTypeEnum.API_KEY);
+        provider.setApiKeyLocation(ApiKeyLocationEnum.HEADER);
+        provider.setApiKeyValue("enc-key");
+        provider.setCustomHeadersJson("{\"X-Tenant\":\"enc-tenant\",\"X-Empty\":\"\"}");
+
+        ToolExecutionPlan plan = compiler.compile(CachedTool.from(tool));
+        verifyNoInteractions(encryptionService);
+        assertEquals("enc-key", plan.encryptedStaticToken());
+        assertEquals("enc-tenant", plan.encryptedHeaders().get("X-Tenant"));
+
+        assertEquals("secret", plan.effectiveToken(null, encryptionService));
+        assertEquals("dynamic", plan.effectiveToken("dynamic", encryptionService));
+        assertEquals(Map.of("X-Tenant", "tenant-1", "X-Empty", ""), plan.headers(encryptionService));
+        plan.effectiveToken(null, encryptionService);
+        verify(encryptionService, times(2)).decrypt("enc-key");
+    }
+
+    @Test
+    void testInBodyApiKeyOverridesClientValue() {
+        provider.setAuthenticationType(AuthenticationTypeEnum.API_KEY);
+        provider.setApiKeyLocation(ApiKeyLocationEnum.IN_BODY);
+        provider.setApiKeyName("api_key");
+        tool.setEndpointPath("/send");
+        tool.setHttpMethod(HttpMethodEnum.POST);
+
+        ToolExecutionPlan plan = compiler.compile(CachedTool.from(tool));
+
+        Map<String, Object> body = plan.bindBody(Map.of("api_key", "dummy", "text", "hi"), "real-token");
+        assertEquals("real-token", body.get("api_key"));
+        assertEquals("hi", body.get("text"));
+        assertEquals("/send", plan.bindUri(Map.of("text", "hi"), "real-token"));
+    }
+
+    @Test
+    void testBearerAuthAndInvalidationKeywords() {
+        provider.setAuthenticationType(AuthenticationTypeEnum.BEARER_TOKEN);
+        provider.setDynamicAuth(true);
+        provider.setDynamicAuthInvalidationKeywords("Expired Token, invalid_grant ");
+
+        ToolExecutionPlan plan = compiler.compile(CachedTool.from(tool));
+
+        assertEquals(ToolExecutionPlan.AuthLocation.HEADER, plan.auth().location());
+        assertEquals("Bearer ", plan.auth().valuePrefix());
+        assertTrue(plan.containsInvalidationKeyword("error: expired token"));
+        assertFalse(plan.containsInvalidationKeyword("all good"));
+    }
+
+    @Test
+    void testPlanIsStaleWhenToolOrProviderChanges() {
+        tool.setUpdatedAt(java.time.Instant.parse("2025-01-01T00:00:00Z"));
+        provider.setUpdatedAt(java.time.Instant.parse("2025-01-01T00:00:00Z"));
+        ToolExecutionPlan plan = compiler.compile(CachedTool.from(tool));
+
+        assertTrue(plan.isCurrentFor(tool.getUpdatedAt(), provider.getUpdatedAt()));
+        assertFalse(plan.isCurrentFor(java.time.Instant.parse("2025-02-01T00:00:00Z"), provider.getUpdatedAt()));
+    }
+}
@@ -1,8 +1,13 @@
 package org.dynamcorp.handsaiv2.service;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.dynamcorp.handsaiv2.config.MetricsProperties;
+import org.dynamcorp.handsaiv2.config.ToolExecutionProperties;
 import org.dynamcorp.handsaiv2.dto.ToolExecuteRequest;
 import org.dynamcorp.handsaiv2.dto.ToolExecuteResponse;
+import org.dynamcorp.handsaiv2.metrics.HandsAiMeters;
+import org.dynamcorp.handsaiv2.metrics.LatencyMetrics;
 import org.dynamcorp.handsaiv2.model.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,11 +22,15 @@ import org.springframework.test.web.client.response.MockRestResponseCreators;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -36,7 +45,7 @@ public class ToolExecutionServiceTest {
     @Mock
     private LogBatchProcessor logBatchProcessor;
     @Mock
-    private RestClient.Builder restClientBuilder; // Changed from local variable to mock field
+    private ProviderHttpClientRegistry httpClientRegistry;
     @Mock
     private ObjectMapper objectMapper;
     @Mock
@@ -51,8 +60,13 @@ public class ToolExecutionServiceTest {
     private org.dynamcorp.handsaiv2.util.SecuritySanitizer securitySanitizer;
     @Mock
     private org.dynamcorp.handsaiv2.util.DataEgressScrubber dataEgressScrubber;
+    @Mock
+    private LatencyMetrics latencyMetrics;
 
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
     private ToolExecutionService service;
+    private ToolExecutionPlanCompiler planCompiler;
+    private final ToolExecutionProperties executionProperties = new ToolExecutionProperties();
     private ApiTool tool;
     private ApiProvider provider;
 
@@ -61,26 +75,31 @@ public class ToolExecutionServiceTest {
         RestTemplate restTemplate = new RestTemplate();
         mockServer = MockRestServiceServer.createServer(restTemplate);
 
-        // Use the mocked restClientBuilder
+        // The mocked registry hands out a RestClient bridged to the mock server
         RestClient restClient = RestClient.create(restTemplate);
-        when(restClientBuilder.baseUrl(anyString())).thenReturn(restClientBuilder);
-        when(restClientBuilder.build()).thenReturn(restClient);
+        lenient().when(httpClientRegistry.clientFor(any())).thenReturn(restClient);
 
         service = new ToolExecutionService(
                 apiToolService,
                 toolCacheManager,
                 logBatchProcessor,
-                restClientBuilder,
+                httpClientRegistry,
                 objectMapper,
-                encryptionService,
                 logObfuscator,
                 dynamicTokenManager,
                 memoryService,
                 securitySanitizer,
-                dataEgressScrubber);
+                dataEgressScrubber,
+                executionProperties,
+                Executors.newVirtualThreadPerTaskExecutor(),
+                latencyMetrics,
+                new HandsAiMeters(meterRegistry, new MetricsProperties()),
+                encryptionService);
 
         provider = new ApiProvider();
         provider.setId(10L);
+        provider.setCode("test-provider");
+        provider.setName("Test Provider");
         provider.setBaseUrl("https://api.test.com");
         provider.setAuthenticationType(AuthenticationTypeEnum.API_KEY);
         provider.setDynamicAuth(true);
@@ -90,17 +109,22 @@ public class ToolExecutionServiceTest {
         tool = new ApiTool();
         tool.setId(100L);
         tool.setCode("TEST-TOOL");
+        tool.setName("Test Tool");
         tool.setEnabled(true);
         tool.setHealthy(true);
         tool.setProvider(provider);
         tool.setEndpointPath("/data");
         tool.setHttpMethod(HttpMethodEnum.GET);
+
+        planCompiler = new ToolExecutionPlanCompiler(new ObjectMapper());
     }
 
     @Test
     void testExecuteApiTool_WithDynamicAuth_401TriggerRetrySuccess() {
-        when(toolCacheManager.getCachedTool("TEST-TOOL")).thenReturn(Optional.of(tool));
-        when(dynamicTokenManager.getToken(provider)).thenReturn("first-stale-token", "second-fresh-token");
+        CachedTool cachedTool = CachedTool.from(tool);
+        when(toolCacheManager.getCachedTool("TEST-TOOL")).thenReturn(Optional.of(cachedTool));
+        when(toolCacheManager.getExecutionPlan(cachedTool)).thenAnswer(invocation -> planCompiler.compile(cachedTool));
+        when(dynamicTokenManager.getToken(cachedTool.provider())).thenReturn("first-stale-token", "second-fresh-token");
 
         // 1st request returns 401 Unauthorized
         mockServer.expect(MockRestRequestMatchers.requestTo("/data"))
@@ -124,14 +148,21 @@ public class ToolExecutionServiceTest {
             System.err.println("Unexpected error message: " + response.errorMessage());
         }
         assertTrue(response.success());
-        verify(dynamicTokenManager, times(1)).invalidateToken(10L); // it invalidated the stale token
+        verify(dynamicTokenManager, times(1)).invalidateToken(10L, "first-stale-token"); // it invalidated the stale token
         mockServer.verify();
+        assertEquals(1, meterRegistry.get("handsai.tool.executions")
+                .tags("tool", "TEST-TOOL", "outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get("handsai.tool.cache.lookups").tag("result", "hit").counter().count());
+        // Por código, no por nombre visible
+        verify(latencyMetrics).recordExecution(eq("TEST-TOOL"), eq("test-provider"), anyLong());
     }
 
     @Test
     void testExecuteApiTool_WithDynamicAuth_401TriggerRetryFailsAgain() {
-        when(toolCacheManager.getCachedTool("TEST-TOOL")).thenReturn(Optional.of(tool));
-        when(dynamicTokenManager.getToken(provider)).thenReturn("first-token", "second-token");
+        CachedTool cachedTool = CachedTool.from(tool);
+        when(toolCacheManager.getCachedTool("TEST-TOOL")).thenReturn(Optional.of(cachedTool));
+        when(toolCacheManager.getExecutionPlan(cachedTool)).thenAnswer(invocation -> planCompiler.compile(cachedTool));
+        when(dynamicTokenManager.getToken(cachedTool.provider())).thenReturn("first-token", "second-token");
 
         // 1st request 401
         mockServer.expect(MockRestRequestMatchers.requestTo("/data"))
@@ -152,7 +183,70 @@ public class ToolExecutionServiceTest {
         assertNotNull(response.errorMessage());
         assertTrue(response.errorMessage().contains("401"));
 
-        verify(dynamicTokenManager, times(1)).invalidateToken(10L); // invalidated only once
+        verify(dynamicTokenManager, times(1)).invalidateToken(10L, "first-token"); // invalidated only once
         mockServer.verify();
     }
+
+    @Test
+    void testExecuteApiToolAsync_StageTimeoutCancelsStageAndFails() throws Exception {
+        executionProperties.getTimeout().setScrub(Duration.ofMillis(50));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(dataEgressScrubber.scrubParameters(any())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return invocation.getArgument(0);
+        });
+
+        ToolExecuteRequest request = new ToolExecuteRequest("TEST-TOOL", new HashMap<>(), "my-session-id");
+        ToolExecuteResponse response = service.executeApiToolAsync(request).get(5, TimeUnit.SECONDS);
+
+        assertFalse(response.success());
+        assertTrue(response.errorMessage().contains("SCRUB"));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "timed out stage should be interrupted");
+        verify(logBatchProcessor).enqueueLog(any());
+        verifyNoInteractions(toolCacheManager);
+        // El nombre nunca llegó a resolverse: no abre una serie propia
+        assertEquals(1, meterRegistry.get("handsai.tool.executions")
+                .tags("tool", "unknown", "outcome", "timeout").timer().count());
+    }
+
+    @Test
+    void testExecuteApiToolAsync_MissingToolNameFailsFast() throws Exception {
+        ToolExecuteRequest request = new ToolExecuteRequest(null, new HashMap<>(), "my-session-id");
+        ToolExecuteResponse response = service.executeApiToolAsync(request).get(5, TimeUnit.SECONDS);
+
+        assertFalse(response.success());
+        assertEquals("Tool name is required", response.errorMessage());
+        verify(logBatchProcessor).enqueueLog(any());
+        verifyNoInteractions(toolCacheManager);
+        assertEquals(1, meterRegistry.get("handsai.tool.executions")
+                .tags("tool", "unknown", "outcome", "error").timer().count());
+    }
+
+    @Test
+    void testExecuteApiToolAsync_CancelInterruptsRunningStage() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(dataEgressScrubber.scrubParameters(any())).thenAnswer(invocation -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return invocation.getArgument(0);
+        });
+
+        ToolExecuteRequest request = new ToolExecuteRequest("TEST-TOOL", new HashMap<>(), "my-session-id");
+        CompletableFuture<ToolExecuteResponse> future = service.executeApiToolAsync(request);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        future.cancel(true);
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "cancelled stage should be interrupted");
+        verifyNoInteractions(toolCacheManager);
+    }
 }
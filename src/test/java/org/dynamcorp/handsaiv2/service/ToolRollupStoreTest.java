@@ -0,0 +1,201 @@
+package org.dynamcorp.handsaiv2.service;
+
+import org.dynamcorp.handsaiv2.config.RollupProperties;
+import org.dynamcorp.handsaiv2.dto.ProviderMetricsResponse;
+import org.dynamcorp.handsaiv2.dto.ToolMetricsResponse;
+import org.dynamcorp.handsaiv2.dto.ToolRollupPointResponse;
+import org.dynamcorp.handsaiv2.model.ApiProvider;
+import org.dynamcorp.handsaiv2.model.ApiTool;
+import org.dynamcorp.handsaiv2.model.RollupGranularity;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ToolRollupStoreTest {
+
+    private static final Instant NOW = Instant.parse("2026-03-10T12:30:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private final RollupProperties properties = new RollupProperties();
+    private ToolRollupStore rollupStore;
+
+    @BeforeEach
+    void setUp() {
+        properties.setFile(tempDir.resolve("rollups.db").toString());
+        rollupStore = new ToolRollupStore(properties, Clock.fixed(NOW, ZoneOffset.UTC));
+        rollupStore.open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        rollupStore.close();
+    }
+
+    @Test
+    void testBatchesAccumulateIntoTheSameBuckets() {
+        rollupStore.record(List.of(
+                apiLog("search", true, 40, NOW.minusSeconds(10)),
+                apiLog("search", false, 900, NOW.minusSeconds(5))));
+        rollupStore.record(List.of(
+                apiLog("search", true, 20, NOW.minusSeconds(1)),
+                systemLog("memory_save", NOW.minusSeconds(1))));
+
+        List<ToolMetricsResponse> metrics = rollupStore.toolMetricsSince(NOW.minus(Duration.ofDays(1)));
+
+        assertEquals(2, metrics.size());
+        ToolMetricsResponse search = metrics.get(0);
+        assertEquals("search", search.toolCode());
+        assertEquals("search", search.toolName());
+        assertEquals(7L, search.toolId());
+        assertEquals("Acme", search.providerName());
+        assertEquals(3, search.executions());
+        assertEquals(1, search.errors());
+        assertEquals(320.0, search.averageLatencyMs());
+        assertEquals(20L, search.minLatencyMs());
+        assertEquals(900L, search.maxLatencyMs());
+        assertEquals(1L, search.latencyHistogram().get("<=25ms"));
+        assertEquals(1L, search.latencyHistogram().get("<=50ms"));
+        assertEquals(1L, search.latencyHistogram().get("<=1000ms"));
+
+        ToolMetricsResponse memory = metrics.get(1);
+        assertNull(memory.toolId());
+        // Sin tiempo de ejecución: cuenta, pero no entra en latencias
+        assertNull(memory.minLatencyMs());
+        assertEquals(0.0, memory.averageLatencyMs());
+
+        ToolRollupStore.Totals totals = rollupStore.totalsSince(NOW.minus(Duration.ofDays(1)));
+        assertEquals(4, totals.executions());
+        assertEquals(3, totals.successful());
+        assertEquals(320.0, totals.averageLatencyMs());
+    }
+
+    @Test
+    void testToolsAreKeyedByCodeAndRolledUpPerProvider() {
+        rollupStore.record(List.of(
+                apiLog(1L, "acme_search", "search", 1L, "Acme", true, 10, NOW.minusSeconds(30)),
+                apiLog(2L, "globex_search", "search", 2L, "Globex", false, 30, NOW.minusSeconds(20)),
+                apiLog(3L, "acme_lookup", "lookup", 1L, "Acme", true, 50, NOW.minusSeconds(10)),
+                systemLog("memory_save", NOW.minusSeconds(5))));
+        // Renombrada: sigue siendo la misma fila y se muestra el nombre nuevo
+        rollupStore.record(List.of(
+                apiLog(1L, "acme_search", "web search", 1L, "Acme", true, 30, NOW.plus(Duration.ofHours(1)))));
+
+        List<ToolMetricsResponse> tools = rollupStore.toolMetricsSince(NOW.minus(Duration.ofDays(1)));
+        assertEquals(4, tools.size());
+        assertEquals("acme_search", tools.get(0).toolCode());
+        assertEquals("web search", tools.get(0).toolName());
+        assertEquals(2, tools.get(0).executions());
+
+        List<ProviderMetricsResponse> providers = rollupStore.providerMetricsSince(NOW.minus(Duration.ofDays(1)));
+        assertEquals(2, providers.size());
+        ProviderMetricsResponse acme = providers.get(0);
+        assertEquals(1L, acme.providerId());
+        assertEquals("Acme", acme.providerName());
+        assertEquals(2, acme.tools());
+        assertEquals(3, acme.executions());
+        assertEquals(0, acme.errors());
+        assertEquals(30.0, acme.averageLatencyMs());
+        assertEquals(10L, acme.minLatencyMs());
+        assertEquals(50L, acme.maxLatencyMs());
+        ProviderMetricsResponse globex = providers.get(1);
+        assertEquals(1, globex.executions());
+        assertEquals(1, globex.errors());
+    }
+
+    @Test
+    void testSeriesReturnsTheLastBucketsOfOneTool() {
+        rollupStore.record(List.of(
+                apiLog("search", true, 10, NOW.minus(Duration.ofHours(5))),
+                apiLog("search", true, 30, NOW.minus(Duration.ofHours(1))),
+                apiLog("search", true, 50, NOW.minus(Duration.ofMinutes(1))),
+                apiLog("other", true, 10, NOW)));
+
+        List<ToolRollupPointResponse> series = rollupStore.series("search", RollupGranularity.HOUR, 3);
+
+        assertEquals(2, series.size());
+        assertEquals(Instant.parse("2026-03-10T11:00:00Z"), series.get(0).bucketStart());
+        assertEquals(30.0, series.get(0).averageLatencyMs());
+        assertEquals(Instant.parse("2026-03-10T12:00:00Z"), series.get(1).bucketStart());
+        assertEquals(3, rollupStore.series("search", RollupGranularity.DAY, 1).get(0).executions());
+    }
+
+    @Test
+    void testExpiredBucketsAreDeletedPerGranularity() {
+        rollupStore.record(List.of(apiLog("search", true, 10, NOW.minus(Duration.ofDays(3)))));
+
+        // Solo el bucket de minuto pasó su retención (2 días)
+        assertEquals(1, rollupStore.deleteExpired());
+        assertEquals(1, rollupStore.series("search", RollupGranularity.HOUR, 24 * 4).size());
+        assertEquals(0, rollupStore.series("search", RollupGranularity.MINUTE, 1440).size());
+    }
+
+    @Test
+    void testBucketIndexUsesInclusiveUpperBounds() {
+        assertEquals(0, ToolRollupStore.bucketIndex(0));
+        assertEquals(0, ToolRollupStore.bucketIndex(10));
+        assertEquals(1, ToolRollupStore.bucketIndex(11));
+        assertEquals(ToolRollupStore.LATENCY_BOUNDS_MS.length, ToolRollupStore.bucketIndex(60_000));
+    }
+
+    @Test
+    void testBackfillProgressSurvivesReopenUntilCompleted() {
+        assertEquals(new ToolRollupStore.Backfill(NOW, 0L), rollupStore.pendingBackfill().orElseThrow());
+
+        rollupStore.recordBackfill(List.of(apiLog("search", true, 40, NOW.minus(Duration.ofDays(2)))), 42L);
+        rollupStore.close();
+        rollupStore = new ToolRollupStore(properties, Clock.fixed(NOW.plusSeconds(60), ZoneOffset.UTC));
+        rollupStore.open();
+
+        // Misma marca de corte y el último id ya volcado: se retoma sin contar dos veces
+        assertEquals(new ToolRollupStore.Backfill(NOW, 42L), rollupStore.pendingBackfill().orElseThrow());
+        assertEquals(1, rollupStore.totalsSince(NOW.minus(Duration.ofDays(3))).executions());
+
+        rollupStore.completeBackfill();
+        assertTrue(rollupStore.pendingBackfill().isEmpty());
+    }
+
+    private static ToolExecutionLog apiLog(String toolName, boolean success, long timeMs, Instant executedAt) {
+        return apiLog(7L, toolName, toolName, 1L, "Acme", success, timeMs, executedAt);
+    }
+
+    private static ToolExecutionLog apiLog(Long toolId, String toolCode, String toolName, Long providerId,
+            String providerName, boolean success, long timeMs, Instant executedAt) {
+        ApiProvider provider = new ApiProvider();
+        provider.setId(providerId);
+        provider.setName(providerName);
+        ApiTool tool = new ApiTool();
+        tool.setId(toolId);
+        tool.setCode(toolCode);
+        tool.setName(toolName);
+        tool.setProvider(provider);
+        ToolExecutionLog log = new ToolExecutionLog();
+        log.setApiTool(tool);
+        log.setSuccess(success);
+        log.setExecutionTimeMs(timeMs);
+        log.setExecutedAt(executedAt);
+        return log;
+    }
+
+    private static ToolExecutionLog systemLog(String toolName, Instant executedAt) {
+        ToolExecutionLog log = new ToolExecutionLog();
+        log.setSystemToolName(toolName);
+        log.setSuccess(true);
+        log.setExecutedAt(executedAt);
+        return log;
+    }
+}
@@ -0,0 +1,79 @@
+package org.dynamcorp.handsaiv2.service.impl;
+
+import org.dynamcorp.handsaiv2.config.EncryptionCacheProperties;
+import org.dynamcorp.handsaiv2.service.ApiProviderChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CachingEncryptionServiceTest {
+
+    @Mock
+    private EncryptionServiceImpl delegate;
+
+    private final EncryptionCacheProperties properties = new EncryptionCacheProperties();
+    private final AtomicLong now = new AtomicLong();
+    private CachingEncryptionService service;
+
+    @BeforeEach
+    void setUp() {
+        properties.setMaxEntries(2);
+        properties.setTtl(Duration.ofMinutes(1));
+        service = new CachingEncryptionService(delegate, properties, now::get);
+    }
+
+    @Test
+    void testRepeatedDecryptsHitTheCacheUntilTtl() {
+        when(delegate.decrypt("c1")).thenReturn("secret");
+
+        assertEquals("secret", service.decrypt("c1"));
+        assertEquals("secret", service.decrypt("c1"));
+        verify(delegate, times(1)).decrypt("c1");
+        assertEquals(1, service.getStats().decryptsAvoided());
+
+        now.addAndGet(Duration.ofMinutes(2).toNanos());
+        assertEquals("secret", service.decrypt("c1"));
+        verify(delegate, times(2)).decrypt("c1");
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvictedWhenFull() {
+        when(delegate.decrypt("c1")).thenReturn("one");
+        when(delegate.decrypt("c2")).thenReturn("two");
+        when(delegate.decrypt("c3")).thenReturn("three");
+
+        service.decrypt("c1");
+        service.decrypt("c2");
+        service.decrypt("c1");
+        service.decrypt("c3");
+
+        assertEquals(2, service.getStats().size());
+        service.decrypt("c1");
+        service.decrypt("c2");
+        verify(delegate, times(1)).decrypt("c1");
+        verify(delegate, times(2)).decrypt("c2");
+    }
+
+    @Test
+    void testProviderChangeClearsTheCache() {
+        when(delegate.decrypt("c1")).thenReturn("secret");
+        service.decrypt("c1");
+
+        service.onProviderChanged(new ApiProviderChangedEvent(1L));
+
+        assertEquals(0, service.getStats().size());
+        service.decrypt("c1");
+        verify(delegate, times(2)).decrypt("c1");
+    }
+}
@@ -0,0 +1,254 @@
+package org.dynamcorp.handsaiv2.service.impl;
+
+import org.dynamcorp.handsaiv2.config.LogStoreProperties;
+import org.dynamcorp.handsaiv2.dto.ToolExecutionLogResponse;
+import org.dynamcorp.handsaiv2.model.ApiTool;
+import org.dynamcorp.handsaiv2.model.ToolExecutionLog;
+import org.dynamcorp.handsaiv2.repository.ToolExecutionLogRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SegmentedExecutionLogStoreTest {
+
+    private static final Instant START = Instant.parse("2026-03-01T00:00:00Z");
+
+    @TempDir
+    Path tempDir;
+
+    private final LogStoreProperties properties = new LogStoreProperties();
+    private final MutableClock clock = new MutableClock();
+    private final List<SegmentedExecutionLogStore> opened = new ArrayList<>();
+    private final ToolExecutionLogRepository legacyLogs = mock(ToolExecutionLogRepository.class);
+
+    @BeforeEach
+    void setUp() {
+        properties.setDirectory(tempDir.toString());
+        properties.setMaxSegmentAge(Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        opened.forEach(SegmentedExecutionLogStore::close);
+    }
+
+    @Test
+    void testLogsAreServedNewestFirst() {
+        SegmentedExecutionLogStore store = open();
+
+        store.append(List.of(
+                entry("search", true, 100, START.plusSeconds(1)),
+                entry("search", false, 300, START.plusSeconds(2))));
+        store.append(List.of(systemEntry("memory_save", START.plusSeconds(3))));
+
+        Page<ToolExecutionLogResponse> page = store.findPage(PageRequest.of(0, 2));
+        assertEquals(3, page.getTotalElements());
+        assertEquals(List.of("memory_save", "search"), page.map(ToolExecutionLogResponse::toolName).toList());
+        assertEquals(START.plusSeconds(3), page.getContent().get(0).executedAt());
+        assertNull(page.getContent().get(0).executionTimeMs());
+    }
+
+    @Test
+    void testSegmentRotatesByAgeAndPagesSpanSegments() {
+        SegmentedExecutionLogStore store = open();
+
+        store.append(List.of(entry("a", true, 1, START), entry("b", true, 1, START.plusSeconds(1))));
+        clock.advance(Duration.ofHours(2));
+        store.append(List.of(entry("c", true, 1, START.plusSeconds(7200))));
+
+        assertEquals(2, segmentFiles().size());
+        assertEquals(1, store.getStats().rotations());
+        Page<ToolExecutionLogResponse> second = store.findPage(PageRequest.of(1, 2));
+        assertEquals(List.of("a"), second.map(ToolExecutionLogResponse::toolName).toList());
+        assertEquals(3, second.getTotalElements());
+    }
+
+    @Test
+    void testFailedRotationKeepsWritingToTheActiveSegment() throws Exception {
+        SegmentedExecutionLogStore store = open();
+        store.append(List.of(entry("a", true, 1, START)));
+        clock.advance(Duration.ofHours(2));
+        // Un directorio con el nombre del próximo segmento hace fallar su creación
+        Path blocked = tempDir.resolve(SegmentedExecutionLogStore.SEGMENT_PREFIX
+                + String.format("%016d", clock.millis()) + SegmentedExecutionLogStore.SEGMENT_SUFFIX);
+        Files.createDirectory(blocked);
+
+        store.append(List.of(entry("b", true, 1, START.plusSeconds(7200))));
+        assertEquals(0, store.getStats().rotations());
+        assertEquals(2, store.findPage(PageRequest.of(0, 10)).getTotalElements());
+
+        Files.delete(blocked);
+        store.append(List.of(entry("c", true, 1, START.plusSeconds(7201))));
+        assertEquals(1, store.getStats().rotations());
+        assertEquals(3, store.findPage(PageRequest.of(0, 10)).getTotalElements());
+    }
+
+    @Test
+    void testSegmentRotatesBySize() {
+        properties.setMaxSegmentSize(DataSize.ofBytes(1));
+        SegmentedExecutionLogStore store = open();
+
+        for (int i = 0; i < 3; i++) {
+            clock.advance(Duration.ofMillis(1));
+            store.append(List.of(entry("t" + i, true, 1, START.plusSeconds(i))));
+        }
+
+        // Cada escritura encuentra el segmento lleno y rota; el inicial, vacío, se descarta
+        assertEquals(3, store.getStats().segments());
+        assertEquals(3, store.getStats().rows());
+    }
+
+    @Test
+    void testRetentionDropsExpiredSegmentsAndTrimsTheActiveOne() {
+        SegmentedExecutionLogStore store = open();
+        store.append(List.of(entry("old", true, 1, START)));
+        clock.advance(Duration.ofHours(2));
+        store.append(List.of(entry("mid", true, 1, START.plusSeconds(7000)),
+                entry("new", true, 1, START.plusSeconds(7300))));
+
+        long deleted = store.deleteBefore(START.plusSeconds(7200));
+
+        assertEquals(2, deleted);
+        assertEquals(1, segmentFiles().size());
+        assertEquals(List.of("new"), store.findPage(PageRequest.of(0, 10))
+                .map(ToolExecutionLogResponse::toolName).toList());
+        assertEquals(START.plusSeconds(7300), store.getStats().oldestExecutedAt());
+    }
+
+    @Test
+    void testReopenKeepsLogsAndIds() {
+        SegmentedExecutionLogStore store = open();
+        store.append(List.of(entry("a", true, 1, START)));
+        store.close();
+
+        SegmentedExecutionLogStore reopened = open();
+        reopened.append(List.of(entry("b", true, 1, START.plusSeconds(1))));
+
+        List<ToolExecutionLogResponse> logs = reopened.findPage(PageRequest.of(0, 10)).getContent();
+        assertEquals(2, logs.size());
+        assertFalse(logs.get(0).id().equals(logs.get(1).id()));
+    }
+
+    @Test
+    void testLegacyLogsAreListedAfterTheSegmentsUntilRetentionEmptiesThem() {
+        List<ToolExecutionLog> legacy = List.of(
+                systemEntry("legacy_2", START.minusSeconds(20)),
+                systemEntry("legacy_1", START.minusSeconds(30)));
+        when(legacyLogs.count()).thenReturn(2L);
+        when(legacyLogs.findAllByOrderByExecutedAtDesc(any())).thenAnswer(invocation -> {
+            Pageable pageable = invocation.getArgument(0);
+            int from = (int) Math.min(pageable.getOffset(), legacy.size());
+            int to = (int) Math.min(from + pageable.getPageSize(), legacy.size());
+            return new PageImpl<>(legacy.subList(from, to), pageable, legacy.size());
+        });
+        SegmentedExecutionLogStore store = open();
+        store.append(List.of(entry("b", true, 1, START.plusSeconds(2)), entry("a", true, 1, START.plusSeconds(1))));
+
+        Page<ToolExecutionLogResponse> page = store.findPage(PageRequest.of(1, 3));
+        assertEquals(4, page.getTotalElements());
+        assertEquals(List.of("legacy_1"), page.getContent().stream().map(ToolExecutionLogResponse::toolName).toList());
+        assertEquals(List.of("b", "a", "legacy_2"), store.findPage(PageRequest.of(0, 3)).getContent().stream()
+                .map(ToolExecutionLogResponse::toolName).toList());
+
+        when(legacyLogs.deleteByExecutedAtBefore(START)).thenReturn(2);
+        when(legacyLogs.count()).thenReturn(0L);
+        assertEquals(2, store.deleteBefore(START));
+
+        assertEquals(2, store.findPage(PageRequest.of(0, 10)).getTotalElements());
+        store.deleteBefore(START);
+        // Vacía la tabla vieja, no se la vuelve a consultar
+        verify(legacyLogs, times(1)).deleteByExecutedAtBefore(any());
+    }
+
+    private SegmentedExecutionLogStore open() {
+        clock.set(START);
+        SegmentedExecutionLogStore store = new SegmentedExecutionLogStore(properties, legacyLogs, clock);
+        store.open();
+        opened.add(store);
+        return store;
+    }
+
+    private List<Path> segmentFiles() {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(SegmentedExecutionLogStore.SEGMENT_SUFFIX))
+                    .toList();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ToolExecutionLog entry(String toolName, boolean success, long timeMs, Instant executedAt) {
+        ApiTool tool = new ApiTool();
+        tool.setId(7L);
+        tool.setName(toolName);
+        ToolExecutionLog log = new ToolExecutionLog();
+        log.setApiTool(tool);
+        log.setSuccess(success);
+        log.setExecutionTimeMs(timeMs);
+        log.setExecutedAt(executedAt);
+        log.setRequestPayload("{\"q\":\"x\"}");
+        return log;
+    }
+
+    private static ToolExecutionLog systemEntry(String toolName, Instant executedAt) {
+        ToolExecutionLog log = new ToolExecutionLog();
+        log.setSystemToolName(toolName);
+        log.setSuccess(true);
+        log.setExecutedAt(executedAt);
+        return log;
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private Instant now = START;
+
+        void set(Instant instant) {
+            now = instant;
+        }
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package org.dynamcorp.handsaiv2.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dynamcorp.handsaiv2.exception.ToolExecutionException;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BodyTemplateTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testBlankTemplateCompilesToNull() {
+        assertNull(BodyTemplate.compile(null));
+        assertNull(BodyTemplate.compile("   "));
+    }
+
+    @Test
+    public void testRenderEscapesStringsAndSerializesOtherValues() {
+        BodyTemplate template = BodyTemplate.compile(
+                "{\"text\": \"{{text}}\", \"tags\": {{tags}}, \"count\": {{count}}}");
+
+        Map<String, Object> values = Map.of(
+                "text", "say \"hi\"\n\\o/",
+                "tags", List.of("a", "b"),
+                "count", 3);
+
+        String body = template.render(values, objectMapper, BodyTemplate.MissingPlaceholderPolicy.KEEP);
+        assertEquals("{\"text\": \"say \\\"hi\\\"\\n\\\\o/\", \"tags\": [\"a\",\"b\"], \"count\": 3}", body);
+    }
+
+    @Test
+    public void testPlaceholderNextToJsonBraces() {
+        BodyTemplate template = BodyTemplate.compile("{\"data\":{{{payload}}}}");
+        assertEquals(Set.of("payload"), template.placeholderNames());
+
+        String body = template.render(Map.of("payload", "x"), objectMapper,
+                BodyTemplate.MissingPlaceholderPolicy.KEEP);
+        assertEquals("{\"data\":{x}}", body);
+    }
+
+    @Test
+    public void testNullValueRendersEmpty() {
+        BodyTemplate template = BodyTemplate.compile("[{{a}}]");
+        Map<String, Object> values = new HashMap<>();
+        values.put("a", null);
+        assertEquals("[]", template.render(values, objectMapper, BodyTemplate.MissingPlaceholderPolicy.NULL));
+    }
+
+    @Test
+    public void testMissingPlaceholderPolicies() {
+        BodyTemplate template = BodyTemplate.compile("{\"a\": {{a}}}");
+
+        assertEquals("{\"a\": {{a}}}",
+                template.render(Map.of(), objectMapper, BodyTemplate.MissingPlaceholderPolicy.KEEP));
+        assertEquals("{\"a\": }",
+                template.render(Map.of(), objectMapper, BodyTemplate.MissingPlaceholderPolicy.EMPTY));
+        assertEquals("{\"a\": null}",
+                template.render(Map.of(), objectMapper, BodyTemplate.MissingPlaceholderPolicy.NULL));
+        assertThrows(ToolExecutionException.class,
+                () -> template.render(Map.of(), objectMapper, BodyTemplate.MissingPlaceholderPolicy.FAIL));
+    }
+}
@@ -4,6 +4,10 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -62,4 +66,35 @@ class LogObfuscatorTest {
         assertEquals("", logObfuscator.obfuscate(""));
         assertEquals(null, logObfuscator.obfuscate(null));
     }
+
+    @Test
+    void testSensitiveObjectsAndArraysAreReplacedWholeAndNullsKept() {
+        String json = "{\"credentials\":{\"user\":\"a\",\"pass\":\"b\"},\"keys\":[1,2],\"authToken\":null,\"n\":1.5}";
+
+        assertEquals("{\"credentials\":\"******\",\"keys\":\"******\",\"authToken\":null,\"n\":1.5}",
+                logObfuscator.obfuscate(json));
+    }
+
+    @Test
+    void testMalformedJsonFallsBack() {
+        assertEquals("{\"name\":\"truncated", logObfuscator.obfuscate("{\"name\":\"truncated"));
+        assertEquals("****** (Obfuscated non-JSON strict string)",
+                logObfuscator.obfuscate("user=admin&password=hunter2"));
+    }
+
+    @Test
+    void testObfuscateValueSerializesAndMasksInOnePass() throws Exception {
+        Map<String, Object> params = new LinkedHashMap<>();
+        params.put("query", "weather");
+        params.put("api_key", "abc");
+        params.put("items", List.of(Map.of("SessionToken", "xyz"), Map.of("id", 7)));
+
+        assertEquals("{\"query\":\"weather\",\"api_key\":\"******\",\"items\":[{\"SessionToken\":\"******\"},{\"id\":7}]}",
+                logObfuscator.obfuscateValue(params));
+        // Mismo resultado que serializar a String y ofuscar
+        assertEquals(logObfuscator.obfuscate(objectMapper.writeValueAsString(params)),
+                logObfuscator.obfuscateValue(params));
+        assertEquals("\"plain text\"", logObfuscator.obfuscateValue("plain text"));
+        assertEquals("null", logObfuscator.obfuscateValue(null));
+    }
 }